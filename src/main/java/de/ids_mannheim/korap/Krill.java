@@ -9,11 +9,13 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.ids_mannheim.korap.cache.VirtualCorpusCache;
+import de.ids_mannheim.korap.index.SearchDeadline;
 import de.ids_mannheim.korap.query.wrap.SpanQueryWrapper;
 import de.ids_mannheim.korap.response.Response;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.VirtualCorpusResponse;
 import de.ids_mannheim.korap.util.QueryException;
+import de.ids_mannheim.korap.util.KrillJson;
 
 /**
  * <p>Krill is a corpus data retrieval index using Lucene for
@@ -61,7 +63,11 @@ public class Krill extends Response {
     private JsonNode request;
 
     private int maxTokenMatchSize;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper mapper = KrillJson.mapper();
+
+    // Deadline of the running search
+    private volatile SearchDeadline deadline;
+    private volatile boolean cancelled = false;
 
     /**
      * Construct a new Krill object.
@@ -350,6 +356,44 @@ public class Krill extends Response {
     }
 
 
+    /**
+     * Cancel the search cooperatively.
+     * A running search will stop at the next check of its
+     * deadline and return the matches found so far,
+     * with a warning (684).
+     * A cancelled Krill object won't be searched again.
+     */
+    public void cancel () {
+        this.cancelled = true;
+        final SearchDeadline deadline = this.deadline;
+        if (deadline != null)
+            deadline.cancel();
+    };
+
+
+    /**
+     * Check if the search was cancelled.
+     * 
+     * @return <tt>true</tt> in case the search was cancelled,
+     *         otherwise <tt>false</tt>.
+     */
+    public boolean isCancelled () {
+        return this.cancelled;
+    };
+
+
+    // Start the deadline of a search with the given timeout
+    SearchDeadline startDeadline (long timeout) {
+        final SearchDeadline deadline = new SearchDeadline(timeout);
+        this.deadline = deadline;
+
+        // The search was cancelled before it started
+        if (this.cancelled)
+            deadline.cancel();
+        return deadline;
+    };
+
+
     public int getMaxTokenMatchSize () {
         return maxTokenMatchSize;
     }
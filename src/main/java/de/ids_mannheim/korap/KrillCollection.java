@@ -12,6 +12,7 @@ import java.util.zip.GZIPInputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
@@ -22,20 +23,26 @@ import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.SparseFixedBitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import de.ids_mannheim.korap.cache.StatisticsCache;
 import de.ids_mannheim.korap.collection.CollectionBuilder;
+import de.ids_mannheim.korap.index.MetaDocValues;
 import de.ids_mannheim.korap.response.Notifications;
 import de.ids_mannheim.korap.util.KrillProperties;
 import de.ids_mannheim.korap.util.QueryException;
 import de.ids_mannheim.korap.util.StatusCodes;
+import de.ids_mannheim.korap.util.KrillJson;
 
 /**
  * Create a Virtual Collection of documents by means of a KoralQuery
@@ -60,9 +67,8 @@ public final class KrillCollection extends Notifications implements IndexInfo {
     private JsonNode json;
     private final CollectionBuilder cb = new CollectionBuilder(this);
     private CollectionBuilder.Interface cbi;
-    private byte[] pl = new byte[4];
 
-    private ObjectMapper mapper = new ObjectMapper();
+    private ObjectMapper mapper = KrillJson.mapper();
     
 	private Filter prefiltered = null;
     // private static ByteBuffer bb = ByteBuffer.allocate(4);
@@ -568,16 +574,38 @@ public final class KrillCollection extends Notifications implements IndexInfo {
      * @return A bit vector representing the live documents of the
      *         virtual collection.
      * @throws IOException
+     * @see #acceptedDocs(LeafReaderContext)
      */
     public FixedBitSet bits (LeafReaderContext atomic) throws IOException, QueryException {
+        BitSet bitset = this.acceptedDocs(atomic);
+        if (bitset instanceof FixedBitSet)
+            return (FixedBitSet) bitset;
+
+        FixedBitSet fixed = new FixedBitSet(bitset.length());
+        fixed.or(new BitSetIterator(bitset, 0));
+        return fixed;
+    };
+
+
+    /**
+     * Create a bit set representing the live documents of the
+     * virtual collection to be used in searches.
+     * This will respect deleted documents.
+     * In case the collection only contains a few documents
+     * of the leaf, the bit set is sparse, so memory
+     * and iteration cost scale with the size of the collection.
+     * 
+     * @param The
+     *            {@link LeafReaderContext} to search in.
+     * @return A sparse or dense bit set representing the live
+     *         documents of the virtual collection.
+     * @throws IOException
+     */
+    public BitSet acceptedDocs (LeafReaderContext atomic)
+            throws IOException, QueryException {
 
-        // EM: really need a fixedBitset? 
-        // maybe better use org.apache.lucene.util.BitDocIdSet.Builder
-        // for automatic sparse bitset support
-        // appears possible by implementing a SparseDocBits class extending
-        // SparseFixedBitSet and implementing Serializable (only as marker interface)
         LeafReader r = atomic.reader();
-        FixedBitSet bitset = new FixedBitSet(r.maxDoc());
+        int maxDoc = r.maxDoc();
 
         if (DEBUG) {
             start = System.currentTimeMillis();
@@ -607,17 +635,27 @@ public final class KrillCollection extends Notifications implements IndexInfo {
 
         if (docids == null) {
             if (this.cbi != null) {
-                bitset.clear(0, bitset.length());
-            }
-            else {
-                bitset.set(0, bitset.length());
+                return new SparseFixedBitSet(maxDoc);
             };
-        }
-        else {
-            bitset.or(docids.iterator());
-        }
+            FixedBitSet bitset = new FixedBitSet(maxDoc);
+            bitset.set(0, maxDoc);
+            return bitset;
+        };
+
+        DocIdSetIterator iterator = docids.iterator();
+        if (iterator == null)
+            return new SparseFixedBitSet(maxDoc);
+
+        // The builder chooses a sparse or dense bit set
+        // by the number of documents
+        BitDocIdSet.Builder builder = new BitDocIdSet.Builder(maxDoc);
+        builder.or(iterator);
+        BitDocIdSet docIdSet = builder.build();
 
-        return bitset;
+        if (docIdSet == null)
+            return new SparseFixedBitSet(maxDoc);
+
+        return docIdSet.bits();
     };
 
 
@@ -636,14 +674,15 @@ public final class KrillCollection extends Notifications implements IndexInfo {
 		throws IOException, QueryException {
 
         int maxDoc = atomic.reader().maxDoc();
-        FixedBitSet bitset = new FixedBitSet(maxDoc);
+        BitSet bitset;
 
         final Filter filter = this.toFilter();
 
         if (filter == null) {
             if (acceptDocs == null)
                 return null;
-            bitset.set(0, maxDoc);
+            bitset = new FixedBitSet(maxDoc);
+            ((FixedBitSet) bitset).set(0, maxDoc);
         }
 		else {
 
@@ -657,15 +696,27 @@ public final class KrillCollection extends Notifications implements IndexInfo {
                 
 				if (!this.cbi.isNegative()) return null;
 
-				bitset.set(0, maxDoc);
+                bitset = new FixedBitSet(maxDoc);
+				((FixedBitSet) bitset).set(0, maxDoc);
 			}
+
+            // Revert for negation
+            else if (this.cbi.isNegative()) {
+                bitset = new FixedBitSet(maxDoc);
+                bitset.or(filterIter);
+                ((FixedBitSet) bitset).flip(0, maxDoc);
+            }
+
 			else {
 
-                // Or bit set
-				bitset.or(filterIter);
-					
-				// Revert for negation
-				if (this.cbi.isNegative()) bitset.flip(0, maxDoc);
+                // The builder chooses a sparse or dense bit set
+                // by the number of documents
+                BitDocIdSet.Builder builder = new BitDocIdSet.Builder(maxDoc);
+                builder.or(filterIter);
+                BitDocIdSet docIdSet = builder.build();
+                if (docIdSet == null)
+                    return null;
+                bitset = docIdSet.bits();
 			};
 		};
 
@@ -706,34 +757,28 @@ public final class KrillCollection extends Notifications implements IndexInfo {
         // No index defined
         if (this.index == null) return (long) -1;
 
-        // No reader (inex is empty)
-        if (this.index.reader() == null) return (long) 0;
-
-        // This is redundant to index stuff
-        if (type.equals("documents") || type.equals("base/texts")) {
-            if (this.cbi == null) {
-                if (this.index.reader() == null) return (long) 0;
-                return (long) this.index.reader().numDocs();
-            }
-            else
-                return this.docCount();
-        };
-
-        // Create search term
-        // This may be prefixed by foundries
-        Term term = new Term(field, "-:" + type);
+        // The reader stays open, even if the index is refreshed
+        final IndexReader reader = this.index.acquireReader();
 
-        if (DEBUG) log.debug("Iterate for {}/{}", field, type);
+        // No reader (inex is empty)
+        if (reader == null) return (long) 0;
 
         long occurrences = 0;
         try {
-            // Iterate over all atomic readers and collect occurrences
-            for (LeafReaderContext atomic : this.index.reader().leaves()) {
-                Bits bits = this.bits(atomic);
 
-                if (DEBUG) log.debug("Final bits  {}", _bits(bits));
+            // This is redundant to index stuff
+            if (type.equals("documents") || type.equals("base/texts")) {
+                if (this.cbi == null)
+                    return (long) reader.numDocs();
+                else
+                    return this.docCount(reader);
+            };
 
-                occurrences += this._numberOfAtomic(bits, atomic, term);
+            if (DEBUG) log.debug("Iterate for {}/{}", field, type);
+
+            // Iterate over all atomic readers and collect occurrences
+            for (LeafReaderContext atomic : reader.leaves()) {
+                occurrences += this.numbersOf(atomic, field, type)[0];
                 if (DEBUG) log.debug("Added up to {} for {}/{}", occurrences,
                         field, type);
             };
@@ -747,12 +792,100 @@ public final class KrillCollection extends Notifications implements IndexInfo {
 		// E.g. reference corpus not found
         catch (QueryException e) {
             log.warn(e.getLocalizedMessage());
+        }
+        finally {
+            this.index.releaseReader(reader);
         };
 
         return occurrences;
     };
 
 
+    /**
+     * Search for the number of occurrences of different types,
+     * e.g. <i>documents</i>, <i>sentences</i> etc. in the virtual
+     * collection restricted to a single leaf.
+     * The documents of the collection are only determined once
+     * for all types, and only in case not all numbers are memoized
+     * for the leaf.
+     * 
+     * @param atomic
+     *            The {@link LeafReaderContext} to search in.
+     * @param field
+     *            The field containing the textual data and the
+     *            annotations as a string.
+     * @param types
+     *            The types of meta information,
+     *            e.g. <i>documents</i> or <i>sentences</i> as
+     *            strings.
+     * @return The number of the occurrences per type in the
+     *         leaf.
+     * @throws IOException
+     * @throws QueryException
+     * @see #numberOf(String, String)
+     */
+    public long[] numbersOf (LeafReaderContext atomic, String field,
+            String ... types) throws IOException, QueryException {
+
+        final LeafReader reader = atomic.reader();
+        final String vc = this._statisticsKey();
+        final long[] numbers = new long[types.length];
+
+        BitSet bits = null;
+        long docs = 0;
+        MetaDocValues columns = null;
+
+        for (int i = 0; i < types.length; i++) {
+            final boolean isDocs = types[i].equals("documents")
+                    || types[i].equals("base/texts");
+
+            // Create search term
+            // This may be prefixed by foundries
+            final Term term = isDocs ? null
+                    : new Term(field, "-:" + types[i]);
+            final String statistic = isDocs ? "documents" : term.toString();
+
+            // The number is memoized for the leaf
+            final Long memo = vc == null ? null
+                    : StatisticsCache.get(reader, vc, statistic);
+            if (memo != null) {
+                numbers[i] = memo;
+                continue;
+            };
+
+            if (bits == null) {
+                bits = this.acceptedDocs(atomic);
+                docs = bits.cardinality();
+                if (vc != null)
+                    StatisticsCache.put(reader, vc, "documents", docs);
+
+                if (DEBUG) log.debug("Final bits  {}", _bits(bits));
+            };
+
+            if (isDocs) {
+                numbers[i] = docs;
+                continue;
+            };
+
+            // Sum up the counter columns
+            if (columns == null)
+                columns = new MetaDocValues(reader);
+            long sum = columns.sumCounter(field, types[i], bits);
+
+            // Documents were indexed without counter columns
+            if (sum == -1)
+                sum = this._numberOfAtomic(bits, atomic, term);
+
+            if (vc != null)
+                StatisticsCache.put(reader, vc, statistic, sum);
+
+            numbers[i] = sum;
+        };
+
+        return numbers;
+    };
+
+
     // Search for meta information in term vectors
     // This will create the sum of all numerical payloads
     // of the term in the document vector
@@ -783,6 +916,7 @@ public final class KrillCollection extends Notifications implements IndexInfo {
                 if (docs.docID() == DocsAndPositionsEnum.NO_MORE_DOCS) return 0;
 
                 // Init some variables for data copying
+                final byte[] pl = new byte[4];
                 long occurrences = 0;
                 BytesRef payload;
 
@@ -832,14 +966,31 @@ public final class KrillCollection extends Notifications implements IndexInfo {
         // No index defined
         if (this.index == null) return (long) 0;
 
-        // TODO: Caching!
+        IndexReader reader = null;
+        try {
+            reader = this.index.acquireReader();
+
+            // No reader (index is empty)
+            if (reader == null) return (long) 0;
+
+            return this.docCount(reader);
+        }
+        catch (IOException e) {
+            log.warn(e.getLocalizedMessage());
+        }
+        finally {
+            this.index.releaseReader(reader);
+        };
+        return (long) 0;
+    };
+
 
+    // Count the documents of the collection in an acquired reader
+    private long docCount (IndexReader reader) {
         long docCount = 0;
         try {
-            FixedBitSet bitset;
-            for (LeafReaderContext atomic : this.index.reader().leaves()) {
-                if ((bitset = this.bits(atomic)) != null)
-                    docCount += bitset.cardinality();
+            for (LeafReaderContext atomic : reader.leaves()) {
+                docCount += this.numbersOf(atomic, "tokens", "documents")[0];
             };
         }
         catch (IOException e) {
@@ -852,6 +1003,16 @@ public final class KrillCollection extends Notifications implements IndexInfo {
     };
 
 
+    // The collection as a key for memoized statistics,
+    // null in case the collection can't be serialized
+    private String _statisticsKey () {
+        if (this.cbi == null)
+            return "";
+        final String key = this.toString();
+        return key.isEmpty() ? null : key;
+    };
+
+
     private static String _bits (Bits bitset) {
         String str = "";
         for (int i = 0; i < bitset.length(); i++) {
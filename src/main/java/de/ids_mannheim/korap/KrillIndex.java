@@ -2,11 +2,15 @@ package de.ids_mannheim.korap;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 // Java core classes
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -14,6 +18,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
@@ -21,7 +33,7 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -29,7 +41,6 @@ import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.TermContext;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 // Lucene classes
@@ -38,17 +49,17 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.BitSet;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
 import org.apache.lucene.util.automaton.RegExp;
 // Log4j Logger classes
@@ -58,15 +69,23 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 // Krill classes
+import de.ids_mannheim.korap.cache.MatchInfoCache;
 import de.ids_mannheim.korap.index.FieldDocument;
 import de.ids_mannheim.korap.index.KeywordAnalyzer;
+import de.ids_mannheim.korap.index.KrillReaderManager;
+import de.ids_mannheim.korap.index.MetaDocValues;
 import de.ids_mannheim.korap.index.PositionsToOffset;
+import de.ids_mannheim.korap.index.QueryWarmer;
+import de.ids_mannheim.korap.index.ReaderWarmer;
+import de.ids_mannheim.korap.index.SearchDeadline;
+import de.ids_mannheim.korap.index.SearchExecutionContext;
 import de.ids_mannheim.korap.index.SpanInfo;
 import de.ids_mannheim.korap.index.TermInfo;
 import de.ids_mannheim.korap.index.TextAnalyzer;
-import de.ids_mannheim.korap.index.TimeOutThread;
+import de.ids_mannheim.korap.index.VirtualCorpusWarmer;
 import de.ids_mannheim.korap.response.Match;
 import de.ids_mannheim.korap.response.MatchCollector;
+import de.ids_mannheim.korap.response.MetaField;
 import de.ids_mannheim.korap.response.MetaFields;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.SearchContext;
@@ -75,6 +94,8 @@ import de.ids_mannheim.korap.util.Fingerprinter;
 import de.ids_mannheim.korap.util.KrillDate;
 import de.ids_mannheim.korap.util.KrillProperties;
 import de.ids_mannheim.korap.util.QueryException;
+import de.ids_mannheim.korap.util.StatusCodes;
+import de.ids_mannheim.korap.util.KrillJson;
 
 /**
  * <p>KrillIndex implements a simple API for searching in and writing
@@ -107,13 +128,14 @@ import de.ids_mannheim.korap.util.QueryException;
 /*
  * Concerning parallel processing:
  * ===============================
- * Search /could/ be run in parallel on atomic readers
- * (although Lucene developers strongly discourage that).
- * Benefits are not clear and would need some benchmarks,
- * the huge drawback would be more complicated testing.
- * Aside from (probably) co-occurrence analysis, shared memory
- * is not an important thing, so I guess the preferred
- * way of using Krill on multicore machines for now is by using
+ * Search can be run in parallel on atomic readers, in case
+ * an executor is set (or krill.search.threads is > 1).
+ * Every leaf is then searched independently, only remembering
+ * the first matches that may be part of the requested page.
+ * Afterwards the leaf results are merged in leaf order,
+ * so the page of matches is identical to the sequential search.
+ * Aside from that, the preferred
+ * way of using Krill on multicore machines is still by using
  * the same mechanism as for distribution:
  * Running multiple nodes (and separated indices) per machine,
  * registered independently at the Zookeeper.
@@ -150,6 +172,12 @@ public final class KrillIndex implements IndexInfo {
     // This advices the java compiler to ignore all loggings
     public static final boolean DEBUG = false;
 
+    // Foundries and layers accepted for match information
+    private static final Pattern harmlessFoundry = Pattern
+            .compile("^[-a-zA-Z0-9_]+$");
+    private static final Pattern harmlessLayer = Pattern
+            .compile("^[-a-zA-Z0-9_:]+$");
+
     // TODO: Use configuration instead.
     // Last line of defense against DOS
     // Keep in mind - upsert requires 2 commits
@@ -158,22 +186,27 @@ public final class KrillIndex implements IndexInfo {
     private String version = "Unknown";
     private String name = "Unknown";
 
-    private String indexRevision;
-    
-    // Temp:
-    private IndexReader reader;
+    private volatile String indexRevision;
+
+    // The reader is reference counted and refreshed after commits
+    private volatile KrillReaderManager readerManager;
+    private final List<ReaderWarmer> warmers = new CopyOnWriteArrayList<>();
+    private ExecutorService refreshExecutor;
 
     private IndexWriter writer;
-    private boolean readerOpen = false;
-    private boolean writerOpen = false;
+    private volatile boolean readerOpen = false;
+    private volatile boolean writerOpen = false;
     private Directory directory;
 
     // The commit counter is only there for
     // counting unstaged changes per thread (for bulk insertions)
     // It does not represent real unstaged documents.
     private int commitCounter = 0;
-    private HashMap termContexts;
-    private ObjectMapper mapper = new ObjectMapper();
+    private ObjectMapper mapper = KrillJson.mapper();
+
+    // Executor for parallel searches on atomic readers
+    private volatile ExecutorService searchExecutor;
+    private boolean ownSearchExecutor = false;
 
     // private ByteBuffer bbTerm;
 
@@ -202,6 +235,43 @@ public final class KrillIndex implements IndexInfo {
                         "krill.index.commit.auto expected to be a numerical value");
             };
         };
+
+        // Warm up new segments with named virtual corpora,
+        // "*" refers to all named virtual corpora
+        if (!KrillProperties.warmupVC.isEmpty()) {
+            List<String> vcIds = null;
+            if (!KrillProperties.warmupVC.trim().equals("*")) {
+                vcIds = new ArrayList<>();
+                for (String vcId : KrillProperties.warmupVC.split(",")) {
+                    if (!vcId.trim().isEmpty())
+                        vcIds.add(vcId.trim());
+                };
+            };
+            this.warmers.add(new VirtualCorpusWarmer(vcIds,
+                    KrillProperties.warmupThreads));
+        };
+
+        // Warm up new segments with KoralQueries
+        if (!KrillProperties.warmupQueries.isEmpty()) {
+            List<SpanQuery> queries = new ArrayList<>();
+            for (String file : KrillProperties.warmupQueries.split(",")) {
+                if (file.trim().isEmpty())
+                    continue;
+                try {
+                    Krill ks = new Krill(new String(
+                            Files.readAllBytes(Paths.get(file.trim())),
+                            "UTF-8"));
+                    if (ks.hasErrors() || ks.getSpanQuery() == null)
+                        log.warn("Unable to parse warm-up query {}", file);
+                    else
+                        queries.add(ks.getSpanQuery());
+                }
+                catch (IOException e) {
+                    log.warn("Unable to load warm-up query {}", file);
+                };
+            };
+            this.warmers.add(new QueryWarmer(queries));
+        };
     };
 
 
@@ -264,17 +334,90 @@ public final class KrillIndex implements IndexInfo {
      * The Lucene {@link IndexReader} object.
      * 
      * Will be opened, in case it's closed.
+     * The reader is not reference counted and may be closed
+     * by a refresh at any time, so requests should use
+     * {@link #acquireReader()} instead.
      * 
      * @return The {@link IndexReader} object.
      */
     public IndexReader reader () {
-        // Todo: Maybe use DirectoryReader.openIfChanged(DirectoryReader)       
         if (!readerOpen)
             this.openReader();
         if (!readerOpen)
             return null;
 
-        return this.reader;
+        return this.readerManager.current();
+    };
+
+
+    /**
+     * Acquire the current Lucene {@link IndexReader} object
+     * for a request.
+     * The reader is guaranteed to stay open, even if the
+     * index is refreshed in the meantime, until it is released
+     * using {@link #releaseReader(IndexReader)}.
+     * 
+     * Will be opened, in case it's closed.
+     * 
+     * @return The {@link IndexReader} object or <tt>null</tt>,
+     *         in case the index is empty.
+     * @throws IOException
+     */
+    public IndexReader acquireReader () throws IOException {
+        while (true) {
+            if (!readerOpen)
+                this.openReader();
+
+            final KrillReaderManager manager = this.readerManager;
+            if (manager == null)
+                return null;
+
+            try {
+                return manager.acquire();
+            }
+
+            // The reader was closed in the meantime - retry
+            catch (AlreadyClosedException e) {
+                if (DEBUG)
+                    log.trace("Reader was closed, retry acquiring");
+            };
+        }
+    };
+
+
+    /**
+     * Release an {@link IndexReader} object acquired
+     * by {@link #acquireReader()}.
+     * 
+     * @param reader
+     *            The {@link IndexReader} to release.
+     *            May be <tt>null</tt>.
+     */
+    public void releaseReader (IndexReader reader) {
+        if (reader == null)
+            return;
+
+        try {
+            reader.decRef();
+        }
+        catch (IOException e) {
+            log.warn("Unable to release reader: {}",
+                    e.getLocalizedMessage());
+        };
+    };
+
+
+    /**
+     * Add a {@link ReaderWarmer} that is run on new leaves,
+     * before a refreshed reader is made visible to requests.
+     * 
+     * @param warmer
+     *            The {@link ReaderWarmer}.
+     * @return The {@link KrillIndex} object for chaining.
+     */
+    public KrillIndex addWarmer (ReaderWarmer warmer) {
+        this.warmers.add(warmer);
+        return this;
     };
 
 
@@ -296,8 +439,8 @@ public final class KrillIndex implements IndexInfo {
     };
     
 
-    // Open index reader
-    private void openWriter () {
+    // Open index writer
+    private synchronized void openWriter () {
         if (writerOpen) {
             return;
         };
@@ -327,14 +470,15 @@ public final class KrillIndex implements IndexInfo {
 
 
     // Open index reader
-    private void openReader () {
+    private synchronized void openReader () {
         if (readerOpen) {
             return;
         };
 
         try {
             // open reader
-            this.reader = DirectoryReader.open(this.directory);
+            this.readerManager = new KrillReaderManager(this.directory,
+                    this.warmers);
             readerOpen = true;
         }
 
@@ -350,15 +494,68 @@ public final class KrillIndex implements IndexInfo {
 
 
     // Close index reader
-    public void closeReader () throws IOException {
-        if (readerOpen || this.reader != null) {
-            this.reader.close();
-            this.reader = null;
+    // Acquired readers stay open until they are released
+    public synchronized void closeReader () throws IOException {
+        if (readerOpen || this.readerManager != null) {
             readerOpen = false;
+            this.readerManager.close();
+            this.readerManager = null;
         };
     };
 
 
+    /**
+     * Refresh the reader, in case it is open,
+     * so committed changes become visible to new requests.
+     * Requests that acquired the old reader
+     * keep it until they are finished.
+     * 
+     * In case <tt>krill.index.refresh.background</tt> is set,
+     * the new reader is opened and warmed up in a background
+     * thread, otherwise the method blocks until the new
+     * reader is available.
+     * 
+     * @throws IOException
+     */
+    public void refreshReader () throws IOException {
+        final KrillReaderManager manager = this.readerManager;
+
+        // The reader will be opened on the next request
+        if (manager == null)
+            return;
+
+        if (!KrillProperties.refreshInBackground) {
+            manager.maybeRefreshBlocking();
+            this.indexRevision = null;
+            return;
+        };
+
+        this.getRefreshExecutor().execute(() -> {
+            try {
+                manager.maybeRefreshBlocking();
+                this.indexRevision = null;
+            }
+            catch (IOException | AlreadyClosedException e) {
+                log.warn("Unable to refresh reader: {}",
+                        e.getLocalizedMessage());
+            };
+        });
+    };
+
+
+    // Get the single thread executor for background refreshes
+    private synchronized ExecutorService getRefreshExecutor () {
+        if (this.refreshExecutor == null) {
+            this.refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "KrillReaderRefresh");
+                t.setDaemon(true);
+                return t;
+            });
+        };
+        return this.refreshExecutor;
+    };
+
+
     // Close index writer
     public void closeWriter () throws IOException {
         if (writerOpen || this.writer != null) {
@@ -378,7 +575,74 @@ public final class KrillIndex implements IndexInfo {
      */
     public void close () throws IOException {
         this.closeWriter();
+
+        // Stop refreshing the reader
+        synchronized (this) {
+            if (this.refreshExecutor != null) {
+                this.refreshExecutor.shutdown();
+                this.refreshExecutor = null;
+            };
+        };
         this.closeReader();
+
+        // Shut down the executor, in case it was created by the index
+        if (this.ownSearchExecutor) {
+            this.searchExecutor.shutdown();
+            this.searchExecutor = null;
+            this.ownSearchExecutor = false;
+        };
+    };
+
+
+    /**
+     * Get the {@link ExecutorService} used to search
+     * atomic readers in parallel.
+     * 
+     * If no executor was set, but <tt>krill.search.threads</tt>
+     * is greater than <tt>1</tt>, a fixed thread pool
+     * of the configured size will be created.
+     * 
+     * @return The {@link ExecutorService} or <tt>null</tt>,
+     *         in case searches are sequential.
+     */
+    public ExecutorService getSearchExecutor () {
+        if (this.searchExecutor == null
+                && KrillProperties.searchThreads > 1) {
+            synchronized (this) {
+                if (this.searchExecutor == null) {
+                    this.searchExecutor = Executors.newFixedThreadPool(
+                            KrillProperties.searchThreads, r -> {
+                                Thread t = new Thread(r, "KrillSearch");
+                                t.setDaemon(true);
+                                return t;
+                            });
+                    this.ownSearchExecutor = true;
+                };
+            };
+        };
+        return this.searchExecutor;
+    };
+
+
+    /**
+     * Set the {@link ExecutorService} used to search
+     * atomic readers in parallel.
+     * Passing <tt>null</tt> switches back to sequential
+     * searches (unless <tt>krill.search.threads</tt> is set).
+     * The executor won't be shut down on {@link #close()}.
+     * 
+     * @param executor
+     *            The {@link ExecutorService} to run leaf searches on.
+     * @return The {@link KrillIndex} object for chaining.
+     */
+    public KrillIndex setSearchExecutor (ExecutorService executor) {
+        synchronized (this) {
+            if (this.ownSearchExecutor && this.searchExecutor != executor)
+                this.searchExecutor.shutdown();
+            this.searchExecutor = executor;
+            this.ownSearchExecutor = false;
+        };
+        return this;
     };
 
 
@@ -406,8 +670,12 @@ public final class KrillIndex implements IndexInfo {
     public void commit () throws IOException {
         log.info("Internal committing index ... ");
         this.writer().commit();
-        commitCounter = 0;
-        this.closeReader();
+
+        // Documents may be added by multiple threads
+        synchronized (this) {
+            commitCounter = 0;
+        };
+        this.refreshReader();
     };
 
 
@@ -459,24 +727,19 @@ public final class KrillIndex implements IndexInfo {
                 new TermQuery(new Term("textSigle", textSigle))
                 );
             
+            // The reader may be refreshed by concurrent commits
+            IndexReader reader = null;
             try {
+                reader = this.acquireReader();
+
                 // Iterate over all atomic indices and find the matching document
 
             UPSERT:
                 while (true) {
 
-                    if (this.reader() != null) {
+                    if (reader != null) {
                 
-                        for (LeafReaderContext atomic : this.reader().leaves()) {
-                        
-                            // The reader is closed
-                            /*
-                            if (this.reader.getRefCount() == 0) {
-
-                                // Retry update
-                                break;
-                            };
-                            */
+                        for (LeafReaderContext atomic : reader.leaves()) {
                         
                             // Retrieve the single document of interest
                             DocIdSet filterSet = filter.getDocIdSet(
@@ -532,6 +795,9 @@ public final class KrillIndex implements IndexInfo {
 
             catch (IOException e) {
                 log.error("Unable to upsert document");
+            }
+            finally {
+                this.releaseReader(reader);
             };
         };
 
@@ -572,10 +838,7 @@ public final class KrillIndex implements IndexInfo {
 
             // Add document to writer
             this.writer().addDocument(doc.compile());
-            if (++commitCounter > autoCommit) {
-                this.commit();
-                commitCounter = 0;
-            };
+            this._staged();
             this.indexRevision = null;
         }
 
@@ -600,10 +863,7 @@ public final class KrillIndex implements IndexInfo {
             return false;
         try {
             this.writer().deleteDocuments(new Term(field, term));
-            if (++commitCounter > autoCommit) {
-                this.commit();
-                commitCounter = 0;
-            };
+            this._staged();
 
             this.indexRevision = null;
             return true;
@@ -721,6 +981,19 @@ public final class KrillIndex implements IndexInfo {
     };
 
 
+    // Count a staged change and commit in case
+    // the autocommit value is exceeded.
+    // Documents may be added by multiple threads.
+    private void _staged () throws IOException {
+        synchronized (this) {
+            if (++commitCounter <= autoCommit)
+                return;
+            commitCounter = 0;
+        };
+        this.commit();
+    };
+
+
     // Parse JSON document from Input stream
     private FieldDocument _fromJson (String json) {
         try {
@@ -839,10 +1112,12 @@ public final class KrillIndex implements IndexInfo {
         Filter filter = (Filter) new QueryWrapperFilter(
             new TermQuery(new Term("UID", uid)));
 
+        IndexReader reader = null;
         try {
+            reader = this.acquireReader();
 
             // Iterate over all atomic indices and find the matching document
-            for (LeafReaderContext atomic : this.reader().leaves()) {
+            for (LeafReaderContext atomic : reader.leaves()) {
 
                 // Retrieve the single document of interest
                 DocIdSet filterSet = filter.getDocIdSet(atomic,
@@ -889,6 +1164,9 @@ public final class KrillIndex implements IndexInfo {
         catch (IOException e) {
             text.addError(600, "Unable to read index", e.getLocalizedMessage());
             log.warn(e.getLocalizedMessage());
+        }
+        finally {
+            this.releaseReader(reader);
         };
 
         text.addError(630, "Document not found");
@@ -975,350 +1253,486 @@ public final class KrillIndex implements IndexInfo {
 
         if (DEBUG)
             log.trace("Get info on {}", idString);
-        
-        int maxTokenMatchSize = KrillProperties.maxTokenMatchSize;
-        Match match = new Match(maxTokenMatchSize, idString, includeHighlights);
 
-        if (this.getVersion() != null)
-            match.setVersion(this.getVersion());
-
-        if (this.getName() != null)
-            match.setName(this.getName());
+        return this.getMatchInfos(Collections.singletonList(idString), field,
+                info, foundry, layer, includeSpans, includeSnippets,
+                includeTokens, includeHighlights, extendToSentence).get(0);
+    };
 
-        if (match.getStartPos() == -1)
-            return match;
 
-        if (includeTokens)
-            match.hasTokens = true;
+    /**
+     * Get multiple matches at once.
+     *
+     * Matches are grouped by their documents, so every text sigle
+     * is resolved by a single term lookup per leaf, and the stored
+     * fields, the term vector and the offsets of a document are
+     * read only once for all of its matches.
+     * The automaton restricting the annotations to the requested
+     * foundries and layers is compiled once for the whole batch.
+     *
+     * @param ids
+     *            The list of match identifiers.
+     * @return The list of {@link Match} objects in the order of the
+     *         identifiers. Errors are attached to the single matches.
+     * @see #getMatchInfo(String, String, boolean, List, List,
+     *      boolean, boolean, boolean, boolean, boolean)
+     */
+    public List<Match> getMatchInfos (List<String> ids, String field,
+            boolean info, List<String> foundry, List<String> layer,
+            boolean includeSpans, boolean includeSnippets,
+            boolean includeTokens, boolean includeHighlights,
+            boolean extendToSentence) throws QueryException {
 
-        if (includeSnippets) {
-            match.hasSnippet = true;
-        } else {
+        if (!includeSnippets) {
             includeHighlights = false;
             includeSpans = false;
             info = false;
         };
-        
-        // Create a filter based on the corpusID and the docID
-        BooleanQuery bool = new BooleanQuery();
-        if (match.getTextSigle() != null) {
-            bool.add(new TermQuery(new Term("textSigle", match.getTextSigle())),
-                    BooleanClause.Occur.MUST);
-        }
+
+        int maxTokenMatchSize = KrillProperties.maxTokenMatchSize;
+        List<Match> matches = new ArrayList<>(ids.size());
+
+        // Group matches by text sigle (sorted for seeking)
+        TreeMap<String, List<Match>> texts = new TreeMap<>();
 
         // <legacy>
-        else if (match.getDocID() != null) {
-            bool.add(new TermQuery(new Term("ID", match.getDocID())),
-                    BooleanClause.Occur.MUST);
-            bool.add(new TermQuery(new Term("corpusID", match.getCorpusID())),
-                    BooleanClause.Occur.MUST);
-        }
+        Map<String, List<Match>> legacyDocs = new HashMap<>();
         // </legacy>
 
-        // Invalid
-        else {
-            match.addError(730, "Invalid match identifier", idString);
-            return match;
-        };
+        List<Match> grouped = new ArrayList<>(ids.size());
 
-        if (DEBUG)
-            log.trace("The bool query is {}", bool.toString());
+        for (String idString : ids) {
+            Match match = new Match(maxTokenMatchSize, idString,
+                    includeHighlights);
+            matches.add(match);
 
-        Filter filter = (Filter) new QueryWrapperFilter(bool);
+            if (this.getVersion() != null)
+                match.setVersion(this.getVersion());
 
-        CompiledAutomaton fst = null;
-        ByteBuffer bbTerm = ByteBuffer.allocate(32);
+            if (this.getName() != null)
+                match.setName(this.getName());
 
-        if (info) {
-            /* Create an automaton for prefixed terms of interest.
-             * You can define the necessary foundry, the necessary layer,
-             * in case the foundry is given, and if span annotations
-             * are of interest.
-             */
-            StringBuilder regex = new StringBuilder();
-            // TODO: Make these static
-            Pattern harmlessFoundry = Pattern.compile("^[-a-zA-Z0-9_]+$");
-            Pattern harmlessLayer = Pattern.compile("^[-a-zA-Z0-9_:]+$");
-            Iterator<String> iter;
-            int i = 0;
-
-            if (includeSpans)
-                regex.append("((\">\"|\"<\"\">\")\":\")?");
-
-            // There is a foundry given
-            if (foundry != null && foundry.size() > 0) {
-
-                // Filter out bad foundries
-                for (i = foundry.size() - 1; i >= 0; i--) {
-                    if (!harmlessFoundry.matcher(foundry.get(i)).matches()) {
-                        match.addError(970, "Invalid foundry requested",
-                                foundry.get(i));
-                        return match;
-                    };
-                };
+            if (match.getStartPos() == -1)
+                continue;
 
-                // Build regex for multiple foundries
-                if (foundry.size() > 0) {
-                    regex.append("(");
-                    iter = foundry.iterator();
-                    while (iter.hasNext()) {
-                        regex.append(iter.next()).append("|");
-                    };
-                    regex.replace(regex.length() - 1, regex.length(), ")");
-                    regex.append("\"/\"");
-
-                    // There is a filter given
-                    if (layer != null && layer.size() > 0) {
-
-                        // Filter out bad layers
-                        for (i = layer.size() - 1; i >= 0; i--) {
-                            if (!harmlessLayer.matcher(layer.get(i))
-                                    .matches()) {
-                                throw new QueryException(
-                                        "Invalid layer requested: "
-                                                + layer.get(i));
-                                // layer.remove(i);
-                            };
-                        };
+            if (includeTokens)
+                match.hasTokens = true;
 
-                        // Build regex for multiple layers
-                        if (layer.size() > 0) {
-                            regex.append("(");
-                            iter = layer.iterator();
-                            while (iter.hasNext()) {
-                                regex.append(iter.next()).append("|");
-                            };
-                            regex.replace(regex.length() - 1, regex.length(),
-                                    ")");
-                            regex.append("\":\"");
-                        };
-                    };
-                };
+            if (includeSnippets)
+                match.hasSnippet = true;
+
+            if (match.getTextSigle() != null) {
+                texts.computeIfAbsent(match.getTextSigle(),
+                        k -> new ArrayList<Match>(1)).add(match);
             }
-            else if (includeSpans) {
-                // No foundries - but spans
-                regex.append("([^-is]|[-is][^:])");
+
+            // <legacy>
+            else if (match.getDocID() != null) {
+                legacyDocs.computeIfAbsent(
+                        match.getCorpusID() + '\0' + match.getDocID(),
+                        k -> new ArrayList<Match>(1)).add(match);
             }
+            // </legacy>
+
+            // Invalid
             else {
-                // No foundries - no spans
-                regex.append("([^-is<>]|[-is>][^:]|<[^:>])");
+                match.addError(730, "Invalid match identifier", idString);
+                continue;
             };
-            regex.append("(.){1,}|_[0-9]+");
+            grouped.add(match);
+        };
 
-            if (DEBUG)
-                log.trace("The final regexString is {}", regex.toString());
+        if (grouped.isEmpty())
+            return matches;
 
-            RegExp regexObj = new RegExp(regex.toString(), RegExp.COMPLEMENT);
-            fst = new CompiledAutomaton(regexObj.toAutomaton());
-            if (DEBUG)
-                log.trace("The final regexObj is {}", regexObj.toString());
+        CompiledAutomaton fst = null;
+        String fstKey = null;
+        if (info) {
+
+            // Filter out bad foundries
+            String invalid = _invalidFoundry(foundry);
+            if (invalid != null) {
+                for (Match match : grouped)
+                    match.addError(970, "Invalid foundry requested", invalid);
+                return matches;
+            };
+
+            // Automata are shared by all requests
+            fstKey = _matchInfoKey(foundry, layer, includeSpans);
+            fst = MatchInfoCache.getAutomaton(fstKey);
+            if (fst == null)
+                fst = MatchInfoCache.putAutomaton(fstKey,
+                        _matchInfoAutomaton(foundry, layer, includeSpans));
+        };
+
+        // The following fields should be lifted for the matches
+        List<String> fields = (ArrayList<String>) new Krill().getMeta()
+                .getFields().clone();
+
+        // Lift all fields
+        HashSet<String> fieldsSet = null;
+        if (fields.contains("@all")) {
+            fields = null;
+        }
+        else {
+            fieldsSet = new HashSet<String>(fields);
+
+            // Lift primary field
+            fieldsSet.add(field);
         };
 
+        IndexReader reader = null;
         try {
+            reader = this.acquireReader();
 
-            // Iterate over all atomic indices and find the matching document
-            for (LeafReaderContext atomic : this.reader().leaves()) {
+            // Iterate over all atomic indices and find the matching documents
+            for (LeafReaderContext atomic : reader.leaves()) {
 
-                // Retrieve the single document of interest
-                DocIdSet filterSet = filter.getDocIdSet(atomic,
-                        atomic.reader().getLiveDocs());
+                if (texts.isEmpty() && legacyDocs.isEmpty())
+                    break;
 
-                DocIdSetIterator filterIterator = filterSet.iterator();
+                LeafReader lreader = atomic.reader();
+                Bits liveDocs = lreader.getLiveDocs();
 
-                if (DEBUG) {
-					// Create a bitset for the correct document
-					Bits bitset = filterSet.bits();
+                // Matches per local document
+                TreeMap<Integer, List<Match>> docs = new TreeMap<>();
 
-                    log.trace("Checking document in {} with {}", filterSet,
-							  bitset);
-				};
+                // Resolve all text sigles with a single terms enum
+                Terms sigles = lreader.terms("textSigle");
+                if (sigles != null && !texts.isEmpty()) {
+                    TermsEnum termsEnum = sigles.iterator(null);
+                    DocsEnum docsEnum = null;
+                    Iterator<Map.Entry<String, List<Match>>> iter = texts
+                            .entrySet().iterator();
+                    while (iter.hasNext()) {
+                        Map.Entry<String, List<Match>> text = iter.next();
+                        if (!termsEnum.seekExact(new BytesRef(text.getKey())))
+                            continue;
 
-                // No document found
-                if (filterIterator == null)
-                    continue;
+                        docsEnum = termsEnum.docs(liveDocs, docsEnum,
+                                DocsEnum.FLAG_NONE);
+                        int localDocID = docsEnum.nextDoc();
+                        if (localDocID == DocIdSetIterator.NO_MORE_DOCS)
+                            continue;
 
-                // Go to the matching doc - and remember its ID
-                int localDocID = filterIterator.nextDoc();
+                        if (DEBUG)
+                            log.trace("Found {} as localDocID {}",
+                                    text.getKey(), localDocID);
 
-                if (DEBUG)
-                    log.trace("localDocID is {}", localDocID);
+                        docs.computeIfAbsent(localDocID,
+                                k -> new ArrayList<Match>())
+                                .addAll(text.getValue());
+                        iter.remove();
+                    };
+                };
 
-                if (localDocID == DocIdSetIterator.NO_MORE_DOCS)
+                // <legacy>
+                Iterator<List<Match>> legacyIter = legacyDocs.values()
+                        .iterator();
+                while (legacyIter.hasNext()) {
+                    List<Match> legacyDoc = legacyIter.next();
+                    Match first = legacyDoc.get(0);
+
+                    // Create a filter based on the corpusID and the docID
+                    BooleanQuery bool = new BooleanQuery();
+                    bool.add(new TermQuery(new Term("ID", first.getDocID())),
+                            BooleanClause.Occur.MUST);
+                    bool.add(new TermQuery(
+                            new Term("corpusID", first.getCorpusID())),
+                            BooleanClause.Occur.MUST);
+
+                    DocIdSet filterSet = new QueryWrapperFilter(bool)
+                            .getDocIdSet(atomic, liveDocs);
+                    DocIdSetIterator filterIterator = filterSet == null ? null
+                            : filterSet.iterator();
+                    if (filterIterator == null)
+                        continue;
+
+                    int localDocID = filterIterator.nextDoc();
+                    if (localDocID == DocIdSetIterator.NO_MORE_DOCS)
+                        continue;
+
+                    docs.computeIfAbsent(localDocID,
+                            k -> new ArrayList<Match>())
+                            .addAll(legacyDoc);
+                    legacyIter.remove();
+                };
+                // </legacy>
+
+                if (docs.isEmpty())
                     continue;
 
-                // We've found the correct document! Hurray!
-                if (DEBUG)
-                    log.trace("We've found a matching document");
+                // All matches in the leaf share the offsets
+                PositionsToOffset pto = new PositionsToOffset(atomic, field);
 
-                // Get terms from the document
-                Terms docTerms = atomic.reader().getTermVector(localDocID,
-                        field);
+                for (Map.Entry<Integer, List<Match>> doc : docs.entrySet()) {
+                    this._populateMatchInfo(atomic, doc.getKey(),
+                            doc.getValue(), pto, field, fields, fieldsSet,
+                            fstKey, fst, extendToSentence);
+                };
+            };
+        }
+        catch (IOException e) {
+            for (Match match : grouped)
+                match.addError(600, "Unable to read index",
+                        e.getLocalizedMessage());
+            log.warn(e.getLocalizedMessage());
+        }
+        finally {
+            this.releaseReader(reader);
+        };
 
-				// The following fields should be lifted for the match
-                List<String> fields = (ArrayList<String>) new Krill().getMeta()
-                    .getFields().clone();
+        return matches;
+    };
 
-				// Lift all fields
-				if (fields.contains("@all"))
-					fields = null;
 
-                HashSet<String> fieldsSet = new HashSet<String>(fields);
+    // Return the first foundry that is not harmless
+    private static String _invalidFoundry (List<String> foundry) {
+        if (foundry == null)
+            return null;
+        for (int i = foundry.size() - 1; i >= 0; i--) {
+            if (!harmlessFoundry.matcher(foundry.get(i)).matches())
+                return foundry.get(i);
+        };
+        return null;
+    };
 
-				// Lift primary field
-                fieldsSet.add(field);
-                
-                // Load the necessary fields of the document
-                Document doc = (fields != null)
-                    ? atomic.reader().document(localDocID, fieldsSet)
-                    : atomic.reader().document(localDocID);
 
-                // Put some more information to the match
-                PositionsToOffset pto = new PositionsToOffset(atomic, field);
-                match.setPositionsToOffset(pto);
-                match.setLocalDocID(localDocID);
-                match.populateDocument(doc, field, (List<String>) fields);
-                if (DEBUG)
-                    log.trace("The document has the id '{}' or the sigle '{}'",
-                            match.getDocID(), match.getTextSigle());
+    // Canonical key of the automaton for match information
+    private static String _matchInfoKey (List<String> foundry,
+            List<String> layer, boolean includeSpans) {
+        StringBuilder key = new StringBuilder(includeSpans ? "spans" : "");
+        if (foundry != null && foundry.size() > 0) {
+            key.append('\0').append(String.join("|", new TreeSet<>(foundry)));
+
+            // Layers are only respected in case foundries are given
+            if (layer != null && layer.size() > 0)
+                key.append('\0')
+                        .append(String.join("|", new TreeSet<>(layer)));
+        };
+        return key.toString();
+    };
 
-                // Todo:
-                SearchContext context = match.getContext();
 
-                // Override the normal match marking
-                // to have an inner match
-                match.overrideMatchPosition(match.getStartPos(),
-                        match.getEndPos() - 1);
+    /*
+     * Create an automaton for prefixed terms of interest.
+     * You can define the necessary foundry, the necessary layer,
+     * in case the foundry is given, and if span annotations
+     * are of interest.
+     */
+    private static CompiledAutomaton _matchInfoAutomaton (
+            List<String> foundry, List<String> layer, boolean includeSpans)
+            throws QueryException {
+        StringBuilder regex = new StringBuilder();
+        Iterator<String> iter;
+        int i = 0;
 
+        if (includeSpans)
+            regex.append("((\">\"|\"<\"\">\")\":\")?");
 
-                // Search for minimal surrounding sentences
-                if (extendToSentence) {
-                    
-                    String element = "base/s:s";
-                    match.expandContextToSpan(element);
+        // There is a foundry given
+        if (foundry != null && foundry.size() > 0) {
 
-                    if (DEBUG)
-                        log.trace("Extend to sentence element '{}'", element);
-                }
-                else {
-                    if (DEBUG)
-                        log.trace("Don't expand context");
+            // Build regex for multiple foundries
+            regex.append("(");
+            iter = foundry.iterator();
+            while (iter.hasNext()) {
+                regex.append(iter.next()).append("|");
+            };
+            regex.replace(regex.length() - 1, regex.length(), ")");
+            regex.append("\"/\"");
+
+            // There is a filter given
+            if (layer != null && layer.size() > 0) {
+
+                // Filter out bad layers
+                for (i = layer.size() - 1; i >= 0; i--) {
+                    if (!harmlessLayer.matcher(layer.get(i)).matches()) {
+                        throw new QueryException(
+                                "Invalid layer requested: " + layer.get(i));
+                    };
                 };
 
-                context.left.setToken(true).setLength(0);
-                context.right.setToken(true).setLength(0);
+                // Build regex for multiple layers
+                regex.append("(");
+                iter = layer.iterator();
+                while (iter.hasNext()) {
+                    regex.append(iter.next()).append("|");
+                };
+                regex.replace(regex.length() - 1, regex.length(), ")");
+                regex.append("\":\"");
+            };
+        }
+        else if (includeSpans) {
+            // No foundries - but spans
+            regex.append("([^-is]|[-is][^:])");
+        }
+        else {
+            // No foundries - no spans
+            regex.append("([^-is<>]|[-is>][^:]|<[^:>])");
+        };
+        regex.append("(.){1,}|_[0-9]+");
 
-                if (!info)
-                    break;
+        if (DEBUG)
+            log.trace("The final regexString is {}", regex.toString());
 
-                // Limit the terms to all the terms of interest
-                TermsEnum termsEnum = docTerms.intersect(fst, null);
+        RegExp regexObj = new RegExp(regex.toString(), RegExp.COMPLEMENT);
 
-                DocsAndPositionsEnum docs = null;
+        if (DEBUG)
+            log.trace("The final regexObj is {}", regexObj.toString());
 
-                // List of terms to populate
-                SpanInfo termList = new SpanInfo(pto, localDocID);
+        return new CompiledAutomaton(regexObj.toAutomaton());
+    };
 
-                // Iterate over all terms in the document
-                while (termsEnum.next() != null) {
 
-                    // Get the positions and payloads of the term in the document
-                    // The bitvector may look different (don't know why)
-                    // and so the local ID may differ.
-                    // That's why the requesting bitset is null.
-                    docs = termsEnum.docsAndPositions(null, docs,
-                            DocsAndPositionsEnum.FLAG_PAYLOADS);
+    /*
+     * Populate all matches of a single document,
+     * reading the stored fields and the term vector only once.
+     */
+    private void _populateMatchInfo (LeafReaderContext atomic,
+            int localDocID, List<Match> matches, PositionsToOffset pto,
+            String field, List<String> fields, Set<String> fieldsSet,
+            String fstKey, CompiledAutomaton fst, boolean extendToSentence)
+            throws IOException {
 
-                    // Init document iterator
-                    docs.nextDoc();
+        // We've found the correct document! Hurray!
+        if (DEBUG)
+            log.trace("We've found a matching document with {} matches",
+                    matches.size());
+
+        // Load the necessary fields of the document,
+        // preferring DocValues
+        Map<String, MetaField> lifted = null;
+        Document doc;
+        if (fields != null) {
+            lifted = new MetaDocValues(atomic.reader()).lift(localDocID,
+                    fields);
+            doc = _storedDocument(atomic.reader(), localDocID, fieldsSet,
+                    lifted);
+        }
+        else {
+            doc = atomic.reader().document(localDocID);
+        };
 
-                    // Should never happen ... but hell!
-                    if (docs.docID() == DocIdSetIterator.NO_MORE_DOCS)
-                        continue;
+        for (Match match : matches) {
 
-                    // String representation of the term
-                    String termString = termsEnum.term().utf8ToString();
+            // Put some more information to the match
+            match.setPositionsToOffset(pto);
+            match.setLocalDocID(localDocID);
+            match.populateDocument(doc, field, fields, lifted);
+            if (DEBUG)
+                log.trace("The document has the id '{}' or the sigle '{}'",
+                        match.getDocID(), match.getTextSigle());
 
-                    // Iterate over all occurrences
-                    for (int i = 0; i < docs.freq(); i++) {
+            // Todo:
+            SearchContext context = match.getContext();
 
-                        // Init positions and get the current
-                        int pos = docs.nextPosition();
+            // Override the normal match marking
+            // to have an inner match
+            match.overrideMatchPosition(match.getStartPos(),
+                    match.getEndPos() - 1);
 
-                        // Check, if the position of the term is in the area of interest
-                        if (pos >= match.getStartPos()
-                                && pos < match.getEndPos()) {
+            // Search for minimal surrounding sentences
+            if (extendToSentence) {
 
-                            if (DEBUG)
-                                log.trace(">> {}: freq:{}, pos:{}, payload:{}",
-										  termString,
-										  docs.freq(),
-										  pos,
-										  docs.getPayload());
+                String element = "base/s:s";
+                match.expandContextToSpan(element);
 
-                            BytesRef payload = docs.getPayload();
+                if (DEBUG)
+                    log.trace("Extend to sentence element '{}'", element);
+            }
+            else {
+                if (DEBUG)
+                    log.trace("Don't expand context");
+            };
 
-                            // Copy the payload
-                            bbTerm.clear();
+            context.left.setToken(true).setLength(0);
+            context.right.setToken(true).setLength(0);
+        };
 
-                            if (payload != null && payload.length <= bbTerm.capacity()) {
-                                bbTerm.put(payload.bytes, payload.offset,
-                                        payload.length);
-                            };
-                            TermInfo ti = new TermInfo(termString, pos, bbTerm)
-                                    .analyze();
-                            if (ti.getEndPos() < match.getEndPos()) {
-                                if (DEBUG)
-                                    log.trace("Add {}", ti.toString());
-                                termList.add(ti);
-                            };
-                        };
-                    };
-                };
+        if (fst == null)
+            return;
+
+        // Get the terms of interest from the document
+        MatchInfoCache.TermVector tv = MatchInfoCache.termVector(
+                atomic.reader(), localDocID, field, fstKey, fst);
+        if (tv == null)
+            return;
+
+        ByteBuffer bbTerm = ByteBuffer.allocate(32);
+
+        // Lists of terms to populate per match
+        SpanInfo[] termLists = new SpanInfo[matches.size()];
+        for (int m = 0; m < termLists.length; m++)
+            termLists[m] = new SpanInfo(pto, localDocID);
+
+        // Iterate over all occurrences of terms in the document
+        for (int i = 0; i < tv.size(); i++) {
+            int pos = tv.getPosition(i);
+
+            // Check, if the position of the term is in the area
+            // of interest of any match
+            for (int m = 0; m < termLists.length; m++) {
+                Match match = matches.get(m);
+                if (pos < match.getStartPos() || pos >= match.getEndPos())
+                    continue;
+
+                byte[] payload = tv.getPayload(i);
 
-                // Add annotations based on the retrieved infos
-                for (TermInfo t : termList.getTerms()) {
+                if (DEBUG)
+                    log.trace(">> {}: pos:{}, payload:{}", tv.getTerm(i), pos,
+                            payload);
+
+                // Copy the payload
+                bbTerm.clear();
+
+                if (payload != null && payload.length <= bbTerm.capacity()) {
+                    bbTerm.put(payload);
+                };
+                TermInfo ti = new TermInfo(tv.getTerm(i), pos, bbTerm)
+                        .analyze();
+                if (ti.getEndPos() < match.getEndPos()) {
                     if (DEBUG)
-                        log.trace(
-							"Add term {}/{}:{} with char:{}(pos:{})-char:{}(pos:{})",
-							t.getFoundry(), t.getLayer(), t.getValue(),
-							t.getStartChar(), t.getStartPos(),
-							t.getEndChar(), t.getEndPos());
-
-
-					// Ignore empty types for the moment
-                    if (t.getType().equals("term") || t.getType().equals("span")) {
-                        match.addAnnotation(t.getStartPos(), t.getEndPos(),
-                                t.getAnnotation());
-					}
-
-					// TODO:
-					// else if (t.getType().equals("empty")) {
-					// }
-
-					// Use relSrc for annotation views
-					else if (t.getType().equals("relSrc")) {
-						// This only respects relSrc!
-						// May require more information for bidirectional relations
-                        match.addRelation(
-							t.getStartPos(),
-							t.getEndPos(),
-							t.getTargetStartPos(),
-							t.getTargetEndPos(),
-							t.getAnnotation()
-							);
-					};
+                        log.trace("Add {}", ti.toString());
+                    termLists[m].add(ti);
                 };
-
-                break;
             };
-        }
-        catch (IOException e) {
-            match.addError(600, "Unable to read index",
-                    e.getLocalizedMessage());
-            log.warn(e.getLocalizedMessage());
         };
 
-        return match;
+        for (int m = 0; m < termLists.length; m++)
+            _addMatchInfo(matches.get(m), termLists[m]);
+    };
+
+
+    // Add annotations based on the retrieved infos
+    private static void _addMatchInfo (Match match, SpanInfo termList) {
+        for (TermInfo t : termList.getTerms()) {
+            if (DEBUG)
+                log.trace(
+                        "Add term {}/{}:{} with char:{}(pos:{})-char:{}(pos:{})",
+                        t.getFoundry(), t.getLayer(), t.getValue(),
+                        t.getStartChar(), t.getStartPos(), t.getEndChar(),
+                        t.getEndPos());
+
+            // Ignore empty types for the moment
+            if (t.getType().equals("term") || t.getType().equals("span")) {
+                match.addAnnotation(t.getStartPos(), t.getEndPos(),
+                        t.getAnnotation());
+            }
+
+            // TODO:
+            // else if (t.getType().equals("empty")) {
+            // }
+
+            // Use relSrc for annotation views
+            else if (t.getType().equals("relSrc")) {
+                // This only respects relSrc!
+                // May require more information for bidirectional relations
+                match.addRelation(t.getStartPos(), t.getEndPos(),
+                        t.getTargetStartPos(), t.getTargetEndPos(),
+                        t.getAnnotation());
+            };
+        };
     };
 
 
@@ -1362,8 +1776,6 @@ public final class KrillIndex implements IndexInfo {
         if (DEBUG)
             log.trace("Start search");
 
-        this.termContexts = new HashMap<Term, TermContext>();
-
         final KrillCollection collection = ks.getCollection();
         collection.setIndex(this);
 
@@ -1433,35 +1845,52 @@ public final class KrillIndex implements IndexInfo {
         final ArrayList<Match> atomicMatches = new ArrayList<Match>(
                 kr.getItemsPerPage());
 
-        // Start time out thread
-        final TimeOutThread tthread = new TimeOutThread();
-        tthread.start();
-        final long timeout = meta.getTimeOut();
+        // Start the deadline of the search
+        final SearchDeadline deadline = ks.startDeadline(meta.getTimeOut());
         boolean isTimeout = false;
 
         // See: http://www.ibm.com/developerworks/java/library/j-benchmark1/index.html
         long t1 = System.nanoTime();
 
+        // The reader stays the same for the whole request,
+        // even if the index is refreshed in the meantime
+        IndexReader reader = null;
+
         try {
+            reader = this.acquireReader();
+
             // Rewrite query (for regex and wildcard queries)
-            // Revise!
-            // Based on core/src/java/org/apache/lucene/search/IndexSearcher.java
-            // and highlighter/src/java/org/apache/lucene/search/
-			//   postingshighlight/PostingsHighlighter.java
-            for (Query rewrittenQuery = query.rewrite(this.reader());
-				 !rewrittenQuery.equals(query);
-				 rewrittenQuery = query.rewrite(this.reader())) {
-                query = (SpanQuery) rewrittenQuery;
+            // and precompute term contexts for this request
+            final SearchExecutionContext sec = new SearchExecutionContext(
+                    reader, query);
+            query = sec.getQuery();
+
+            final List<LeafReaderContext> leaves = sec.getReader().leaves();
+
+            // The deprecated limit requires a global match counter
+            final ExecutorService executor = (limit > 0 || leaves.size() < 2)
+                    ? null : this.getSearchExecutor();
+
+            // Search atomic readers in parallel
+            if (executor != null) {
+                final int[] counts = this._searchParallel(executor, leaves,
+                        sec, collection, ks, kr, field, fields, fieldsSet,
+                        startIndex, hits, deadline);
+                i = counts[0];
+                j = counts[1];
             };
 
-			if (DEBUG)
-				log.trace("Rewritten query is {}", query.toString());
+            for (LeafReaderContext atomic : leaves) {
 
-            // Todo: run this in a separated thread
-            for (LeafReaderContext atomic : this.reader().leaves()) {
+                // Leaves were already searched in parallel
+                if (executor != null)
+                    break;
 
                 int oldLocalDocID = -1;
 
+                // Matches per resource are counted per leaf
+                itemsPerResourceCounter = 0;
+
                 if (isTimeout)
                     break;
                 
@@ -1469,7 +1898,7 @@ public final class KrillIndex implements IndexInfo {
                  * Todo: There may be a way to know early if the bitset is emty
                  * by using LongBitSet - but this may not be as fast as I think.
                  */
-                final FixedBitSet bitset = collection.bits(atomic);
+                final BitSet bitset = collection.acceptedDocs(atomic);
 
 				if (bitset.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS)
 					continue;
@@ -1477,11 +1906,9 @@ public final class KrillIndex implements IndexInfo {
                 final PositionsToOffset pto = snippets ? new PositionsToOffset(atomic, field) : null;
 				
                 // Spans spans = NearSpansOrdered();
-                final Spans spans = query.getSpans(atomic, (Bits) bitset,
-                        termContexts);
+                final Spans spans = sec.getSpans(atomic, (Bits) bitset);
 
-                final IndexReader lreader = atomic.reader();
-                int localDocID, docID;
+                int localDocID;
 
                 // TODO: Get document information from Cache! Fieldcache?
                 for (; i < hits; i++) {
@@ -1497,8 +1924,8 @@ public final class KrillIndex implements IndexInfo {
                     itemsPerResourceCounter++;
                     
                     // Timeout!
-                    if (tthread.getTime() > timeout) {
-                        kr.setTimeExceeded(true);
+                    if (deadline.isStopped()) {
+                        _setStopped(kr, deadline);
                         isTimeout=true;
                         break;
                     };
@@ -1541,68 +1968,16 @@ public final class KrillIndex implements IndexInfo {
                     if (startIndex > i)
                         continue;
 
-                    docID = atomic.docBase + localDocID;
-
-                    // Do not load all of this, in case the doc is the same!
-                    final Document doc = (fields != null)
-                            ? lreader.document(localDocID, fieldsSet)
-                            : lreader.document(localDocID);
-                    
-                    int maxMatchSize = ks.getMaxTokenMatchSize();
-                    if (maxMatchSize <= 0
-                            || maxMatchSize > KrillProperties.maxTokenMatchSize) {
-                        maxMatchSize = KrillProperties.maxTokenMatchSize;
-                    };
-                    
                     // Create new Match
-                    final Match match = new Match(maxMatchSize, pto, localDocID,
-                            spans.start(), spans.end());
-                    
-                    // Add snippet if existing
-                    if (snippets) {
-                        match.setContext(kr.getContext());
-                        match.retrieveMarkers("~:base/s:pb");
-                        match.retrieveMarkers("~:base/s:marker");
-
-                        if (DEBUG)
-                            log.trace("Retrieve pagebreaks from index");
-
-                        if (spans.isPayloadAvailable())
-                            match.addPayload((List<byte[]>) spans.getPayload());
-                        
-                        if (meta.hasSnippets()) {
-                            match.hasSnippet = true;
-                        };
-                        
-                        if (meta.hasTokens()) {
-                            match.hasTokens = true;
-                        };
-                    };
+                    final Match match = this._createMatch(ks, kr, atomic, pto,
+                            localDocID, spans.start(), spans.end(),
+                            (snippets && spans.isPayloadAvailable())
+                                    ? (List<byte[]>) spans.getPayload()
+                                    : null,
+                            field, fields, fieldsSet);
 
                     // Add match to Result
                     kr.add(match);
-                    
-                    match.internalDocID = docID;
-                    
-                    // Lift certain fields
-                    if (fields != null) {
-                        match.populateDocument(doc, snippets ? field : null, fields);
-                    }
-                    // Lift all fields
-                    else {
-                        match.populateDocument(doc, snippets ? field : null);
-                    };
-
-
-                    if (DEBUG) {
-                        if (match.getDocID() != null)
-                            log.trace(
-                                    "With DocID: I've got 1 match of {} in {}",
-                                    count, match.getDocID());
-                        else
-                            log.trace("With UID: I've got 1 match of {} in {}",
-                                    count, match.getUID());
-                    };
 
                     atomicMatches.add(match);
                 };
@@ -1615,8 +1990,8 @@ public final class KrillIndex implements IndexInfo {
                         break;
 
                     // Timeout!
-                    if (tthread.getTime() > timeout) {
-                        kr.setTimeExceeded(true);
+                    if (deadline.isStopped()) {
+                        _setStopped(kr, deadline);
                         isTimeout=true;
                         break;
                     };
@@ -1690,9 +2065,9 @@ public final class KrillIndex implements IndexInfo {
             log.error(e.getMessage());
             e.printStackTrace();
         }
-
-        // Stop timer thread
-        tthread.stopTimer();
+        finally {
+            this.releaseReader(reader);
+        };
 
         // Calculate time
         kr.setBenchmark(t1, System.nanoTime());
@@ -1700,6 +2075,336 @@ public final class KrillIndex implements IndexInfo {
         return kr;
     };
 
+
+    // Create a match and lift the requested fields
+    private Match _createMatch (final Krill ks, final Result kr,
+            final LeafReaderContext atomic, final PositionsToOffset pto,
+            final int localDocID, final int startPos, final int endPos,
+            final List<byte[]> payload, final String field,
+            final List<String> fields, final HashSet<String> fieldsSet)
+            throws IOException {
+
+        final KrillMeta meta = ks.getMeta();
+        final boolean snippets = meta.hasSnippets() || meta.hasTokens();
+        final LeafReader lreader = atomic.reader();
+
+        // Do not load all of this, in case the doc is the same!
+        // Short fields are lifted from DocValues, the primary data
+        // is only loaded for snippets
+        Map<String, MetaField> lifted = null;
+        final Document doc;
+        if (fields != null) {
+            lifted = new MetaDocValues(lreader).lift(localDocID, fields);
+            Set<String> stored = fieldsSet;
+            if (!snippets && !fields.contains(field)) {
+                stored = new HashSet<String>(fieldsSet);
+                stored.remove(field);
+            };
+            doc = _storedDocument(lreader, localDocID, stored, lifted);
+        }
+        else {
+            doc = lreader.document(localDocID);
+        };
+
+        int maxMatchSize = ks.getMaxTokenMatchSize();
+        if (maxMatchSize <= 0
+                || maxMatchSize > KrillProperties.maxTokenMatchSize) {
+            maxMatchSize = KrillProperties.maxTokenMatchSize;
+        };
+
+        // Create new Match
+        final Match match = new Match(maxMatchSize, pto, localDocID,
+                startPos, endPos);
+
+        // Add snippet if existing
+        if (snippets) {
+            match.setContext(kr.getContext());
+            match.retrieveMarkers("~:base/s:pb");
+            match.retrieveMarkers("~:base/s:marker");
+
+            if (DEBUG)
+                log.trace("Retrieve pagebreaks from index");
+
+            if (payload != null)
+                match.addPayload(payload);
+
+            if (meta.hasSnippets()) {
+                match.hasSnippet = true;
+            };
+
+            if (meta.hasTokens()) {
+                match.hasTokens = true;
+            };
+        };
+
+        match.internalDocID = atomic.docBase + localDocID;
+
+        // Lift certain fields
+        if (fields != null) {
+            match.populateDocument(doc, snippets ? field : null, fields,
+                    lifted);
+        }
+        // Lift all fields
+        else {
+            match.populateDocument(doc, snippets ? field : null);
+        };
+
+        if (DEBUG) {
+            if (match.getDocID() != null)
+                log.trace("With DocID: I've got 1 match in {}",
+                        match.getDocID());
+            else
+                log.trace("With UID: I've got 1 match in {}",
+                        match.getUID());
+        };
+
+        return match;
+    };
+
+
+    // Load all stored fields of a document, that were not
+    // lifted from DocValues
+    private static Document _storedDocument (final LeafReader lreader,
+            final int localDocID, final Set<String> fieldsSet,
+            final Map<String, MetaField> lifted) throws IOException {
+        if (lifted.isEmpty())
+            return lreader.document(localDocID, fieldsSet);
+
+        final Set<String> stored = new HashSet<String>(fieldsSet);
+        stored.removeAll(lifted.keySet());
+        if (stored.isEmpty())
+            return new Document();
+        return lreader.document(localDocID, stored);
+    };
+
+
+    // Matches of an atomic reader, searched independently
+    private static final class LeafHits {
+        final LeafReaderContext atomic;
+
+        // Positions and payloads of the first matches
+        final ArrayList<int[]> positions = new ArrayList<>();
+        final ArrayList<List<byte[]>> payloads = new ArrayList<>();
+
+        int matches = 0;
+        int docs = 0;
+        boolean stopped = false;
+
+
+        LeafHits (LeafReaderContext atomic) {
+            this.atomic = atomic;
+        };
+    };
+
+
+    /*
+     * Search all atomic readers in parallel and merge the results
+     * in leaf order. Every leaf remembers its first matches (up to
+     * the last match of the requested page), as it is not known
+     * before all preceding leaves are counted, which of them
+     * will be part of the page.
+     * Returns the number of matches and the number of resources.
+     */
+    private int[] _searchParallel (final ExecutorService executor,
+            final List<LeafReaderContext> leaves,
+            final SearchExecutionContext sec,
+            final KrillCollection collection, final Krill ks,
+            final Result kr, final String field, final List<String> fields,
+            final HashSet<String> fieldsSet, final int startIndex,
+            final int hits, final SearchDeadline deadline)
+            throws IOException, QueryException {
+
+        final KrillMeta meta = ks.getMeta();
+        final boolean snippets = meta.hasSnippets() || meta.hasTokens();
+        final boolean cutoff = meta.doCutOff();
+        final short itemsPerResource = meta.getItemsPerResource();
+
+        // Prepare the filter before leaves are searched concurrently
+        collection.toFilter();
+
+        final List<Callable<LeafHits>> searches = new ArrayList<>(
+                leaves.size());
+        for (final LeafReaderContext atomic : leaves) {
+            searches.add(() -> this._searchLeaf(atomic, sec, collection,
+                    hits, cutoff, itemsPerResource, snippets, deadline));
+        };
+
+        // Merge leaf counts and determine the matches of the page
+        final List<Callable<List<Match>>> retrievals = new ArrayList<>();
+        int i = 0, j = 0;
+        boolean isTimeout = false;
+        for (final LeafHits lh : _invokeAll(executor, searches)) {
+
+            // Local range of matches on the requested page
+            final int first = Math.max(startIndex - i, 0);
+            final int last = Math.min(hits - i, lh.positions.size());
+
+            if (first < last) {
+                retrievals.add(() -> {
+                    final PositionsToOffset pto = snippets
+                            ? new PositionsToOffset(lh.atomic, field)
+                            : null;
+                    final List<Match> matches = new ArrayList<>(last - first);
+                    for (int n = first; n < last; n++) {
+                        final int[] pos = lh.positions.get(n);
+                        matches.add(this._createMatch(ks, kr, lh.atomic, pto,
+                                pos[0], pos[1], pos[2], lh.payloads.get(n),
+                                field, fields, fieldsSet));
+                    };
+                    return matches;
+                });
+            };
+
+            i += lh.matches;
+            j += lh.docs;
+            if (lh.stopped)
+                isTimeout = true;
+        };
+
+        if (isTimeout)
+            _setStopped(kr, deadline);
+
+        // Retrieve document information of the page
+        for (final List<Match> matches : _invokeAll(executor, retrievals)) {
+            for (final Match match : matches)
+                kr.add(match);
+        };
+
+        return new int[] { i, j };
+    };
+
+
+    // Search a single atomic reader and count all matches
+    // and resources, while remembering the first matches
+    private LeafHits _searchLeaf (final LeafReaderContext atomic,
+            final SearchExecutionContext sec,
+            final KrillCollection collection,
+            final int hits, final boolean cutoff,
+            final short itemsPerResource, final boolean payloads,
+            final SearchDeadline deadline)
+            throws IOException, QueryException {
+
+        final LeafHits lh = new LeafHits(atomic);
+
+        final BitSet bitset = collection.acceptedDocs(atomic);
+
+        if (bitset.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS)
+            return lh;
+
+        final Spans spans = sec.getSpans(atomic, (Bits) bitset);
+
+        int itemsPerResourceCounter = 0;
+        int oldLocalDocID = -1;
+        int localDocID;
+
+        // With cutoff, there is no need to count beyond the page
+        while (!cutoff || lh.matches < hits) {
+
+            // There are no more spans to find
+            if (!spans.next())
+                break;
+
+            // Increment resource counter
+            itemsPerResourceCounter++;
+
+            // Timeout!
+            if (deadline.isStopped()) {
+                lh.stopped = true;
+                break;
+            };
+
+            localDocID = spans.doc();
+
+            // IDS are identical
+            if (localDocID == oldLocalDocID || oldLocalDocID == -1) {
+
+                // Count hits per resource
+                if (itemsPerResource > 0) {
+
+                    // End of resourcecounter is reached
+                    if (itemsPerResourceCounter > itemsPerResource) {
+
+                        // Skip to next resource
+                        if (spans.skipTo(localDocID + 1) != true)
+                            break;
+
+                        itemsPerResourceCounter = 1;
+                        localDocID = spans.doc();
+                    };
+                };
+            }
+
+            // localDoc is new
+            else
+                itemsPerResourceCounter = 1;
+
+            if (itemsPerResourceCounter == 1)
+                lh.docs++;
+
+            oldLocalDocID = localDocID;
+
+            // Remember the match, as it may be part of the page
+            if (lh.matches < hits) {
+                lh.positions.add(new int[] { localDocID, spans.start(),
+                        spans.end() });
+                lh.payloads.add((payloads && spans.isPayloadAvailable())
+                        ? new ArrayList<byte[]>(spans.getPayload())
+                        : null);
+            };
+
+            lh.matches++;
+        };
+
+        return lh;
+    };
+
+
+    // Report a search stopped by its deadline
+    private static void _setStopped (final Result kr,
+            final SearchDeadline deadline) {
+        if (deadline.isCancelled())
+            kr.addWarning(StatusCodes.SEARCH_CANCELLED, "Search was cancelled");
+        else
+            kr.setTimeExceeded(true);
+    };
+
+
+    // Run tasks on the executor and return the results in order
+    private static <T> List<T> _invokeAll (final ExecutorService executor,
+            final List<Callable<T>> tasks) throws IOException, QueryException {
+
+        final List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (final Callable<T> task : tasks)
+                futures.add(executor.submit(task));
+
+            final List<T> results = new ArrayList<>(tasks.size());
+            for (final Future<T> future : futures)
+                results.add(future.get());
+
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Search was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            final Throwable t = e.getCause();
+            if (t instanceof IOException)
+                throw (IOException) t;
+            if (t instanceof QueryException)
+                throw (QueryException) t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            throw new RuntimeException(t);
+        }
+        finally {
+            // Don't waste time on leaves in case of failures
+            for (final Future<T> future : futures)
+                future.cancel(false);
+        }
+    };
+
     public MetaFields getFields (String textSigle) {
 
         List hs = new ArrayList<String>();
@@ -1721,10 +2426,12 @@ public final class KrillIndex implements IndexInfo {
 
 		MetaFields metaFields = new MetaFields(textSigle);
 
+        IndexReader reader = null;
         try {
+            reader = this.acquireReader();
 
             // Iterate over all atomic indices and find the matching document
-            for (LeafReaderContext atomic : this.reader().leaves()) {
+            for (LeafReaderContext atomic : reader.leaves()) {
 
 				// Retrieve the single document of interest
                 DocIdSet filterSet = filter.getDocIdSet(atomic, atomic.reader().getLiveDocs());
@@ -1754,6 +2461,9 @@ public final class KrillIndex implements IndexInfo {
 		catch  (IOException e) {
             metaFields.addError(600, "Unable to read index", e.getLocalizedMessage());
             log.warn(e.getLocalizedMessage());
+        }
+        finally {
+            this.releaseReader(reader);
         };
 
         metaFields.addError(630, "Document not found");
@@ -1779,13 +2489,25 @@ public final class KrillIndex implements IndexInfo {
             return this.indexRevision;
         };
 
-        // Reader is empty
-        if (this.reader() == null) {
+        IndexReader reader = null;
+        try {
+            reader = this.acquireReader();
+
+            // Reader is empty
+            if (reader == null) {
+                return "null";
+            }
+
+            String hash = reader.getCombinedCoreAndDeletesKey().toString();
+            this.indexRevision = Fingerprinter.create(hash);
+        }
+        catch (IOException e) {
+            log.warn(e.getLocalizedMessage());
             return "null";
         }
-        
-        String hash = this.reader().getCombinedCoreAndDeletesKey().toString();
-        this.indexRevision = Fingerprinter.create(hash);
+        finally {
+            this.releaseReader(reader);
+        };
 
         return this.indexRevision;
     };
@@ -1799,9 +2521,6 @@ public final class KrillIndex implements IndexInfo {
         KrillCollection collection = ks.getCollection();
         collection.setIndex(this);
 
-        // Init term context
-        this.termContexts = new HashMap<Term, TermContext>();
-
         // Get span query
         SpanQuery query = ks.getSpanQuery();
 
@@ -1817,34 +2536,36 @@ public final class KrillIndex implements IndexInfo {
         fields.add("UID");
 
         // List<Match> atomicMatches = new ArrayList<Match>(10);
+        IndexReader reader = null;
         try {
+            reader = this.acquireReader();
 
             // Rewrite query (for regex and wildcard queries)
-            for (Query rewrittenQuery = query.rewrite(
-                    this.reader()); rewrittenQuery != (Query) query; rewrittenQuery = query
-                            .rewrite(this.reader())) {
-                query = (SpanQuery) rewrittenQuery;
-            };
+            // and precompute term contexts for this request
+            final SearchExecutionContext sec = new SearchExecutionContext(
+                    reader, query);
 
             int matchcount = 0;
             String uniqueDocIDString;;
             int uniqueDocID = -1;
 
             // start thread:
-            for (LeafReaderContext atomic : this.reader().leaves()) {
+            for (LeafReaderContext atomic : sec.getReader().leaves()) {
 
                 int previousDocID = -1;
                 int oldLocalDocID = -1;
 
                 // Use LongBitSet;
-                Bits bitset = collection.bits(atomic);
+                Bits bitset = collection.acceptedDocs(atomic);
 
                 // PositionsToOffset pto = new PositionsToOffset(atomic, field);
 
-                Spans spans = query.getSpans(atomic, (Bits) bitset,
-                        termContexts);
+                Spans spans = sec.getSpans(atomic, (Bits) bitset);
 
-                IndexReader lreader = atomic.reader();
+                LeafReader lreader = atomic.reader();
+
+                // Read UIDs from DocValues
+                MetaDocValues values = new MetaDocValues(lreader);
 
                 while (spans.next()) {
                     int localDocID = spans.doc();
@@ -1868,11 +2589,18 @@ public final class KrillIndex implements IndexInfo {
                         };
 
                         // Read document id from index
-                        uniqueDocIDString = lreader.document(localDocID, fields)
-                                .get("UID");
+                        int uid = values.getUID(localDocID);
+                        if (uid != -1) {
+                            uniqueDocID = uid;
+                        }
+                        else {
+                            uniqueDocIDString = lreader
+                                    .document(localDocID, fields).get("UID");
 
-                        if (uniqueDocIDString != null)
-                            uniqueDocID = Integer.parseInt(uniqueDocIDString);
+                            if (uniqueDocIDString != null)
+                                uniqueDocID = Integer
+                                        .parseInt(uniqueDocIDString);
+                        };
 
                         previousDocID = localDocID;
                     }
@@ -1899,7 +2627,10 @@ public final class KrillIndex implements IndexInfo {
 		catch (QueryException e) {
             mc.addError(e.getErrorCode(),e.getLocalizedMessage());
             log.warn(e.getLocalizedMessage());			
-		};
+		}
+        finally {
+            this.releaseReader(reader);
+        };
 
         mc.close();
         return mc;
@@ -1912,14 +2643,27 @@ public final class KrillIndex implements IndexInfo {
 
     @Override
     public Set<String> getAllLeafFingerprints () {
-        List<LeafReaderContext> leaves = this.reader().leaves();
-        Set<String> fingerprints = new HashSet<>(leaves.size() * 2);
-        for (LeafReaderContext context : leaves) {
-            String fp = Fingerprinter.create(
-                    context.reader().getCombinedCoreAndDeletesKey().toString());
-            fingerprints.add(fp);
+        IndexReader reader = null;
+        try {
+            reader = this.acquireReader();
+            if (reader == null)
+                return new HashSet<>();
+
+            List<LeafReaderContext> leaves = reader.leaves();
+            Set<String> fingerprints = new HashSet<>(leaves.size() * 2);
+            for (LeafReaderContext context : leaves) {
+                String fp = Fingerprinter.create(context.reader()
+                        .getCombinedCoreAndDeletesKey().toString());
+                fingerprints.add(fp);
+            }
+            return fingerprints;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            this.releaseReader(reader);
         }
-        return fingerprints;
     }
 
 
@@ -1938,15 +2682,17 @@ public final class KrillIndex implements IndexInfo {
             return fieldValues;
         };
 
-        
+
+        IndexReader reader = null;
         try {
+            reader = this.acquireReader();
             final Filter filter = collection.toFilter();
 
             // Get from filtered index
             if (filter != null) {
             
                 // Iterate over all atomic readers and collect occurrences
-                for (LeafReaderContext atomic : this.reader().leaves()) {
+                for (LeafReaderContext atomic : reader.leaves()) {
 
                     LeafReader lreader = atomic.reader();
 
@@ -1956,9 +2702,13 @@ public final class KrillIndex implements IndexInfo {
 
                     if (docs == null)
                         continue;
+
+                    MetaDocValues values = new MetaDocValues(lreader);
                 
                     while (docs.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
-                        fieldValue = lreader.document(docs.docID()).get(field);
+                        fieldValue = values.getValue(field, docs.docID());
+                        if (fieldValue == null)
+                            fieldValue = lreader.document(docs.docID()).get(field);
                         if (fieldValue != null && fieldValue != "")
                             fieldValues.add(fieldValue);
                     };
@@ -1967,17 +2717,19 @@ public final class KrillIndex implements IndexInfo {
             } else { // Get from unfiltered index
 
                 // Iterate over all atomic readers and collect occurrences
-                for (LeafReaderContext atomic : this.reader().leaves()) {
+                for (LeafReaderContext atomic : reader.leaves()) {
 
                     LeafReader lreader = atomic.reader();
                     Bits live = lreader.getLiveDocs();
+                    MetaDocValues values = new MetaDocValues(lreader);
 
                     for (int i=0; i<lreader.maxDoc(); i++) {
                         if (live != null && !live.get(i))
                             continue;
                         
-                        Document doc = lreader.document(i);
-                        fieldValue = doc.get(field);
+                        fieldValue = values.getValue(field, i);
+                        if (fieldValue == null)
+                            fieldValue = lreader.document(i).get(field);
                         if (fieldValue != null && fieldValue != "")
                             fieldValues.add(fieldValue);
                     };
@@ -1993,6 +2745,9 @@ public final class KrillIndex implements IndexInfo {
         // E.g. reference corpus not found
         catch (QueryException e) {
             log.warn(e.getLocalizedMessage());
+        }
+        finally {
+            this.releaseReader(reader);
         };
 
         return fieldValues;
@@ -9,6 +9,7 @@ import com.fasterxml.jackson.databind.node.*;
 
 import de.ids_mannheim.korap.response.SearchContext;
 import de.ids_mannheim.korap.util.QueryException;
+import de.ids_mannheim.korap.util.KrillJson;
 import de.ids_mannheim.korap.response.Notifications;
 
 import org.slf4j.Logger;
@@ -97,7 +98,7 @@ public final class KrillMeta extends Notifications {
         JsonNode jsonN;
         try {
             // Read Json string
-            jsonN = new ObjectMapper().readValue(json, JsonNode.class);
+            jsonN = KrillJson.mapper().readValue(json, JsonNode.class);
         }
 
         // Something went wrong
@@ -380,7 +381,7 @@ public final class KrillMeta extends Notifications {
 
     @Override
     public JsonNode toJsonNode () {
-        ObjectMapper mapper = new ObjectMapper();
+        ObjectMapper mapper = KrillJson.mapper();
         ObjectNode json = mapper.createObjectNode();
         // json.put("@type", "koral:meta");
 
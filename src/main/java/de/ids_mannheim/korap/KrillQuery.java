@@ -37,6 +37,7 @@ import de.ids_mannheim.korap.query.wrap.SpanWithinQueryWrapper;
 import de.ids_mannheim.korap.response.Notifications;
 import de.ids_mannheim.korap.util.QueryException;
 import de.ids_mannheim.korap.util.StatusCodes;
+import de.ids_mannheim.korap.util.KrillJson;
 
 /**
  * <p>
@@ -179,7 +180,7 @@ public final class KrillQuery extends Notifications {
         JsonNode jsonN;
         try {
             // Read Json string
-            jsonN = new ObjectMapper().readValue(json, JsonNode.class);
+            jsonN = KrillJson.mapper().readValue(json, JsonNode.class);
         }
 
         // Something went wrong
@@ -549,7 +550,7 @@ public final class KrillQuery extends Notifications {
     private JsonNode _resolveReference (JsonNode node, JsonNode operands,
             int refOperandNum, int classNum) throws QueryException {
         JsonNode referent = null;
-        ObjectMapper m = new ObjectMapper();
+        ObjectMapper m = KrillJson.mapper();
         ArrayNode newOperands = m.createArrayNode();
         boolean isReferentFound = false;
         for (int i = 0; i < operands.size(); i++) {
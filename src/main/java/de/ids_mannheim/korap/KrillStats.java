@@ -1,31 +1,58 @@
 package de.ids_mannheim.korap;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.io.IOException;
 
-import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import de.ids_mannheim.korap.response.Notifications;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 
-import java.nio.ByteBuffer;
+import de.ids_mannheim.korap.response.Notifications;
+import de.ids_mannheim.korap.util.KrillJson;
+import de.ids_mannheim.korap.util.QueryException;
+import de.ids_mannheim.korap.util.StatusCodes;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Create a Statistics object.
- * 
- * This is early work and highliy experimental!
- * 
+ *
+ * Statistics consist of counters of a virtual collection,
+ * i.e. the number of documents (requested as <i>documents</i>,
+ * <i>texts</i> or <i>base/texts</i>) and the sums of
+ * the numerical meta information of the documents
+ * (e.g. <i>tokens</i> or <i>base/sentences</i>).
+ * All counters are computed in a single pass over the documents
+ * of the collection per leaf, and leaves are processed in parallel
+ * on the search executor of the index
+ * (see {@link KrillIndex#getSearchExecutor()}).
+ *
  * <blockquote><pre>
  * KrillStats ks = new KrillStats(json);
+ * ks.apply(index);
  * </pre></blockquote>
- * 
+ *
+ * The request may contain a <tt>collection</tt> object and
+ * a list of <tt>counters</tt>, e.g.
+ *
+ * <blockquote><pre>
+ * {
+ * "collection" : { ... },
+ * "counters" : ["texts", "tokens", "base/s:s"]
+ * }
+ * </pre></blockquote>
+ *
  * Should serialize to something like
- * 
+ *
  * "stats" : {
  * "@type" : "koral:stats",
  * "collection" : [
@@ -43,16 +70,10 @@ import org.slf4j.LoggerFactory;
  * }
  * ]
  * }
- * 
- * 
+ *
+ *
  * @author diewald
  */
-/*
- * TODO: THIS IS CURRENTLY HIGHLY EXPERIMENTAL
- * TODO: Stats may use Column Stride fields (or DocValues)
- * (or similiar concepts) https://issues.apache.org/jira/browse/LUCENE-1231
- * https://issues.apache.org/jira/browse/LUCENE-3108
- */
 public final class KrillStats extends Notifications {
 
     // Logger
@@ -61,21 +82,304 @@ public final class KrillStats extends Notifications {
     // This advices the java compiler to ignore all loggings
     public static final boolean DEBUG = false;
 
+    // Counters requested by default
+    public static final String[] DEFAULT_COUNTERS = new String[] {
+            "texts", "tokens", "base/sentences", "base/paragraphs" };
+
+    private KrillCollection collection;
+    private String field = "tokens";
+    private final List<String> counters = new ArrayList<>();
+    private long[] values;
+
 
     /**
      * Construct a new KrillStats.
-     * 
+     *
      */
     public KrillStats () {};
 
 
+    /**
+     * Construct a new KrillStats by passing a JSON request.
+     *
+     * @param json
+     *            The request as a JSON string.
+     */
+    public KrillStats (String json) {
+        try {
+            this.fromJson(KrillJson.mapper().readTree(json));
+        }
+        catch (IOException e) {
+            this.addError(StatusCodes.UNABLE_TO_PARSE_JSON,
+                    "Unable to parse JSON");
+        };
+    };
+
+
+    /**
+     * Parse a request as a {@link JsonNode}.
+     *
+     * @param json
+     *            The request as a {@link JsonNode}.
+     * @return The {@link KrillStats} object for chaining.
+     */
+    public KrillStats fromJson (JsonNode json) {
+
+        // Parse "collection" attribute
+        if (json.has("collection")) {
+            final JsonNode collNode = json.get("collection");
+            if (collNode.fieldNames().hasNext()) {
+                try {
+                    this.setCollection(
+                            new KrillCollection().fromKoral(collNode));
+                }
+                catch (QueryException q) {
+                    this.addError(q.getErrorCode(), q.getMessage());
+                };
+            };
+        };
+
+        if (json.has("field"))
+            this.setField(json.get("field").asText());
+
+        // Parse "counters" attribute
+        if (json.has("counters")) {
+            for (JsonNode counter : json.get("counters")) {
+                this.add(counter.asText());
+            };
+        };
+
+        return this;
+    };
+
+
+    /**
+     * Get the virtual collection of the statistics.
+     *
+     * @return The {@link KrillCollection} or <tt>null</tt>
+     *         in case the whole index is counted.
+     */
+    public KrillCollection getCollection () {
+        return this.collection;
+    };
+
+
+    /**
+     * Set the virtual collection of the statistics.
+     *
+     * @param collection
+     *            The {@link KrillCollection}.
+     * @return The {@link KrillStats} object for chaining.
+     */
+    public KrillStats setCollection (KrillCollection collection) {
+        this.collection = collection;
+        this.moveNotificationsFrom(collection);
+        return this;
+    };
+
+
+    /**
+     * Set the field containing the numerical meta information.
+     * Defaults to <tt>tokens</tt>.
+     *
+     * @param field
+     *            The field name.
+     * @return The {@link KrillStats} object for chaining.
+     */
+    public KrillStats setField (String field) {
+        this.field = field;
+        return this;
+    };
+
+
+    /**
+     * Add counters to the statistics,
+     * e.g. <i>texts</i> or <i>base/sentences</i>.
+     *
+     * @param counters
+     *            The types of the counters.
+     * @return The {@link KrillStats} object for chaining.
+     */
+    public KrillStats add (String ... counters) {
+        for (String counter : counters) {
+            if (!this.counters.contains(counter))
+                this.counters.add(counter);
+        };
+        this.values = null;
+        return this;
+    };
+
+
+    /**
+     * Get the requested counters.
+     * In case no counters were requested,
+     * these are the {@link #DEFAULT_COUNTERS}.
+     *
+     * @return The list of counters.
+     */
+    public List<String> getCounters () {
+        if (this.counters.isEmpty())
+            return Arrays.asList(DEFAULT_COUNTERS);
+        return Collections.unmodifiableList(this.counters);
+    };
+
+
+    /**
+     * Compute all counters on an index.
+     *
+     * @param index
+     *            The {@link KrillIndex}.
+     * @return The {@link KrillStats} object for chaining.
+     */
+    public KrillStats apply (KrillIndex index) {
+
+        final List<String> counters = this.getCounters();
+        final String[] types = new String[counters.size()];
+        for (int i = 0; i < types.length; i++) {
+            // Texts are counted as documents
+            types[i] = counters.get(i).equals("texts") ? "documents"
+                    : counters.get(i);
+        };
+
+        if (this.hasErrors()) {
+            this.values = null;
+            return this;
+        };
+
+        this.values = new long[types.length];
+
+        final KrillCollection kc = this.collection != null ? this.collection
+                : new KrillCollection();
+        kc.setIndex(index);
+
+        IndexReader reader = null;
+        try {
+            reader = index.acquireReader();
+
+            // The index is empty
+            if (reader == null)
+                return this;
+
+            final List<LeafReaderContext> leaves = reader.leaves();
+            final ExecutorService executor = leaves.size() < 2 ? null
+                    : index.getSearchExecutor();
+
+            // Count leaves sequentially
+            if (executor == null) {
+                for (LeafReaderContext atomic : leaves) {
+                    this._add(kc.numbersOf(atomic, this.field, types));
+                };
+            }
+
+            // Count leaves in parallel
+            else {
+                final List<Future<long[]>> futures = new ArrayList<>(
+                        leaves.size());
+                try {
+                    for (final LeafReaderContext atomic : leaves) {
+                        futures.add(executor.submit(
+                                (Callable<long[]>) () -> kc.numbersOf(atomic,
+                                        this.field, types)));
+                    };
+                    for (final Future<long[]> future : futures) {
+                        this._add(future.get());
+                    };
+                }
+                finally {
+                    for (final Future<long[]> future : futures)
+                        future.cancel(false);
+                };
+            };
+
+            if (DEBUG)
+                log.trace("Counted {} in {} leaves", counters, leaves.size());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this._fail(e);
+        }
+        catch (ExecutionException e) {
+            this._fail(e.getCause());
+        }
+        catch (IOException | QueryException e) {
+            this._fail(e);
+        }
+        finally {
+            index.releaseReader(reader);
+        };
+
+        // Move messages from the collection
+        this.moveNotificationsFrom(kc);
+        return this;
+    };
+
+
+    /**
+     * Get the value of a counter.
+     *
+     * @param counter
+     *            The type of the counter.
+     * @return The value or <tt>-1</tt> in case the counter
+     *         was not computed.
+     */
+    public long getValue (String counter) {
+        final int i = this.getCounters().indexOf(counter);
+        if (this.values == null || i == -1)
+            return -1;
+        return this.values[i];
+    };
+
+
     @Override
     public JsonNode toJsonNode () {
-        ObjectMapper mapper = new ObjectMapper();
+        ObjectMapper mapper = KrillJson.mapper();
         ObjectNode json = mapper.createObjectNode();
 
         json.put("@type", "koral:stats");
 
+        if (this.values == null)
+            return (JsonNode) json;
+
+        ArrayNode collection = json.putArray("collection");
+        List<String> counters = this.getCounters();
+        for (int i = 0; i < counters.size(); i++) {
+            ObjectNode counter = collection.addObject();
+            counter.put("@type", "stats:collection");
+
+            // Split counter in foundry, layer and key,
+            // e.g. base/s:s
+            String key = counters.get(i);
+            int slash = key.indexOf('/');
+            if (slash != -1) {
+                counter.put("foundry", key.substring(0, slash));
+                key = key.substring(slash + 1);
+            };
+            int colon = key.indexOf(':');
+            if (colon != -1) {
+                counter.put("layer", key.substring(0, colon));
+                key = key.substring(colon + 1);
+            };
+            counter.put("key", key);
+            counter.put("value", this.values[i]);
+        };
+
         return (JsonNode) json;
-    }
+    };
+
+
+    // Add the numbers of a leaf
+    private void _add (long[] numbers) {
+        for (int i = 0; i < numbers.length; i++) {
+            this.values[i] += numbers[i];
+        };
+    };
+
+
+    // Report a failed computation
+    private void _fail (Throwable t) {
+        log.warn(t.getLocalizedMessage());
+        this.values = null;
+        this.addError(StatusCodes.UNABLE_TO_READ_INDEX,
+                "Unable to compute statistics", t.getLocalizedMessage());
+    };
 };
@@ -0,0 +1,299 @@
+package de.ids_mannheim.korap.cache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.DocIdSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.collection.DocBits;
+
+/**
+ * Cache of ad-hoc collection filters shared by all requests.
+ *
+ * <p>
+ * The documents matching a filter of a
+ * {@link de.ids_mannheim.korap.collection.CollectionBuilder}
+ * tree are memoized per leaf and keyed by a canonical
+ * representation of the (sub-)tree, so a common clause like an
+ * availability restriction is reused in different combinations.
+ * The documents are computed without respecting deletions.
+ * Leaves are therefore identified by their core key and the
+ * entries vanish with the leaf when it is merged away.
+ * The {@link DocIdSet} and the cardinality of the documents
+ * are computed once when they are cached.
+ * </p>
+ *
+ * <p>
+ * The number of entries per leaf is bounded by {@link #CAPACITY}
+ * and the summed size of all entries is bounded by
+ * {@link #MAX_SIZE}, both evicting the least recently used
+ * entries. A capacity of <tt>0</tt> disables the cache.
+ * </p>
+ */
+public final class CollectionFilterCache {
+
+    private final static Logger log = LoggerFactory
+            .getLogger(CollectionFilterCache.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    // Maximum number of entries per leaf
+    public static int CAPACITY = 1000;
+
+    // Maximum summed size of all entries in bytes
+    public static long MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final Map<Object, Leaf> leaves = new WeakHashMap<>();
+
+    // Logical clock for recency across leaves
+    private static long clock = 0;
+
+
+    private CollectionFilterCache () {};
+
+
+    /**
+     * Get the cached documents of a filter in a leaf.
+     *
+     * @param reader
+     *            The {@link LeafReader} of the leaf.
+     * @param key
+     *            The canonical key of the filter.
+     * @return The cached {@link Entry} or <tt>null</tt> in case
+     *         the filter is not cached.
+     */
+    public static Entry get (LeafReader reader, String key) {
+        synchronized (leaves) {
+            final Leaf leaf = leaves.get(reader.getCoreCacheKey());
+            if (leaf == null)
+                return null;
+
+            final Entry entry = leaf.get(key);
+            if (entry == null)
+                return null;
+
+            entry.access = ++clock;
+            return entry;
+        }
+    };
+
+
+    /**
+     * Cache the documents of a filter in a leaf.
+     * Filters may be computed concurrently,
+     * but only the first result is cached.
+     *
+     * @param reader
+     *            The {@link LeafReader} of the leaf.
+     * @param key
+     *            The canonical key of the filter.
+     * @param bits
+     *            The {@link DocBits} of the filter.
+     * @return The cached {@link Entry}.
+     * @throws IOException
+     */
+    public static Entry put (LeafReader reader, String key, DocBits bits)
+            throws IOException {
+
+        final Entry entry = new Entry(key, bits);
+
+        if (CAPACITY <= 0 || entry.size > MAX_SIZE)
+            return entry;
+
+        synchronized (leaves) {
+            final Leaf leaf = leaves.computeIfAbsent(reader.getCoreCacheKey(),
+                    k -> new Leaf());
+
+            final Entry cached = leaf.get(key);
+            if (cached != null) {
+                cached.access = ++clock;
+                return cached;
+            };
+
+            entry.access = ++clock;
+            leaf.put(key, entry);
+            leaf.size += entry.size;
+
+            _evict();
+        }
+        return entry;
+    };
+
+
+    // Evict the least recently used entries of all leaves
+    // until the cache fits in memory (requires the lock)
+    private static void _evict () {
+        long total = 0;
+        for (Leaf leaf : leaves.values()) {
+            total += leaf.size;
+        };
+
+        while (total > MAX_SIZE) {
+            Leaf oldest = null;
+            long access = Long.MAX_VALUE;
+
+            // The eldest entry of a leaf is its least recently used
+            for (Leaf leaf : leaves.values()) {
+                if (leaf.isEmpty())
+                    continue;
+
+                final Entry eldest = leaf.values().iterator().next();
+                if (eldest.access < access) {
+                    access = eldest.access;
+                    oldest = leaf;
+                };
+            };
+
+            if (oldest == null)
+                return;
+
+            final Iterator<Entry> i = oldest.values().iterator();
+            final long size = i.next().size;
+            i.remove();
+            oldest.size -= size;
+            total -= size;
+
+            if (DEBUG)
+                log.trace("Evicted filter of {} bytes", size);
+        };
+    };
+
+
+    /**
+     * Get the number of cached entries of all leaves.
+     *
+     * @return The number of entries.
+     */
+    public static int size () {
+        synchronized (leaves) {
+            int size = 0;
+            for (Leaf leaf : leaves.values()) {
+                size += leaf.size();
+            };
+            return size;
+        }
+    };
+
+
+    /**
+     * Get the summed size of all cached entries.
+     *
+     * @return The approximate size in bytes.
+     */
+    public static long sizeInBytes () {
+        synchronized (leaves) {
+            long size = 0;
+            for (Leaf leaf : leaves.values()) {
+                size += leaf.size;
+            };
+            return size;
+        }
+    };
+
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public static void clear () {
+        synchronized (leaves) {
+            leaves.clear();
+        }
+    };
+
+
+    /**
+     * Cached documents of a filter in a leaf.
+     */
+    public static final class Entry {
+        private final DocBits bits;
+        private final DocIdSet docids;
+        private final int cardinality;
+        private final long size;
+        private long access;
+
+
+        private Entry (String key, DocBits bits) throws IOException {
+            this.bits = bits;
+            this.cardinality = bits.cardinality();
+            this.docids = this.cardinality == 0 ? null
+                    : bits.createDocIdSet();
+
+            // Keys are stored as chars and sparse documents
+            // are copied to the DocIdSet
+            long size = bits.sizeInBytes() + 2L * key.length();
+            if (this.docids != null && bits.isSparse())
+                size += this.docids.ramBytesUsed();
+            this.size = size;
+        };
+
+
+        /**
+         * Get the documents of the filter.
+         *
+         * @return The {@link DocBits}.
+         */
+        public DocBits getDocBits () {
+            return this.bits;
+        };
+
+
+        /**
+         * Get the documents of the filter for searching.
+         *
+         * @return The {@link DocIdSet} or <tt>null</tt> in case
+         *         no documents match.
+         */
+        public DocIdSet getDocIdSet () {
+            return this.docids;
+        };
+
+
+        /**
+         * Get the number of documents of the filter.
+         *
+         * @return The cardinality.
+         */
+        public int cardinality () {
+            return this.cardinality;
+        };
+
+
+        /**
+         * Check if no documents match the filter.
+         *
+         * @return <tt>true</tt> in case no documents match.
+         */
+        public boolean isEmpty () {
+            return this.cardinality == 0;
+        };
+    };
+
+
+    // Entries of a leaf in access order
+    private static final class Leaf extends LinkedHashMap<String, Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private long size = 0;
+
+
+        private Leaf () {
+            super(16, 0.75f, true);
+        };
+
+
+        @Override
+        protected boolean removeEldestEntry (Map.Entry<String, Entry> eldest) {
+            if (size() <= CAPACITY)
+                return false;
+            this.size -= eldest.getValue().size;
+            return true;
+        };
+    };
+};
@@ -0,0 +1,203 @@
+package de.ids_mannheim.korap.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import de.ids_mannheim.korap.collection.DocBits;
+
+/**
+ * Binary on-disk format of cached {@link DocBits}.
+ *
+ * <p>
+ * All values are stored little endian. The file starts with
+ * a header, followed by either the raw words of a dense bit vector
+ * or the sorted document ids of sparse {@link DocBits},
+ * aligned to 8 bytes:
+ * </p>
+ *
+ * <pre>
+ * &lt;i&gt;magic &lt;i&gt;version &lt;i&gt;type &lt;i&gt;numbits &lt;i&gt;count
+ * &lt;s&gt;fingerprint length &lt;b*&gt;fingerprint (UTF-8)
+ * padding &lt;l*&gt;words | &lt;i*&gt;docs
+ * </pre>
+ *
+ * <p>
+ * Files of version 1 have no type and always store words.
+ * </p>
+ *
+ * <p>
+ * Files are read using a memory mapping and the words are
+ * copied in bulk, so no deserialization is necessary.
+ * Files not starting with the magic number are considered
+ * to be serialized {@link DocBits} of former versions.
+ * </p>
+ */
+public final class DocBitsFile {
+
+    // "KVCB" in little endian
+    public static final int MAGIC = 0x4243564B;
+    public static final int VERSION = 2;
+
+    // Types of stored doc bits
+    public static final int DENSE = 0;
+    public static final int SPARSE = 1;
+
+    private static final int HEADER_LENGTH_V1 = 18;
+    private static final int HEADER_LENGTH = 22;
+
+
+    private DocBitsFile () {};
+
+
+    /**
+     * Write {@link DocBits} to a file.
+     *
+     * @param file
+     *            The target file.
+     * @param fingerprint
+     *            The leaf fingerprint of the {@link DocBits}.
+     * @param docBits
+     *            The {@link DocBits} to store.
+     * @throws IOException
+     */
+    public static void write (File file, String fingerprint,
+            DocBits docBits) throws IOException {
+        final byte[] fp = fingerprint.getBytes(StandardCharsets.UTF_8);
+        final int[] docs = docBits.getDocs();
+        final long[] words = docs == null ? docBits.getBits() : null;
+        final int count = docs == null ? words.length : docs.length;
+        final int offset = dataOffset(HEADER_LENGTH, fp.length);
+
+        final ByteBuffer bb = ByteBuffer
+                .allocate(offset + (docs == null ? count * Long.BYTES
+                        : count * Integer.BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(MAGIC);
+        bb.putInt(VERSION);
+        bb.putInt(docs == null ? DENSE : SPARSE);
+        bb.putInt(docBits.getNumBits());
+        bb.putInt(count);
+        bb.putShort((short) fp.length);
+        bb.put(fp);
+        bb.position(offset);
+        if (docs == null)
+            bb.asLongBuffer().put(words);
+        else
+            bb.asIntBuffer().put(docs);
+        bb.rewind();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            };
+        };
+    };
+
+
+    /**
+     * Check if a file is stored in the binary format.
+     *
+     * @param file
+     *            The file to check.
+     * @return <tt>true</tt> in case the file starts with
+     *         the magic number, otherwise <tt>false</tt>.
+     * @throws IOException
+     */
+    public static boolean isBinary (File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < HEADER_LENGTH_V1)
+                return false;
+            return Integer.reverseBytes(raf.readInt()) == MAGIC;
+        }
+    };
+
+
+    /**
+     * Read {@link DocBits} from a file in the binary format.
+     *
+     * @param file
+     *            The file to read.
+     * @param fingerprint
+     *            The expected leaf fingerprint
+     *            or <tt>null</tt> to accept any fingerprint.
+     * @return The {@link DocBits}.
+     * @throws IOException
+     *             In case the file is corrupt, the version is
+     *             not supported or the fingerprint doesn't match.
+     */
+    public static DocBits read (File file, String fingerprint)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+
+            final long size = channel.size();
+            if (size < HEADER_LENGTH_V1)
+                throw new IOException("Invalid cache file " + file);
+
+            final MappedByteBuffer mb = channel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mb.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mb.getInt() != MAGIC)
+                throw new IOException("Invalid cache file " + file);
+
+            final int version = mb.getInt();
+            if (version != 1 && version != VERSION)
+                throw new IOException(
+                        "Unsupported cache file version " + version);
+
+            if (version == VERSION && size < HEADER_LENGTH)
+                throw new IOException("Invalid cache file " + file);
+
+            final int type = version == 1 ? DENSE : mb.getInt();
+            final int numbits = mb.getInt();
+            final int count = mb.getInt();
+            final byte[] fp = new byte[mb.getShort() & 0xFFFF];
+            if (mb.remaining() < fp.length)
+                throw new IOException("Invalid cache file " + file);
+            mb.get(fp);
+
+            if (fingerprint != null && !fingerprint
+                    .equals(new String(fp, StandardCharsets.UTF_8)))
+                throw new IOException("Fingerprint mismatch in " + file);
+
+            final int offset = dataOffset(
+                    version == 1 ? HEADER_LENGTH_V1 : HEADER_LENGTH,
+                    fp.length);
+            final int width = type == SPARSE ? Integer.BYTES : Long.BYTES;
+            if (count < 0 || (type != DENSE && type != SPARSE)
+                    || size < offset + (long) count * width)
+                throw new IOException("Invalid cache file " + file);
+
+            mb.position(offset);
+
+            // Bulk copy of the document ids
+            if (type == SPARSE) {
+                final int[] docs = new int[count];
+                mb.asIntBuffer().get(docs);
+                return new DocBits(numbits, docs);
+            };
+
+            // Bulk copy of the words
+            final long[] words = new long[count];
+            mb.asLongBuffer().get(words);
+            return new DocBits(words, numbits);
+        }
+    };
+
+
+    // Align the data to 8 bytes
+    private static int dataOffset (int headerLength,
+            int fingerprintLength) {
+        final int offset = headerLength + fingerprintLength;
+        return (offset + Long.BYTES - 1) & ~(Long.BYTES - 1);
+    };
+};
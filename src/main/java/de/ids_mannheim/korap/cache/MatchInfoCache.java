@@ -0,0 +1,441 @@
+package de.ids_mannheim.korap.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for retrieving match information shared by all requests.
+ *
+ * <p>
+ * The automata restricting the annotations of a match to the
+ * requested foundries and layers are keyed by a canonical
+ * representation of the foundries, the layers and the inclusion
+ * of spans. The number of automata is bounded by {@link #CAPACITY}.
+ * </p>
+ *
+ * <p>
+ * The annotations of a document filtered by an automaton are
+ * decoded from the term vector once and kept per leaf,
+ * so paging through matches of the same text doesn't decode the
+ * term vector again. Leaves are identified by their core key,
+ * as deletions don't change term vectors, and the decoded
+ * term vectors vanish with the leaf when it is merged away.
+ * The number of term vectors of all leaves is bounded by
+ * {@link #TERM_VECTOR_CAPACITY} and their summed size is bounded
+ * by {@link #TERM_VECTOR_MAX_SIZE}. A capacity of <tt>0</tt>
+ * disables the caching of term vectors.
+ * Both caches evict the least recently used entries.
+ * </p>
+ */
+public final class MatchInfoCache {
+
+    private final static Logger log = LoggerFactory
+            .getLogger(MatchInfoCache.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    public static int CAPACITY = 1000;
+
+    // Maximum number of term vectors of all leaves
+    public static int TERM_VECTOR_CAPACITY = 1000;
+
+    // Maximum summed size of all term vectors in bytes
+    public static long TERM_VECTOR_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final Map<String, CompiledAutomaton> automata = new LinkedHashMap<String, CompiledAutomaton>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        protected boolean removeEldestEntry (
+                Map.Entry<String, CompiledAutomaton> eldest) {
+            return size() > CAPACITY;
+        };
+    };
+
+    private static final Map<Object, Leaf> leaves = new WeakHashMap<>();
+
+    // Logical clock for recency across leaves
+    private static long clock = 0;
+
+
+    private MatchInfoCache () {};
+
+
+    /**
+     * Get a cached automaton.
+     *
+     * @param key
+     *            The canonical key of the automaton.
+     * @return The {@link CompiledAutomaton} or <tt>null</tt>
+     *         in case the automaton is not cached.
+     */
+    public static CompiledAutomaton getAutomaton (String key) {
+        synchronized (automata) {
+            return automata.get(key);
+        }
+    };
+
+
+    /**
+     * Cache an automaton.
+     * Automata may be compiled concurrently,
+     * but only the first one is cached.
+     *
+     * @param key
+     *            The canonical key of the automaton.
+     * @param fst
+     *            The {@link CompiledAutomaton}.
+     * @return The cached {@link CompiledAutomaton}.
+     */
+    public static CompiledAutomaton putAutomaton (String key,
+            CompiledAutomaton fst) {
+        synchronized (automata) {
+            final CompiledAutomaton cached = automata.putIfAbsent(key, fst);
+            return cached != null ? cached : fst;
+        }
+    };
+
+
+    /**
+     * Get the annotations of a document filtered by an automaton.
+     * The term vector is only decoded in case it is not cached.
+     *
+     * @param reader
+     *            The {@link LeafReader} of the document.
+     * @param localDocID
+     *            The local document identifier.
+     * @param field
+     *            The field of the term vector.
+     * @param key
+     *            The canonical key of the automaton.
+     * @param fst
+     *            The {@link CompiledAutomaton} filtering the terms.
+     * @return The {@link TermVector} or <tt>null</tt> in case the
+     *         document has no term vector for the field.
+     * @throws IOException
+     */
+    public static TermVector termVector (LeafReader reader, int localDocID,
+            String field, String key, CompiledAutomaton fst)
+            throws IOException {
+
+        if (TERM_VECTOR_CAPACITY <= 0)
+            return TermVector.decode(reader, localDocID, field, fst);
+
+        final Object core = reader.getCoreCacheKey();
+        final String docKey = field + '\0' + localDocID + '\0' + key;
+
+        synchronized (leaves) {
+            final Leaf leaf = leaves.get(core);
+            final TermVector cached = leaf == null ? null : leaf.get(docKey);
+            if (cached != null) {
+                cached.access = ++clock;
+                return cached;
+            };
+        }
+
+        final TermVector tv = TermVector.decode(reader, localDocID, field,
+                fst);
+
+        if (DEBUG)
+            log.trace("Decoded term vector of document {} with {} terms",
+                    localDocID, tv == null ? 0 : tv.size());
+
+        if (tv == null || tv.bytes > TERM_VECTOR_MAX_SIZE)
+            return tv;
+
+        synchronized (leaves) {
+            final Leaf leaf = leaves.computeIfAbsent(core, k -> new Leaf());
+            final TermVector cached = leaf.get(docKey);
+            if (cached != null) {
+                cached.access = ++clock;
+                return cached;
+            };
+
+            tv.access = ++clock;
+            leaf.put(docKey, tv);
+            leaf.size += tv.bytes;
+            _evict();
+        }
+        return tv;
+    };
+
+
+    // Evict the least recently used term vectors of all leaves
+    // until the cache fits in capacity and memory (requires the lock)
+    private static void _evict () {
+        long size = 0;
+        int count = 0;
+        for (Leaf leaf : leaves.values()) {
+            size += leaf.size;
+            count += leaf.size();
+        };
+
+        while (size > TERM_VECTOR_MAX_SIZE || count > TERM_VECTOR_CAPACITY) {
+            Leaf oldest = null;
+            long access = Long.MAX_VALUE;
+
+            // The eldest entry of a leaf is its least recently used
+            for (Leaf leaf : leaves.values()) {
+                if (leaf.isEmpty())
+                    continue;
+
+                final TermVector eldest = leaf.values().iterator().next();
+                if (eldest.access < access) {
+                    access = eldest.access;
+                    oldest = leaf;
+                };
+            };
+
+            if (oldest == null)
+                return;
+
+            final Iterator<TermVector> i = oldest.values().iterator();
+            final long evicted = i.next().bytes;
+            i.remove();
+            oldest.size -= evicted;
+            size -= evicted;
+            count--;
+
+            if (DEBUG)
+                log.trace("Evicted term vector of {} bytes", evicted);
+        };
+    };
+
+
+    /**
+     * Get the number of cached automata.
+     *
+     * @return The number of automata.
+     */
+    public static int size () {
+        synchronized (automata) {
+            return automata.size();
+        }
+    };
+
+
+    /**
+     * Get the number of cached term vectors of all leaves.
+     *
+     * @return The number of term vectors.
+     */
+    public static int termVectors () {
+        synchronized (leaves) {
+            int size = 0;
+            for (Leaf leaf : leaves.values()) {
+                size += leaf.size();
+            };
+            return size;
+        }
+    };
+
+
+    /**
+     * Get the summed size of all cached term vectors.
+     *
+     * @return The approximate size in bytes.
+     */
+    public static long termVectorsInBytes () {
+        synchronized (leaves) {
+            long size = 0;
+            for (Leaf leaf : leaves.values()) {
+                size += leaf.size;
+            };
+            return size;
+        }
+    };
+
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public static void clear () {
+        synchronized (automata) {
+            automata.clear();
+        }
+        synchronized (leaves) {
+            leaves.clear();
+        }
+    };
+
+
+    /**
+     * The annotations of a document filtered by an automaton,
+     * as occurrences of terms with their positions and payloads.
+     * Occurrences are ordered by term and position.
+     */
+    public static final class TermVector {
+
+        private final String[] terms;
+        private final int[] positions;
+        private final byte[][] payloads;
+
+        // Approximate size in bytes
+        private final long bytes;
+        private long access;
+
+
+        private TermVector (List<String> terms, List<Integer> positions,
+                List<byte[]> payloads) {
+            final int size = terms.size();
+            this.terms = terms.toArray(new String[size]);
+            this.positions = new int[size];
+            for (int i = 0; i < size; i++)
+                this.positions[i] = positions.get(i);
+            this.payloads = payloads.toArray(new byte[size][]);
+
+            // Array headers and slots per occurrence
+            long bytes = 48L + 20L * size;
+            for (int i = 0; i < size; i++) {
+
+                // Occurrences of a term share the string
+                if (i == 0 || this.terms[i] != this.terms[i - 1])
+                    bytes += 40L + 2L * this.terms[i].length();
+                if (this.payloads[i] != null)
+                    bytes += 16L + this.payloads[i].length;
+            };
+            this.bytes = bytes;
+        };
+
+
+        // Decode the filtered term vector of a document
+        private static TermVector decode (LeafReader reader, int localDocID,
+                String field, CompiledAutomaton fst) throws IOException {
+
+            // Get terms from the document
+            final Terms docTerms = reader.getTermVector(localDocID, field);
+            if (docTerms == null)
+                return null;
+
+            final List<String> terms = new ArrayList<>();
+            final List<Integer> positions = new ArrayList<>();
+            final List<byte[]> payloads = new ArrayList<>();
+
+            // Limit the terms to all the terms of interest
+            final TermsEnum termsEnum = docTerms.intersect(fst, null);
+            DocsAndPositionsEnum docs = null;
+
+            // Iterate over all terms in the document
+            while (termsEnum.next() != null) {
+
+                // Get the positions and payloads of the term in the document
+                // The bitvector may look different (don't know why)
+                // and so the local ID may differ.
+                // That's why the requesting bitset is null.
+                docs = termsEnum.docsAndPositions(null, docs,
+                        DocsAndPositionsEnum.FLAG_PAYLOADS);
+
+                // Init document iterator
+                docs.nextDoc();
+
+                // Should never happen ... but hell!
+                if (docs.docID() == DocIdSetIterator.NO_MORE_DOCS)
+                    continue;
+
+                // String representation of the term
+                final String termString = termsEnum.term().utf8ToString();
+
+                // Iterate over all occurrences
+                for (int i = 0; i < docs.freq(); i++) {
+                    terms.add(termString);
+                    positions.add(docs.nextPosition());
+
+                    // Copy the payload
+                    final BytesRef payload = docs.getPayload();
+                    payloads.add(payload == null ? null
+                            : BytesRef.deepCopyOf(payload).bytes);
+                };
+            };
+
+            return new TermVector(terms, positions, payloads);
+        };
+
+
+        /**
+         * Get the number of occurrences.
+         *
+         * @return The number of occurrences.
+         */
+        public int size () {
+            return this.terms.length;
+        };
+
+
+        /**
+         * Get the approximate size of the term vector.
+         *
+         * @return The size in bytes.
+         */
+        public long sizeInBytes () {
+            return this.bytes;
+        };
+
+
+        /**
+         * Get the term of an occurrence.
+         *
+         * @param i
+         *            The index of the occurrence.
+         * @return The term string.
+         */
+        public String getTerm (int i) {
+            return this.terms[i];
+        };
+
+
+        /**
+         * Get the position of an occurrence.
+         *
+         * @param i
+         *            The index of the occurrence.
+         * @return The token position.
+         */
+        public int getPosition (int i) {
+            return this.positions[i];
+        };
+
+
+        /**
+         * Get the payload of an occurrence.
+         *
+         * @param i
+         *            The index of the occurrence.
+         * @return The payload bytes or <tt>null</tt>.
+         *         The array must not be modified.
+         */
+        public byte[] getPayload (int i) {
+            return this.payloads[i];
+        };
+    };
+
+
+    // Term vectors of a leaf in access order
+    private static final class Leaf extends LinkedHashMap<String, TermVector> {
+        private static final long serialVersionUID = 1L;
+
+        private long size = 0;
+
+
+        private Leaf () {
+            super(16, 0.75f, true);
+        };
+    };
+};
@@ -0,0 +1,368 @@
+package de.ids_mannheim.korap.cache;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of regular expression and wildcard queries
+ * shared by all requests.
+ *
+ * <p>
+ * Entries are keyed by the type of the query, the field,
+ * the pattern and the flags, and hold the compiled automaton
+ * as well as the terms matching the automaton per segment.
+ * The terms of a segment are keyed by its core, so they are
+ * valid until the segment is merged away - deletions don't
+ * change the term dictionary.
+ * Rewriting a query with a cached entry on a new reader only
+ * walks the term dictionaries of new segments. The merged terms
+ * of the last reader are kept, so repeated rewrites on the same
+ * reader don't merge again.
+ * </p>
+ *
+ * <p>
+ * The number of entries is bounded by {@link #CAPACITY}
+ * and the number of terms of all segments of all entries
+ * is bounded by {@link #MAX_TERMS}, both evicting the least
+ * recently used entries. Entries exceeding {@link #MAX_TERMS}
+ * on their own are not cached.
+ * </p>
+ */
+public final class MultiTermCache {
+
+    private final static Logger log = LoggerFactory
+            .getLogger(MultiTermCache.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    public static int CAPACITY = 1000;
+
+    // Maximum number of terms of all entries
+    public static long MAX_TERMS = 1000000;
+
+    private static final BytesRef[] NO_TERMS = new BytesRef[0];
+
+    private static final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        protected boolean removeEldestEntry (
+                Map.Entry<String, Entry> eldest) {
+            return size() > CAPACITY;
+        };
+    };
+
+
+    private MultiTermCache () {};
+
+
+    /**
+     * Get the cached entry of a regular expression query.
+     *
+     * @param field
+     *            The field to search in.
+     * @param re
+     *            The regular expression.
+     * @param flags
+     *            The syntax flags of the regular expression.
+     * @return The cached {@link Entry}.
+     * @throws IllegalArgumentException
+     *             In case the regular expression is invalid.
+     */
+    public static Entry regex (String field, String re, int flags) {
+        final String key = "re\0" + field + "\0" + flags + "\0" + re;
+        Entry entry = get(key);
+        if (entry == null)
+            entry = put(key, new Entry(key,
+                    new RegexpQuery(new Term(field, re), flags)));
+        return entry;
+    };
+
+
+    /**
+     * Get the cached entry of a wildcard query.
+     *
+     * @param field
+     *            The field to search in.
+     * @param wc
+     *            The wildcard expression.
+     * @return The cached {@link Entry}.
+     */
+    public static Entry wildcard (String field, String wc) {
+        final String key = "wc\0" + field + "\0" + wc;
+        Entry entry = get(key);
+        if (entry == null)
+            entry = put(key,
+                    new Entry(key, new WildcardQuery(new Term(field, wc))));
+        return entry;
+    };
+
+
+    /**
+     * Get the number of cached entries.
+     *
+     * @return The number of entries.
+     */
+    public static int size () {
+        synchronized (entries) {
+            return entries.size();
+        }
+    };
+
+
+    /**
+     * Get the number of terms of all cached entries.
+     *
+     * @return The number of terms.
+     */
+    public static long terms () {
+        synchronized (entries) {
+            long terms = 0;
+            for (Entry entry : entries.values()) {
+                terms += entry.terms;
+            };
+            return terms;
+        }
+    };
+
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public static void clear () {
+        synchronized (entries) {
+            entries.clear();
+        }
+    };
+
+
+    private static Entry get (String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    };
+
+
+    // Automata may be compiled concurrently,
+    // but only the first one is cached
+    private static Entry put (String key, Entry entry) {
+        synchronized (entries) {
+            final Entry cached = entries.putIfAbsent(key, entry);
+            return cached != null ? cached : entry;
+        }
+    };
+
+
+    // Bound the number of terms after an entry has grown,
+    // evicting the least recently used entries
+    private static void _bound (Entry entry) {
+        synchronized (entries) {
+
+            // The entry is not cached (anymore)
+            if (entries.get(entry.key) != entry)
+                return;
+
+            if (entry.terms > MAX_TERMS) {
+                entries.remove(entry.key);
+                if (DEBUG)
+                    log.trace("Reject {} with {} terms", entry.query,
+                            entry.terms);
+                return;
+            };
+
+            long terms = 0;
+            for (Entry e : entries.values()) {
+                terms += e.terms;
+            };
+
+            final Iterator<Entry> i = entries.values().iterator();
+            while (terms > MAX_TERMS && i.hasNext()) {
+                final Entry eldest = i.next();
+                if (eldest == entry)
+                    continue;
+                terms -= eldest.terms;
+                i.remove();
+                if (DEBUG)
+                    log.trace("Evict {} with {} terms", eldest.query,
+                            eldest.terms);
+            };
+        }
+    };
+
+
+    /**
+     * A cached query with its compiled automaton and
+     * the matching terms per segment.
+     */
+    public static final class Entry {
+
+        private final String key;
+        private final AutomatonQuery query;
+        private final CompiledAutomaton compiled;
+
+        // Number of terms of all segments
+        private volatile long terms = 0;
+
+        // Terms per segment core
+        private final Map<Object, BytesRef[]> segments = Collections
+                .synchronizedMap(new WeakHashMap<Object, BytesRef[]>());
+
+        // Merged terms of the last reader
+        private volatile ReaderTerms last;
+
+        private final LongAdder walks = new LongAdder();
+
+
+        private Entry (String key, AutomatonQuery query) {
+            this.key = key;
+            this.query = query;
+            this.compiled = new CompiledAutomaton(query.getAutomaton(), null,
+                    true);
+        };
+
+
+        /**
+         * Get the query of the entry.
+         *
+         * @return The {@link AutomatonQuery}.
+         */
+        public AutomatonQuery getQuery () {
+            return this.query;
+        };
+
+
+        /**
+         * Get the number of term dictionary walks
+         * done for the entry.
+         *
+         * @return The number of walked segments.
+         */
+        public long getWalks () {
+            return this.walks.sum();
+        };
+
+
+        /**
+         * Get all terms of a reader matching the automaton,
+         * sorted in unicode order.
+         *
+         * @param reader
+         *            The {@link IndexReader}.
+         * @return The sorted array of terms. The array and the terms
+         *         must not be modified.
+         * @throws IOException
+         */
+        public BytesRef[] getTerms (IndexReader reader) throws IOException {
+            final ReaderTerms last = this.last;
+            if (last != null && last.reader.get() == reader)
+                return last.terms;
+
+            final List<LeafReaderContext> leaves = reader.leaves();
+            final BytesRef[] terms;
+
+            if (leaves.size() == 1) {
+                terms = this.getTerms(leaves.get(0));
+            }
+            else {
+                final List<BytesRef> list = new ArrayList<>();
+                for (LeafReaderContext leaf : leaves) {
+                    list.addAll(Arrays.asList(this.getTerms(leaf)));
+                };
+                Collections.sort(list);
+
+                // Remove duplicates
+                int size = 0;
+                for (int i = 0; i < list.size(); i++) {
+                    if (size == 0 || !list.get(size - 1).equals(list.get(i)))
+                        list.set(size++, list.get(i));
+                };
+                terms = list.subList(0, size).toArray(NO_TERMS);
+            };
+
+            this.last = new ReaderTerms(reader, terms);
+            return terms;
+        };
+
+
+        // Get the matching terms of a segment
+        private BytesRef[] getTerms (LeafReaderContext leaf)
+                throws IOException {
+            final Object core = leaf.reader().getCoreCacheKey();
+            BytesRef[] terms = this.segments.get(core);
+            if (terms != null)
+                return terms;
+
+            this.walks.increment();
+
+            final Terms fieldTerms = leaf.reader()
+                    .terms(this.query.getField());
+            if (fieldTerms == null) {
+                terms = NO_TERMS;
+            }
+            else {
+                final List<BytesRef> list = new ArrayList<>();
+                final TermsEnum te = this.compiled.getTermsEnum(fieldTerms);
+                for (BytesRef term = te.next(); term != null;
+                        term = te.next()) {
+                    list.add(BytesRef.deepCopyOf(term));
+                };
+                terms = list.toArray(NO_TERMS);
+            };
+
+            if (DEBUG)
+                log.trace("Found {} terms for {} in segment {}",
+                        terms.length, this.query, leaf.ord);
+
+            // Segments that were merged away are not counted
+            long count = 0;
+            synchronized (this.segments) {
+                this.segments.put(core, terms);
+                for (BytesRef[] segment : this.segments.values()) {
+                    count += segment.length;
+                };
+            };
+            this.terms = count;
+            _bound(this);
+            return terms;
+        };
+    };
+
+
+    // Terms of a reader, not preventing the reader
+    // from being garbage collected
+    private static final class ReaderTerms {
+        private final WeakReference<IndexReader> reader;
+        private final BytesRef[] terms;
+
+
+        private ReaderTerms (IndexReader reader, BytesRef[] terms) {
+            this.reader = new WeakReference<>(reader);
+            this.terms = terms;
+        };
+    };
+};
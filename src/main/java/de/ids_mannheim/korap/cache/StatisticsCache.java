@@ -0,0 +1,134 @@
+package de.ids_mannheim.korap.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.LeafReader;
+
+/**
+ * Cache of corpus statistics shared by all requests.
+ *
+ * <p>
+ * Entries are memoized per leaf and keyed by a string representation
+ * of a virtual corpus and the name of the statistic, e.g. the number
+ * of documents or the sum of a counter like <tt>-:tokens</tt>.
+ * Leaves are identified by their combined core and deletes key,
+ * so entries are invalidated as soon as documents of a leaf are
+ * deleted and vanish with the leaf when it is merged away.
+ * </p>
+ *
+ * <p>
+ * The number of entries per leaf is bounded by {@link #CAPACITY},
+ * evicting the least recently used entries.
+ * As named VCs may change, all entries referring to a named VC are
+ * removed when the VC is stored or deleted in the
+ * {@link VirtualCorpusCache}.
+ * </p>
+ */
+public final class StatisticsCache {
+
+    public static int CAPACITY = 10000;
+
+    private static final Map<Object, Map<String, Long>> leaves = new WeakHashMap<>();
+
+
+    private StatisticsCache () {};
+
+
+    /**
+     * Get a memoized statistic of a leaf.
+     *
+     * @param reader
+     *            The {@link LeafReader} of the leaf.
+     * @param vc
+     *            The string representation of the virtual corpus.
+     * @param statistic
+     *            The name of the statistic.
+     * @return The memoized value or <tt>null</tt> in case the
+     *         statistic is not cached.
+     */
+    public static Long get (LeafReader reader, String vc, String statistic) {
+        synchronized (leaves) {
+            final Map<String, Long> entries = leaves
+                    .get(reader.getCombinedCoreAndDeletesKey());
+            if (entries == null)
+                return null;
+            return entries.get(vc + '\0' + statistic);
+        }
+    };
+
+
+    /**
+     * Memoize a statistic of a leaf.
+     *
+     * @param reader
+     *            The {@link LeafReader} of the leaf.
+     * @param vc
+     *            The string representation of the virtual corpus.
+     * @param statistic
+     *            The name of the statistic.
+     * @param value
+     *            The value of the statistic.
+     */
+    public static void put (LeafReader reader, String vc, String statistic,
+            long value) {
+        synchronized (leaves) {
+            leaves.computeIfAbsent(reader.getCombinedCoreAndDeletesKey(),
+                    k -> new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                        private static final long serialVersionUID = 1L;
+
+
+                        @Override
+                        protected boolean removeEldestEntry (
+                                Map.Entry<String, Long> eldest) {
+                            return size() > CAPACITY;
+                        };
+                    }).put(vc + '\0' + statistic, value);
+        }
+    };
+
+
+    /**
+     * Get the number of cached entries of all leaves.
+     *
+     * @return The number of entries.
+     */
+    public static int size () {
+        synchronized (leaves) {
+            int size = 0;
+            for (Map<String, Long> entries : leaves.values()) {
+                size += entries.size();
+            };
+            return size;
+        }
+    };
+
+
+    /**
+     * Remove all entries of virtual corpora referring to a named VC.
+     *
+     * @param vcId
+     *            The identifier of the named VC.
+     */
+    public static void remove (String vcId) {
+        final String reference = "vcFilter(" + vcId + ")";
+        synchronized (leaves) {
+            for (Map<String, Long> entries : leaves.values()) {
+                entries.keySet().removeIf(key -> key
+                        .substring(0, key.lastIndexOf('\0'))
+                        .contains(reference));
+            };
+        }
+    };
+
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public static void clear () {
+        synchronized (leaves) {
+            leaves.clear();
+        }
+    };
+};
@@ -2,19 +2,17 @@ package de.ids_mannheim.korap.cache;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,19 +40,13 @@ public class VirtualCorpusCache {
 
     public static String CACHE_LOCATION = "vc-cache";
     
-    public static int CAPACITY = 5;
-    public static final Map<String, Map<String, DocBits>> map = Collections
-            .synchronizedMap(new LinkedHashMap<String, Map<String, DocBits>>(
-                    CAPACITY, (float) 0.75, true) {
+    // Maximum number of VCs held in memory
+    public static int CAPACITY = 1000;
 
-                private static final long serialVersionUID = 1815514581428132435L;
+    // Maximum summed size of all VCs held in memory in bytes
+    public static long MAX_SIZE = 256L * 1024 * 1024;
 
-                @SuppressWarnings("rawtypes")
-                @Override
-                protected boolean removeEldestEntry (Map.Entry eldest) {
-                    return size() > CAPACITY;
-                }
-            });
+    public static final VirtualCorpusMap map = new VirtualCorpusMap();
 
     private static IndexInfo indexInfo;
 
@@ -117,10 +109,7 @@ public class VirtualCorpusCache {
             f.delete();
         }
         try {
-            ObjectOutputStream os = new ObjectOutputStream(
-                    new FileOutputStream(f));
-            os.writeObject(docBits);
-            os.close();
+            DocBitsFile.write(f, leafFingerprint, docBits);
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -130,6 +119,15 @@ public class VirtualCorpusCache {
 
 
     public static void store (String vcId, Map<String, DocBits> vcData){
+        _store(vcId, vcData);
+
+        // The VC may have changed
+        StatisticsCache.remove(vcId);
+    }
+
+
+    // Store the leaves of a VC without invalidating its statistics
+    private static void _store (String vcId, Map<String, DocBits> vcData) {
         map.put(vcId, vcData);
         vcData.keySet().forEach(leafFingerprint -> {
             storeOnDisk(vcId, leafFingerprint, vcData.get(leafFingerprint));
@@ -146,19 +144,32 @@ public class VirtualCorpusCache {
         DocBitsSupplier docBitsSupplier = new VirtualCorpusFilter(
                 vcId).getDocBitsSupplier();
         String leafFingerprint;
-        for (LeafReaderContext context : index.reader().leaves()) {
-            leafFingerprint = Fingerprinter.create(
-                    context.reader().getCombinedCoreAndDeletesKey().toString());
-
-            getDocBits(vcId, leafFingerprint, () -> {
-                try {
-                    return docBitsSupplier.supplyDocBits(context,
-                            context.reader().getLiveDocs());
-                }
-                catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            });
+        IndexReader reader = null;
+        try {
+            reader = index.acquireReader();
+            if (reader == null)
+                return;
+
+            for (LeafReaderContext context : reader.leaves()) {
+                leafFingerprint = Fingerprinter.create(context.reader()
+                        .getCombinedCoreAndDeletesKey().toString());
+
+                getDocBits(vcId, leafFingerprint, () -> {
+                    try {
+                        return docBitsSupplier.supplyDocBits(context,
+                                context.reader().getLiveDocs());
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            index.releaseReader(reader);
         }
     }
 
@@ -172,12 +183,8 @@ public class VirtualCorpusCache {
         if (dir.exists()) {
             vcData = new HashMap<String, DocBits>();
             for (File f : dir.listFiles()) {
-                ObjectInputStream ois;
                 try {
-                    ois = new ObjectInputStream(new FileInputStream(f));
-                    DocBits d = (DocBits) ois.readObject();
-                    vcData.put(f.getName(), d);
-                    ois.close();
+                    vcData.put(f.getName(), readFromDisk(f));
                 }
                 catch (IOException | ClassNotFoundException e) {
                     return null;
@@ -191,6 +198,30 @@ public class VirtualCorpusCache {
     }
 
 
+    /**
+     * Reads DocBits of a leaf from disk. Files in the binary
+     * {@link DocBitsFile} format are memory-mapped, files of
+     * former versions are deserialized.
+     * 
+     * @param f
+     *            a cache file named by the leaf fingerprint
+     * @return DocBits
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static DocBits readFromDisk (File f)
+            throws IOException, ClassNotFoundException {
+        if (DocBitsFile.isBinary(f)) {
+            return DocBitsFile.read(f, f.getName());
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new FileInputStream(f))) {
+            return (DocBits) ois.readObject();
+        }
+    }
+
+
     public static boolean contains (String vcId) {
         if (!isVcIdValid(vcId)) {
             return false;
@@ -220,6 +251,7 @@ public class VirtualCorpusCache {
 
         vcToCleanUp.remove(vcId);
         map.remove(vcId);
+        StatisticsCache.remove(vcId);
         File vc = new File(CACHE_LOCATION + "/" + vcId);
         if (vc.exists()) {
             for (File f : vc.listFiles()) {
@@ -235,6 +267,7 @@ public class VirtualCorpusCache {
     public static void reset () {
         vcToCleanUp.clear();
         map.clear();
+        StatisticsCache.clear();
 
         File vcCache = new File(CACHE_LOCATION + "/");
         for (File vc : vcCache.listFiles()) {
@@ -270,6 +303,46 @@ public class VirtualCorpusCache {
     }
 
 
+    /**
+     * Removes all leaves of a cached VC from memory and disk,
+     * that are not in the given set of leaf-fingerprints.
+     * In contrast to the clean up on the next use of the index,
+     * the files of the remaining leaves are not rewritten.
+     * 
+     * @param vcId
+     * @param leafFingerprints
+     *            the fingerprints of the current leaves
+     */
+    public static void prune (String vcId, Set<String> leafFingerprints) {
+        if (!isVcIdValid(vcId)) {
+            return;
+        }
+
+        Map<String, DocBits> vcData = map.peek(vcId);
+        if (vcData != null) {
+            boolean removed;
+            synchronized (vcData) {
+                removed = vcData.keySet().removeIf(
+                        fingerprint -> !leafFingerprints.contains(fingerprint));
+            }
+
+            // Update the size of the VC in memory
+            if (removed) {
+                map.put(vcId, vcData);
+            }
+        }
+
+        File[] files = new File(CACHE_LOCATION + "/" + vcId).listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!leafFingerprints.contains(f.getName())) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+
     private static void cleanup () {
         final Set<String> currentLeafFingerprints = indexInfo
                 .getAllLeafFingerprints();
@@ -279,7 +352,7 @@ public class VirtualCorpusCache {
             vcData.keySet()
                     .removeIf(storedFingerPrint -> currentLeafFingerprints
                             .contains(storedFingerPrint) == false);
-            store(vcId, vcData);
+            _store(vcId, vcData);
         }
         vcToCleanUp.clear();
     }
@@ -312,24 +385,86 @@ public class VirtualCorpusCache {
      */
     public static DocBits getDocBits (String vcId, String leafFingerprint,
             Supplier<DocBits> calculateDocBits) {
+        return getDocBits(vcId, leafFingerprint, calculateDocBits, true);
+    }
+
+
+    /**
+     * Gets DocBits for a single leaf from the VC cache or calculates
+     * and stores it, if it doesn't exist in the cache.
+     * 
+     * @see #getDocBits(String, String, Supplier)
+     * @param vcId
+     * @param leafFingerprint
+     * @param calculateDocBits
+     *            a supplier calculating the DocBits
+     * @param markForCleanUp
+     *            mark the VC for clean up, in case the leaf
+     *            is new to the cached VC
+     * @return DocBits
+     */
+    public static DocBits getDocBits (String vcId, String leafFingerprint,
+            Supplier<DocBits> calculateDocBits, boolean markForCleanUp) {
+        Map<String, DocBits> leafToDocBitMap = map.get(vcId);
         DocBits docBits = null;
-        Map<String, DocBits> leafToDocBitMap = retrieve(vcId);
-        if (leafToDocBitMap == null) {
-            leafToDocBitMap = Collections
-                    .synchronizedMap(new HashMap<String, DocBits>());
-            map.put(vcId, leafToDocBitMap);
-        }
-        else {
+        if (leafToDocBitMap != null) {
             docBits = leafToDocBitMap.get(leafFingerprint);
-            if (docBits == null) {
-                vcToCleanUp.add(vcId);
+            if (docBits != null) {
+                return docBits;
             }
         }
+
+        // Only the requested leaf is read from disk, as the VC may
+        // be held in memory partially or not at all,
+        // e.g. when it was rejected by the in-memory cache
+        File dir = new File(CACHE_LOCATION + "/" + vcId);
+        docBits = readLeafFromDisk(vcId, leafFingerprint);
+
         if (docBits == null) {
+            if (markForCleanUp
+                    && (leafToDocBitMap != null || dir.exists())) {
+                vcToCleanUp.add(vcId);
+            }
             docBits = calculateDocBits.get();
-            leafToDocBitMap.put(leafFingerprint, docBits);
             storeOnDisk(vcId, leafFingerprint, docBits);
         }
+
+        if (leafToDocBitMap == null) {
+            leafToDocBitMap = Collections
+                    .synchronizedMap(new HashMap<String, DocBits>());
+        }
+        leafToDocBitMap.put(leafFingerprint, docBits);
+
+        // Update the size of the VC in memory
+        map.put(vcId, leafToDocBitMap);
         return docBits;
     }
+
+
+    /**
+     * Reads the DocBits of a single leaf of a VC from disk.
+     * 
+     * @param vcId
+     * @param leafFingerprint
+     * @return DocBits or <code>null</code> in case the leaf is not
+     *         cached on disk or can't be read
+     */
+    private static DocBits readLeafFromDisk (String vcId,
+            String leafFingerprint) {
+        if (!isVcIdValid(vcId)) {
+            return null;
+        }
+
+        File f = new File(CACHE_LOCATION + "/" + vcId + "/" + leafFingerprint);
+        if (!f.exists()) {
+            return null;
+        }
+
+        try {
+            return readFromDisk(f);
+        }
+        catch (IOException | ClassNotFoundException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,430 @@
+package de.ids_mannheim.korap.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.collection.DocBits;
+
+/**
+ * In-memory cache of virtual corpora, mapping VC ids to the
+ * {@link DocBits} of all leaves.
+ *
+ * <p>
+ * The cache is bounded by the summed size of all {@link DocBits}
+ * in bytes ({@link VirtualCorpusCache#MAX_SIZE}) and by the number
+ * of VCs ({@link VirtualCorpusCache#CAPACITY}).
+ * Reads are lock-free, while modifications are synchronized.
+ * </p>
+ *
+ * <p>
+ * Access frequencies are approximated using a small count-min
+ * sketch. When a new VC requires the eviction of other VCs,
+ * the least recently used VCs are chosen as victims, but the
+ * new VC is only admitted in case it was requested at least as
+ * often as every victim. This way a single huge VC
+ * requested only once cannot evict popular VCs.
+ * Rejected VCs are still available from the disk cache.
+ * </p>
+ *
+ * <p>
+ * The leaf maps of a VC may be modified after insertion.
+ * In that case the VC has to be put again,
+ * so the size is updated. A VC growing this way has to pass
+ * the admission again and is removed from memory
+ * in case it is rejected.
+ * </p>
+ */
+public class VirtualCorpusMap
+        extends AbstractMap<String, Map<String, DocBits>> {
+
+    private final static Logger log = LoggerFactory
+            .getLogger(VirtualCorpusMap.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final AtomicLong clock = new AtomicLong();
+    private long size = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+
+    @Override
+    public Map<String, DocBits> get (Object key) {
+        final Entry entry = this.entries.get(key);
+        if (key != null)
+            this.sketch.increment(key.hashCode());
+
+        if (entry == null) {
+            this.misses.increment();
+            return null;
+        };
+
+        this.hits.increment();
+        entry.lastAccess = this.clock.incrementAndGet();
+        return entry.value;
+    };
+
+
+    /**
+     * Get the {@link DocBits} of a VC without counting
+     * the access, e.g. for maintenance.
+     *
+     * @param key
+     *            The VC id.
+     * @return The map of leaf fingerprints to {@link DocBits}
+     *         or <tt>null</tt>.
+     */
+    public Map<String, DocBits> peek (String key) {
+        final Entry entry = this.entries.get(key);
+        return entry == null ? null : entry.value;
+    };
+
+
+    @Override
+    public boolean containsKey (Object key) {
+        return this.entries.containsKey(key);
+    };
+
+
+    @Override
+    public int size () {
+        return this.entries.size();
+    };
+
+
+    /**
+     * Put the {@link DocBits} of a VC into the cache.
+     * In case the VC is not yet cached or has grown,
+     * and other VCs would need to be evicted, it is only
+     * admitted if it was requested at least as often
+     * as the evicted VCs.
+     *
+     * @param key
+     *            The VC id.
+     * @param value
+     *            The map of leaf fingerprints to {@link DocBits}.
+     * @return The formerly cached value or <tt>null</tt>.
+     */
+    @Override
+    public synchronized Map<String, DocBits> put (String key,
+            Map<String, DocBits> value) {
+        final long weight = weigh(value);
+        final Entry old = this.entries.get(key);
+
+        // Update
+        if (old != null) {
+
+            // The VC has grown too large
+            if (weight > VirtualCorpusCache.MAX_SIZE) {
+                this.evict(Collections.singletonList(old), null);
+                return old.value;
+            };
+
+            final List<Entry> victims = this.victims(key,
+                    weight - old.weight, 0);
+
+            // The VC has grown at the expense of other VCs
+            if (weight > old.weight && !this.admit(key, victims)) {
+                if (this.entries.remove(key, old))
+                    this.size -= old.weight;
+                return old.value;
+            };
+
+            this.size += weight - old.weight;
+            old.weight = weight;
+            final Map<String, DocBits> oldValue = old.value;
+            old.value = value;
+            old.lastAccess = this.clock.incrementAndGet();
+            this.evict(victims, key);
+            return oldValue;
+        };
+
+        final List<Entry> victims = this.victims(null, weight, 1);
+
+        if (victims == null) {
+            this.rejections.increment();
+            if (DEBUG)
+                log.trace("Reject VC {} with {} bytes", key, weight);
+            return null;
+        };
+
+        if (!this.admit(key, victims))
+            return null;
+
+        this.evict(victims, null);
+        this.entries.put(key, new Entry(key, value, weight,
+                this.clock.incrementAndGet()));
+        this.size += weight;
+        return null;
+    };
+
+
+    @Override
+    public synchronized Map<String, DocBits> remove (Object key) {
+        final Entry entry = this.entries.remove(key);
+        if (entry == null)
+            return null;
+        this.size -= entry.weight;
+        return entry.value;
+    };
+
+
+    @Override
+    public synchronized void clear () {
+        this.entries.clear();
+        this.size = 0;
+    };
+
+
+    @Override
+    public Set<Map.Entry<String, Map<String, DocBits>>> entrySet () {
+        final Map<String, Map<String, DocBits>> view = new HashMap<>();
+        for (Entry entry : this.entries.values()) {
+            view.put(entry.key, entry.value);
+        };
+        return Collections.unmodifiableMap(view).entrySet();
+    };
+
+
+    /**
+     * Get the summed size of all cached VCs in bytes.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long getSizeInBytes () {
+        return this.size;
+    };
+
+
+    /**
+     * Get the number of cache hits.
+     *
+     * @return The number of successful lookups.
+     */
+    public long getHits () {
+        return this.hits.sum();
+    };
+
+
+    /**
+     * Get the number of cache misses.
+     *
+     * @return The number of failed lookups.
+     */
+    public long getMisses () {
+        return this.misses.sum();
+    };
+
+
+    /**
+     * Get the number of evicted VCs.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictions () {
+        return this.evictions.sum();
+    };
+
+
+    /**
+     * Get the number of VCs not admitted to the cache.
+     *
+     * @return The number of rejections.
+     */
+    public long getRejections () {
+        return this.rejections.sum();
+    };
+
+
+    /**
+     * Get the size of the {@link DocBits} of a VC in bytes.
+     *
+     * @param value
+     *            The map of leaf fingerprints to {@link DocBits}.
+     * @return The size in bytes.
+     */
+    public static long weigh (Map<String, DocBits> value) {
+        long weight = 0;
+        synchronized (value) {
+            for (DocBits docBits : value.values()) {
+                if (docBits != null)
+                    weight += docBits.sizeInBytes();
+            };
+        };
+        return weight;
+    };
+
+
+    // Collect the least recently used entries to evict,
+    // so the cache can hold additional bytes and entries.
+    // Returns null, in case the cache can't hold them at all.
+    private List<Entry> victims (String exclude, long weight, int count) {
+        final long maxSize = VirtualCorpusCache.MAX_SIZE;
+        final int capacity = VirtualCorpusCache.CAPACITY;
+
+        if (weight > maxSize || count > capacity)
+            return null;
+
+        long overSize = this.size + weight - maxSize;
+        int overCount = this.entries.size() + count - capacity;
+
+        if (overSize <= 0 && overCount <= 0)
+            return Collections.emptyList();
+
+        final List<Entry> candidates = new ArrayList<>(this.entries.values());
+        Collections.sort(candidates, new Comparator<Entry>() {
+            @Override
+            public int compare (Entry a, Entry b) {
+                return Long.compare(a.lastAccess, b.lastAccess);
+            };
+        });
+
+        final List<Entry> victims = new ArrayList<>();
+        for (Entry candidate : candidates) {
+            if (overSize <= 0 && overCount <= 0)
+                break;
+            if (candidate.key.equals(exclude))
+                continue;
+            victims.add(candidate);
+            overSize -= candidate.weight;
+            overCount--;
+        };
+        return victims;
+    };
+
+
+    // Check if a VC was requested at least as often
+    // as all VCs to evict in its favour
+    private boolean admit (String key, List<Entry> victims) {
+        final int frequency = this.sketch.frequency(key.hashCode());
+        for (Entry victim : victims) {
+            if (this.sketch.frequency(victim.key.hashCode()) > frequency) {
+                this.rejections.increment();
+                if (DEBUG)
+                    log.trace("Reject VC {} in favour of {}", key,
+                            victim.key);
+                return false;
+            };
+        };
+        return true;
+    };
+
+
+    // Evict the given entries
+    private void evict (List<Entry> victims, String exclude) {
+        if (victims == null)
+            return;
+
+        for (Entry victim : victims) {
+            if (victim.key.equals(exclude))
+                continue;
+            if (this.entries.remove(victim.key, victim)) {
+                this.size -= victim.weight;
+                this.evictions.increment();
+                if (DEBUG)
+                    log.trace("Evict VC {} with {} bytes", victim.key,
+                            victim.weight);
+            };
+        };
+    };
+
+
+    private static final class Entry {
+        final String key;
+        volatile Map<String, DocBits> value;
+        volatile long weight;
+        volatile long lastAccess;
+
+
+        Entry (String key, Map<String, DocBits> value, long weight,
+               long lastAccess) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        };
+    };
+
+
+    /*
+     * Count-min sketch of 4 bit counters approximating
+     * the access frequencies of keys.
+     * All counters are halved periodically, so the
+     * frequencies adapt to changing access patterns.
+     * Concurrent increments may get lost, which is
+     * acceptable for an approximation.
+     */
+    private static final class FrequencySketch {
+        private static final int WIDTH = 1024;
+        private static final int DEPTH = 4;
+        private static final int MAX = 15;
+        private static final int SAMPLE = 10 * WIDTH;
+
+        private final byte[][] table = new byte[DEPTH][WIDTH];
+        private int additions = 0;
+
+
+        void increment (int hash) {
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                final int index = index(hash, i);
+                if (this.table[i][index] < MAX) {
+                    this.table[i][index]++;
+                    added = true;
+                };
+            };
+
+            if (added && ++this.additions >= SAMPLE)
+                this.reset();
+        };
+
+
+        int frequency (int hash) {
+            int frequency = MAX;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency,
+                        this.table[i][index(hash, i)]);
+            };
+            return frequency;
+        };
+
+
+        private synchronized void reset () {
+            for (byte[] row : this.table) {
+                for (int i = 0; i < WIDTH; i++) {
+                    row[i] >>= 1;
+                };
+            };
+            this.additions = 0;
+        };
+
+
+        private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B,
+                0xC2B2AE35, 0x27D4EB2F };
+
+
+        private static int index (int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & (WIDTH - 1);
+        };
+    };
+};
@@ -3,17 +3,23 @@ package de.ids_mannheim.korap.collection;
 import java.io.IOException;
 import java.util.*;
 
+import org.apache.lucene.queries.TermsFilter;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BitDocIdSet;
 
 import de.ids_mannheim.korap.KrillCollection;
+import de.ids_mannheim.korap.cache.CollectionFilterCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +28,13 @@ import org.slf4j.LoggerFactory;
  * A container Filter that allows Boolean composition of Filters
  * in groups (either or-groups or and-groups).
  * 
+ * Operands of and-groups are evaluated in the order of their
+ * estimated costs, i.e. the number of cached documents or the
+ * document frequency of their terms. The candidates of the cheapest
+ * operand are intersected with the other operands by leapfrogging,
+ * stopping as soon as no candidate is left. Negative operands
+ * remove their documents from the candidates without flipping.
+ * 
  * @author Nils Diewald
  * 
  *         This filter is roughly based on
@@ -76,7 +89,8 @@ public class BooleanGroupFilter extends Filter {
 
     /**
      * Add an operand to the list of filter operands.
-     * The operand is a negative filter that will be flipped.
+     * The operand is a negative filter, whose documents
+     * are removed.
      */
     public final void without (Filter filter) {
         this.operands.add(new GroupFilterOperand(filter, true));
@@ -125,161 +139,321 @@ public class BooleanGroupFilter extends Filter {
     @Override
     public DocIdSet getDocIdSet (LeafReaderContext atomic, Bits acceptDocs)
             throws IOException {
-        final LeafReader reader = atomic.reader();
-        int maxDoc = reader.maxDoc();
-        FixedBitSet bitset = new FixedBitSet(maxDoc);
-        FixedBitSet combinator = new FixedBitSet(maxDoc);
-        boolean init = true;
+        final int maxDoc = atomic.reader().maxDoc();
+        final List<Clause> positives = new ArrayList<>(this.operands.size());
+        final List<Clause> negatives = new ArrayList<>(2);
 
         if (DEBUG) {
             log.debug("Filter on group {} in a corpus of {} docs", this.toString(), maxDoc);
         }
 
+        // Estimate the costs of all operands
         for (GroupFilterOperand operand : this.operands) {
-            DocIdSet docids = operand.filter.getDocIdSet(atomic, null);
-            DocIdSetIterator filterIter = (docids == null) ? null
-                : docids.iterator();
+            if (operand.isNegative)
+                negatives.add(new Clause(operand.filter, atomic));
+            else
+                positives.add(new Clause(operand.filter, atomic));
+        };
+
+        final DocIdSet docids = this.isOptional
+                ? _union(positives, negatives, maxDoc)
+                : _intersect(positives, negatives, maxDoc);
 
+        if (docids == null) {
             if (DEBUG)
-                log.debug("> Filter to bitset of {} ({} negative)",
-                          operand.filter.toString(), operand.isNegative);
+                log.debug("- Filter allows no documents");
+            return null;
+        };
 
+        return BitsFilteredDocIdSet.wrap(docids, acceptDocs);
+    };
 
-            // Filter resulted in no docs
-            if (filterIter == null) {
 
-                if (DEBUG)
-                    log.debug("- Filter is null");
+    /**
+     * Estimate the number of documents matching the group in a leaf
+     * without evaluating the operands.
+     *
+     * @param atomic
+     *            The {@link LeafReaderContext} to search in.
+     * @return The estimated number of documents.
+     * @throws IOException
+     */
+    public long estimate (LeafReaderContext atomic) throws IOException {
+        final int maxDoc = atomic.reader().maxDoc();
+        long cost = this.isOptional ? 0 : maxDoc;
+        for (GroupFilterOperand operand : this.operands) {
 
-                // Filter matches everywhere
-                if (operand.isNegative) {
+            // Negative operands may match everywhere
+            final long opCost = operand.isNegative ? maxDoc
+                    : _estimate(operand.filter, atomic);
 
-                    // OR - This means, everything is allowed
-                    if (this.isOptional) {
-                        if (DEBUG) {
-                            log.debug("- Filter to allow all documents (OR NEG NULL)");
-                        }
+            cost = this.isOptional ? cost + opCost : Math.min(cost, opCost);
+        };
+        return Math.min(cost, maxDoc);
+    };
 
-                        // bitset.set(1, maxDoc);
-                        bitset.set(0, maxDoc);
 
-                        // Match all accepted documents!
-                        return BitsFilteredDocIdSet
-                            .wrap(new BitDocIdSet(bitset), acceptDocs);
-                    }
+    // Estimate the number of documents of a filter
+    // without evaluating it
+    private static long _estimate (Filter filter, LeafReaderContext atomic)
+            throws IOException {
+        final LeafReader reader = atomic.reader();
 
+        if (filter instanceof CachedCollectionFilter) {
+            final CachedCollectionFilter cached = (CachedCollectionFilter) filter;
+            final CollectionFilterCache.Entry docs = cached
+                    .getCachedDocs(atomic);
+            if (docs != null)
+                return docs.cardinality();
+            filter = cached.getFilter();
+        };
 
-                    // AND - The negation is irrelevant
-                    if (init) {
-                        if (DEBUG)
-                            log.debug("- Initialize by setting to all");
+        if (filter instanceof BooleanGroupFilter)
+            return ((BooleanGroupFilter) filter).estimate(atomic);
 
-                        bitset.set(0, maxDoc);
-                    }
+        // A phrase is as rare as its rarest term
+        if (filter instanceof QueryWrapperFilter) {
+            final Query query = ((QueryWrapperFilter) filter).getQuery();
+            if (query instanceof PhraseQuery) {
+                long cost = reader.maxDoc();
+                for (Term term : ((PhraseQuery) query).getTerms()) {
+                    cost = Math.min(cost, reader.docFreq(term));
+                };
+                return cost;
+            };
+        };
 
-                    else if (DEBUG) {
-                        log.debug("- Filter by ignoring this operand (AND NEG NULL)");
-                    };
-                }
+        // Regular expressions and ranges may match everywhere
+        return reader.maxDoc();
+    };
+
+
+    // Intersect positive operands by leapfrogging over the
+    // candidates of the cheapest operand and remove the documents
+    // of negative operands. Returns null for empty intersections.
+    private static DocIdSet _intersect (List<Clause> positives,
+            List<Clause> negatives, int maxDoc) throws IOException {
+        final int threshold = maxDoc / DocBits.SPARSE_RATIO;
+        FixedBitSet bitset = null;
+        int[] docs = null;
+        int size = 0;
+
+        // Without positive operands all documents are candidates
+        if (positives.isEmpty()) {
+            bitset = new FixedBitSet(maxDoc);
+            bitset.set(0, maxDoc);
+        }
+
+        else {
+            Collections.sort(positives);
+
+            // Initialize candidates with the cheapest operand
+            final DocIdSetIterator lead = positives.get(0).iterator();
+            if (lead == null)
+                return null;
+
+            if (lead.cost() < threshold) {
+                docs = new int[(int) Math.max(lead.cost(), 16)];
+                for (int doc = lead.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                        doc = lead.nextDoc()) {
+                    if (size == docs.length)
+                        docs = Arrays.copyOf(docs, size * 2);
+                    docs[size++] = doc;
+                };
+            }
+            else {
+                bitset = new FixedBitSet(maxDoc);
+                bitset.or(lead);
+                size = bitset.cardinality();
+            };
+
+            if (DEBUG)
+                log.debug("- Lead filter {} with card {}",
+                        positives.get(0).filter, size);
 
-                // AND with NULL
-                // There is no possible match
-                else if (!this.isOptional) {
+            for (int i = 1; i < positives.size() && size > 0; i++) {
+                final DocIdSetIterator iter = positives.get(i).iterator();
 
-                    if (DEBUG)
-                        log.debug("- Filter to allow no documents (2)");
+                // AND with NULL - there is no possible match
+                if (iter == null)
                     return null;
-                }
 
-                // OR WITH 0 - ignore!
-                else if (DEBUG) {
-                    log.debug("- Filter is ignorable");
+                if (docs != null) {
+                    size = _retain(docs, size, iter, true);
                 }
+                else {
+                    bitset.and(iter);
+                    size = bitset.cardinality();
+
+                    // Leapfrog over the remaining candidates
+                    if (size < threshold) {
+                        docs = _toDocs(bitset, size);
+                        bitset = null;
+                    };
+                };
 
                 if (DEBUG)
-                    log.debug("- Check next operand");
+                    log.debug("- Intersected with {} to card {}",
+                            positives.get(i).filter, size);
+            };
 
-            }
+            // Empty intersection
+            if (size == 0)
+                return null;
+        };
 
-            // Initialize bitset
-            else if (init) {
+        // Remove documents of negative operands
+        for (int i = 0; i < negatives.size(); i++) {
+            final DocIdSetIterator iter = negatives.get(i).iterator();
 
-                // Set initially empty bitset to filterIter
-                bitset.or(filterIter);
+            // The negation is irrelevant
+            if (iter == null)
+                continue;
 
-                if (DEBUG)
-                    log.debug("- Filter is inital with card {}",
-                              bitset.cardinality());
-
-                // Flip the matching documents
-                if (operand.isNegative) {
-                    bitset.flip(0, maxDoc);
-                    if (DEBUG)
-                        log.debug(
-                            "- Filter is negative - so flipped to card {} (1)",
-                            bitset.cardinality());
-                };
+            if (docs != null) {
+                size = _retain(docs, size, iter, false);
+                if (size == 0)
+                    return null;
             }
-
-            // Operate on bitsets
             else {
+                bitset.andNot(iter);
+            };
+        };
+
+        if (docs != null)
+            return new DocBits(maxDoc, Arrays.copyOf(docs, size))
+                    .createDocIdSet();
+
+        if (bitset.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS)
+            return null;
+
+        return new BitDocIdSet(bitset);
+    };
+
+
+    // Unify positive operands with all documents
+    // not matching all negative operands.
+    // Returns null in case no document matches.
+    private static DocIdSet _union (List<Clause> positives,
+            List<Clause> negatives, int maxDoc) throws IOException {
+
+        if (!negatives.isEmpty()) {
+            final DocIdSet excluded = _intersect(negatives,
+                    Collections.<Clause> emptyList(), maxDoc);
+
+            final FixedBitSet bitset = new FixedBitSet(maxDoc);
+            bitset.set(0, maxDoc);
 
+            // OR NEG NULL - this means, everything is allowed
+            if (excluded == null) {
                 if (DEBUG)
-                    log.debug("- Filter is fine and operating");
-
-                // Operator is negative and needs to be flipped
-                if (operand.isNegative) {
-                    if (this.isOptional) {
-                        if (DEBUG)
-                            log.debug("- Filter is negative optional");
-
-                        // Negative or ... may be slow
-                        combinator.or(filterIter);
-                        combinator.flip(0, maxDoc);
-
-                        if (DEBUG)
-                            log.debug(
-                                    "- Filter is negative - so flipped to card {} (2)",
-                                    combinator.cardinality());
-
-                        bitset.or(combinator);
-                        combinator.clear(0, maxDoc);
-                    }
-
-                    // Negative and
-                    else {
-                        if (DEBUG)
-                            log.debug("- Filter is negative not optional");
-                        bitset.andNot(filterIter);
-                        if (DEBUG)
-                            log.debug("- Filter is negative - so andNotted");
-                    }
-                }
-                else if (this.isOptional) {
-                    if (DEBUG)
-                        log.debug("- Filter is simply optional");
-                    bitset.or(filterIter);
-                }
-                else {
-                    if (DEBUG)
-                        log.debug("- Filter is simply not optional");
-                    bitset.and(filterIter);
-                    // TODO: Check with nextSetBit() if the filter is not applicable
+                    log.debug("- Filter to allow all documents (OR NEG NULL)");
+                return new BitDocIdSet(bitset);
+            };
+
+            bitset.andNot(excluded.iterator());
+            for (Clause clause : positives) {
+                final DocIdSetIterator iter = clause.iterator();
+                if (iter != null)
+                    bitset.or(iter);
+            };
+            return new BitDocIdSet(bitset);
+        };
+
+        // The builder chooses a sparse or dense bit set
+        // by the number of documents
+        final BitDocIdSet.Builder builder = new BitDocIdSet.Builder(maxDoc);
+        for (Clause clause : positives) {
+            final DocIdSetIterator iter = clause.iterator();
+
+            // OR WITH 0 - ignore!
+            if (iter != null)
+                builder.or(iter);
+        };
+        return builder.build();
+    };
+
+
+    // Keep the candidates (not) matching the iterator
+    // by leapfrogging and return the new number of candidates
+    private static int _retain (int[] docs, int size, DocIdSetIterator iter,
+            boolean matching) throws IOException {
+        int n = 0;
+        int doc = -1;
+        for (int i = 0; i < size; i++) {
+            final int candidate = docs[i];
+            if (doc < candidate)
+                doc = iter.advance(candidate);
+            if ((doc == candidate) == matching)
+                docs[n++] = candidate;
+        };
+        return n;
+    };
+
+
+    // Convert a bit set to sorted document ids
+    private static int[] _toDocs (FixedBitSet bitset, int size) {
+        final int[] docs = new int[size];
+        for (int i = 0, doc = -1; i < size; i++) {
+            doc = bitset.nextSetBit(doc + 1);
+            docs[i] = doc;
+        };
+        return docs;
+    };
+
+
+    // An operand in a leaf with its estimated cost,
+    // evaluated lazily unless it's cheap
+    private static final class Clause implements Comparable<Clause> {
+        private final Filter filter;
+        private final LeafReaderContext atomic;
+        private final long cost;
+        private DocIdSet docids = null;
+        private boolean evaluated = false;
+
+
+        private Clause (Filter filter, LeafReaderContext atomic)
+                throws IOException {
+            this.filter = filter;
+            this.atomic = atomic;
+
+            // Cached documents are known
+            if (filter instanceof CachedCollectionFilter) {
+                final CollectionFilterCache.Entry docs =
+                        ((CachedCollectionFilter) filter).getCachedDocs(atomic);
+                if (docs != null) {
+                    this.evaluated = true;
+                    this.docids = docs.getDocIdSet();
+                    this.cost = docs.cardinality();
+                    return;
                 };
+            }
 
-                if (DEBUG)
-                    log.debug("- Subresult has card {} ", bitset.cardinality());
+            // A term is as expensive to evaluate as to estimate
+            else if (filter instanceof TermsFilter) {
+                final DocIdSetIterator iter = this.iterator();
+                this.cost = iter == null ? 0 : iter.cost();
+                return;
             };
 
-            if (DEBUG)
-                log.debug("- Init is over");
+            this.cost = _estimate(filter, atomic);
+        };
+
 
-            init = false;
+        // Get the iterator of the operand,
+        // which may only be requested once
+        private DocIdSetIterator iterator () throws IOException {
+            if (!this.evaluated) {
+                this.docids = this.filter.getDocIdSet(this.atomic, null);
+                this.evaluated = true;
+            };
+            return this.docids == null ? null : this.docids.iterator();
         };
 
-        if (DEBUG)
-            log.debug("- Operand list ends");
-        
-        return BitsFilteredDocIdSet.wrap(new BitDocIdSet(bitset), acceptDocs);
+
+        @Override
+        public int compareTo (Clause other) {
+            return Long.compare(this.cost, other.cost);
+        };
     };
 };
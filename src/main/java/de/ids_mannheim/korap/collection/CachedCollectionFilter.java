@@ -0,0 +1,131 @@
+package de.ids_mannheim.korap.collection;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+
+import de.ids_mannheim.korap.cache.CollectionFilterCache;
+
+/**
+ * A Filter memoizing the documents of a wrapped filter per leaf
+ * in the {@link CollectionFilterCache}.
+ * The wrapped filter is evaluated without accepted documents,
+ * so deletions are only respected when the cached documents
+ * are returned.
+ */
+public class CachedCollectionFilter extends Filter {
+
+    private final String key;
+    private final Filter filter;
+
+
+    /**
+     * Create a new CachedCollectionFilter.
+     *
+     * @param key
+     *            The canonical key of the filter.
+     * @param filter
+     *            The wrapped {@link Filter}.
+     */
+    public CachedCollectionFilter (String key, Filter filter) {
+        this.key = key;
+        this.filter = filter;
+    };
+
+
+    /**
+     * Get the canonical key of the filter.
+     *
+     * @return The key string.
+     */
+    public String getKey () {
+        return this.key;
+    };
+
+
+    /**
+     * Get the wrapped filter.
+     *
+     * @return The wrapped {@link Filter}.
+     */
+    public Filter getFilter () {
+        return this.filter;
+    };
+
+
+    /**
+     * Get the documents of the wrapped filter in a leaf,
+     * in case they are cached.
+     *
+     * @param atomic
+     *            The {@link LeafReaderContext} to search in.
+     * @return The cached documents of the filter or <tt>null</tt>
+     *         in case the filter is not cached.
+     */
+    public CollectionFilterCache.Entry getCachedDocs (
+            LeafReaderContext atomic) {
+        return CollectionFilterCache.get(atomic.reader(), this.key);
+    };
+
+
+    /**
+     * Get the documents of the wrapped filter in a leaf,
+     * without respecting deletions.
+     *
+     * @param atomic
+     *            The {@link LeafReaderContext} to search in.
+     * @return The cached documents of the filter.
+     * @throws IOException
+     */
+    public CollectionFilterCache.Entry getDocs (LeafReaderContext atomic)
+            throws IOException {
+        final LeafReader reader = atomic.reader();
+        final CollectionFilterCache.Entry docs = this.getCachedDocs(atomic);
+        if (docs != null)
+            return docs;
+
+        final DocIdSet docids = this.filter.getDocIdSet(atomic, null);
+        final DocBits bits = DocBits.fromIterator(
+                docids == null ? null : docids.iterator(), reader.maxDoc());
+        return CollectionFilterCache.put(reader, this.key, bits);
+    };
+
+
+    @Override
+    public DocIdSet getDocIdSet (LeafReaderContext atomic, Bits acceptDocs)
+            throws IOException {
+        final CollectionFilterCache.Entry docs = this.getDocs(atomic);
+        if (docs.isEmpty())
+            return null;
+        return BitsFilteredDocIdSet.wrap(docs.getDocIdSet(), acceptDocs);
+    };
+
+
+    @Override
+    public boolean equals (Object obj) {
+        if (this == obj)
+            return true;
+
+        if ((obj == null) || (obj.getClass() != this.getClass()))
+            return false;
+
+        return this.key.equals(((CachedCollectionFilter) obj).key);
+    };
+
+
+    @Override
+    public int hashCode () {
+        return this.key.hashCode();
+    };
+
+
+    @Override
+    public String toString () {
+        return this.filter.toString();
+    };
+};
@@ -2,6 +2,7 @@ package de.ids_mannheim.korap.collection;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -145,6 +146,17 @@ public class CollectionBuilder {
         return new CollectionBuilder.Group(true);
     };
 
+    // Canonical key of a filter for caching,
+    // parts are prefixed by their length to be unambiguous
+    private static String _key (String type, String ... parts) {
+        StringBuilder sb = new StringBuilder(type);
+        for (String part : parts) {
+            sb.append(part.length()).append(':').append(part);
+        };
+        return sb.toString();
+    };
+
+
     public interface Interface {
         public String toString ();
 
@@ -152,6 +164,11 @@ public class CollectionBuilder {
         public Filter toFilter () throws QueryException;
 
 
+        // Canonical representation of the filter (ignoring
+        // the negation) or null, in case it can't be cached
+        public String toKey ();
+
+
         public boolean isNegative ();
 
 
@@ -181,16 +198,22 @@ public class CollectionBuilder {
         public Filter toFilter () {
             // Regular expression
             if (this.regex)
-                return new QueryWrapperFilter(
-                        new RegexpQuery(new org.apache.lucene.index.Term(
-                                this.field, this.term)));
+                return new CachedCollectionFilter(this.toKey(),
+                        new QueryWrapperFilter(new RegexpQuery(
+                                new org.apache.lucene.index.Term(this.field,
+                                        this.term))));
 
-            // Simple term
+            // Simple term (a single posting list is not worth caching)
             return new TermsFilter(
                     new org.apache.lucene.index.Term(this.field, this.term));
         };
 
 
+        public String toKey () {
+            return _key(this.regex ? "re" : "term", this.field, this.term);
+        };
+
+
         public String toString () {
             Filter filter = this.toFilter();
             if (filter == null)
@@ -245,7 +268,13 @@ public class CollectionBuilder {
 				return null;
 			};
 			
-			return new QueryWrapperFilter(pq);
+			return new CachedCollectionFilter(this.toKey(),
+					new QueryWrapperFilter(pq));
+        };
+
+
+        public String toKey () {
+            return _key("text", this.field, this.text);
         };
 
 
@@ -286,6 +315,12 @@ public class CollectionBuilder {
         };
 
 
+        // Named VCs are cached in the VirtualCorpusCache
+        public String toKey () {
+            return null;
+        };
+
+
         public String toString () {
 			return "referTo(" + this.vcId + ")";
         };
@@ -366,7 +401,39 @@ public class CollectionBuilder {
                 };
             };
 
-            return bool;
+            // Groups referring to named VCs are not cached
+            final String key = this.toKey();
+            if (key == null)
+                return bool;
+            return new CachedCollectionFilter(key, bool);
+        };
+
+
+        // The order of operands is irrelevant
+        public String toKey () {
+            if (this.operands == null || this.operands.isEmpty())
+                return null;
+
+            // The negation of a single operand is ignored
+            if (this.operands.size() == 1)
+                return this.operands.get(0).toKey();
+
+            final ArrayList<String> keys = new ArrayList<>(
+                    this.operands.size());
+            for (CollectionBuilder.Interface cb : this.operands) {
+                final String key = cb.toKey();
+                if (key == null)
+                    return null;
+                keys.add((cb.isNegative() ? '-' : '+') + key);
+            };
+            Collections.sort(keys);
+
+            final StringBuilder sb = new StringBuilder(
+                    this.isOptional ? "or(" : "and(");
+            for (String key : keys) {
+                sb.append(key);
+            };
+            return sb.append(')').toString();
         };
 
 
@@ -417,8 +484,15 @@ public class CollectionBuilder {
 
 
         public Filter toFilter () {
-            return NumericRangeFilter.newIntRange(this.field, this.start,
-                    this.end, true, true);
+            return new CachedCollectionFilter(this.toKey(),
+                    NumericRangeFilter.newIntRange(this.field, this.start,
+                            this.end, true, true));
+        };
+
+
+        public String toKey () {
+            return _key("range", this.field, String.valueOf(this.start),
+                    String.valueOf(this.end));
         };
 
 
@@ -1,12 +1,25 @@
 package de.ids_mannheim.korap.collection;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.apache.lucene.util.SparseFixedBitSet;
 
 /** Serializable object for caching Lucene doc bit vector.
- * 
+ *
+ * The documents are either stored as a dense bit vector
+ * or, in case only a few documents of a leaf are selected,
+ * as a sorted array of document ids. The representation
+ * is chosen by density, so memory and disk footprint
+ * scale with the number of selected documents instead of
+ * the number of documents in the leaf.
+ *
  * @author margaretha
  *
  */
@@ -16,15 +29,160 @@ public class DocBits implements Serializable {
      * Auto generated
      */
     private static final long serialVersionUID = -3505650918983180852L;
+
+    // Sparse ids need 32 bits per document, dense bits 1 bit
+    // per document in the leaf
+    public static final int SPARSE_RATIO = 32;
+
     final long[] bits;
     final int numbits;
 
+    // Sorted document ids of sparse doc bits
+    // (null for dense doc bits and in former serializations)
+    final int[] docs;
+
     public DocBits (long[] bits, int numbits) {
         this.bits = bits;
         this.numbits = numbits;
+        this.docs = null;
+    }
+
+    /**
+     * Constructs sparse DocBits.
+     *
+     * @param numbits
+     *            the number of documents in the leaf
+     * @param docs
+     *            the sorted ids of the selected documents
+     */
+    public DocBits (int numbits, int[] docs) {
+        this.bits = null;
+        this.numbits = numbits;
+        this.docs = docs;
+    }
+
+    /**
+     * Creates DocBits from a bit set, choosing the representation
+     * by density.
+     *
+     * @param bitset
+     *            a FixedBitSet
+     * @return DocBits
+     */
+    public static DocBits fromBitSet (FixedBitSet bitset) {
+        final int numbits = bitset.length();
+        final int cardinality = bitset.cardinality();
+
+        if (!isSparse(cardinality, numbits))
+            return new DocBits(bitset.getBits(), numbits);
+
+        final int[] docs = new int[cardinality];
+        for (int i = 0, doc = -1; i < cardinality; i++) {
+            doc = bitset.nextSetBit(doc + 1);
+            docs[i] = doc;
+        }
+        return new DocBits(numbits, docs);
+    }
+
+    /**
+     * Creates DocBits from an iterator, choosing the
+     * representation by density. Document ids are collected
+     * sparsely until the density requires a bit vector.
+     *
+     * @param iterator
+     *            a DocIdSetIterator, may be null
+     * @param numbits
+     *            the number of documents in the leaf
+     * @return DocBits
+     * @throws IOException
+     */
+    public static DocBits fromIterator (DocIdSetIterator iterator,
+            int numbits) throws IOException {
+        final int threshold = numbits / SPARSE_RATIO;
+        int[] docs = new int[Math.min(64, Math.max(threshold, 1))];
+        int size = 0;
+
+        if (iterator != null) {
+            for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                    doc = iterator.nextDoc()) {
+
+                // Too dense
+                if (size >= threshold) {
+                    FixedBitSet bitset = new FixedBitSet(numbits);
+                    for (int i = 0; i < size; i++) {
+                        bitset.set(docs[i]);
+                    }
+                    for (; doc != DocIdSetIterator.NO_MORE_DOCS;
+                            doc = iterator.nextDoc()) {
+                        bitset.set(doc);
+                    }
+                    return new DocBits(bitset.getBits(), numbits);
+                }
+
+                if (size == docs.length) {
+                    docs = Arrays.copyOf(docs, Math.min(threshold,
+                            docs.length * 2));
+                }
+                docs[size++] = doc;
+            }
+        }
+        return new DocBits(numbits, Arrays.copyOf(docs, size));
+    }
+
+    /**
+     * Checks if a number of documents is better stored sparsely.
+     *
+     * @param cardinality
+     *            the number of selected documents
+     * @param numbits
+     *            the number of documents in the leaf
+     * @return true if sparse document ids need less memory
+     */
+    public static boolean isSparse (int cardinality, int numbits) {
+        return cardinality < numbits / SPARSE_RATIO;
+    }
+
+    public boolean isSparse () {
+        return docs != null;
+    }
+
+    /**
+     * Creates a DocIdSet for searching. Dense doc bits are
+     * wrapped in a bit set, sparse doc bits are turned into a
+     * roaring doc id set, choosing between sorted ids and bits
+     * per block of documents.
+     *
+     * @return DocIdSet
+     * @throws IOException
+     */
+    public DocIdSet createDocIdSet () throws IOException {
+        if (docs == null) {
+            return createBitDocIdSet();
+        }
+
+        RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(
+                numbits);
+        for (int doc : docs) {
+            builder.add(doc);
+        }
+        return builder.build();
     }
 
+    /**
+     * Creates a BitDocIdSet with random access. Sparse doc bits
+     * are represented by a SparseFixedBitSet.
+     *
+     * @return BitDocIdSet
+     */
     public BitDocIdSet createBitDocIdSet () {
+        if (docs != null) {
+            SparseFixedBitSet bitset = new SparseFixedBitSet(numbits);
+            for (int doc : docs) {
+                bitset.set(doc);
+            }
+            return new BitDocIdSet(bitset, docs.length);
+        }
+
         FixedBitSet bitset = new FixedBitSet(bits, numbits);
         BitDocIdSet docIdSet = new BitDocIdSet(bitset);
         return docIdSet;
@@ -32,6 +190,10 @@ public class DocBits implements Serializable {
 
     @Override
     public String toString () {
+        if (docs != null) {
+            return Arrays.toString(docs);
+        }
+
         StringBuilder sb = new StringBuilder("[");
         int i = 1;
         for (long b : bits) {
@@ -44,8 +206,75 @@ public class DocBits implements Serializable {
         sb.append("]");
         return sb.toString();
     }
-    
+
+    /**
+     * Returns the words of the bit vector. Sparse doc bits are
+     * expanded to a new bit vector.
+     *
+     * @return the words of the bit vector
+     */
     public long[] getBits () {
+        if (docs != null) {
+            FixedBitSet bitset = new FixedBitSet(numbits);
+            for (int doc : docs) {
+                bitset.set(doc);
+            }
+            return bitset.getBits();
+        }
         return bits;
     }
+
+    /**
+     * Returns the sorted ids of sparse doc bits.
+     *
+     * @return the document ids or null for dense doc bits
+     */
+    public int[] getDocs () {
+        return docs;
+    }
+
+    public int getNumBits () {
+        return numbits;
+    }
+
+    /**
+     * Returns the number of selected documents.
+     *
+     * @return the cardinality
+     */
+    public int cardinality () {
+        if (docs != null) {
+            return docs.length;
+        }
+        int cardinality = 0;
+        for (long b : bits) {
+            cardinality += Long.bitCount(b);
+        }
+        return cardinality;
+    }
+
+    /**
+     * Checks if no documents are selected.
+     *
+     * @return true if no documents are selected
+     */
+    public boolean isEmpty () {
+        if (docs != null) {
+            return docs.length == 0;
+        }
+        return cardinality() == 0;
+    }
+
+    /**
+     * Returns the approximate heap size of the bit vector.
+     *
+     * @return the size in bytes
+     */
+    public long sizeInBytes () {
+        // Object headers, fields and array header
+        if (docs != null) {
+            return 40L + 4L * docs.length;
+        }
+        return 40L + 8L * bits.length;
+    }
 }
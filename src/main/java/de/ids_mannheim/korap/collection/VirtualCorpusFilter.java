@@ -34,10 +34,45 @@ public class VirtualCorpusFilter extends Filter {
     @Override
     public DocIdSet getDocIdSet (LeafReaderContext context, Bits acceptDocs)
             throws IOException {
+        return getDocBits(context, acceptDocs).createDocIdSet();
+    }
+
+
+    /**
+     * Gets the DocBits of the VC for a leaf from the
+     * {@link VirtualCorpusCache} or calculates and caches them.
+     * 
+     * @param context
+     *            the leaf
+     * @param acceptDocs
+     *            the live documents of the leaf
+     * @return DocBits
+     */
+    public DocBits getDocBits (LeafReaderContext context, Bits acceptDocs) {
+        return getDocBits(context, acceptDocs, true);
+    }
+
+
+    /**
+     * Gets the DocBits of the VC for a leaf from the
+     * {@link VirtualCorpusCache} or calculates and caches them.
+     * 
+     * @param context
+     *            the leaf
+     * @param acceptDocs
+     *            the live documents of the leaf
+     * @param markForCleanUp
+     *            mark the cached VC for clean up, in case the
+     *            leaf is new to it. Warmers compiling new leaves
+     *            clean up the VC themselves.
+     * @return DocBits
+     */
+    public DocBits getDocBits (LeafReaderContext context, Bits acceptDocs,
+            boolean markForCleanUp) {
         String leafFingerprint = Fingerprinter.create(
                 context.reader().getCombinedCoreAndDeletesKey().toString());
         
-        DocBits docBits = VirtualCorpusCache.getDocBits(vcId, leafFingerprint,
+        return VirtualCorpusCache.getDocBits(vcId, leafFingerprint,
                 () -> {
                     try {
                         return docBitsSupplier.supplyDocBits(context, acceptDocs);
@@ -45,8 +80,7 @@ public class VirtualCorpusFilter extends Filter {
                     catch (IOException | QueryException e) {
                         throw new RuntimeException(e);
                     }
-                });
-        return docBits.createBitDocIdSet();
+                }, markForCleanUp);
     }
 
     @Override
@@ -67,17 +101,27 @@ public class VirtualCorpusFilter extends Filter {
         
         public DocBits supplyDocBits (LeafReaderContext context,
                 Bits acceptDocs) throws IOException, QueryException {
-            if (cbi == null || filter == null) {
-                KrillCollection kc = new KrillCollection();
-                // load from file
-                kc.fromStore(vcId);
-                if (kc.hasErrors()) {
-                    throw new QueryException(kc.getError(0).getCode(),
-                            kc.getError(0).getMessage());
-                }
 
-                this.cbi = kc.getBuilder();
-                this.filter = kc.toFilter();
+            // Leaves may be searched in parallel
+            synchronized (this) {
+                if (cbi == null || filter == null) {
+                    KrillCollection kc = new KrillCollection();
+                    // load from file
+                    kc.fromStore(vcId);
+                    if (kc.hasErrors()) {
+                        throw new QueryException(kc.getError(0).getCode(),
+                                kc.getError(0).getMessage());
+                    }
+
+                    this.cbi = kc.getBuilder();
+                    this.filter = kc.toFilter();
+
+                    // The corpus is cached in the VirtualCorpusCache,
+                    // only its clauses are cached as collection filters
+                    if (this.filter instanceof CachedCollectionFilter)
+                        this.filter = ((CachedCollectionFilter) this.filter)
+                                .getFilter();
+                }
             }
                 
             DocIdSet docIdSet = filter.getDocIdSet(context, acceptDocs);
@@ -87,26 +131,20 @@ public class VirtualCorpusFilter extends Filter {
 
         private DocBits calculateDocBits (DocIdSet docIdSet, int maxDoc)
                 throws IOException {
-            FixedBitSet bitset = new FixedBitSet(maxDoc);
-            if (docIdSet == null) {
-                if (cbi.isNegative()) {
-                    bitset.set(0, maxDoc);
-                }
-                else {
-                    bitset.clear(0, maxDoc);
-                }
-            }
-            else {
-                DocIdSetIterator docIdSetIterator = docIdSet.iterator();
-                if (docIdSetIterator != null) {
-                    bitset.or(docIdSetIterator);
-                }
-                if (cbi.isNegative()) {
-                    bitset.flip(0, maxDoc);
-                }
+            DocIdSetIterator docIdSetIterator = (docIdSet == null) ? null
+                    : docIdSet.iterator();
+
+            // Choose a sparse or dense representation by density
+            if (!cbi.isNegative()) {
+                return DocBits.fromIterator(docIdSetIterator, maxDoc);
             }
 
-            return new DocBits(bitset.getBits(), bitset.length());
+            FixedBitSet bitset = new FixedBitSet(maxDoc);
+            if (docIdSetIterator != null) {
+                bitset.or(docIdSetIterator);
+            }
+            bitset.flip(0, maxDoc);
+            return DocBits.fromBitSet(bitset);
         }
     }
     
@@ -3,6 +3,7 @@ package de.ids_mannheim.korap.index;
 import java.util.*;
 
 import de.ids_mannheim.korap.util.KrillDate;
+import de.ids_mannheim.korap.util.KrillJson;
 import static de.ids_mannheim.korap.util.KrillString.*;
 import de.ids_mannheim.korap.index.FieldDocument;
 import de.ids_mannheim.korap.response.Response;
@@ -41,7 +42,7 @@ import com.fasterxml.jackson.databind.node.TextNode;
 // @JsonIgnoreProperties(ignoreUnknown = true)
 
 public abstract class AbstractDocument extends Response {
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
     
     private String primaryData;
     
@@ -138,9 +139,29 @@ public abstract class AbstractDocument extends Response {
      */
     public void populateDocument (Document doc, String field,
             List<String> fields) {
+        this.populateDocument(doc, field, fields, null);
+    };
+
+
+    /**
+     * Populate document meta information with information coming from
+     * the index, preferring fields already lifted from DocValues.
+     * 
+     * @param doc
+     *            Document object.
+     * @param field
+     *            Primary data field.
+     * @param fields
+     *            Hash object with all supported fields.
+     * @param lifted
+     *            Fields lifted from {@link MetaDocValues},
+     *            may be <tt>null</tt>.
+     */
+    public void populateDocument (Document doc, String field,
+            List<String> fields, Map<String, MetaField> lifted) {
         if (field != null)
             this.setPrimaryData(doc.get(field));
-        this.populateFields(doc, fields);
+        this.populateFields(doc, fields, lifted);
     };
 
 
@@ -158,10 +179,17 @@ public abstract class AbstractDocument extends Response {
 
 
     public void populateFields (Document doc, List<String> fields) {
+        this.populateFields(doc, fields, null);
+    };
+
+
+    public void populateFields (Document doc, List<String> fields,
+            Map<String, MetaField> lifted) {
         Iterator<String> fieldsIter = fields.iterator();
         
         if (fields.contains("UID")) {
-            this.setUID(doc.get("UID"));
+            MetaField uid = (lifted != null) ? lifted.get("UID") : null;
+            this.setUID(uid != null ? uid.values.get(0) : doc.get("UID"));
         };
         
         // fieldsIter = fields.iterator();
@@ -181,12 +209,23 @@ public abstract class AbstractDocument extends Response {
                 continue;
             };
 
+            // Field lifted from DocValues
+            MetaField mf = (lifted != null) ? lifted.get(name) : null;
+            if (mf != null) {
+                mFields.add(mf);
+
+                // Legacy
+                if (name.equals("license"))
+                    this.addString("availability", mf.values.get(0));
+                continue;
+            };
+
             IndexableField iField = doc.getField(name);
             
             if (iField == null)
                 continue;
             
-            MetaField mf = mFields.add(iField);
+            mf = mFields.add(iField);
 
             // Legacy
             if (name.equals("license"))
@@ -5,12 +5,18 @@ import de.ids_mannheim.korap.index.MultiTermToken;
 import de.ids_mannheim.korap.index.AbstractDocument;
 import de.ids_mannheim.korap.util.KrillDate;
 import de.ids_mannheim.korap.util.CorpusDataException;
+import de.ids_mannheim.korap.util.KrillJson;
 import de.ids_mannheim.korap.response.MetaField;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.*;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -30,6 +36,7 @@ import org.apache.lucene.analysis.TokenStream;
 
 import java.util.*;
 import java.io.StringReader;
+import java.nio.CharBuffer;
 import java.io.IOException;
 
 /*
@@ -58,7 +65,7 @@ import java.io.IOException;
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class FieldDocument extends AbstractDocument {
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
 
     // Logger
@@ -90,10 +97,16 @@ public class FieldDocument extends AbstractDocument {
 
 
     /**
-     * Add all fields to document
+     * Add all fields to document.
+     * Besides stored and indexed fields, string, date, integer and
+     * keyword fields as well as the counters of token streams
+     * are added as DocValues (see {@link MetaDocValues}).
      */
     public Document compile () {
 
+        // The document may be compiled repeatedly
+        MetaDocValues.removeAll(doc);
+
 		// Iterate over all fields
 		Iterator<MetaField> fIter = mFields.iterator();
 		while (fIter.hasNext()) {
@@ -104,6 +117,7 @@ public class FieldDocument extends AbstractDocument {
                 try {
                     int val = Integer.parseInt(mf.values.get(0));
                     doc.add(new DoubleField(mf.key, (double) val, Field.Store.YES));
+                    MetaDocValues.addNumeric(doc, mf, val);
                 }
                 catch (NumberFormatException ne) {
                     continue;
@@ -114,7 +128,9 @@ public class FieldDocument extends AbstractDocument {
                 KrillDate date = new KrillDate(mf.values.get(0));
                 if (date != null) {
                     try {
-                        doc.add(new IntField(mf.key, date.toInteger(), Field.Store.YES));
+                        int val = date.toInteger();
+                        doc.add(new IntField(mf.key, val, Field.Store.YES));
+                        MetaDocValues.addNumeric(doc, mf, val);
                     }
                     catch (NumberFormatException ne) {
                         continue;
@@ -131,6 +147,7 @@ public class FieldDocument extends AbstractDocument {
                         Field.Store.YES
                         )
                     );
+                MetaDocValues.addString(doc, mf);
                 break;
 
             case "type:keywords":
@@ -141,6 +158,7 @@ public class FieldDocument extends AbstractDocument {
                         keywordField
                         )
                     );
+                MetaDocValues.addKeywords(doc, mf);
                 break;
             
             case "type:text":
@@ -153,6 +171,8 @@ public class FieldDocument extends AbstractDocument {
            	};
         };
 
+        MetaDocValues.addCounters(doc);
+
         return doc;
     };
    
@@ -198,57 +218,182 @@ public class FieldDocument extends AbstractDocument {
     /**
      * Deserialize token stream data.
      */
-    public void setData (Map<String, Object> node) {
+    public void setData (StreamData data) {
 
         // TODO: Replace surrogates here, see AbstractDocument#setPrimaryData
-        this.setPrimaryData((String) node.get("text"));
+        this.setPrimaryData(data.text);
 
-        String fieldName = (String) node.get("name");
+        // Add errors of malformed tokens
+        for (CorpusDataException cde : data.errors) {
+            this.addError(cde.getErrorCode(), cde.getMessage());
+        };
 
-        MultiTermTokenStream mtts = this.newMultiTermTokenStream();
+        // Add tokenstream to fielddocument
+        this.addTV(data.name, this.getPrimaryData(), data.stream);
 
-        // Iterate over all tokens in stream
-        for (ArrayList<String> token : (ArrayList<ArrayList<String>>) node
-                .get("stream")) {
+        // Get foundry info
+        if (data.foundries != null)
+            this.addKeywords("foundries", data.foundries);
 
-            try {
-                // Initialize MultiTermToken
-                MultiTermToken mtt = new MultiTermToken(token.remove(0));
+        // Get layer info
+        if (data.layerInfos != null)
+            this.addStored("layerInfos", data.layerInfos);
 
-                // Add rest of the list
-                for (String term : token) {
-                    mtt.add(term);
-                };
+        // Get tokenSource info
+        if (data.tokenSource != null)
+            this.addStored("tokenSource", data.tokenSource);
+    };
+
+
+    /**
+     * Token stream data of a document.
+     * The stream is built incrementally while parsing,
+     * so the annotations are never held as strings
+     * for the whole document.
+     */
+    @JsonDeserialize(using = StreamDataDeserializer.class)
+    public static class StreamData {
+        private String text, name, foundries, layerInfos, tokenSource;
+        private final MultiTermTokenStream stream = new MultiTermTokenStream();
+        private final List<CorpusDataException> errors = new ArrayList<>(1);
+    };
 
-                // Add MultiTermToken to stream
-                mtts.addMultiTermToken(mtt);
 
-            }
-            catch (CorpusDataException cde) {
-                this.addError(cde.getErrorCode(), cde.getMessage());
+    /**
+     * Deserializer for token stream data pulling terms
+     * from the parser.
+     */
+    public static class StreamDataDeserializer
+            extends StdDeserializer<StreamData> {
+        private static final long serialVersionUID = 1L;
+
+
+        public StreamDataDeserializer () {
+            super(StreamData.class);
+        };
+
+
+        @Override
+        public StreamData deserialize (JsonParser jp,
+                DeserializationContext ctxt) throws IOException {
+
+            if (!jp.isExpectedStartObjectToken())
+                return (StreamData) ctxt.handleUnexpectedToken(
+                        StreamData.class, jp);
+
+            StreamData data = new StreamData();
+
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String key = jp.currentName();
+                jp.nextToken();
+
+                switch (key) {
+                    case "stream":
+                        _stream(jp, data);
+                        break;
+                    case "text":
+                        data.text = _string(jp);
+                        break;
+                    case "name":
+                        data.name = _string(jp);
+                        break;
+                    case "foundries":
+                        data.foundries = _string(jp);
+                        break;
+                    case "layerInfos":
+                        data.layerInfos = _string(jp);
+                        break;
+                    case "tokenSource":
+                        data.tokenSource = _string(jp);
+                        break;
+                    default:
+                        jp.skipChildren();
+                };
             };
+
+            return data;
         };
 
-        // Add tokenstream to fielddocument
-        this.addTV(fieldName, this.getPrimaryData(), mtts);
 
-        // Get foundry info
-        if (node.containsKey("foundries"))
-            this.addKeywords(
-                "foundries",
-                (String) node.get("foundries")
-                );
+        // Get a scalar value as a string
+        private static String _string (JsonParser jp) throws IOException {
+            String value = jp.getValueAsString();
+            jp.skipChildren();
+            return value;
+        };
 
-        // Get layer info
-        if (node.containsKey("layerInfos"))
-            this.addStored("layerInfos", (String) node.get("layerInfos"));
 
-        // Get tokenSource info
-        if (node.containsKey("tokenSource"))
-            this.addStored("tokenSource", (String) node.get("tokenSource"));
+        // Add all tokens of the stream
+        private static void _stream (JsonParser jp, StreamData data)
+                throws IOException {
+
+            if (!jp.isExpectedStartArrayToken()) {
+                jp.skipChildren();
+                return;
+            };
+
+            JsonToken t;
+            while ((t = jp.nextToken()) != JsonToken.END_ARRAY && t != null) {
+
+                if (t != JsonToken.START_ARRAY) {
+                    jp.skipChildren();
+                    continue;
+                };
+
+                MultiTermToken mtt = null;
+                CorpusDataException error = null;
+
+                // Iterate over all terms of the token
+                while ((t = jp.nextToken()) != JsonToken.END_ARRAY
+                        && t != null) {
+
+                    if (!t.isScalarValue() || t == JsonToken.VALUE_NULL) {
+                        jp.skipChildren();
+                        continue;
+                    };
+
+                    // Skip the rest of a malformed token
+                    if (error != null)
+                        continue;
+
+                    // Scan the term directly from the text buffer
+                    CharSequence term = t == JsonToken.VALUE_STRING
+                            ? CharBuffer.wrap(jp.getTextCharacters(),
+                                    jp.getTextOffset(), jp.getTextLength())
+                            : jp.getText();
+
+                    try {
+
+                        // Initialize MultiTermToken
+                        if (mtt == null) {
+                            mtt = new MultiTermToken(new MultiTerm(term));
+                        }
+
+                        // Add rest of the list
+                        else if (term.length() > 0) {
+                            mtt.add(new MultiTerm(term));
+                        };
+                    }
+                    catch (CorpusDataException cde) {
+                        if (mtt == null)
+                            error = cde;
+                        else
+                            log.error("{}: {}", cde.getErrorCode(),
+                                    cde.getMessage());
+                    };
+                };
+
+                if (error != null)
+                    data.errors.add(error);
+
+                // Add MultiTermToken to stream
+                else if (mtt != null)
+                    data.stream.addMultiTermToken(mtt);
+            };
+        };
     };
 
-    
+
     /**
      * Deserialize koral:field types for meta data
      */
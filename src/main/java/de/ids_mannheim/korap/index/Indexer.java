@@ -5,9 +5,20 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -23,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.util.KrillJson;
 import de.ids_mannheim.korap.util.KrillProperties;
 
 /**
@@ -33,9 +45,15 @@ import de.ids_mannheim.korap.util.KrillProperties;
  * (especially as it is way faster).
  * <br><br>
  * Input directories should contain files in the json.gz format. Files
- * of other formats will be skipped or not indexed. The output
+ * of other formats will be skipped or not indexed. Subdirectories
+ * are indexed recursively. The output
  * directory can be specified in the config file. See
  * src/main/resources/krill.properties.info to create a config file.
+ * <br><br>
+ * With multiple threads (<tt>krill.index.threads</tt> or
+ * <tt>--threads</tt>), files are decompressed and parsed by
+ * parse workers and added to the index by index workers,
+ * connected by bounded queues.
  * 
  * <pre>
  * Usage:
@@ -45,6 +63,9 @@ import de.ids_mannheim.korap.util.KrillProperties;
  * 
  * java -jar Krill-Indexer.jar --config [propfile] --input [input
  * directories] --output [output directory]
+ * 
+ * java -jar Krill-Indexer.jar -c [propfile] -i [input directories] -t
+ * [number of threads]
  * </pre>
  * 
  * 
@@ -53,8 +74,10 @@ import de.ids_mannheim.korap.util.KrillProperties;
  */
 public class Indexer {
     private KrillIndex index;
-    private int count;
+    private AtomicInteger count;
     private int commitCount;
+    private int threads;
+    private long start;
 
     private static String path = null;
     private static boolean addInsteadOfUpsert = false;
@@ -64,6 +87,13 @@ public class Indexer {
     private final static Logger log = LoggerFactory.getLogger(Indexer.class);
     private static final boolean DEBUG = false;
 
+    // Number of queued items per worker
+    private static final int QUEUE_SIZE = 16;
+
+    // Markers for the end of the queues
+    private static final File NO_MORE_FILES = new File("");
+    private static final FieldDocument NO_MORE_DOCS = new FieldDocument();
+
     /**
      * Construct a new indexer object.
      * 
@@ -82,10 +112,15 @@ public class Indexer {
         String commitCount = prop.getProperty("krill.index.commit.count",
                 "1000");
 
+        // Default to sequential indexing
+        String threads = prop.getProperty("krill.index.threads", "1");
+
         // Create a new index object based on the directory
         this.index = new KrillIndex(new MMapDirectory(Paths.get(path)));
-        this.count = 0;
+        this.count = new AtomicInteger(0);
         this.commitCount = Integer.parseInt(commitCount);
+        this.threads = Integer.parseInt(threads);
+        this.start = System.nanoTime();
 
         jsonFilePattern = Pattern.compile(".*\\.json\\.gz$");
     }
@@ -101,13 +136,22 @@ public class Indexer {
     private void parse (File dir) {
         Matcher matcher;
         for (String file : dir.list()) {
+
+            // Index subdirectories recursively
+            File sub = new File(dir, file);
+            if (sub.isDirectory()) {
+                this.parse(sub);
+                continue;
+            };
+
             matcher = jsonFilePattern.matcher(file);
             if (matcher.find()) {
                 file = dir.getPath() + '/' + file;
 
                 try {
                     if (addInsteadOfUpsert) {
-                        log.info("{} Add {} to the index. ", this.count, file);
+                        log.info("{} Add {} to the index. ", this.count.get(),
+                                file);
                         if (this.index.addDoc(new FileInputStream(file),
                                               true) == null) {
                             log.warn("fail.");
@@ -115,20 +159,21 @@ public class Indexer {
                         }
                     }
                     else {
-                        log.info("{} Add or update {} to the index. ", this.count, file);
+                        log.info("{} Add or update {} to the index. ",
+                                this.count.get(), file);
                         if (this.index.upsertDoc(new FileInputStream(file),
                                                  true) == null) {
                             log.warn("fail.");
                             continue;
                         };
                     };
-                    this.count++;
+                    int count = this.count.incrementAndGet();
                     if (DEBUG){
                         log.debug("Finished adding files. (" + count + ").");
                     }
 
                     // Commit in case the commit count is reached
-                    if ((this.count % this.commitCount) == 0) {
+                    if ((count % this.commitCount) == 0) {
 
                         // This will be done in addition to the
                         // autocommit initiated by KrillIndex
@@ -147,6 +192,158 @@ public class Indexer {
     }
 
 
+    /**
+     * Parse directories for document files using multiple threads.
+     * Files are passed to parse workers, decompressing and parsing
+     * the documents, and parsed documents are passed to index workers,
+     * adding them to the index. Both are connected by bounded queues,
+     * so memory consumption is limited, no matter how many
+     * files are indexed.
+     * In case a worker fails, the whole pipeline is cancelled.
+     * 
+     * @param dirs
+     *            The {@link File} directories containing
+     *            documents to index.
+     * @throws IOException
+     */
+    private void parse (List<File> dirs) throws IOException {
+        final BlockingQueue<File> files = new ArrayBlockingQueue<>(
+                this.threads * QUEUE_SIZE);
+        final BlockingQueue<FieldDocument> docs = new ArrayBlockingQueue<>(
+                this.threads * QUEUE_SIZE);
+
+        // The last parse worker marks the end of the documents
+        final AtomicInteger parsing = new AtomicInteger(this.threads);
+
+        // One thread passes the files to the workers
+        final ExecutorService workers = Executors
+                .newFixedThreadPool(2 * this.threads + 1);
+        final CompletionService<Void> pipeline =
+                new ExecutorCompletionService<>(workers);
+
+        // Make sure the writer is opened before documents are added
+        this.index.writer();
+
+        try {
+            pipeline.submit(() -> {
+                for (File dir : dirs) {
+                    log.info("Indexing files in " + dir);
+                    this._enqueue(dir, files);
+                };
+                for (int i = 0; i < this.threads; i++)
+                    files.put(NO_MORE_FILES);
+                return null;
+            });
+
+            for (int i = 0; i < this.threads; i++) {
+                pipeline.submit(() -> this._parseWorker(files, docs, parsing));
+                pipeline.submit(() -> this._indexWorker(docs));
+            };
+
+            // Wait for all workers to finish. The first failing worker
+            // (including errors) cancels the pipeline, as the other
+            // workers would otherwise block on the queues forever
+            for (int i = 0; i < 2 * this.threads + 1; i++)
+                pipeline.take().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexing was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Indexing failed", e.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        };
+    };
+
+
+    // Pass all document files of a directory to the queue
+    private void _enqueue (File dir, BlockingQueue<File> files)
+            throws InterruptedException {
+        for (String file : dir.list()) {
+            File f = new File(dir, file);
+
+            // Index subdirectories recursively
+            if (f.isDirectory()) {
+                this._enqueue(f, files);
+            }
+            else if (jsonFilePattern.matcher(file).find()) {
+                files.put(f);
+            }
+            else {
+                log.warn("Skip " + f.getPath()
+                        + " since it does not have json.gz format.");
+            };
+        };
+    };
+
+
+    // Decompress and parse document files
+    private Void _parseWorker (BlockingQueue<File> files,
+            BlockingQueue<FieldDocument> docs, AtomicInteger parsing)
+            throws InterruptedException {
+        for (File file = files.take(); file != NO_MORE_FILES;
+                file = files.take()) {
+
+            try (GZIPInputStream json = new GZIPInputStream(
+                    new FileInputStream(file))) {
+                docs.put(KrillJson.mapper().readValue(json,
+                        FieldDocument.class));
+            }
+            // Failing documents don't stop the workers
+            catch (IOException | RuntimeException e) {
+                log.error("File {} not found or unmappable: {}", file,
+                        e.getLocalizedMessage());
+                log.warn("fail.");
+            };
+        };
+
+        // All documents are parsed
+        if (parsing.decrementAndGet() == 0) {
+            for (int i = 0; i < this.threads; i++)
+                docs.put(NO_MORE_DOCS);
+        };
+        return null;
+    };
+
+
+    // Add parsed documents to the index
+    private Void _indexWorker (BlockingQueue<FieldDocument> docs)
+            throws InterruptedException {
+        for (FieldDocument doc = docs.take(); doc != NO_MORE_DOCS;
+                doc = docs.take()) {
+
+            if (DEBUG)
+                log.debug("Add {} to the index.", doc.getTextSigle());
+
+            try {
+                if (addInsteadOfUpsert) {
+                    this.index.addDoc(doc);
+                }
+                else {
+                    this.index.upsertDoc(doc);
+                };
+            }
+
+            // Failing documents don't stop the workers
+            catch (RuntimeException e) {
+                log.error("Unable to add {}: {}", doc.getTextSigle(),
+                        e.getLocalizedMessage());
+                log.warn("fail.");
+                continue;
+            };
+
+            // Commit in case the commit count is reached
+            if ((this.count.incrementAndGet() % this.commitCount) == 0) {
+                this.commit();
+            };
+        };
+        return null;
+    };
+
+
     /**
      * Commit changes to the index.
      */
@@ -158,6 +355,13 @@ public class Indexer {
         catch (IOException e) {
             log.error("Unable to commit to index " + path);
         }
+
+        // Report progress
+        int count = this.count.get();
+        double seconds = (System.nanoTime() - this.start) / 1000000000.0;
+        log.info("{} documents indexed in {} seconds ({} documents/s).",
+                count, String.format("%.1f", seconds),
+                String.format("%.1f", seconds > 0 ? count / seconds : 0.0));
     }
 
     private void closeIndex() throws IOException {
@@ -195,11 +399,16 @@ public class Indexer {
         options.addOption(Option.builder("a").longOpt("addInsteadofUpsert")
                 .desc("Always add files to the index, never update")
                 .build());
+        options.addOption(Option.builder("t").longOpt("threads")
+                .desc("number of parse and index workers (defaults to "
+                        + "krill.index.threads in the configuration or 1).")
+                .hasArg().argName("number of threads").build());
         
         CommandLineParser parser = new DefaultParser();
 
         String propFile = null;
         String[] inputDirectories = null;
+        String threads = null;
         try {
             CommandLine cmd = parser.parse(options, argv);
             log.info("Configuration file: " + cmd.getOptionValue("c"));
@@ -217,6 +426,11 @@ public class Indexer {
                 addInsteadOfUpsert = true;
             };
 
+            if (cmd.hasOption("t")) {
+                log.info("Threads: " + cmd.getOptionValue("t"));
+                threads = cmd.getOptionValue("t");
+            };
+
         }
         catch (MissingOptionException e) {
             HelpFormatter formatter = new HelpFormatter();
@@ -237,14 +451,29 @@ public class Indexer {
         try {
             // Get indexer object
             Indexer indexer = new Indexer(prop);
+            if (threads != null)
+                indexer.threads = Integer.parseInt(threads);
 
-            // Iterate over list of directories
-            for (String arg : inputDirectories) {
-                log.info("Indexing files in " + arg);
-                File f = new File(arg);
-                if (f.isDirectory())
-                    indexer.parse(f);
+            // Index all directories in parallel
+            if (indexer.threads > 1) {
+                List<File> dirs = new ArrayList<>();
+                for (String arg : inputDirectories) {
+                    File f = new File(arg);
+                    if (f.isDirectory())
+                        dirs.add(f);
+                };
+                indexer.parse(dirs);
             }
+
+            // Iterate over list of directories
+            else {
+                for (String arg : inputDirectories) {
+                    log.info("Indexing files in " + arg);
+                    File f = new File(arg);
+                    if (f.isDirectory())
+                        indexer.parse(f);
+                };
+            };
             indexer.closeIndex();
 
             // Final commit
@@ -253,14 +482,14 @@ public class Indexer {
             String message = "Added ";
             if (!addInsteadOfUpsert)
                 message += "or updated ";
-            message += indexer.count + " file";
-            if (indexer.count > 1) {
+            message += indexer.count.get() + " file";
+            if (indexer.count.get() > 1) {
                 message += "s";
             }
             System.out.println(message + ".");
         }
 
-        catch (IOException e) {
+        catch (IOException | NumberFormatException e) {
             log.error("Unexpected error: " + e);
             e.printStackTrace();
         }
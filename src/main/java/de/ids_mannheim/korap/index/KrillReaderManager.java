@@ -0,0 +1,162 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference counted manager of the {@link DirectoryReader}
+ * of an index.
+ *
+ * <p>
+ * Searches acquire the current reader and release it once
+ * they are finished. On refresh, a new reader is opened
+ * using {@link DirectoryReader#openIfChanged(DirectoryReader)},
+ * so unchanged segments are shared with the old reader.
+ * All registered {@link ReaderWarmer}s are run on the new
+ * leaves before the new reader is swapped in.
+ * The old reader is closed as soon as the last search
+ * holding it releases it.
+ * </p>
+ *
+ * <blockquote><pre>
+ * DirectoryReader reader = manager.acquire();
+ * try {
+ * // search ...
+ * }
+ * finally {
+ * manager.release(reader);
+ * };
+ * </pre></blockquote>
+ */
+public final class KrillReaderManager
+        extends ReferenceManager<DirectoryReader> {
+
+    // Logger
+    private final static Logger log = LoggerFactory
+            .getLogger(KrillReaderManager.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final List<ReaderWarmer> warmers;
+
+
+    /**
+     * Construct a new KrillReaderManager
+     * and open the initial reader of the directory.
+     * All leaves of the initial reader are warmed up.
+     *
+     * @param directory
+     *            The {@link Directory} of the index.
+     * @param warmers
+     *            A list of {@link ReaderWarmer}s,
+     *            that may be modified later on.
+     * @throws IOException
+     */
+    public KrillReaderManager (Directory directory,
+            List<ReaderWarmer> warmers) throws IOException {
+        this.warmers = warmers;
+        DirectoryReader reader = DirectoryReader.open(directory);
+        this.warm(reader, reader.leaves());
+        this.current = reader;
+    };
+
+
+    /**
+     * Get the current reader without acquiring it.
+     * The reader may be closed after the next refresh,
+     * so requests should use {@link #acquire()} instead.
+     *
+     * @return The current {@link DirectoryReader}.
+     */
+    public DirectoryReader current () {
+        return this.current;
+    };
+
+
+    @Override
+    protected void decRef (DirectoryReader reader) throws IOException {
+        reader.decRef();
+    };
+
+
+    @Override
+    protected DirectoryReader refreshIfNeeded (DirectoryReader reader)
+            throws IOException {
+        final DirectoryReader newReader = DirectoryReader
+                .openIfChanged(reader);
+
+        // Nothing changed
+        if (newReader == null)
+            return null;
+
+        if (DEBUG)
+            log.trace("Refreshed reader with {} leaves",
+                    newReader.leaves().size());
+
+        this.warm(newReader, newLeaves(reader, newReader));
+        return newReader;
+    };
+
+
+    @Override
+    protected boolean tryIncRef (DirectoryReader reader) {
+        return reader.tryIncRef();
+    };
+
+
+    @Override
+    protected int getRefCount (DirectoryReader reader) {
+        return reader.getRefCount();
+    };
+
+
+    // Run all warmers on the given leaves
+    private void warm (DirectoryReader reader,
+            List<LeafReaderContext> leaves) {
+        if (leaves.isEmpty())
+            return;
+
+        for (ReaderWarmer warmer : this.warmers) {
+
+            // Warming is best effort and should never
+            // prevent a new reader from being available
+            try {
+                warmer.warm(reader, leaves);
+            }
+            catch (Exception e) {
+                log.warn("Unable to warm up reader: {}",
+                        e.getLocalizedMessage());
+            };
+        };
+    };
+
+
+    // Get all leaves of the new reader that were not
+    // part of the old reader, including leaves with new deletions
+    private static List<LeafReaderContext> newLeaves (DirectoryReader oldReader,
+            DirectoryReader newReader) {
+        final Set<Object> oldKeys = new HashSet<>();
+        for (LeafReaderContext atomic : oldReader.leaves()) {
+            oldKeys.add(atomic.reader().getCombinedCoreAndDeletesKey());
+        };
+
+        final List<LeafReaderContext> leaves = new ArrayList<>();
+        for (LeafReaderContext atomic : newReader.leaves()) {
+            if (!oldKeys.contains(
+                    atomic.reader().getCombinedCoreAndDeletesKey()))
+                leaves.add(atomic);
+        };
+        return leaves;
+    };
+};
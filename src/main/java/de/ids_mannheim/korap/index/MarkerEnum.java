@@ -0,0 +1,178 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Enumerate the positions and payloads of a marker term
+ * (like pagebreaks) in the documents of a leaf.
+ *
+ * <p>
+ * The postings of the term are only advanced, so all matches of
+ * a page in the same leaf (which are ordered by document) share
+ * a single walk through the postings.
+ * Positions of the current document are read lazily and are
+ * remembered, so multiple matches in the same document
+ * don't reread them.
+ * In case a preceding document is requested, the postings
+ * are reopened.
+ * </p>
+ *
+ * <blockquote><pre>
+ * MarkerEnum me = new MarkerEnum(reader, "tokens", "~:base/s:pb");
+ * if (me.moveTo(docID)) {
+ * for (int i = 0; me.exists(i) &amp;&amp; me.position(i) &lt;= end; i++) {
+ * ...
+ * };
+ * };
+ * </pre></blockquote>
+ */
+public class MarkerEnum {
+    private final LeafReader reader;
+    private final String field;
+    private final BytesRef term;
+
+    private DocsAndPositionsEnum postings;
+    private boolean opened = false;
+
+    // The current document and its marker positions
+    private int target = -1;
+    private int freq = 0;
+    private int read = 0;
+    private int[] positions = new int[16];
+    private byte[][] payloads = new byte[16][];
+
+
+    /**
+     * Construct a new MarkerEnum.
+     *
+     * @param reader
+     *            The {@link LeafReader} to read markers from.
+     * @param field
+     *            The field of the markers.
+     * @param marker
+     *            The marker term, e.g. <tt>~:base/s:pb</tt>.
+     */
+    public MarkerEnum (LeafReader reader, String field, String marker) {
+        this.reader = reader;
+        this.field = field;
+        this.term = new BytesRef(marker);
+    };
+
+
+    /**
+     * Move to a document.
+     *
+     * @param docID
+     *            The local document identifier.
+     * @return <tt>true</tt> in case the marker occurs
+     *         in the document, otherwise <tt>false</tt>.
+     * @throws IOException
+     */
+    public boolean moveTo (int docID) throws IOException {
+
+        // Already there
+        if (docID == this.target)
+            return this.freq > 0;
+
+        // Postings can't go backwards
+        if (!this.opened || docID < this.target)
+            this.open();
+
+        this.target = docID;
+        this.freq = 0;
+        this.read = 0;
+
+        if (this.postings == null)
+            return false;
+
+        int doc = this.postings.docID();
+        if (doc < docID)
+            doc = this.postings.advance(docID);
+
+        if (doc != docID)
+            return false;
+
+        this.freq = this.postings.freq();
+        return true;
+    };
+
+
+    /**
+     * Check if there is an i-th marker in the current document.
+     * Markers are read lazily up to the requested one.
+     *
+     * @param i
+     *            The index of the marker in the document.
+     * @return <tt>true</tt> in case the marker exists,
+     *         otherwise <tt>false</tt>.
+     * @throws IOException
+     */
+    public boolean exists (int i) throws IOException {
+        while (this.read <= i && this.read < this.freq) {
+            if (this.read == this.positions.length) {
+                this.positions = Arrays.copyOf(this.positions,
+                        this.read * 2);
+                this.payloads = Arrays.copyOf(this.payloads, this.read * 2);
+            };
+
+            this.positions[this.read] = this.postings.nextPosition();
+            final BytesRef payload = this.postings.getPayload();
+            this.payloads[this.read] = (payload == null) ? null
+                    : Arrays.copyOfRange(payload.bytes, payload.offset,
+                            payload.offset + payload.length);
+            this.read++;
+        };
+        return i < this.read;
+    };
+
+
+    /**
+     * Get the position of the i-th marker in the current document.
+     * Requires a preceding successful call to {@link #exists(int)}.
+     *
+     * @param i
+     *            The index of the marker in the document.
+     * @return The token position of the marker.
+     */
+    public int position (int i) {
+        return this.positions[i];
+    };
+
+
+    /**
+     * Get the payload of the i-th marker in the current document.
+     * Requires a preceding successful call to {@link #exists(int)}.
+     *
+     * @param i
+     *            The index of the marker in the document.
+     * @return The payload of the marker or <tt>null</tt>.
+     */
+    public byte[] payload (int i) {
+        return this.payloads[i];
+    };
+
+
+    // Open the postings of the marker term
+    private void open () throws IOException {
+        this.opened = true;
+        this.postings = null;
+
+        final Terms terms = this.reader.terms(this.field);
+        if (terms == null)
+            return;
+
+        final TermsEnum termsEnum = terms.iterator(null);
+        if (!termsEnum.seekExact(this.term))
+            return;
+
+        this.postings = termsEnum.docsAndPositions(null, null,
+                DocsAndPositionsEnum.FLAG_PAYLOADS);
+    };
+};
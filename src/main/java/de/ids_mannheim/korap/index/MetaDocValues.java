@@ -0,0 +1,523 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+import de.ids_mannheim.korap.response.MetaField;
+import de.ids_mannheim.korap.util.KrillDate;
+
+/**
+ * Columnar access to metadata fields of documents in a leaf.
+ *
+ * <p>
+ * In addition to stored fields and indexed terms, {@link FieldDocument}
+ * writes DocValues for fields of the types <tt>type:string</tt>,
+ * <tt>type:date</tt>, <tt>type:integer</tt> and
+ * <tt>type:keywords</tt>, as well as for the <tt>UID</tt>.
+ * The DocValues of a field are written to a column named by its type
+ * (see {@link #field(String, String)}), so fields with the same key
+ * but different types in different documents don't conflict.
+ * </p>
+ *
+ * <p>
+ * Reading short fields from these columns avoids decompressing the
+ * stored fields of a document. Documents indexed before the columns
+ * were introduced don't have values, so callers need to fall back
+ * to stored fields in case no value is found.
+ * </p>
+ *
+ * <p>
+ * The numerical meta information of token streams (i.e. the
+ * <tt>-:</tt> prefixed counters like <tt>-:tokens</tt>) is written
+ * to numeric columns as well (see {@link #counter(String, String)}),
+ * so counters can be summed up for a set of documents without
+ * reading payloads from the postings.
+ * </p>
+ *
+ * <p>
+ * Instances are bound to a single leaf and are not thread-safe.
+ * </p>
+ */
+public class MetaDocValues {
+
+    private static final String PREFIX = "dv:";
+
+    private static final String STRING = "type:string";
+    private static final String DATE = "type:date";
+    private static final String INTEGER = "type:integer";
+    private static final String KEYWORDS = "type:keywords";
+
+    private static final String UID = "UID";
+
+    // Marks documents with counter columns
+    private static final String COUNTERS = PREFIX + "counters";
+
+    // Leaves with counter columns for all documents per core
+    private static final Map<Object, Boolean> counted = Collections
+            .synchronizedMap(new WeakHashMap<Object, Boolean>());
+
+    private final LeafReader reader;
+
+    // Opened columns per field
+    private final Map<String, SortedDocValues> sorted = new HashMap<>();
+    private final Map<String, NumericDocValues> numeric = new HashMap<>();
+    private final Map<String, Bits> docsWithField = new HashMap<>();
+
+
+    /**
+     * Construct a new MetaDocValues object for a leaf.
+     *
+     * @param reader
+     *            The {@link LeafReader} of the leaf.
+     */
+    public MetaDocValues (LeafReader reader) {
+        this.reader = reader;
+    };
+
+
+    /**
+     * Get the name of the DocValues column for a field.
+     *
+     * @param type
+     *            The type of the field, e.g. <tt>type:string</tt>.
+     * @param key
+     *            The key of the field.
+     * @return The name of the column.
+     */
+    public static String field (String type, String key) {
+        return PREFIX + type.substring(type.indexOf(':') + 1) + ':' + key;
+    };
+
+
+    /**
+     * Get the name of the DocValues column for a counter.
+     *
+     * @param field
+     *            The field of the token stream, e.g. <tt>tokens</tt>.
+     * @param type
+     *            The type of the counter, e.g. <tt>sentences</tt>.
+     * @return The name of the column.
+     */
+    public static String counter (String field, String type) {
+        return PREFIX + "counter:" + field + ':' + type;
+    };
+
+
+    /**
+     * Remove all DocValues written by this class from a document,
+     * so a document can be compiled more than once.
+     *
+     * @param doc
+     *            The {@link Document}.
+     */
+    static void removeAll (Document doc) {
+        final Set<String> names = new HashSet<>();
+        for (IndexableField field : doc.getFields()) {
+            if (field.name().startsWith(PREFIX))
+                names.add(field.name());
+        };
+        for (String name : names) {
+            doc.removeFields(name);
+        };
+    };
+
+
+    /**
+     * Add the DocValues of a date or integer field to a document.
+     *
+     * @param doc
+     *            The {@link Document}.
+     * @param mf
+     *            The {@link MetaField}.
+     * @param value
+     *            The numeric value as indexed.
+     */
+    static void addNumeric (Document doc, MetaField mf, long value) {
+        doc.add(new NumericDocValuesField(field(mf.type, mf.key), value));
+    };
+
+
+    /**
+     * Add the DocValues of a string field to a document.
+     * The <tt>UID</tt> is stored numerically.
+     *
+     * @param doc
+     *            The {@link Document}.
+     * @param mf
+     *            The {@link MetaField}.
+     */
+    static void addString (Document doc, MetaField mf) {
+        final String value = mf.values.get(0);
+
+        if (mf.key.equals(UID)) {
+            try {
+                doc.add(new NumericDocValuesField(field(INTEGER, UID),
+                        Integer.parseInt(value)));
+            }
+            catch (NumberFormatException e) {};
+            return;
+        };
+
+        final BytesRef bytes = new BytesRef(value);
+        if (bytes.length <= IndexWriter.MAX_TERM_LENGTH)
+            doc.add(new SortedDocValuesField(field(STRING, mf.key), bytes));
+    };
+
+
+    /**
+     * Add the DocValues of a keywords field to a document.
+     * Every whitespace separated keyword is stored as a
+     * value of a sorted set.
+     *
+     * @param doc
+     *            The {@link Document}.
+     * @param mf
+     *            The {@link MetaField}.
+     */
+    static void addKeywords (Document doc, MetaField mf) {
+        final String name = field(KEYWORDS, mf.key);
+        for (String value : mf.values) {
+            for (String keyword : value.split("\\s+")) {
+                if (keyword.isEmpty())
+                    continue;
+                final BytesRef bytes = new BytesRef(keyword);
+                if (bytes.length <= IndexWriter.MAX_TERM_LENGTH)
+                    doc.add(new SortedSetDocValuesField(name, bytes));
+            };
+        };
+    };
+
+
+    /**
+     * Add the counters of all token streams of a document
+     * as DocValues.
+     * The document is marked as having counter columns, even
+     * if it has no counters.
+     *
+     * @param doc
+     *            The {@link Document}.
+     */
+    static void addCounters (Document doc) {
+        final List<IndexableField> fields = new ArrayList<>(doc.getFields());
+        final Set<String> names = new HashSet<>();
+        for (IndexableField field : fields) {
+            if (!(field instanceof Field))
+                continue;
+
+            final TokenStream ts = ((Field) field).tokenStreamValue();
+            if (!(ts instanceof MultiTermTokenStream))
+                continue;
+
+            // Only a single value per document is allowed
+            for (Map.Entry<String, Integer> counter : ((MultiTermTokenStream) ts)
+                    .getMetaCounters().entrySet()) {
+                final String name = counter(field.name(), counter.getKey());
+                if (names.add(name))
+                    doc.add(new NumericDocValuesField(name, counter.getValue()));
+            };
+        };
+        doc.add(new NumericDocValuesField(COUNTERS, 1));
+    };
+
+
+    /**
+     * Check if all documents of the leaf have counter columns.
+     * This is not the case for documents indexed before counter
+     * columns were introduced.
+     *
+     * @return <tt>true</tt> in case counters can be summed up
+     *         from the columns, otherwise <tt>false</tt>.
+     * @throws IOException
+     */
+    public boolean hasCounters () throws IOException {
+        final Object core = this.reader.getCoreCacheKey();
+        Boolean complete = counted.get(core);
+        if (complete == null) {
+            final Bits bits = this.reader.getDocsWithField(COUNTERS);
+            complete = bits != null;
+            if (bits != null && !(bits instanceof Bits.MatchAllBits)) {
+                for (int i = 0; i < this.reader.maxDoc(); i++) {
+                    if (!bits.get(i)) {
+                        complete = false;
+                        break;
+                    };
+                };
+            };
+            counted.put(core, complete);
+        };
+        return complete;
+    };
+
+
+    /**
+     * Sum up the values of a counter for a set of documents.
+     * Documents without the counter have the value <tt>0</tt>.
+     *
+     * @param field
+     *            The field of the token stream.
+     * @param type
+     *            The type of the counter.
+     * @param docs
+     *            The {@link BitSet} of leaf local document ids.
+     * @return The sum or <tt>-1</tt> in case not all documents
+     *         of the leaf have counter columns
+     *         (see {@link #hasCounters()}).
+     * @throws IOException
+     */
+    public long sumCounter (String field, String type, BitSet docs)
+            throws IOException {
+        if (!this.hasCounters())
+            return -1;
+
+        final NumericDocValues values = this.numeric(counter(field, type));
+        if (values == null)
+            return 0;
+
+        long sum = 0;
+
+        // Scan the words of dense bit sets
+        if (docs instanceof FixedBitSet) {
+            final long[] words = ((FixedBitSet) docs).getBits();
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0L) {
+                    sum += values
+                            .get((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                };
+            };
+            return sum;
+        };
+
+        final DocIdSetIterator iter = new BitSetIterator(docs, 0);
+        for (int doc = iter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                doc = iter.nextDoc()) {
+            sum += values.get(doc);
+        };
+        return sum;
+    };
+
+
+    /**
+     * Get the UID of a document.
+     *
+     * @param localDocID
+     *            The leaf local document id.
+     * @return The UID or <tt>-1</tt> in case the document has no
+     *         UID column value.
+     * @throws IOException
+     */
+    public int getUID (int localDocID) throws IOException {
+        final String name = field(INTEGER, UID);
+        final NumericDocValues values = this.numeric(name);
+        if (values == null || !this.docsWithField(name).get(localDocID))
+            return -1;
+        return (int) values.get(localDocID);
+    };
+
+
+    /**
+     * Lift the metadata fields of a document that are representable
+     * by DocValues, i.e. string, date and integer fields and the UID.
+     * Keywords are not lifted, as their sorted sets lose the
+     * order of the keywords.
+     *
+     * @param localDocID
+     *            The leaf local document id.
+     * @param fields
+     *            The keys of the fields to lift.
+     * @return A map of lifted fields in the requested order.
+     *         Fields without column values are missing and need
+     *         to be read from stored fields.
+     * @throws IOException
+     */
+    public Map<String, MetaField> lift (int localDocID, List<String> fields)
+            throws IOException {
+        final Map<String, MetaField> lifted = new LinkedHashMap<>();
+        for (String key : fields) {
+            final MetaField mf = this.getField(key, localDocID);
+            if (mf != null)
+                lifted.put(key, mf);
+        };
+        return lifted;
+    };
+
+
+    /**
+     * Get a lifted metadata field of a document.
+     *
+     * @param key
+     *            The key of the field.
+     * @param localDocID
+     *            The leaf local document id.
+     * @return The {@link MetaField} or <tt>null</tt> in case the
+     *         document has no column value for the field.
+     * @throws IOException
+     */
+    public MetaField getField (String key, int localDocID)
+            throws IOException {
+
+        if (key.equals(UID)) {
+            final int uid = this.getUID(localDocID);
+            return uid == -1 ? null
+                    : new MetaField(key, INTEGER, Integer.toString(uid));
+        };
+
+        String value = this.getString(key, localDocID);
+        if (value != null)
+            return new MetaField(key, STRING, value);
+
+        Long number = this.getNumber(field(DATE, key), localDocID);
+        if (number != null) {
+            return new MetaField(key, DATE,
+                    new KrillDate(number.toString()).toDisplay());
+        };
+
+        number = this.getNumber(field(INTEGER, key), localDocID);
+        if (number != null)
+            return new MetaField(key, INTEGER, number.toString());
+
+        return null;
+    };
+
+
+    /**
+     * Get the value of a field of a document as a string,
+     * as represented by the stored field.
+     *
+     * @param key
+     *            The key of the field.
+     * @param localDocID
+     *            The leaf local document id.
+     * @return The value or <tt>null</tt> in case the
+     *         document has no column value for the field.
+     * @throws IOException
+     */
+    public String getValue (String key, int localDocID) throws IOException {
+        if (key.equals(UID)) {
+            final int uid = this.getUID(localDocID);
+            return uid == -1 ? null : Integer.toString(uid);
+        };
+
+        final String value = this.getString(key, localDocID);
+        if (value != null)
+            return value;
+
+        // Dates are stored as integers
+        Long number = this.getNumber(field(DATE, key), localDocID);
+        if (number != null)
+            return Integer.toString(number.intValue());
+
+        // Integers are stored as doubles
+        number = this.getNumber(field(INTEGER, key), localDocID);
+        if (number != null)
+            return Double.toString(number.doubleValue());
+
+        return null;
+    };
+
+
+    /**
+     * Get the distinct keywords of a document.
+     *
+     * @param key
+     *            The key of the field.
+     * @param localDocID
+     *            The leaf local document id.
+     * @return The keywords in sorted order or <tt>null</tt> in case
+     *         the leaf has no column for the field.
+     * @throws IOException
+     */
+    public String[] getKeywords (String key, int localDocID)
+            throws IOException {
+        final SortedSetDocValues values = this.reader
+                .getSortedSetDocValues(field(KEYWORDS, key));
+        if (values == null)
+            return null;
+
+        values.setDocument(localDocID);
+        final List<String> keywords = new ArrayList<>();
+        for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS;
+                ord = values.nextOrd()) {
+            keywords.add(values.lookupOrd(ord).utf8ToString());
+        };
+        return keywords.toArray(new String[keywords.size()]);
+    };
+
+
+    // Get the value of a string column
+    private String getString (String key, int localDocID) throws IOException {
+        final String name = field(STRING, key);
+        SortedDocValues values = this.sorted.get(name);
+        if (values == null) {
+            if (this.sorted.containsKey(name))
+                return null;
+            values = this.reader.getSortedDocValues(name);
+            this.sorted.put(name, values);
+            if (values == null)
+                return null;
+        };
+
+        final int ord = values.getOrd(localDocID);
+        if (ord == -1)
+            return null;
+        final BytesRef bytes = values.lookupOrd(ord);
+        return new String(bytes.bytes, bytes.offset, bytes.length,
+                StandardCharsets.UTF_8);
+    };
+
+
+    // Get the value of a numeric column
+    private Long getNumber (String name, int localDocID) throws IOException {
+        final NumericDocValues values = this.numeric(name);
+        if (values == null || !this.docsWithField(name).get(localDocID))
+            return null;
+        return values.get(localDocID);
+    };
+
+
+    private NumericDocValues numeric (String name) throws IOException {
+        NumericDocValues values = this.numeric.get(name);
+        if (values == null && !this.numeric.containsKey(name)) {
+            values = this.reader.getNumericDocValues(name);
+            this.numeric.put(name, values);
+            if (values != null)
+                this.docsWithField.put(name,
+                        this.reader.getDocsWithField(name));
+        };
+        return values;
+    };
+
+
+    private Bits docsWithField (String name) {
+        return this.docsWithField.get(name);
+    };
+};
@@ -3,7 +3,7 @@ package de.ids_mannheim.korap.index;
 import de.ids_mannheim.korap.util.CorpusDataException;
 import org.apache.lucene.util.BytesRef;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,16 +50,15 @@ public class MultiTerm implements Comparable<MultiTerm> {
     private boolean storeOffsets = false;
     public BytesRef payload = null;
 
-    private static ByteBuffer bb = ByteBuffer.allocate(64);
-    private static String[] stringOffset;
-
-    private static short i, l;
+    // Reusable buffer for typed payloads
+    private static final ThreadLocal<ByteBuffer> buffer = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocate(64));
 
     private static final int MAX_TERM_LENGTH = 1024;
     
     // This advices the java compiler to ignore all loggings
     public static final boolean DEBUG = false;
-    private final Logger log = LoggerFactory
+    private final static Logger log = LoggerFactory
             .getLogger(MultiTermTokenStream.class);
 
 
@@ -77,7 +76,7 @@ public class MultiTerm implements Comparable<MultiTerm> {
      * @param term
      *            The term surface (see synopsis).
      */
-    public MultiTerm (String term) throws CorpusDataException {
+    public MultiTerm (CharSequence term) throws CorpusDataException {
         _fromString(term);
     };
 
@@ -101,7 +100,7 @@ public class MultiTerm implements Comparable<MultiTerm> {
      */
     public MultiTerm (char prefix, String term) throws CorpusDataException {
         StringBuilder sb = new StringBuilder();
-        _fromString(sb.append(prefix).append(':').append(term).toString());
+        _fromString(sb.append(prefix).append(':').append(term));
     };
 
 
@@ -381,113 +380,222 @@ public class MultiTerm implements Comparable<MultiTerm> {
 
     /*
      * Deserialize MultiTerm from string representation.
+     * The surface is scanned in a single pass,
+     * typed payloads are written to a reusable buffer.
      */
-    private void _fromString (String term) throws CorpusDataException {
-        String[] termSurface = term.split("(?<!\\\\)\\$", 2);
+    private void _fromString (CharSequence term) throws CorpusDataException {
+        final int length = term.length();
 
         // Payload is given
-        if (termSurface.length == 2) {
-            String payloadStr = termSurface[1];
+        final int payloadPos = _indexOfUnescaped(term, '$', length);
+        final int surfaceEnd = payloadPos < 0 ? length : payloadPos;
 
-            // Payload has a type
-            if (payloadStr.charAt(0) == '<' && payloadStr.charAt(2) == '>') {
+        if (payloadPos >= 0)
+            this._parsePayload(term, payloadPos + 1, length);
 
-                // Rewind bytebuffer
-                bb.rewind();
+        // Parse offset information
+        final int offsetPos = _indexOfUnescaped(term, '#', surfaceEnd);
 
-                // Split payload at type marker boundaries
-                String[] pls = payloadStr.split("((?=<)|(?<=>))(?!\\A)");
+        if (offsetPos >= 0) {
 
-                l = 0; // Bytearray length
+            // Split start and end position of the offset
+            int dashPos = -1;
+            for (int k = offsetPos + 1; k < surfaceEnd; k++) {
+                if (term.charAt(k) == '-') {
+                    dashPos = k;
+                    break;
+                };
+            };
 
+            // Start and end is given
+            if (dashPos > offsetPos + 1) {
                 try {
-                    for (i = 1; i < pls.length;) {
-                        // Resize the bytebuffer
-                        if ((bb.capacity() - l) < 8) {
-                            bb = ByteBuffer.allocate(bb.capacity() + 8)
-                                    .put(bb.array());
-                            bb.position(l);
-                        };
-
-                        switch (pls[i-1]) {
-                            case "<b>": // byte
-                                bb.put(Byte.parseByte(pls[i]));
-                                l++;
-                                break;
-                            case "<s>": // short
-                                bb.putShort(Short.parseShort(pls[i]));
-                                l += 2;
-                                break;
-                            case "<i>": // integer
-                                bb.putInt(Integer.parseInt(pls[i]));
-                                l += 4;
-                                break;
-                            case "<l>": // long
-                                bb.putLong(Long.parseLong(pls[i]));
-                                l += 8;
-                                break;
-                            case "<x>": // bytes
-
-                                byte[] data = pls[i].getBytes(StandardCharsets.UTF_8);
-                                
-                                if ((bb.capacity() - l) < (data.length + 4)) {
-                                    bb = ByteBuffer.allocate(bb.capacity() + data.length + 4)
-                                            .put(bb.array());
-                                    bb.position(l);
-                                };
-
-                                bb.putInt(data.length);
-                                bb.put(data);
-                                l += data.length + 4;
-                                break;
-                        };
-                        i += 2;
-                    };
-
-                    byte[] bytes = new byte[l];
-                    System.arraycopy(bb.array(), 0, bytes, 0, l);
-                    this.payload = new BytesRef(bytes);
+                    this.start = Integer.parseInt(term, offsetPos + 1,
+                            dashPos, 10);
+                    this.end = Integer.parseInt(term, dashPos + 1,
+                            surfaceEnd, 10);
                 }
-                catch (Exception e) {
-                    if (DEBUG)
-                        log.warn(e.getMessage());
+                catch (NumberFormatException e) {
+                    throw new CorpusDataException(952,
+                            "Given offset information is not numeric in "
+                                    + term.subSequence(0, surfaceEnd));
                 };
             }
-
-            // Payload is a string
             else {
-                this.payload = new BytesRef(payloadStr);
+                throw new CorpusDataException(953,
+                        "Given offset information is incomplete in "
+                                + term.subSequence(0, surfaceEnd));
             };
         };
 
-        // Parse offset information
-        stringOffset = termSurface[0].split("(?<!\\\\)\\#", 2);
+        this.setTerm(_unescape(term, offsetPos < 0 ? surfaceEnd : offsetPos));
+    };
 
-        if (stringOffset.length == 2) {
 
-            // Split start and end position of the offset
-            String[] offset = stringOffset[1].split("\\-", 2);
+    // Parse the payload following the dollar sign
+    private void _parsePayload (CharSequence term, int from, int to) {
 
-            // Start and end is given
-            if (offset.length == 2 && offset[0].length() > 0) {
-                try {
-                    this.start = Integer.parseInt(offset[0]);
-                    this.end = Integer.parseInt(offset[1]);
+        // Payload has no type
+        if (to - from < 3 || term.charAt(from) != '<'
+                || term.charAt(from + 2) != '>') {
 
+            // Payload is a string
+            this.payload = new BytesRef(term.subSequence(from, to));
+            return;
+        };
+
+        ByteBuffer bb = buffer.get();
+        bb.clear();
+
+        try {
+
+            // Split payload at type marker boundaries
+            // and treat segments pairwise as type and value
+            int segStart = from, typeStart = -1;
+            for (int k = from + 1; k <= to; k++) {
+                if (k < to && term.charAt(k) != '<'
+                        && term.charAt(k - 1) != '>')
+                    continue;
+
+                // Type segment
+                if (typeStart == -1) {
+                    typeStart = (k - segStart == 3
+                            && term.charAt(segStart) == '<'
+                            && term.charAt(segStart + 2) == '>') ? segStart
+                                    : -2;
                 }
-                catch (NumberFormatException e) {
-                    throw new CorpusDataException(952,
-                            "Given offset information is not numeric in "
-                                    + termSurface[0]);
+
+                // Value segment of an unknown type
+                else if (typeStart == -2) {
+                    typeStart = -1;
+                }
+
+                // Value segment
+                else {
+                    bb = _putValue(bb, term.charAt(typeStart + 1), term,
+                            segStart, k);
+                    typeStart = -1;
                 };
+                segStart = k;
+            };
+
+            this.payload = new BytesRef(
+                    Arrays.copyOf(bb.array(), bb.position()));
+        }
+        catch (Exception e) {
+            if (DEBUG)
+                log.warn(e.getMessage());
+        };
+    };
+
+
+    // Write a typed payload value to the buffer
+    private static ByteBuffer _putValue (ByteBuffer bb, char type,
+            CharSequence term, int from, int to) {
+        int value;
+        switch (type) {
+            case 'b': // byte
+                value = Integer.parseInt(term, from, to, 10);
+                if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE)
+                    throw new NumberFormatException("Value out of range");
+                return _reserve(bb, 1).put((byte) value);
+
+            case 's': // short
+                value = Integer.parseInt(term, from, to, 10);
+                if (value < Short.MIN_VALUE || value > Short.MAX_VALUE)
+                    throw new NumberFormatException("Value out of range");
+                return _reserve(bb, 2).putShort((short) value);
+
+            case 'i': // integer
+                return _reserve(bb, 4)
+                        .putInt(Integer.parseInt(term, from, to, 10));
+
+            case 'l': // long
+                return _reserve(bb, 8)
+                        .putLong(Long.parseLong(term, from, to, 10));
+
+            case 'x': // bytes
+                return _putUTF8(_reserve(bb, 4 + (to - from) * 3), term,
+                        from, to);
+        };
+
+        // Unknown types are ignored
+        return bb;
+    };
+
+
+    // Write length prefixed UTF-8 bytes to the buffer,
+    // unpaired surrogates are replaced like in String#getBytes
+    private static ByteBuffer _putUTF8 (ByteBuffer bb, CharSequence term,
+            int from, int to) {
+        final int lengthPos = bb.position();
+        bb.putInt(0);
+
+        char c;
+        for (int k = from; k < to; k++) {
+            c = term.charAt(k);
+            if (c < 0x80) {
+                bb.put((byte) c);
+            }
+            else if (c < 0x800) {
+                bb.put((byte) (0xC0 | (c >> 6)));
+                bb.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && k + 1 < to
+                    && Character.isLowSurrogate(term.charAt(k + 1))) {
+                int cp = Character.toCodePoint(c, term.charAt(++k));
+                bb.put((byte) (0xF0 | (cp >> 18)));
+                bb.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                bb.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                bb.put((byte) (0x80 | (cp & 0x3F)));
+            }
+            else if (Character.isSurrogate(c)) {
+                bb.put((byte) '?');
             }
             else {
-                throw new CorpusDataException(953,
-                        "Given offset information is incomplete in "
-                                + termSurface[0]);
+                bb.put((byte) (0xE0 | (c >> 12)));
+                bb.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                bb.put((byte) (0x80 | (c & 0x3F)));
             };
         };
-        this.setTerm(_unescape(stringOffset[0]));
+
+        bb.putInt(lengthPos, bb.position() - lengthPos - 4);
+        return bb;
+    };
+
+
+    // Resize the buffer of the current thread if necessary
+    private static ByteBuffer _reserve (ByteBuffer bb, int bytes) {
+        if (bb.remaining() >= bytes)
+            return bb;
+
+        ByteBuffer resized = ByteBuffer
+                .allocate(Math.max(bb.capacity() * 2, bb.position() + bytes));
+        bb.flip();
+        resized.put(bb);
+        buffer.set(resized);
+        return resized;
+    };
+
+
+    // Find the first occurrence of a character not preceded by a backslash
+    private static int _indexOfUnescaped (CharSequence term, char c, int to) {
+        for (int k = 0; k < to; k++) {
+            if (term.charAt(k) == c
+                    && (k == 0 || term.charAt(k - 1) != '\\'))
+                return k;
+        };
+        return -1;
+    };
+
+
+    // Unescape the term up to a position
+    private String _unescape (CharSequence term, int to) {
+        for (int k = 0; k < to; k++) {
+            if (term.charAt(k) == '\\')
+                return _unescape(term.subSequence(0, to).toString());
+        };
+        return term.subSequence(0, to).toString();
     };
 
 
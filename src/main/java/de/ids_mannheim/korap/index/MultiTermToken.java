@@ -31,7 +31,7 @@ public class MultiTermToken {
 
     // This advices the java compiler to ignore all loggings
     public static final boolean DEBUG = false;
-    private final Logger log = LoggerFactory
+    private final static Logger log = LoggerFactory
             .getLogger(MultiTermTokenStream.class);
 
 
@@ -52,11 +52,23 @@ public class MultiTermTokenStream extends TokenStream {
     private final Logger log = LoggerFactory
             .getLogger(MultiTermTokenStream.class);
 
-    private List<MultiTermToken> multiTermTokens;
+    // Terms of all tokens are stored in shared arrays:
+    // The terms of a token are sorted once when the token is added
+    // and range from tokenTerms[t] to tokenTerms[t+1].
+    private int tokens = 0, terms = 0, charsLength = 0, bytesLength = 0;
+    private int[] tokenTerms;
+    private int[] termChars, termLength, termStart, termEnd;
+    private int[] termPayload, termPayloadLength;
+    private int[] termPayloadRef, termPayloadRefLength;
+    private char[] chars;
+    private byte[] bytes;
+
     private int mttIndex = 0, mtIndex = 0;
     private short i = 0;
 
-    private ByteBuffer payload = ByteBuffer.allocate(512);
+    // Reusable payload for the current term
+    private byte[] payloadBytes = new byte[64];
+    private final BytesRef payload = new BytesRef(payloadBytes);
 
 
     /**
@@ -66,7 +78,17 @@ public class MultiTermTokenStream extends TokenStream {
         this.charTermAttr = this.addAttribute(CharTermAttribute.class);
         this.posIncrAttr = this.addAttribute(PositionIncrementAttribute.class);
         this.payloadAttr = this.addAttribute(PayloadAttribute.class);
-        this.multiTermTokens = new ArrayList<MultiTermToken>(100);
+        this.tokenTerms = new int[101];
+        this.termChars = new int[256];
+        this.termLength = new int[256];
+        this.termStart = new int[256];
+        this.termEnd = new int[256];
+        this.termPayload = new int[256];
+        this.termPayloadLength = new int[256];
+        this.termPayloadRef = new int[256];
+        this.termPayloadRefLength = new int[256];
+        this.chars = new char[2048];
+        this.bytes = new byte[2048];
     };
 
 
@@ -117,13 +139,25 @@ public class MultiTermTokenStream extends TokenStream {
 
     /**
      * Append a {@link MultiTermToken} to the MultiTermTokenStream.
+     * The terms of the token are copied to the stream,
+     * so later modifications of the token are not reflected.
      * 
      * @param mtt
      *            A {@link MultiTermToken}.
      * @return The {@link MultiTermTokenStream} object for chaining.
      */
     public MultiTermTokenStream addMultiTermToken (MultiTermToken mtt) {
-        this.multiTermTokens.add(mtt);
+        if (this.tokens + 1 == this.tokenTerms.length)
+            this.tokenTerms = Arrays.copyOf(this.tokenTerms,
+                    this.tokenTerms.length * 2);
+
+        // Sort the MultiTermToken
+        mtt.sort();
+        for (MultiTerm mt : mtt.terms) {
+            this._addTerm(this.terms++, mt);
+        };
+
+        this.tokenTerms[++this.tokens] = this.terms;
         return this;
     };
 
@@ -196,7 +230,7 @@ public class MultiTermTokenStream extends TokenStream {
         try {
             MultiTerm mt = new MultiTerm('-', key);
             mt.setPayload(value);
-            this.multiTermTokens.get(0).add(mt);
+            this._addMetaTerm(mt);
         }
         catch (CorpusDataException cde) {
             log.error("{}: {}", cde.getErrorCode(), cde.getMessage());
@@ -220,7 +254,7 @@ public class MultiTermTokenStream extends TokenStream {
         try {
             MultiTerm mt = new MultiTerm('-', key);
             mt.setPayload(value);
-            this.multiTermTokens.get(0).add(mt);
+            this._addMetaTerm(mt);
         }
         catch (CorpusDataException cde) {
             log.error("{}: {}", cde.getErrorCode(), cde.getMessage());
@@ -244,7 +278,7 @@ public class MultiTermTokenStream extends TokenStream {
         try {
             MultiTerm mt = new MultiTerm('-', key);
             mt.setPayload(value);
-            this.multiTermTokens.get(0).add(mt);
+            this._addMetaTerm(mt);
         }
         catch (CorpusDataException cde) {
             log.error("{}: {}", cde.getErrorCode(), cde.getMessage());
@@ -268,7 +302,7 @@ public class MultiTermTokenStream extends TokenStream {
         try {
             MultiTerm mt = new MultiTerm('-', key);
             mt.setPayload(value);
-            this.multiTermTokens.get(0).add(mt);
+            this._addMetaTerm(mt);
         }
         catch (CorpusDataException cde) {
             log.error("{}: {}", cde.getErrorCode(), cde.getMessage());
@@ -292,7 +326,7 @@ public class MultiTermTokenStream extends TokenStream {
         try {
             MultiTerm mt = new MultiTerm('-', key);
             mt.setPayload(value);
-            this.multiTermTokens.get(0).add(mt);
+            this._addMetaTerm(mt);
         }
         catch (CorpusDataException cde) {
             log.error("{}: {}", cde.getErrorCode(), cde.getMessage());
@@ -302,8 +336,44 @@ public class MultiTermTokenStream extends TokenStream {
     };
 
 
+    /**
+     * Get the numerical meta information of the stream,
+     * i.e. the value of the first occurrence of every term
+     * prefixed with <tt>-:</tt>, as it is read from the
+     * payloads in the index (see
+     * {@link de.ids_mannheim.korap.KrillCollection#numberOf(String, String)}).
+     *
+     * @return A map of meta keys (e.g. <tt>tokens</tt>) to their
+     *         values.
+     */
+    public Map<String, Integer> getMetaCounters () {
+        Map<String, Integer> counters = new LinkedHashMap<>();
+        for (int t = 0; t < this.terms; t++) {
+            if (this.termLength[t] < 2 || this.chars[this.termChars[t]] != '-'
+                    || this.chars[this.termChars[t] + 1] != ':')
+                continue;
+
+            String key = new String(this.chars, this.termChars[t] + 2,
+                    this.termLength[t] - 2);
+            if (counters.containsKey(key))
+                continue;
+
+            // The payload starts with the offsets
+            if (this.termStart[t] != this.termEnd[t])
+                counters.put(key, this.termStart[t]);
+
+            else if (this.termPayloadLength[t] >= 4)
+                counters.put(key, ByteBuffer
+                        .wrap(this.bytes, this.termPayload[t], 4).getInt());
+        };
+        return counters;
+    };
+
+
     /**
      * Get a {@link MultiTermToken} by index.
+     * The token is a copy, so modifications are not
+     * reflected in the stream.
      * 
      * @param index
      *            The index position of a {@link MultiTermToken} in
@@ -311,7 +381,25 @@ public class MultiTermTokenStream extends TokenStream {
      * @return A {@link MultiTermToken}.
      */
     public MultiTermToken get (int index) {
-        return this.multiTermTokens.get(index);
+        if (index < 0 || index >= this.tokens)
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + this.tokens);
+
+        MultiTermToken mtt = null;
+        for (int t = this.tokenTerms[index]; t < this.tokenTerms[index
+                + 1]; t++) {
+            if (mtt == null)
+                mtt = new MultiTermToken(this._getTerm(t));
+            else
+                mtt.add(this._getTerm(t));
+        };
+
+        // Token without terms
+        if (mtt == null) {
+            mtt = new MultiTermToken(new MultiTerm());
+            mtt.terms.clear();
+        };
+        return mtt;
     };
 
 
@@ -323,7 +411,7 @@ public class MultiTermTokenStream extends TokenStream {
      *         the stream.
      */
     public int getSize () {
-        return this.multiTermTokens.size();
+        return this.tokens;
     };
 
 
@@ -334,13 +422,115 @@ public class MultiTermTokenStream extends TokenStream {
      */
     public String toString () {
         StringBuffer sb = new StringBuffer();
-        for (MultiTermToken mtt : this.multiTermTokens) {
-            sb.append(mtt.toString());
+        for (int t = 0; t < this.tokens; t++) {
+            sb.append(this.get(t).toString());
         };
         return sb.toString();
     };
 
 
+    // Store a term at a term index
+    private void _addTerm (int t, MultiTerm mt) {
+        this._growTerms(t + 1);
+
+        // Copy the term surface
+        int length = mt.term.length();
+        if (this.charsLength + length > this.chars.length)
+            this.chars = Arrays.copyOf(this.chars,
+                    Math.max(this.chars.length * 2, this.charsLength + length));
+        mt.term.getChars(0, length, this.chars, this.charsLength);
+        this.termChars[t] = this.charsLength;
+        this.termLength[t] = length;
+        this.charsLength += length;
+
+        this.termStart[t] = mt.start;
+        this.termEnd[t] = mt.end;
+
+        // Copy the payload.
+        // The complete byte array is indexed, while the
+        // offset and length of the BytesRef are kept for copies
+        if (mt.payload == null) {
+            this.termPayloadLength[t] = -1;
+            return;
+        };
+
+        length = mt.payload.bytes.length;
+        if (this.bytesLength + length > this.bytes.length)
+            this.bytes = Arrays.copyOf(this.bytes,
+                    Math.max(this.bytes.length * 2, this.bytesLength + length));
+        System.arraycopy(mt.payload.bytes, 0, this.bytes, this.bytesLength,
+                length);
+        this.termPayload[t] = this.bytesLength;
+        this.termPayloadLength[t] = length;
+        this.termPayloadRef[t] = mt.payload.offset;
+        this.termPayloadRefLength[t] = mt.payload.length;
+        this.bytesLength += length;
+    };
+
+
+    // Get a term by its term index
+    private MultiTerm _getTerm (int t) {
+        MultiTerm mt = new MultiTerm();
+        mt.term = new String(this.chars, this.termChars[t],
+                this.termLength[t]);
+        mt.start = this.termStart[t];
+        mt.end = this.termEnd[t];
+        if (this.termPayloadLength[t] >= 0)
+            mt.payload = new BytesRef(
+                    Arrays.copyOfRange(this.bytes, this.termPayload[t],
+                            this.termPayload[t] + this.termPayloadLength[t]),
+                    this.termPayloadRef[t], this.termPayloadRefLength[t]);
+        return mt;
+    };
+
+
+    // Add a meta term to the first token
+    private void _addMetaTerm (MultiTerm mt) {
+        MultiTermToken mtt = this.get(0);
+        mtt.add(mt);
+        mtt.sort();
+
+        // Make room for the sorted terms of the first token
+        int from = this.tokenTerms[1];
+        int shift = mtt.terms.size() - from;
+        this._growTerms(this.terms + shift);
+        for (int[] a : new int[][] { this.termChars, this.termLength,
+                this.termStart, this.termEnd, this.termPayload,
+                this.termPayloadLength, this.termPayloadRef,
+                this.termPayloadRefLength }) {
+            System.arraycopy(a, from, a, from + shift, this.terms - from);
+        };
+        this.terms += shift;
+        for (int t = 1; t <= this.tokens; t++) {
+            this.tokenTerms[t] += shift;
+        };
+
+        // Store the terms of the first token
+        int t = 0;
+        for (MultiTerm term : mtt.terms) {
+            this._addTerm(t++, term);
+        };
+    };
+
+
+    // Ensure the capacity of the term arrays
+    private void _growTerms (int size) {
+        if (size <= this.termChars.length)
+            return;
+
+        size = Math.max(this.termChars.length * 2, size);
+        this.termChars = Arrays.copyOf(this.termChars, size);
+        this.termLength = Arrays.copyOf(this.termLength, size);
+        this.termStart = Arrays.copyOf(this.termStart, size);
+        this.termEnd = Arrays.copyOf(this.termEnd, size);
+        this.termPayload = Arrays.copyOf(this.termPayload, size);
+        this.termPayloadLength = Arrays.copyOf(this.termPayloadLength, size);
+        this.termPayloadRef = Arrays.copyOf(this.termPayloadRef, size);
+        this.termPayloadRefLength = Arrays.copyOf(this.termPayloadRefLength,
+                size);
+    };
+
+
     // Deserialize a string
     private void _fromString (String stream) throws CorpusDataException {
         Matcher matcher = pattern.matcher(stream);
@@ -365,90 +555,72 @@ public class MultiTermTokenStream extends TokenStream {
     public final boolean incrementToken () throws IOException {
         this.payloadAttr.setPayload(null);
 
-        // Last token reached
-        if (this.multiTermTokens.size() == this.mttIndex) {
+        // Last term reached
+        if (this.terms == this.mtIndex) {
             reset();
             return false;
         };
 
-        // Get current token
-        MultiTermToken mtt = this.multiTermTokens.get(this.mttIndex);
-
-        // Sort the MultiTermToken
-        mtt.sort();
-
-        // Last term reached
-        if (mtt.terms.size() == this.mtIndex) {
-            this.mtIndex = 0;
+        // Skip tokens without terms and
+        // get the token of the current term
+        while (this.tokenTerms[this.mttIndex + 1] <= this.mtIndex)
             this.mttIndex++;
 
-            // Last term of last token reached
-            if (this.multiTermTokens.size() == this.mttIndex) {
-                reset();
-                return false;
-            }
-
-            // Get last token
-            else {
-                mtt = this.multiTermTokens.get(this.mttIndex);
-            };
-        };
-
-        // Get current term
-        MultiTerm mt = mtt.terms.get(this.mtIndex);
+        final int t = this.mtIndex;
+        final boolean first = this.tokenTerms[this.mttIndex] == t;
 
         // Set the relative position to the former term
-        posIncrAttr.setPositionIncrement(this.mtIndex == 0 ? 1 : 0);
-        charTermAttr.setEmpty();
-        charTermAttr.append(mt.term);
+        posIncrAttr.setPositionIncrement(first ? 1 : 0);
+        charTermAttr.copyBuffer(this.chars, this.termChars[t],
+                this.termLength[t]);
 
-        payload.rewind();
+        int length = 0;
 
         // There is offset information
-        if (mt.start != mt.end) {
+        if (this.termStart[t] != this.termEnd[t]) {
             if (DEBUG)
-                log.trace("MultiTerm with payload offset: {}-{}", mt.start,
-                        mt.end);
+                log.trace("MultiTerm with payload offset: {}-{}",
+                        this.termStart[t], this.termEnd[t]);
 
             // Add offsets to BytesRef payload
-            payload.putInt(mt.start);
-            payload.putInt(mt.end);
+            length = _putInt(this.termStart[t], 0);
+            length = _putInt(this.termEnd[t], length);
         };
 
         // There is payload in the MultiTerm
-        if (mt.payload != null) {
+        if (this.termPayloadLength[t] >= 0) {
+            if (length + this.termPayloadLength[t] > this.payloadBytes.length)
+                this._resizePayload(length + this.termPayloadLength[t]);
 
-            payload.put(mt.payload.bytes);
+            System.arraycopy(this.bytes, this.termPayload[t],
+                    this.payloadBytes, length, this.termPayloadLength[t]);
+            length += this.termPayloadLength[t];
 
             if (DEBUG)
-                log.trace("Create payload[1] {}", payload.toString());
+                log.trace("Create payload[1] with {} bytes", length);
         };
 
-        // There is payload in the current token to index
-        // This seems to be heavily risky!
-        if (payload.position() > 0) {
-
-            if (payload.hasArray()) {
-                payloadAttr.setPayload(new BytesRef(Arrays.copyOfRange(
-                        payload.array(), payload.arrayOffset(),
-                        payload.arrayOffset() + payload.position())));
-            }
-            else {
-                log.error("This should never happen!");
-            };
+        // There is payload in the current token to index.
+        // The payload is copied by the indexer, so the BytesRef
+        // is reused for all terms
+        if (length > 0) {
+            this.payload.bytes = this.payloadBytes;
+            this.payload.offset = 0;
+            this.payload.length = length;
+            payloadAttr.setPayload(this.payload);
 
             if (DEBUG)
-                log.trace("Set payload[2] {}", payload.toString());
+                log.trace("Set payload[2] {}", this.payload.toString());
         };
 
         // Some debug loggings
         if (DEBUG) {
             StringBuilder sb = new StringBuilder("Index: [");
-            sb.append(mt.term);
-            if (payload.position() > 0)
-                sb.append('$').append(payload.toString());
+            sb.append(charTermAttr.toString());
+            if (length > 0)
+                sb.append('$').append(this.payload.toString());
             sb.append(']');
-            sb.append(" with increment ").append(this.mtIndex == 0 ? 1 : 0);
+            sb.append(" with increment ").append(first ? 1 : 0);
 
             log.trace(sb.toString());
         };
@@ -458,6 +630,25 @@ public class MultiTermTokenStream extends TokenStream {
     };
 
 
+    // Write an integer to the payload
+    private int _putInt (int value, int pos) {
+        if (pos + 4 > this.payloadBytes.length)
+            this._resizePayload(pos + 4);
+        this.payloadBytes[pos] = (byte) (value >> 24);
+        this.payloadBytes[pos + 1] = (byte) (value >> 16);
+        this.payloadBytes[pos + 2] = (byte) (value >> 8);
+        this.payloadBytes[pos + 3] = (byte) value;
+        return pos + 4;
+    };
+
+
+    // Resize the payload buffer
+    private void _resizePayload (int size) {
+        this.payloadBytes = Arrays.copyOf(this.payloadBytes,
+                Math.max(this.payloadBytes.length * 2, size));
+    };
+
+
     @Override
     public void reset () {
         this.mttIndex = 0;
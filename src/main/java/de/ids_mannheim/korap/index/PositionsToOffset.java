@@ -1,29 +1,53 @@
 package de.ids_mannheim.korap.index;
 
-import java.util.*;
-import java.io.*;
-
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import org.apache.lucene.index.DocsAndPositionsEnum;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Map token positions of documents in a leaf to character offsets.
+ *
+ * <p>
+ * Positions are collected using {@link #add(int, int)} and
+ * resolved lazily in a single batch on the first request
+ * of an offset. The batch is sorted by position, so every
+ * position term (<tt>_[pos]</tt>) is only seeked once
+ * for all documents, reusing a single {@link TermsEnum} and
+ * {@link DocsAndPositionsEnum} per leaf.
+ * Positions and offsets are stored in primitive
+ * long-keyed structures.
+ * </p>
+ */
 public class PositionsToOffset {
     private String field;
     private LeafReaderContext atomic;
     private boolean processed = false;
-    private Integer[] pair;
-    private ByteBuffer bbOffset;
 
-    HashSet<PositionsToOffsetArray> positions;
-    HashMap<PositionsToOffsetArray, Integer[]> offsets;
+    // Positions to resolve
+    private long[] positions = new long[64];
+    private int positionsSize = 0;
+
+    // Resolved offsets
+    private final OffsetMap offsets = new OffsetMap();
+
+    // Reusable enums and term bytes
+    private TermsEnum termsEnum;
+    private DocsAndPositionsEnum docs;
+    private boolean termsOpened = false;
+    private final BytesRefBuilder term = new BytesRefBuilder();
+
+    // Marker enums shared by all matches of the leaf
+    private HashMap<String, MarkerEnum> markers;
 
     private final static Logger log = LoggerFactory
             .getLogger(PositionsToOffset.class);
@@ -31,213 +55,182 @@ public class PositionsToOffset {
     // This advices the java compiler to ignore all loggings
     public static final boolean DEBUG = false;
 
-    private class PositionsToOffsetArray {
-        public int docID;
-        public int pos;
-
-
-        public PositionsToOffsetArray (int docID, int pos) {
-            this.docID = docID;
-            this.pos = pos;
-        };
-
-
-        public int hashCode () {
-            long hashCode;
-            hashCode = (docID * Integer.MAX_VALUE) - Integer.MAX_VALUE + pos;
-            return Long.valueOf(hashCode).hashCode();
-        };
-
-
-        public boolean equals (Object obj) {
-            if (obj instanceof PositionsToOffsetArray) {
-                PositionsToOffsetArray ptoa = (PositionsToOffsetArray) obj;
-                return (ptoa.docID == this.docID && ptoa.pos == this.pos);
-            };
-            return false;
-        };
-    };
-
 
     public PositionsToOffset (LeafReaderContext atomic, String field) {
         this.field = field;
         this.atomic = atomic;
-        this.positions = new HashSet<>(64);
-        this.offsets = new HashMap<>(64);
-        this.bbOffset = ByteBuffer.allocate(8);
     };
 
 
     public void clear () {
-        this.positions.clear();
+        this.positionsSize = 0;
         this.offsets.clear();
-        this.bbOffset.clear();
         this.processed = false;
     };
 
 
     public void add (int docID, int pos) {
-        this.add(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public void add (PositionsToOffsetArray ptoa) {
         if (DEBUG)
-            log.trace("Add positionsToOffsetArray {}/{}", ptoa.docID, ptoa.pos);
-        if (ptoa.pos < 0)
+            log.trace("Add position {}/{}", docID, pos);
+
+        if (pos < 0)
             return;
 
-        if (this.processed && this.exists(ptoa))
+        final long key = key(docID, pos);
+
+        if (this.processed && this.offsets.containsKey(key))
             return;
 
         if (DEBUG)
             log.trace("Reopen processing");
 
-        this.positions.add(ptoa);
+        if (this.positionsSize == this.positions.length)
+            this.positions = Arrays.copyOf(this.positions,
+                    this.positionsSize * 2);
+
+        this.positions[this.positionsSize++] = key;
         this.processed = false;
     };
 
 
     public boolean exists (int docID, int pos) {
-        return this.offsets.containsKey(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public boolean exists (PositionsToOffsetArray ptoa) {
-        return this.offsets.containsKey(ptoa);
+        return this.offsets.containsKey(key(docID, pos));
     };
 
 
     public int start (int docID, int pos) {
-        return this.start(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public int start (PositionsToOffsetArray ptoa) {
-        if (ptoa.pos < 0)
+        if (pos < 0)
             return 0;
 
         if (!processed)
             this.offsets();
 
-        Integer[] pair = this.offsets.get(ptoa);
+        final long pair = this.offsets.get(key(docID, pos));
 
-        if (pair == null)
+        if (pair == OffsetMap.MISSING)
             return 0;
 
-        return pair[0];
+        return (int) (pair >>> 32);
     };
 
 
     public int end (int docID, int pos) {
-        return this.end(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public int end (PositionsToOffsetArray ptoa) {
-        if (ptoa.pos < 0)
+        if (pos < 0)
             return -1;
 
         if (!processed)
             this.offsets();
 
-        Integer[] pair = this.offsets.get(ptoa);
-        if (pair == null)
-            return -1;
-
-        return pair[1];
-    };
+        final long pair = this.offsets.get(key(docID, pos));
 
+        if (pair == OffsetMap.MISSING)
+            return -1;
 
-    public Integer[] span (int docID, int pos) {
-        return this.span(new PositionsToOffsetArray(docID, pos));
+        return (int) pair;
     };
 
 
-    public Integer[] span (PositionsToOffsetArray ptoa) {
+    public int[] span (int docID, int pos) {
         if (!processed)
             this.offsets();
-        return this.offsets.get(ptoa);
+
+        final long pair = this.offsets.get(key(docID, pos));
+
+        if (pair == OffsetMap.MISSING)
+            return null;
+
+        return new int[] { (int) (pair >>> 32), (int) pair };
     };
 
 
-    public void addOffset (int docID, int pos, int startOffset, int endOffset) {
-        offsets.put(new PositionsToOffsetArray(docID, pos),
-                new Integer[] { startOffset, endOffset });
+    public void addOffset (int docID, int pos, int startOffset,
+            int endOffset) {
+        this.offsets.put(key(docID, pos), pair(startOffset, endOffset));
     };
 
 
-    public HashMap<PositionsToOffsetArray, Integer[]> offsets () {
+    // Resolve all collected positions
+    public void offsets () {
         if (processed)
-            return offsets;
+            return;
 
         if (DEBUG)
             log.trace("Process offsets");
 
-        StringBuilder sb = new StringBuilder().append('_');
-
         try {
-            Terms terms = atomic.reader().fields().terms(field);
+            if (!this.termsOpened) {
+                this.termsOpened = true;
+                final Terms terms = atomic.reader().fields().terms(field);
+                if (terms != null)
+                    this.termsEnum = terms.iterator(null);
+            };
 
-            if (terms != null) {
-                // TODO: Maybe reuse a termsEnum!
+            if (this.termsEnum != null) {
 
-                final TermsEnum termsEnum = terms.iterator(null);
+                // Sort by position and document
+                Arrays.sort(this.positions, 0, this.positionsSize);
 
-                for (PositionsToOffsetArray posDoc : positions) {
-                    if (this.exists(posDoc))
+                long last = -1;
+                int seekedPos = -1;
+                boolean found = false;
+
+                for (int i = 0; i < this.positionsSize; i++) {
+                    final long key = this.positions[i];
+
+                    // Ignore duplicates and known offsets
+                    if (key == last || this.offsets.containsKey(key))
                         continue;
+                    last = key;
 
-                    int docID = posDoc.docID;
+                    final int pos = (int) (key >>> 32);
+                    final int docID = (int) key;
 
-                    /*
-                    int pos = posDoc[1];
-                    Integer[] posDoc2 = new Integer[2];
-                    posDoc2[0] = docID;
-                    posDoc2[1] = pos;
-                    */
+                    // Seek the position term once for all documents
+                    if (pos != seekedPos) {
+                        seekedPos = pos;
+                        found = this.termsEnum.seekExact(this.posTerm(pos));
 
-                    sb.append(posDoc.pos);
+                        if (found) {
+
+                            // Start an iterator to fetch all payloads of the term
+                            this.docs = this.termsEnum.docsAndPositions(null,
+                                    this.docs,
+                                    DocsAndPositionsEnum.FLAG_PAYLOADS);
+                            found = this.docs != null;
+                        };
+                    };
+
+                    if (!found)
+                        continue;
 
-                    Term term = new Term(field, sb.toString());
-                    sb.setLength(1);
+                    if (DEBUG)
+                        log.trace("Search for _{} in doc {}", pos, docID);
 
-                    // Set the position in the iterator to the term that is seeked
-                    if (termsEnum.seekExact(term.bytes())) {
+                    if (this.docs.docID() < docID)
+                        this.docs.advance(docID);
+
+                    if (this.docs.docID() != docID)
+                        continue;
+
+                    this.docs.nextPosition();
+
+                    final BytesRef payload = this.docs.getPayload();
+
+                    if (payload != null && payload.length == 8) {
+                        final int startOffset = readInt(payload.bytes,
+                                payload.offset);
+                        final int endOffset = readInt(payload.bytes,
+                                payload.offset + 4);
+                        this.offsets.put(key, pair(startOffset, endOffset));
 
                         if (DEBUG)
-                            log.trace("Search for {} in doc {} with pos {}",
-                                    term.toString(), posDoc.docID, posDoc.pos);
-
-                        // Start an iterator to fetch all payloads of the term
-                        DocsAndPositionsEnum docs = termsEnum.docsAndPositions(
-                                null, null, DocsAndPositionsEnum.FLAG_PAYLOADS);
-
-                        if (docs.advance(docID) == docID) {
-                            docs.nextPosition();
-
-                            BytesRef payload = docs.getPayload();
-
-                            if (payload.length == 8) {
-                                bbOffset.clear();
-                                bbOffset.put(payload.bytes, payload.offset, 8);
-                                bbOffset.rewind();
-                                Integer[] offsetArray = new Integer[2];
-                                offsetArray[0] = bbOffset.getInt();
-                                offsetArray[1] = bbOffset.getInt();
-                                offsets.put(posDoc, offsetArray);
-
-                                if (DEBUG)
-                                    log.trace("Found {}-{} for {}",
-                                            offsetArray[0], offsetArray[1],
-                                            term.toString());
-                            }
-
-                            else {
-                                log.error("Doc {} has no offsets stored for {}",
-                                        docID, term.toString());
-                            };
-                        };
+                            log.trace("Found {}-{} for _{}", startOffset,
+                                    endOffset, pos);
+                    }
+
+                    else {
+                        log.error("Doc {} has no offsets stored for _{}",
+                                docID, pos);
                     };
                 };
             };
@@ -247,12 +240,165 @@ public class PositionsToOffset {
         };
 
         processed = true;
-        positions.clear();
-        return offsets;
+        this.positionsSize = 0;
     };
 
 
     public LeafReaderContext getLeafReader () {
         return this.atomic;
     };
+
+
+    /**
+     * Get the {@link MarkerEnum} of a marker term in the leaf,
+     * shared by all matches using this object.
+     *
+     * @param field
+     *            The field of the marker.
+     * @param marker
+     *            The marker term.
+     * @return The shared {@link MarkerEnum}.
+     */
+    public MarkerEnum getMarkers (String field, String marker) {
+        if (this.markers == null)
+            this.markers = new HashMap<>(4);
+
+        final String key = field + '#' + marker;
+        MarkerEnum me = this.markers.get(key);
+        if (me == null) {
+            me = new MarkerEnum(this.atomic.reader(), field, marker);
+            this.markers.put(key, me);
+        };
+        return me;
+    };
+
+
+    // Write the position term _[pos] to the reusable term bytes
+    private BytesRef posTerm (int pos) {
+        this.term.clear();
+        this.term.append((byte) '_');
+
+        // Write digits in reverse order and flip them
+        final int start = this.term.length();
+        do {
+            this.term.append((byte) ('0' + (pos % 10)));
+            pos /= 10;
+        } while (pos > 0);
+
+        final byte[] bytes = this.term.bytes();
+        for (int i = start, j = this.term.length() - 1; i < j; i++, j--) {
+            final byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        };
+        return this.term.get();
+    };
+
+
+    // Positions are the major part of the key,
+    // so sorted keys group documents per position term
+    private static long key (int docID, int pos) {
+        return ((long) pos << 32) | (docID & 0xFFFFFFFFL);
+    };
+
+
+    private static long pair (int startOffset, int endOffset) {
+        return ((long) startOffset << 32) | (endOffset & 0xFFFFFFFFL);
+    };
+
+
+    // Read a big endian integer
+    private static int readInt (byte[] b, int i) {
+        return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16)
+                | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    };
+
+
+    /*
+     * Open addressing hash map of non-negative long keys
+     * to long values, avoiding boxed keys and values.
+     */
+    private static final class OffsetMap {
+        static final long MISSING = Long.MIN_VALUE;
+        private static final long FREE = -1L;
+
+        private long[] keys;
+        private long[] values;
+        private int size = 0;
+
+
+        OffsetMap () {
+            this.keys = new long[64];
+            this.values = new long[64];
+            Arrays.fill(this.keys, FREE);
+        };
+
+
+        void clear () {
+            if (this.size == 0)
+                return;
+            Arrays.fill(this.keys, FREE);
+            this.size = 0;
+        };
+
+
+        boolean containsKey (long key) {
+            return this.keys[this.slot(key)] == key;
+        };
+
+
+        long get (long key) {
+            final int slot = this.slot(key);
+            return this.keys[slot] == key ? this.values[slot] : MISSING;
+        };
+
+
+        void put (long key, long value) {
+            int slot = this.slot(key);
+            if (this.keys[slot] != key) {
+
+                // Keep the load factor below 0.5
+                if ((this.size + 1) * 2 > this.keys.length) {
+                    this.grow();
+                    slot = this.slot(key);
+                };
+                this.keys[slot] = key;
+                this.size++;
+            };
+            this.values[slot] = value;
+        };
+
+
+        // Find the slot of the key or the free slot to insert it
+        private int slot (long key) {
+            final int mask = this.keys.length - 1;
+            int slot = hash(key) & mask;
+            while (this.keys[slot] != FREE && this.keys[slot] != key)
+                slot = (slot + 1) & mask;
+            return slot;
+        };
+
+
+        private void grow () {
+            final long[] oldKeys = this.keys;
+            final long[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            this.values = new long[oldKeys.length * 2];
+            Arrays.fill(this.keys, FREE);
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    final int slot = this.slot(oldKeys[i]);
+                    this.keys[slot] = oldKeys[i];
+                    this.values[slot] = oldValues[i];
+                };
+            };
+        };
+
+
+        private static int hash (long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        };
+    };
 };
@@ -0,0 +1,61 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warm up new leaves by running a list of
+ * {@link SpanQuery}s on them, so the postings of
+ * frequently searched terms are loaded
+ * before the first request hits the new segments.
+ */
+public class QueryWarmer implements ReaderWarmer {
+
+    // Logger
+    private final static Logger log = LoggerFactory
+            .getLogger(QueryWarmer.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final List<SpanQuery> queries;
+
+
+    /**
+     * Construct a new QueryWarmer.
+     *
+     * @param queries
+     *            The {@link SpanQuery}s to run on new leaves.
+     */
+    public QueryWarmer (List<SpanQuery> queries) {
+        this.queries = queries;
+    };
+
+
+    @Override
+    public void warm (IndexReader reader, List<LeafReaderContext> leaves)
+            throws IOException {
+        for (SpanQuery query : this.queries) {
+            final SearchExecutionContext sec = new SearchExecutionContext(
+                    reader, query);
+
+            int matches = 0;
+            for (LeafReaderContext atomic : leaves) {
+                final Spans spans = sec.getSpans(atomic,
+                        atomic.reader().getLiveDocs());
+                while (spans.next())
+                    matches++;
+            };
+
+            if (DEBUG)
+                log.trace("Warmed up {} with {} matches", query, matches);
+        };
+    };
+};
@@ -0,0 +1,32 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+
+/**
+ * A warmer is run by the {@link KrillReaderManager} on
+ * newly opened leaves of a refreshed reader, before
+ * the reader is made visible to searches.
+ * Warmers may e.g. load postings of frequent queries or
+ * cache virtual corpora for the new segments, so the
+ * first requests after a commit don't pay for it.
+ */
+public interface ReaderWarmer {
+
+    /**
+     * Warm up new leaves of a reader.
+     *
+     * @param reader
+     *            The newly opened {@link IndexReader}.
+     * @param leaves
+     *            The leaves of the reader that were not
+     *            part of the previous reader (with identical
+     *            deletions).
+     * @throws IOException
+     */
+    public void warm (IndexReader reader, List<LeafReaderContext> leaves)
+            throws IOException;
+};
@@ -0,0 +1,101 @@
+package de.ids_mannheim.korap.index;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deadline of a single search request.
+ *
+ * <p>
+ * Instead of running a timer thread per request, the
+ * deadline is based on {@link System#nanoTime()} and
+ * checked cooperatively from the span loops
+ * (in all threads searching leaves of the request).
+ * The search can also be cancelled from the outside,
+ * e.g. in case the client is gone.
+ * </p>
+ *
+ * <blockquote><pre>
+ * SearchDeadline deadline = new SearchDeadline(timeout);
+ * while (spans.next()) {
+ * if (deadline.isStopped())
+ * break;
+ * ...
+ * };
+ * </pre></blockquote>
+ */
+public final class SearchDeadline {
+
+    private final long start;
+    private final long timeout;
+    private volatile boolean cancelled = false;
+
+
+    /**
+     * Construct a new SearchDeadline starting now.
+     *
+     * @param timeout
+     *            The timeout in milliseconds.
+     *            A timeout of <tt>0</tt> is exceeded at the first
+     *            check (as with the former timer thread),
+     *            a negative timeout is exceeded immediately.
+     */
+    public SearchDeadline (long timeout) {
+        this.start = System.nanoTime();
+        this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+    };
+
+
+    /**
+     * Get the time elapsed since the start of the request.
+     *
+     * @return The elapsed time in milliseconds.
+     */
+    public long getTime () {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.start);
+    };
+
+
+    /**
+     * Check if the timeout is exceeded.
+     *
+     * @return <tt>true</tt> in case the timeout is exceeded,
+     *         otherwise <tt>false</tt>.
+     */
+    public boolean isExceeded () {
+        return System.nanoTime() - this.start > this.timeout;
+    };
+
+
+    /**
+     * Cancel the search cooperatively.
+     * The search will stop the next time
+     * the deadline is checked.
+     */
+    public void cancel () {
+        this.cancelled = true;
+    };
+
+
+    /**
+     * Check if the search was cancelled.
+     *
+     * @return <tt>true</tt> in case the search was cancelled,
+     *         otherwise <tt>false</tt>.
+     */
+    public boolean isCancelled () {
+        return this.cancelled;
+    };
+
+
+    /**
+     * Check if the search should stop,
+     * either because it was cancelled
+     * or because the timeout is exceeded.
+     *
+     * @return <tt>true</tt> in case the search should stop,
+     *         otherwise <tt>false</tt>.
+     */
+    public boolean isStopped () {
+        return this.cancelled || this.isExceeded();
+    };
+};
@@ -0,0 +1,196 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.query.spans.DocApproximation;
+
+/**
+ * The execution context of a single search request.
+ * It binds a rewritten {@link SpanQuery} to the
+ * {@link IndexReader} it is executed on and holds the
+ * {@link TermContext}s of all terms of the query,
+ * precomputed once for all leaves of the reader.
+ *
+ * <p>
+ * The term contexts are read-only after construction,
+ * so the context can be shared by threads searching
+ * different leaves of the same request, while concurrent
+ * requests on the same index don't share any state.
+ * </p>
+ *
+ * <blockquote><pre>
+ * SearchExecutionContext sec =
+ * new SearchExecutionContext(reader, query);
+ * for (LeafReaderContext atomic : sec.getReader().leaves()) {
+ * Spans spans = sec.getSpans(atomic, bitset);
+ * ...
+ * };
+ * </pre></blockquote>
+ */
+public final class SearchExecutionContext {
+
+    // Logger
+    private final static Logger log = LoggerFactory
+            .getLogger(SearchExecutionContext.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final IndexReader reader;
+    private final SpanQuery query;
+    private final Map<Term, TermContext> termContexts;
+    private final Term[] requiredTerms;
+
+
+    /**
+     * Construct a new SearchExecutionContext.
+     * The query will be rewritten (e.g. for regex and wildcard
+     * queries) and the term contexts of all terms will be
+     * precomputed.
+     *
+     * @param reader
+     *            The {@link IndexReader} to search in.
+     * @param query
+     *            The {@link SpanQuery} to search for.
+     * @throws IOException
+     */
+    public SearchExecutionContext (IndexReader reader, SpanQuery query)
+            throws IOException {
+        this.reader = reader;
+        this.query = rewrite(reader, query);
+        this.termContexts = Collections
+                .unmodifiableMap(buildTermContexts(reader, this.query));
+        this.requiredTerms = DocApproximation.requiredTerms(this.query,
+                this.termContexts);
+    };
+
+
+    /**
+     * Get the {@link IndexReader} the query is executed on.
+     *
+     * @return The {@link IndexReader}.
+     */
+    public IndexReader getReader () {
+        return this.reader;
+    };
+
+
+    /**
+     * Get the rewritten {@link SpanQuery}.
+     *
+     * @return The rewritten {@link SpanQuery}.
+     */
+    public SpanQuery getQuery () {
+        return this.query;
+    };
+
+
+    /**
+     * Get the precomputed term contexts.
+     *
+     * @return An unmodifiable map of {@link TermContext}s.
+     */
+    public Map<Term, TermContext> getTermContexts () {
+        return this.termContexts;
+    };
+
+
+    /**
+     * Get the terms every match of the query requires,
+     * cheapest first.
+     *
+     * @return The required terms.
+     */
+    public Term[] getRequiredTerms () {
+        return this.requiredTerms;
+    };
+
+
+    /**
+     * Get the {@link Spans} of the query for a leaf of the reader.
+     * Spans aligning documents of sub spans skip to documents
+     * containing all required terms of the query,
+     * before reading any positions (see {@link DocApproximation}).
+     *
+     * @param atomic
+     *            The {@link LeafReaderContext} to search in.
+     * @param acceptDocs
+     *            {@link Bits} vector of accepted documents.
+     * @return The {@link Spans} of the query.
+     * @throws IOException
+     */
+    public Spans getSpans (LeafReaderContext atomic, Bits acceptDocs)
+            throws IOException {
+        final Spans spans = this.query.getSpans(atomic, acceptDocs,
+                this.termContexts);
+
+        if (spans != null && this.requiredTerms.length > 0)
+            DocApproximation.approximate(spans, new DocApproximation(atomic,
+                    acceptDocs, this.requiredTerms, this.termContexts));
+
+        return spans;
+    };
+
+
+    // Rewrite query (for regex and wildcard queries)
+    // Based on core/src/java/org/apache/lucene/search/IndexSearcher.java
+    // and highlighter/src/java/org/apache/lucene/search/
+    //   postingshighlight/PostingsHighlighter.java
+    private static SpanQuery rewrite (IndexReader reader, SpanQuery query)
+            throws IOException {
+        for (Query rewrittenQuery = query.rewrite(reader);
+             !rewrittenQuery.equals(query);
+             rewrittenQuery = query.rewrite(reader)) {
+            query = (SpanQuery) rewrittenQuery;
+        };
+
+        if (DEBUG)
+            log.trace("Rewritten query is {}", query.toString());
+
+        return query;
+    };
+
+
+    // Build term contexts for all terms of the query
+    private static Map<Term, TermContext> buildTermContexts (
+            IndexReader reader, SpanQuery query) throws IOException {
+
+        final Set<Term> terms = new HashSet<>();
+        try {
+            query.extractTerms(terms);
+        }
+
+        // Terms of this query can't be extracted, so all
+        // spans will seek their terms per leaf
+        catch (UnsupportedOperationException e) {
+            if (DEBUG)
+                log.trace("Unable to extract terms from {}", query);
+            return new HashMap<>(0);
+        };
+
+        final IndexReaderContext topContext = reader.getContext();
+        final Map<Term, TermContext> termContexts = new HashMap<>(
+                terms.size() * 2);
+        for (final Term term : terms) {
+            termContexts.put(term, TermContext.build(topContext, term));
+        };
+        return termContexts;
+    };
+};
@@ -0,0 +1,450 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.cache.VirtualCorpusCache;
+import de.ids_mannheim.korap.collection.VirtualCorpusFilter;
+import de.ids_mannheim.korap.util.Fingerprinter;
+import de.ids_mannheim.korap.util.KrillProperties;
+
+/**
+ * Warm up new leaves by compiling named virtual corpora
+ * into the {@link VirtualCorpusCache}, so the corpus
+ * bits are cached per leaf fingerprint before the first
+ * request referring to the corpus hits the new segments.
+ *
+ * <p>
+ * Corpora are compiled in a background job, so requests
+ * are not blocked by the warm-up and fall back to compiling
+ * corpora themselves, in case the job is not finished yet.
+ * The reader is kept open until the job is done.
+ * Jobs for subsequent refreshes of the reader only compile
+ * the corpora for the new leaves and run one after another.
+ * Refreshes while a job is waiting are merged into the waiting
+ * job, so only the newest reader is kept open and leaves
+ * that were merged away in the meantime are not compiled.
+ * The corpora of a job are compiled in parallel
+ * and progress and timing are logged.
+ * After compilation, leaves that are no longer part of the
+ * reader are removed from the corpora in the background,
+ * instead of on the next request.
+ * </p>
+ */
+public class VirtualCorpusWarmer implements ReaderWarmer {
+
+    // Logger
+    private final static Logger log = LoggerFactory
+            .getLogger(VirtualCorpusWarmer.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final List<String> vcIds;
+    private final int threads;
+
+    // Runs warm-up jobs one after another
+    private final ThreadPoolExecutor jobs;
+
+    // The job waiting to be run
+    private Job pending = null;
+
+    // Report of the last job
+    private volatile int corpora = 0;
+    private volatile int failures = 0;
+    private volatile long time = 0;
+
+
+    /**
+     * Construct a new VirtualCorpusWarmer.
+     *
+     * @param vcIds
+     *            The identifiers of named virtual corpora
+     *            to preload or <tt>null</tt> for all named
+     *            virtual corpora in <tt>krill.namedVC</tt>.
+     */
+    public VirtualCorpusWarmer (List<String> vcIds) {
+        this(vcIds, 1);
+    };
+
+
+    /**
+     * Construct a new VirtualCorpusWarmer.
+     *
+     * @param vcIds
+     *            The identifiers of named virtual corpora
+     *            to preload or <tt>null</tt> for all named
+     *            virtual corpora in <tt>krill.namedVC</tt>.
+     * @param threads
+     *            The number of threads compiling
+     *            virtual corpora in parallel.
+     */
+    public VirtualCorpusWarmer (List<String> vcIds, int threads) {
+        this.vcIds = vcIds;
+        this.threads = Math.max(threads, 1);
+
+        // The job thread terminates when idle
+        this.jobs = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                _threadFactory("KrillVCWarmup"));
+        this.jobs.allowCoreThreadTimeOut(true);
+    };
+
+
+    @Override
+    public void warm (IndexReader reader, List<LeafReaderContext> leaves)
+            throws IOException {
+
+        // Keep the reader open until the job is done
+        if (!reader.tryIncRef())
+            return;
+
+        final Job job = new Job(reader, new ArrayList<>(leaves));
+        final Job superseded;
+        synchronized (this) {
+            superseded = this.pending;
+            this.pending = job;
+
+            // Merge the leaves of the waiting job,
+            // that are still part of the new reader
+            if (superseded != null)
+                job.merge(superseded);
+        };
+
+        // The waiting job is already scheduled
+        if (superseded != null) {
+            this._release(superseded.reader);
+            return;
+        };
+
+        try {
+            this.jobs.execute(this::_run);
+        }
+        catch (RejectedExecutionException e) {
+            final Job rejected;
+            synchronized (this) {
+                rejected = this.pending;
+                this.pending = null;
+            };
+            if (rejected != null)
+                this._release(rejected.reader);
+        };
+    };
+
+
+    // Run the waiting job
+    private void _run () {
+        final Job job;
+        synchronized (this) {
+            job = this.pending;
+            this.pending = null;
+        };
+
+        if (job == null)
+            return;
+
+        try {
+            this.compile(job.leaves);
+
+            // Remove leaves from the corpora,
+            // that are no longer part of the reader
+            final Set<String> fingerprints = new HashSet<>();
+            for (LeafReaderContext atomic : job.reader.leaves()) {
+                fingerprints.add(Fingerprinter.create(atomic.reader()
+                        .getCombinedCoreAndDeletesKey().toString()));
+            };
+            for (String vcId : this._ids()) {
+                VirtualCorpusCache.prune(vcId, fingerprints);
+            };
+        }
+        catch (RuntimeException e) {
+            log.warn("Unable to warm up named virtual corpora: {}",
+                    e.getLocalizedMessage());
+        }
+        finally {
+            this._release(job.reader);
+        };
+    };
+
+
+    /**
+     * Compile the named virtual corpora for the given leaves
+     * in parallel and wait until all corpora are compiled.
+     *
+     * @param leaves
+     *            The leaves to compile the corpora for.
+     */
+    public void compile (List<LeafReaderContext> leaves) {
+        final List<String> ids = this._ids();
+
+        if (ids.isEmpty() || leaves.isEmpty())
+            return;
+
+        final long start = System.currentTimeMillis();
+        final int total = ids.size();
+
+        // Log progress in steps of 10 percent
+        final int step = Math.max(total / 10, 1);
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        final ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(this.threads, total),
+                _threadFactory("KrillVCCompiler"));
+
+        try {
+            final List<Future<?>> futures = new ArrayList<>(total);
+            for (String vcId : ids) {
+                futures.add(pool.submit(() -> {
+                    if (!_compile(vcId, leaves))
+                        failed.incrementAndGet();
+
+                    final int n = done.incrementAndGet();
+                    if (n % step == 0 && n < total)
+                        log.info("Compiled {} of {} named virtual corpora",
+                                n, total);
+                }));
+            };
+
+            for (Future<?> future : futures) {
+                future.get();
+            };
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            log.warn("Unable to compile named virtual corpora: {}",
+                    e.getLocalizedMessage());
+        }
+        finally {
+            pool.shutdownNow();
+        };
+
+        this.corpora = done.get() - failed.get();
+        this.failures = failed.get();
+        this.time = System.currentTimeMillis() - start;
+
+        log.info(
+                "Compiled {} named virtual corpora on {} leaves in {} ms"
+                        + " ({} failed)",
+                this.corpora, leaves.size(), this.time, this.failures);
+    };
+
+
+    /**
+     * Wait until all scheduled warm-up jobs are done.
+     *
+     * @throws InterruptedException
+     */
+    public void await () throws InterruptedException {
+        try {
+            this.jobs.submit(() -> {}).get();
+        }
+        catch (ExecutionException e) {
+            log.warn(e.getLocalizedMessage());
+        };
+    };
+
+
+    /**
+     * Get the number of compiled virtual corpora
+     * of the last warm-up job.
+     *
+     * @return The number of compiled corpora.
+     */
+    public int getCorpora () {
+        return this.corpora;
+    };
+
+
+    /**
+     * Get the number of virtual corpora of the last
+     * warm-up job that failed to compile.
+     *
+     * @return The number of failures.
+     */
+    public int getFailures () {
+        return this.failures;
+    };
+
+
+    /**
+     * Get the duration of the last warm-up job.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getTime () {
+        return this.time;
+    };
+
+
+    /**
+     * List all named virtual corpora in a directory.
+     * Corpora are stored as <tt>&lt;id&gt;.jsonld</tt> or
+     * <tt>&lt;id&gt;.jsonld.gz</tt>, identifiers may contain
+     * a user directory, like <tt>user/vc-name</tt>.
+     *
+     * @param path
+     *            The path of the directory.
+     * @return The sorted identifiers of the corpora.
+     */
+    public static List<String> namedVCs (String path) {
+        final TreeSet<String> ids = new TreeSet<>();
+        File dir = new File(path);
+
+        // For testing
+        if (!dir.isDirectory() && KrillProperties.isTest) {
+            final URL url = VirtualCorpusWarmer.class
+                    .getResource(path.startsWith("/") ? path : "/" + path);
+            if (url != null) {
+                try {
+                    dir = new File(url.toURI());
+                }
+                catch (URISyntaxException e) {
+                    log.warn(e.getLocalizedMessage());
+                };
+            };
+        };
+
+        _scan(dir, "", ids);
+        return new ArrayList<>(ids);
+    };
+
+
+    // Collect corpus identifiers of a directory
+    // and its user directories
+    private static void _scan (File dir, String prefix, TreeSet<String> ids) {
+        final File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            final String name = file.getName();
+            if (file.isDirectory()) {
+                if (prefix.isEmpty())
+                    _scan(file, name + "/", ids);
+            }
+            else if (name.endsWith(".jsonld")) {
+                ids.add(prefix + name.substring(0, name.length() - 7));
+            }
+            else if (name.endsWith(".jsonld.gz")) {
+                ids.add(prefix + name.substring(0, name.length() - 10));
+            };
+        };
+    };
+
+
+    // The identifiers of the corpora to compile
+    private List<String> _ids () {
+        return this.vcIds != null ? this.vcIds
+                : namedVCs(KrillProperties.namedVCPath);
+    };
+
+
+    // Compile a virtual corpus for all leaves
+    private static boolean _compile (String vcId,
+            List<LeafReaderContext> leaves) {
+        final VirtualCorpusFilter filter = new VirtualCorpusFilter(vcId);
+        final long start = System.currentTimeMillis();
+        try {
+            for (LeafReaderContext atomic : leaves) {
+                filter.getDocBits(atomic, atomic.reader().getLiveDocs(),
+                        false);
+            };
+        }
+        catch (RuntimeException e) {
+            log.warn("Unable to compile virtual corpus {}: {}", vcId,
+                    e.getLocalizedMessage());
+            return false;
+        };
+
+        if (DEBUG)
+            log.trace("Compiled virtual corpus {} on {} leaves in {} ms",
+                    vcId, leaves.size(), System.currentTimeMillis() - start);
+        return true;
+    };
+
+
+    // Release a reader kept open for a job
+    private void _release (IndexReader reader) {
+        try {
+            reader.decRef();
+        }
+        catch (IOException e) {
+            log.warn("Unable to release reader: {}",
+                    e.getLocalizedMessage());
+        };
+    };
+
+
+    // A reader and its leaves to compile
+    private static final class Job {
+        private final IndexReader reader;
+        private final List<LeafReaderContext> leaves;
+
+
+        private Job (IndexReader reader, List<LeafReaderContext> leaves) {
+            this.reader = reader;
+            this.leaves = leaves;
+        };
+
+
+        // Add the leaves of a superseded job,
+        // that are still part of this reader
+        private void merge (Job superseded) {
+            final Map<Object, LeafReaderContext> current = new HashMap<>();
+            for (LeafReaderContext atomic : this.reader.leaves()) {
+                current.put(atomic.reader().getCombinedCoreAndDeletesKey(),
+                        atomic);
+            };
+
+            final Set<Object> known = new HashSet<>();
+            for (LeafReaderContext atomic : this.leaves) {
+                known.add(atomic.reader().getCombinedCoreAndDeletesKey());
+            };
+
+            for (LeafReaderContext atomic : superseded.leaves) {
+                final Object key = atomic.reader()
+                        .getCombinedCoreAndDeletesKey();
+                if (current.containsKey(key) && known.add(key))
+                    this.leaves.add(current.get(key));
+            };
+        };
+    };
+
+
+    // Create daemon threads, that don't prevent shutdown
+    private static ThreadFactory _threadFactory (String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    };
+};
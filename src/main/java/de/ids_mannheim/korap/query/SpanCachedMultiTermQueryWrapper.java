@@ -0,0 +1,56 @@
+package de.ids_mannheim.korap.query;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.BytesRef;
+
+import de.ids_mannheim.korap.cache.MultiTermCache;
+
+/**
+ * Wraps a regular expression or wildcard query as a span query,
+ * like {@link SpanMultiTermQueryWrapper}, but rewrites it using
+ * the terms of a {@link MultiTermCache.Entry}, so repeated queries
+ * neither compile the automaton nor walk the term dictionaries
+ * of already known segments again.
+ *
+ * <p>
+ * The query is rewritten to a {@link SpanOrQuery} of
+ * {@link SpanTermQuery}s in unicode order of the terms,
+ * equal to the rewrite of {@link SpanMultiTermQueryWrapper}.
+ * </p>
+ */
+public class SpanCachedMultiTermQueryWrapper
+        extends SpanMultiTermQueryWrapper<AutomatonQuery> {
+
+    private final MultiTermCache.Entry entry;
+
+
+    /**
+     * Construct a new SpanCachedMultiTermQueryWrapper.
+     *
+     * @param entry
+     *            The {@link MultiTermCache.Entry} of the query.
+     */
+    public SpanCachedMultiTermQueryWrapper (MultiTermCache.Entry entry) {
+        super(entry.getQuery());
+        this.entry = entry;
+    };
+
+
+    @Override
+    public Query rewrite (IndexReader reader) throws IOException {
+        final String field = this.getField();
+        final SpanOrQuery or = new SpanOrQuery();
+        for (BytesRef term : this.entry.getTerms(reader)) {
+            or.addClause(new SpanTermQuery(new Term(field, term)));
+        };
+        return or;
+    };
+};
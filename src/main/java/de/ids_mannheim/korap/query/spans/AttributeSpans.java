@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -13,6 +12,7 @@ import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.search.spans.TermSpans;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -160,18 +160,23 @@ public class AttributeSpans extends SimpleSpans {
      * @throws IOException
      */
     private CandidateAttributeSpan createCandidateSpan () throws IOException {
-        List<byte[]> payload = (List<byte[]>) firstSpans.getPayload();
-        ByteBuffer payloadBuffer = ByteBuffer.wrap(payload.get(0));
 
-        byte payloadTypeIdentifier = payloadBuffer.get(0);
+        // Decode the payload directly from the postings
+        BytesRef payload = PayloadDecoder.getPayload(firstSpans);
+        if (payload == null) {
+            List<byte[]> payloads = (List<byte[]>) firstSpans.getPayload();
+            payload = new BytesRef(payloads.get(0));
+        };
+
+        byte payloadTypeIdentifier = PayloadDecoder.getPTI(payload);
         // short spanId = payloadBuffer.getShort(5);
         // int end = payloadBuffer.getInt(1);
-        short spanId = payloadBuffer.getShort(1);
+        short spanId = PayloadDecoder.readShort(payload, 1);
 
         int end;
 
-        if (payload.get(0).length >= 7) {
-            end = payloadBuffer.getInt(3);
+        if (payload.length >= 7) {
+            end = PayloadDecoder.readInt(payload, 3);
         }
 
         // Associated with a milestone element
@@ -264,7 +269,9 @@ public class AttributeSpans extends SimpleSpans {
         public CandidateAttributeSpan (Spans span, byte payloadTypeIdenfitier,
                                        short spanId, int elementEnd)
                 throws IOException {
-            super(span);
+            // The attribute payload is decoded and not kept
+            super(span.start(), span.end(), span.doc(), span.cost(),
+                    Collections.<byte[]> emptyList());
             this.spanId = spanId;
             this.end = elementEnd;
             this.payloadTypeIdentifier = payloadTypeIdenfitier;
@@ -109,6 +109,76 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
     }
 
 
+    /**
+     * Resets the CandidateSpan to the current state of the given
+     * Span, so it can be reused by a {@link CandidateSpanQueue}.
+     * 
+     * @param span
+     *            a Span
+     * @throws IOException
+     */
+    void reset (Spans span) throws IOException {
+        reset(span.start(), span.end(), span.doc(), span.cost(), null);
+        if (span.isPayloadAvailable()) {
+            setPayloads(span.getPayload());
+        }
+        if (span instanceof SimpleSpans) {
+            SimpleSpans temp = (SimpleSpans) span;
+            this.spanId = temp.getSpanId();
+            this.hasSpanId = temp.hasSpanId;
+        }
+        else if (span instanceof ClassSpans) {
+            this.spanId = ((ClassSpans) span).getNumber();
+            this.hasSpanId = true;
+        }
+    }
+
+
+    /**
+     * Resets the CandidateSpan to the given properties, so it can be
+     * reused by a {@link CandidateSpanQueue}.
+     * 
+     * @param start
+     *            the start position of a span
+     * @param end
+     *            the end position of a span
+     * @param doc
+     *            the document including the span
+     * @param cost
+     *            the cost of finding a span
+     * @param payloads
+     *            the payloads of a span
+     */
+    void reset (int start, int end, int doc, long cost,
+            Collection<byte[]> payloads) {
+        this.start = start;
+        this.end = end;
+        this.doc = doc;
+        this.cost = cost;
+        this.position = 0;
+        this.childSpan = null;
+        this.secondChildSpan = null;
+        this.spanId = 0;
+        this.hasSpanId = false;
+        this.leftId = 0;
+        this.rightId = 0;
+        this.leftStart = 0;
+        this.leftEnd = 0;
+        this.rightStart = 0;
+        this.rightEnd = 0;
+        this.payloadTypeIdentifier = 0;
+
+        // The payload list is reused, as spans recycling
+        // candidates only copy their payloads
+        if (payloads != null)
+            setPayloads(payloads);
+        else if (this.payloads == null)
+            this.payloads = new ArrayList<>();
+        else
+            this.payloads.clear();
+    }
+
+
     @Override
     protected CandidateSpan clone () throws CloneNotSupportedException {
         return new CandidateSpan(this.start, this.end, this.doc, this.cost,
@@ -197,7 +267,14 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
      */
     public void setPayloads (Collection<byte[]> payloads) {
 
-        this.payloads = new ArrayList<>();
+        // Reuse the payload list if there is one
+        if (this.payloads == null)
+            this.payloads = new ArrayList<>(payloads.size());
+        else if (this.payloads == payloads)
+            return;
+        else
+            this.payloads.clear();
+
         for (byte[] b : payloads) {
             if (b == null)
                 this.payloads.add(null);
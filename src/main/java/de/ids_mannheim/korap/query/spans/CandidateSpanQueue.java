@@ -0,0 +1,336 @@
+package de.ids_mannheim.korap.query.spans;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+import org.apache.lucene.search.spans.Spans;
+
+/**
+ * CandidateSpanQueue is an array-backed ring buffer of
+ * {@link CandidateSpan}s used as candidate and match lists of spans.
+ *
+ * Unlike an {@link java.util.ArrayList}, removing the first or the
+ * last candidate takes constant time and {@link #removeIf(Predicate)}
+ * compacts the buffer in a single pass, so consuming the candidates
+ * of a document in position order is linear.
+ *
+ * A recycling queue reuses the candidates it removed or cleared for
+ * new candidates created by {@link #add(Spans)} and
+ * {@link #add(int, int, int, long, Collection)}, so the steady state
+ * of a spans enumeration does not allocate new candidates.
+ * Candidates must therefore not be referenced after their removal
+ * from a recycling queue - except for candidates taken with
+ * {@link #poll()} or {@link #remove(int)}, which are never recycled.
+ */
+public class CandidateSpanQueue extends AbstractList<CandidateSpan>
+        implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private CandidateSpan[] elements;
+    private int head, size;
+
+    private final boolean recycle;
+    private CandidateSpan[] pool;
+    private int poolSize;
+
+
+    /**
+     * Constructs an empty CandidateSpanQueue, that does not recycle
+     * its candidates.
+     */
+    public CandidateSpanQueue () {
+        this(false);
+    }
+
+
+    /**
+     * Constructs an empty CandidateSpanQueue.
+     *
+     * @param recycle
+     *            <code>true</code> if removed candidates can be
+     *            reused, <code>false</code> otherwise.
+     */
+    public CandidateSpanQueue (boolean recycle) {
+        this.elements = new CandidateSpan[INITIAL_CAPACITY];
+        this.recycle = recycle;
+        if (recycle)
+            this.pool = new CandidateSpan[INITIAL_CAPACITY];
+    }
+
+
+    @Override
+    public int size () {
+        return size;
+    }
+
+
+    @Override
+    public CandidateSpan get (int index) {
+        checkIndex(index);
+        return elements[(head + index) & (elements.length - 1)];
+    }
+
+
+    @Override
+    public CandidateSpan set (int index, CandidateSpan cs) {
+        checkIndex(index);
+        int i = (head + index) & (elements.length - 1);
+        CandidateSpan old = elements[i];
+        elements[i] = cs;
+        return old;
+    }
+
+
+    /**
+     * Appends the given candidate to the end of the queue.
+     */
+    @Override
+    public boolean add (CandidateSpan cs) {
+        if (size == elements.length)
+            grow();
+        elements[(head + size) & (elements.length - 1)] = cs;
+        size++;
+        modCount++;
+        return true;
+    }
+
+
+    @Override
+    public void add (int index, CandidateSpan cs) {
+        if (index == size) {
+            add(cs);
+            return;
+        }
+        checkIndex(index);
+        if (size == elements.length)
+            grow();
+        if (index == 0) {
+            head = (head - 1) & (elements.length - 1);
+            elements[head] = cs;
+        }
+        else {
+            int mask = elements.length - 1;
+            for (int i = size; i > index; i--) {
+                elements[(head + i) & mask] = elements[(head + i - 1) & mask];
+            }
+            elements[(head + index) & mask] = cs;
+        }
+        size++;
+        modCount++;
+    }
+
+
+    /**
+     * Appends a candidate representing the current state of the
+     * given spans to the end of the queue.
+     *
+     * @param spans
+     *            a Spans
+     * @return the added candidate
+     * @throws IOException
+     */
+    public CandidateSpan add (Spans spans) throws IOException {
+        CandidateSpan cs = obtain();
+        if (cs == null)
+            cs = new CandidateSpan(spans);
+        else
+            cs.reset(spans);
+        add(cs);
+        return cs;
+    }
+
+
+    /**
+     * Appends a candidate with the given properties to the end of
+     * the queue.
+     *
+     * @param start
+     *            the start position of the candidate
+     * @param end
+     *            the end position of the candidate
+     * @param doc
+     *            the document including the candidate
+     * @param cost
+     *            the cost of the candidate
+     * @param payloads
+     *            the payloads of the candidate
+     * @return the added candidate
+     */
+    public CandidateSpan add (int start, int end, int doc, long cost,
+            Collection<byte[]> payloads) {
+        CandidateSpan cs = obtain();
+        if (cs == null)
+            cs = new CandidateSpan(start, end, doc, cost, payloads);
+        else
+            cs.reset(start, end, doc, cost, payloads);
+        add(cs);
+        return cs;
+    }
+
+
+    /**
+     * Removes the first candidate. The candidate is recycled by a
+     * recycling queue.
+     */
+    public void dropFirst () {
+        release(remove(0));
+    }
+
+
+    /**
+     * Removes and returns the first candidate. The candidate is never
+     * recycled.
+     *
+     * @return the first candidate or <code>null</code> if the queue
+     *         is empty
+     */
+    public CandidateSpan poll () {
+        if (size == 0)
+            return null;
+        return remove(0);
+    }
+
+
+    /**
+     * Removes the candidate at the given index. Removing the first
+     * or the last candidate takes constant time. The candidate is
+     * never recycled.
+     */
+    @Override
+    public CandidateSpan remove (int index) {
+        checkIndex(index);
+        int mask = elements.length - 1;
+        int i = (head + index) & mask;
+        CandidateSpan cs = elements[i];
+
+        if (index == 0) {
+            elements[head] = null;
+            head = (head + 1) & mask;
+        }
+        else {
+            for (int j = index; j < size - 1; j++) {
+                elements[(head + j) & mask] = elements[(head + j + 1) & mask];
+            }
+            elements[(head + size - 1) & mask] = null;
+        }
+        size--;
+        modCount++;
+        return cs;
+    }
+
+
+    /**
+     * Removes all candidates satisfying the given predicate in a
+     * single pass, keeping the order of the remaining candidates.
+     * Removed candidates are recycled by a recycling queue.
+     */
+    @Override
+    public boolean removeIf (Predicate<? super CandidateSpan> filter) {
+        int mask = elements.length - 1;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            CandidateSpan cs = elements[(head + i) & mask];
+            if (filter.test(cs)) {
+                release(cs);
+            }
+            else {
+                elements[(head + kept) & mask] = cs;
+                kept++;
+            }
+        }
+        if (kept == size)
+            return false;
+        for (int i = kept; i < size; i++) {
+            elements[(head + i) & mask] = null;
+        }
+        size = kept;
+        modCount++;
+        return true;
+    }
+
+
+    /**
+     * Removes all candidates. The candidates are recycled by a
+     * recycling queue.
+     */
+    @Override
+    public void clear () {
+        int mask = elements.length - 1;
+        for (int i = 0; i < size; i++) {
+            int j = (head + i) & mask;
+            release(elements[j]);
+            elements[j] = null;
+        }
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+
+    /**
+     * Sorts the candidates in place. Candidates added in order are
+     * sorted in linear time.
+     */
+    @Override
+    public void sort (Comparator<? super CandidateSpan> c) {
+        if (head + size > elements.length) {
+            elements = toArray(new CandidateSpan[elements.length]);
+            head = 0;
+        }
+        Arrays.sort(elements, head, head + size, c);
+        modCount++;
+    }
+
+
+    // Take a candidate from the pool
+    private CandidateSpan obtain () {
+        if (poolSize == 0)
+            return null;
+        CandidateSpan cs = pool[--poolSize];
+        pool[poolSize] = null;
+        return cs;
+    }
+
+
+    // Give a candidate back to the pool
+    private void release (CandidateSpan cs) {
+        if (!recycle || cs == null)
+            return;
+        if (poolSize == pool.length)
+            pool = Arrays.copyOf(pool, pool.length << 1);
+        pool[poolSize++] = cs;
+    }
+
+
+    // Double the capacity, keeping it a power of two
+    private void grow () {
+        elements = toArray(new CandidateSpan[elements.length << 1]);
+        head = 0;
+    }
+
+
+    @Override
+    public <T> T[] toArray (T[] a) {
+        if (a.length < size)
+            a = Arrays.copyOf(a, size);
+        int first = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, a, 0, first);
+        System.arraycopy(elements, 0, a, first, size - first);
+        if (a.length > size)
+            a[size] = null;
+        return a;
+    }
+
+
+    private void checkIndex (int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size);
+    }
+}
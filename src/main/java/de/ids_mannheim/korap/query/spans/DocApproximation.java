@@ -0,0 +1,329 @@
+package de.ids_mannheim.korap.query.spans;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanNotQuery;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.query.SimpleSpanQuery;
+import de.ids_mannheim.korap.query.SpanClassQuery;
+import de.ids_mannheim.korap.query.SpanDistanceQuery;
+import de.ids_mannheim.korap.query.SpanElementQuery;
+import de.ids_mannheim.korap.query.SpanExpansionQuery;
+import de.ids_mannheim.korap.query.SpanFocusQuery;
+import de.ids_mannheim.korap.query.SpanMultipleDistanceQuery;
+import de.ids_mannheim.korap.query.SpanNextQuery;
+import de.ids_mannheim.korap.query.SpanSegmentQuery;
+import de.ids_mannheim.korap.query.SpanWithinQuery;
+
+/**
+ * Document level approximation of a query in a leaf.
+ *
+ * <p>
+ * The approximation is based on the terms every match
+ * of a query requires (see {@link #requiredTerms(SpanQuery)}).
+ * Only documents containing all these terms are candidates
+ * for matches. Spans aligning the documents of their sub spans
+ * (like {@link NextSpans} or {@link WithinSpans}) skip to candidate
+ * documents using a conjunction of the postings of the
+ * required terms, without reading positions or payloads,
+ * before any positional work starts.
+ * </p>
+ *
+ * <p>
+ * As all spans are restricted to single documents,
+ * skipping non-candidate documents is safe for all
+ * spans of the query tree. Every spans object creates its own
+ * candidate iterator, as the spans of a tree are not aligned
+ * to the same document.
+ * </p>
+ */
+public final class DocApproximation {
+
+    // Logger
+    private final static Logger log = LoggerFactory
+            .getLogger(DocApproximation.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final LeafReaderContext context;
+    private final Bits acceptDocs;
+    private final Term[] terms;
+    private final Map<Term, TermContext> termContexts;
+
+
+    /**
+     * Construct a new DocApproximation.
+     *
+     * @param context
+     *            The {@link LeafReaderContext}.
+     * @param acceptDocs
+     *            Bit vector representing the documents
+     *            to be searched in.
+     * @param terms
+     *            The required terms of the query.
+     * @param termContexts
+     *            A map managing {@link TermState TermStates}.
+     */
+    public DocApproximation (LeafReaderContext context, Bits acceptDocs,
+                             Term[] terms,
+                             Map<Term, TermContext> termContexts) {
+        this.context = context;
+        this.acceptDocs = acceptDocs;
+        this.terms = terms;
+        this.termContexts = termContexts;
+    };
+
+
+    /**
+     * Create a new iterator over the candidate documents.
+     *
+     * @return A {@link DocIdSetIterator}.
+     * @throws IOException
+     */
+    public DocIdSetIterator iterator () throws IOException {
+        final DocsEnum[] docs = new DocsEnum[this.terms.length];
+        TermsEnum termsEnum = null;
+        String field = null;
+
+        for (int i = 0; i < this.terms.length; i++) {
+            final Term term = this.terms[i];
+
+            if (!term.field().equals(field)) {
+                field = term.field();
+                final Terms fieldTerms = this.context.reader().terms(field);
+                if (fieldTerms == null)
+                    return DocIdSetIterator.empty();
+                termsEnum = fieldTerms.iterator(null);
+            };
+
+            // Seek the term by its precomputed state
+            final TermContext termContext = this.termContexts.get(term);
+            if (termContext != null) {
+                final TermState state = termContext.get(this.context.ord);
+                if (state == null)
+                    return DocIdSetIterator.empty();
+                termsEnum.seekExact(term.bytes(), state);
+            }
+            else if (!termsEnum.seekExact(term.bytes())) {
+                return DocIdSetIterator.empty();
+            };
+
+            docs[i] = termsEnum.docs(this.acceptDocs, null,
+                    DocsEnum.FLAG_NONE);
+        };
+
+        if (docs.length == 1)
+            return docs[0];
+
+        // Cheapest first
+        Arrays.sort(docs, new Comparator<DocsEnum>() {
+            @Override
+            public int compare (DocsEnum a, DocsEnum b) {
+                return Long.compare(a.cost(), b.cost());
+            };
+        });
+
+        return new Conjunction(docs);
+    };
+
+
+    /**
+     * Set the approximation for the spans and all
+     * its sub spans, that align documents.
+     *
+     * @param spans
+     *            The {@link Spans}.
+     * @param approximation
+     *            The {@link DocApproximation}.
+     */
+    public static void approximate (Spans spans,
+            DocApproximation approximation) {
+        if (spans instanceof SimpleSpans)
+            ((SimpleSpans) spans).setApproximation(approximation);
+        else if (spans instanceof WithinSpans)
+            ((WithinSpans) spans).setApproximation(approximation);
+    };
+
+
+    /**
+     * Get the terms every match of the query requires,
+     * ordered by the number of documents (cheapest first).
+     *
+     * @param query
+     *            The rewritten {@link SpanQuery}.
+     * @param termContexts
+     *            A map managing {@link TermState TermStates}.
+     * @return The required terms.
+     */
+    public static Term[] requiredTerms (SpanQuery query,
+            final Map<Term, TermContext> termContexts) {
+        final Term[] terms = requiredTerms(query).toArray(new Term[0]);
+
+        Arrays.sort(terms, new Comparator<Term>() {
+            @Override
+            public int compare (Term a, Term b) {
+                return Integer.compare(docFreq(a), docFreq(b));
+            };
+
+
+            private int docFreq (Term term) {
+                final TermContext tc = termContexts.get(term);
+                return tc == null ? Integer.MAX_VALUE : tc.docFreq();
+            };
+        });
+
+        if (DEBUG)
+            log.trace("Required terms of {} are {}", query,
+                    Arrays.toString(terms));
+
+        return terms;
+    };
+
+
+    /**
+     * Get the terms every match of the query requires.
+     * This is conservative, so only well known queries
+     * contribute required terms.
+     *
+     * @param query
+     *            The rewritten {@link SpanQuery}.
+     * @return The set of required terms.
+     */
+    public static Set<Term> requiredTerms (SpanQuery query) {
+        final Set<Term> terms = new LinkedHashSet<>();
+
+        if (query instanceof SpanTermQuery) {
+            terms.add(((SpanTermQuery) query).getTerm());
+        }
+
+        // Both operands are required
+        else if (query instanceof SpanNextQuery
+                || query instanceof SpanSegmentQuery
+                || (query instanceof SpanDistanceQuery
+                        && !((SpanDistanceQuery) query).isExclusion())) {
+            terms.addAll(requiredTerms(
+                    ((SimpleSpanQuery) query).getFirstClause()));
+            terms.addAll(requiredTerms(
+                    ((SimpleSpanQuery) query).getSecondClause()));
+        }
+        else if (query instanceof SpanWithinQuery) {
+            terms.addAll(requiredTerms(((SpanWithinQuery) query).wrap()));
+            terms.addAll(requiredTerms(((SpanWithinQuery) query).embedded()));
+        }
+
+        // Only the first operand is required
+        else if (query instanceof SpanClassQuery
+                || query instanceof SpanFocusQuery
+                || query instanceof SpanElementQuery
+                || query instanceof SpanExpansionQuery
+                || query instanceof SpanDistanceQuery
+                || query instanceof SpanMultipleDistanceQuery) {
+            terms.addAll(requiredTerms(
+                    ((SimpleSpanQuery) query).getFirstClause()));
+        }
+
+        else if (query instanceof SpanNearQuery) {
+            for (SpanQuery clause : ((SpanNearQuery) query).getClauses())
+                terms.addAll(requiredTerms(clause));
+        }
+        else if (query instanceof SpanNotQuery) {
+            terms.addAll(requiredTerms(((SpanNotQuery) query).getInclude()));
+        }
+
+        // Terms required by all alternatives
+        else if (query instanceof SpanOrQuery) {
+            Set<Term> common = null;
+            for (SpanQuery clause : ((SpanOrQuery) query).getClauses()) {
+                final Set<Term> clauseTerms = requiredTerms(clause);
+                if (common == null)
+                    common = new HashSet<>(clauseTerms);
+                else
+                    common.retainAll(clauseTerms);
+                if (common.isEmpty())
+                    break;
+            };
+            if (common != null)
+                terms.addAll(common);
+        };
+
+        return terms;
+    };
+
+
+    // Conjunction of postings, leading with the cheapest postings
+    private static final class Conjunction extends DocIdSetIterator {
+        private final DocsEnum lead;
+        private final DocsEnum[] others;
+        private int doc = -1;
+
+
+        private Conjunction (DocsEnum[] docs) {
+            this.lead = docs[0];
+            this.others = Arrays.copyOfRange(docs, 1, docs.length);
+        };
+
+
+        @Override
+        public int docID () {
+            return this.doc;
+        };
+
+
+        @Override
+        public int nextDoc () throws IOException {
+            return this.doNext(this.lead.nextDoc());
+        };
+
+
+        @Override
+        public int advance (int target) throws IOException {
+            return this.doNext(this.lead.advance(target));
+        };
+
+
+        private int doNext (int doc) throws IOException {
+            advanceHead: while (doc != NO_MORE_DOCS) {
+                for (DocsEnum other : this.others) {
+                    if (other.docID() < doc) {
+                        final int next = other.advance(doc);
+                        if (next > doc) {
+                            doc = this.lead.advance(next);
+                            continue advanceHead;
+                        };
+                    };
+                };
+                break;
+            };
+            return this.doc = doc;
+        };
+
+
+        @Override
+        public long cost () {
+            return this.lead.cost();
+        };
+    };
+};
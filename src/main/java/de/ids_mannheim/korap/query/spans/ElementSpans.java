@@ -1,10 +1,8 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.index.LeafReaderContext;
@@ -13,6 +11,7 @@ import org.apache.lucene.index.TermContext;
 import org.apache.lucene.index.TermState;
 import org.apache.lucene.search.spans.TermSpans;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +30,7 @@ import de.ids_mannheim.korap.query.SpanElementQuery;
 public final class ElementSpans extends SimpleSpans {
     private final TermSpans termSpans;
     private boolean isPayloadLoaded;
+    private boolean hasPayload;
 
     private final Logger log = LoggerFactory.getLogger(ElementSpans.class);
     // This advices the java compiler to ignore all loggings
@@ -96,6 +96,7 @@ public final class ElementSpans extends SimpleSpans {
     private boolean advance () throws IOException {
         this.matchStartPosition = termSpans.start();
         this.matchDocNumber = termSpans.doc();
+        this.matchPayload = null;
         isPayloadLoaded = false;
         return true;
     };
@@ -106,6 +107,10 @@ public final class ElementSpans extends SimpleSpans {
      * This may have a little impact on queries like
      * position queries, where spans can be rejected
      * solely based on their starting and doc position.
+     *
+     * The payload is decoded directly from the postings
+     * and is only copied in case it is requested
+     * using getPayload().
      */
     private void loadPayload () {
         if (this.isPayloadLoaded) {
@@ -115,36 +120,27 @@ public final class ElementSpans extends SimpleSpans {
             this.isPayloadLoaded = true;
         }
 
-        List<byte[]> payload;
+        BytesRef payload;
 
         try {
-            payload = (List<byte[]>) termSpans.getPayload();
+            payload = PayloadDecoder.getPayload(termSpans);
         }
         catch (IOException e) {
             // silently setting empty element and payload
-            this.matchEndPosition = this.matchStartPosition;
-            this.setSpanId((short) -1);
-            this.hasSpanId = false;
-            this.matchPayload = null;
-            return;
+            payload = null;
         }
 
-        if (!payload.isEmpty() && payload.get(0) != null){
-                
-            // Get payload one by one
-            final int length = payload.get(0).length;
-            final ByteBuffer bb = ByteBuffer.allocate(length);
-            bb.put(payload.get(0));
+        if (payload != null) {
 
-            this.payloadTypeIdentifier = bb.get(0);
+            this.payloadTypeIdentifier = PayloadDecoder.getPTI(payload);
 
             if (payloadTypeIdentifier != PayloadTypeIdentifier.MILESTONE.value) {
-                this.matchEndPosition = bb.getInt(9);
+                this.matchEndPosition = PayloadDecoder.getSpanEnd(payload);
             };
 
             if (payloadTypeIdentifier == PayloadTypeIdentifier.ELEMENT.value
-                    && length > 15) {
-                this.setSpanId(bb.getShort(14));
+                    && PayloadDecoder.hasSpanTUI(payload)) {
+                this.setSpanId(PayloadDecoder.getSpanTUI(payload));
                 this.hasSpanId = true;
             }
             else {
@@ -152,18 +148,14 @@ public final class ElementSpans extends SimpleSpans {
                 this.hasSpanId = false;
             }
 
-            // FIX ME
-            // Copy the start and end character offsets
-            // b = Arrays.copyOfRange(bb.array(), 1, 9);
-            // this.matchPayload = Collections.singletonList(b);
-            this.matchPayload = Collections.singletonList(bb.array());
+            this.hasPayload = true;
             return;
         }
 
         this.matchEndPosition = this.matchStartPosition;
         this.setSpanId((short) -1);
         this.hasSpanId = false;
-        this.matchPayload = null;
+        this.hasPayload = false;
     };
 
 
@@ -175,8 +167,19 @@ public final class ElementSpans extends SimpleSpans {
 
 
     @Override
-    public Collection<byte[]> getPayload () {
+    public Collection<byte[]> getPayload () throws IOException {
         this.loadPayload();
+
+        // Copy the payload only on request
+        if (this.matchPayload == null && this.hasPayload
+                && this.hasMoreSpans) {
+
+            // FIX ME
+            // Copy the start and end character offsets
+            // b = Arrays.copyOfRange(bb.array(), 1, 9);
+            this.matchPayload = Collections.singletonList(
+                    PayloadDecoder.copy(PayloadDecoder.getPayload(termSpans)));
+        };
         return this.matchPayload;
     };
 
@@ -184,7 +187,7 @@ public final class ElementSpans extends SimpleSpans {
     @Override
     public boolean isPayloadAvailable () {
         this.loadPayload();
-        return !this.matchPayload.isEmpty();
+        return this.hasPayload;
     };
 
 
@@ -208,6 +211,7 @@ public final class ElementSpans extends SimpleSpans {
 
         hasMoreSpans = false;
         this.matchPayload = null;
+        this.hasPayload = false;
         return false;
     };
 
@@ -2,7 +2,6 @@ package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -35,8 +34,9 @@ public class NextSpans extends SimpleSpans {
     // This advices the java compiler to ignore all loggings
     public static final boolean DEBUG = false;
 
-    private List<CandidateSpan> matchList;
-    private List<CandidateSpan> candidateList;
+    private CandidateSpanQueue matchList;
+    private CandidateSpanQueue candidateList;
+    private List<byte[]> payloads;
     private int candidateListDocNum;
     private boolean hasMoreFirstSpan;
 
@@ -56,8 +56,9 @@ public class NextSpans extends SimpleSpans {
         super(spanNextQuery, context, acceptDocs, termContexts);
         collectPayloads = spanNextQuery.isCollectPayloads();
         hasMoreSpans = secondSpans.next();
-        matchList = new ArrayList<>();
-        candidateList = new ArrayList<>();
+        matchList = new CandidateSpanQueue(true);
+        candidateList = new CandidateSpanQueue(true);
+        payloads = new ArrayList<byte[]>();
     }
 
 
@@ -102,15 +103,16 @@ public class NextSpans extends SimpleSpans {
                 setMatchList();
             };
 
-            if (!matchList.isEmpty()) {                
+            if (!matchList.isEmpty()) {
+                CandidateSpan match = matchList.get(0);
                 matchDocNumber = firstSpans.doc();
                 matchStartPosition = firstSpans.start();
-                matchEndPosition = matchList.get(0).getEnd();
+                matchEndPosition = match.getEnd();
                 
-                spanId = matchList.get(0).getSpanId();
+                spanId = match.getSpanId();
                 if (collectPayloads)
-                    matchPayload.addAll(matchList.get(0).getPayloads());
-                matchList.remove(0);
+                    matchPayload.addAll(match.getPayloads());
+                matchList.dropFirst();
                 return true;
             }
             
@@ -180,19 +182,16 @@ public class NextSpans extends SimpleSpans {
         if (DEBUG) {
             log.debug("CandidateList: {}", candidateList.toString());
         };
-        Iterator<CandidateSpan> i = candidateList.iterator();
-        CandidateSpan cs;
-        while (i.hasNext()) {
-            cs = i.next();
-
-            if (cs.getStart() == firstSpans.end()) {
+        final int start = firstSpans.start();
+        final int end = firstSpans.end();
+        for (int i = 0; i < candidateList.size(); i++) {
+            CandidateSpan cs = candidateList.get(i);
+            if (cs.getStart() == end) {
                 addMatch(cs);
             }
-            else if (cs.getEnd() < firstSpans.end() 
-                    && cs.getStart() <firstSpans.start()){
-                i.remove();
-            }
         }
+        candidateList.removeIf(cs -> cs.getStart() != end
+                && cs.getEnd() < end && cs.getStart() < start);
     }
 
 
@@ -226,8 +225,7 @@ public class NextSpans extends SimpleSpans {
                               firstSpans.doc(), secondSpans.doc(), candidateListDocNum);
                 };
                 
-                candidateList.add(new CandidateSpan(secondSpans));
-                addMatch(new CandidateSpan(secondSpans));
+                addMatch(candidateList.add(secondSpans));
             }
             hasMoreSpans = secondSpans.next();
         }
@@ -250,7 +248,7 @@ public class NextSpans extends SimpleSpans {
         int start = firstSpans.start();
         long cost = firstSpans.cost() + cs.getCost();
 
-        List<byte[]> payloads = new ArrayList<byte[]>();
+        payloads.clear();
         if (collectPayloads) {
             if (firstSpans.isPayloadAvailable())
                 payloads.addAll(firstSpans.getPayload());
@@ -258,8 +256,8 @@ public class NextSpans extends SimpleSpans {
                 payloads.addAll(cs.getPayloads());
         }
 
-        matchList.add(new CandidateSpan(start, cs.getEnd(), candidateListDocNum,
-                cost, payloads));
+        matchList.add(start, cs.getEnd(), candidateListDocNum, cost,
+                payloads);
     }
 
 
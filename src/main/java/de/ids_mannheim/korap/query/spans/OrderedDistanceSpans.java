@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -49,7 +48,7 @@ public abstract class OrderedDistanceSpans extends DistanceSpans {
 
         hasMoreFirstSpans = firstSpans.next();
 
-        candidateList = new ArrayList<>();
+        candidateList = new CandidateSpanQueue();
         candidateListIndex = -1;
         if (hasMoreFirstSpans){
             candidateListDocNum = firstSpans.doc();
@@ -0,0 +1,224 @@
+package de.ids_mannheim.korap.query.spans;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.search.spans.TermSpans;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Decode index payloads directly from the {@link BytesRef}
+ * of the postings, without copying them to a byte array
+ * or a ByteBuffer first.
+ *
+ * <p>
+ * The payload layouts are described in <tt>misc/payloads.md</tt>.
+ * All values are stored big endian.
+ * </p>
+ *
+ * <blockquote><pre>
+ * BytesRef payload = PayloadDecoder.getPayload(termSpans);
+ * if (PayloadDecoder.getPTI(payload) == PayloadDecoder.ELEMENT)
+ * end = PayloadDecoder.getSpanEnd(payload);
+ * </pre></blockquote>
+ */
+public final class PayloadDecoder {
+
+    // Payload type identifiers of spans
+    public static final byte ELEMENT = 64;
+    public static final byte MILESTONE = 65;
+
+    // Payload type identifiers of relations
+    public static final byte TERM_TO_TERM = 32;
+    public static final byte TERM_TO_ELEMENT = 33;
+    public static final byte ELEMENT_TO_TERM = 34;
+    public static final byte ELEMENT_TO_ELEMENT = 35;
+
+    // Span payload: <b>pti<i>start<i>end<i>endpos<b>depth<s>tui?<b>cert?
+    private static final int SPAN_START_OFFSET = 1;
+    private static final int SPAN_END_OFFSET = 5;
+    private static final int SPAN_END = 9;
+    private static final int SPAN_DEPTH = 13;
+    private static final int SPAN_TUI = 14;
+
+
+    private PayloadDecoder () {};
+
+
+    /**
+     * Get the payload of the current position of a span
+     * without copying it.
+     * The returned {@link BytesRef} is only valid until
+     * the span moves on and must not be modified.
+     *
+     * @param spans
+     *            The {@link Spans}, preferably {@link TermSpans}.
+     * @return The payload or <tt>null</tt>, in case the spans
+     *         are no {@link TermSpans} or there is no payload.
+     * @throws IOException
+     */
+    public static BytesRef getPayload (Spans spans) throws IOException {
+        if (!(spans instanceof TermSpans))
+            return null;
+
+        final TermSpans termSpans = (TermSpans) spans;
+        if (termSpans.getPostings() == null)
+            return null;
+
+        final BytesRef payload = termSpans.getPostings().getPayload();
+        if (payload == null || payload.length == 0)
+            return null;
+
+        return payload;
+    };
+
+
+    /**
+     * Copy a payload to a new byte array.
+     *
+     * @param payload
+     *            The payload.
+     * @return A byte array containing the payload.
+     */
+    public static byte[] copy (BytesRef payload) {
+        final byte[] bytes = new byte[payload.length];
+        System.arraycopy(payload.bytes, payload.offset, bytes, 0,
+                payload.length);
+        return bytes;
+    };
+
+
+    /**
+     * Get the payload type identifier (PTI).
+     *
+     * @param payload
+     *            The payload.
+     * @return The payload type identifier.
+     */
+    public static byte getPTI (BytesRef payload) {
+        return payload.bytes[payload.offset];
+    };
+
+
+    /**
+     * Get the start character offset of a span.
+     *
+     * @param payload
+     *            The span payload.
+     * @return The start character offset.
+     */
+    public static int getSpanStartOffset (BytesRef payload) {
+        return readInt(payload, SPAN_START_OFFSET);
+    };
+
+
+    /**
+     * Get the end character offset of a span.
+     *
+     * @param payload
+     *            The span payload.
+     * @return The end character offset.
+     */
+    public static int getSpanEndOffset (BytesRef payload) {
+        return readInt(payload, SPAN_END_OFFSET);
+    };
+
+
+    /**
+     * Get the end token position of a span.
+     *
+     * @param payload
+     *            The span payload.
+     * @return The end token position.
+     */
+    public static int getSpanEnd (BytesRef payload) {
+        return readInt(payload, SPAN_END);
+    };
+
+
+    /**
+     * Get the depth of a span.
+     *
+     * @param payload
+     *            The span payload.
+     * @return The depth, with 0 being root.
+     */
+    public static int getSpanDepth (BytesRef payload) {
+        return payload.bytes[payload.offset + SPAN_DEPTH] & 0xFF;
+    };
+
+
+    /**
+     * Check if a span payload has a TUI.
+     *
+     * @param payload
+     *            The span payload.
+     * @return <tt>true</tt> in case the span has a TUI,
+     *         otherwise <tt>false</tt>.
+     */
+    public static boolean hasSpanTUI (BytesRef payload) {
+        return payload.length > SPAN_TUI + 1;
+    };
+
+
+    /**
+     * Get the TUI of a span.
+     *
+     * @param payload
+     *            The span payload.
+     * @return The token-unique identifier.
+     */
+    public static short getSpanTUI (BytesRef payload) {
+        return readShort(payload, SPAN_TUI);
+    };
+
+
+    /**
+     * Get the certainty value of a span.
+     *
+     * @param payload
+     *            The span payload.
+     * @return The certainty value (0-255)
+     *         or <tt>-1</tt> if no certainty is given.
+     */
+    public static int getSpanCertainty (BytesRef payload) {
+        if (payload.length == SPAN_TUI + 1)
+            return payload.bytes[payload.offset + SPAN_TUI] & 0xFF;
+        if (payload.length > SPAN_TUI + 2)
+            return payload.bytes[payload.offset + SPAN_TUI + 2] & 0xFF;
+        return -1;
+    };
+
+
+    /**
+     * Read an integer at a position of the payload.
+     *
+     * @param payload
+     *            The payload.
+     * @param pos
+     *            The byte position relative to the payload.
+     * @return The integer value.
+     */
+    public static int readInt (BytesRef payload, int pos) {
+        final byte[] b = payload.bytes;
+        final int i = payload.offset + pos;
+        return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16)
+                | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    };
+
+
+    /**
+     * Read a short at a position of the payload.
+     *
+     * @param payload
+     *            The payload.
+     * @param pos
+     *            The byte position relative to the payload.
+     * @return The short value.
+     */
+    public static short readShort (BytesRef payload, int pos) {
+        final byte[] b = payload.bytes;
+        final int i = payload.offset + pos;
+        return (short) (((b[i] & 0xFF) << 8) | (b[i + 1] & 0xFF));
+    };
+};
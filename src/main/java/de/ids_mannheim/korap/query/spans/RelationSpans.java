@@ -12,6 +12,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -165,9 +166,22 @@ public class RelationSpans extends RelationBaseSpans {
         while (hasMoreSpans && relationTermSpan.doc() == currentDoc
                 && relationTermSpan.start() == currentPosition) {
 
-            CandidateSpan cs = new CandidateSpan(relationTermSpan);
-            readPayload(cs);
-            setPayload(cs);
+            // Decode the payload directly from the postings
+            BytesRef payload = PayloadDecoder.getPayload(relationTermSpan);
+            boolean decoded = payload != null;
+            CandidateSpan cs;
+            if (decoded) {
+                cs = new CandidateSpan(relationTermSpan.start(),
+                        relationTermSpan.end(), relationTermSpan.doc(),
+                        relationTermSpan.cost(), null);
+            }
+            else {
+                cs = new CandidateSpan(relationTermSpan);
+                List<byte[]> payloads = (List<byte[]>) cs.getPayloads();
+                payload = new BytesRef(payloads.get(0));
+            };
+            readPayload(cs, payload);
+            setPayload(cs, decoded);
             candidateList.add(cs);
             hasMoreSpans = relationTermSpan.next();
         }
@@ -178,33 +192,31 @@ public class RelationSpans extends RelationBaseSpans {
     /**
      * Identify the relation type of the given
      * {@link CandidateRelationSpan} by
-     * checking the length of its payloads, and set some properties of
-     * the span
-     * based on the payloads.
+     * checking the payload type identifier, and set some properties
+     * of the span based on the payload.
      * 
      * @param cs
      *            a CandidateRelationSpan
+     * @param payload
+     *            the relation payload
      */
-    private void readPayload (CandidateSpan cs) {
-        List<byte[]> payload = (List<byte[]>) cs.getPayloads();
-        int length = payload.get(0).length;
-        ByteBuffer bb = ByteBuffer.allocate(length);
-        bb.put(payload.get(0));
+    private void readPayload (CandidateSpan cs, BytesRef payload) {
+        int length = payload.length;
 
         cs.setLeftStart(cs.start);
 
         int i;
-        this.payloadTypeIdentifier = bb.get(0);
+        this.payloadTypeIdentifier = PayloadDecoder.getPTI(payload);
 
         if (payloadTypeIdentifier == PayloadTypeIdentifier.TERM_TO_TERM.value) { 
-            i = bb.getInt(1);
+            i = PayloadDecoder.readInt(payload, 1);
             cs.setLeftEnd(cs.start + 1);
             cs.setRightStart(i);
             cs.setRightEnd(i + 1);
             if (length > 5) {
-                cs.setLeftId(bb.getShort(5)); // left id
-                cs.setRightId(bb.getShort(7)); // right id
-                cs.setSpanId(bb.getShort(9)); // relation id
+                cs.setLeftId(PayloadDecoder.readShort(payload, 5)); // left id
+                cs.setRightId(PayloadDecoder.readShort(payload, 7)); // right id
+                cs.setSpanId(PayloadDecoder.readShort(payload, 9)); // relation id
             }
         }
         else if (payloadTypeIdentifier == PayloadTypeIdentifier.TERM_TO_ELEMENT.value) {
@@ -213,12 +225,12 @@ public class RelationSpans extends RelationBaseSpans {
             // 5-8 end element offset
             // 9-12 start element position
             // 13-16 end element position
-            cs.setRightStart(bb.getInt(9));
-            cs.setRightEnd(bb.getInt(13));
+            cs.setRightStart(PayloadDecoder.readInt(payload, 9));
+            cs.setRightEnd(PayloadDecoder.readInt(payload, 13));
             if (length > 17) {
-                cs.setLeftId(bb.getShort(17)); // left id
-                cs.setRightId(bb.getShort(19)); // right id
-                cs.setSpanId(bb.getShort(21)); // relation id
+                cs.setLeftId(PayloadDecoder.readShort(payload, 17)); // left id
+                cs.setRightId(PayloadDecoder.readShort(payload, 19)); // right id
+                cs.setSpanId(PayloadDecoder.readShort(payload, 21)); // relation id
             }
         }
         else if (payloadTypeIdentifier == PayloadTypeIdentifier.ELEMENT_TO_TERM.value) { 
@@ -226,15 +238,15 @@ public class RelationSpans extends RelationBaseSpans {
             // 5-8 end element offset
             // 9-12 end element position
             // 13-16 end term position
-            cs.setEnd(bb.getInt(9));
+            cs.setEnd(PayloadDecoder.readInt(payload, 9));
             cs.setLeftEnd(cs.end);
-            i = bb.getInt(13);
+            i = PayloadDecoder.readInt(payload, 13);
             cs.setRightStart(i);
             cs.setRightEnd(i + 1);
             if (length > 17) {
-                cs.setLeftId(bb.getShort(17)); // left id
-                cs.setRightId(bb.getShort(19)); // right id
-                cs.setSpanId(bb.getShort(21)); // relation id
+                cs.setLeftId(PayloadDecoder.readShort(payload, 17)); // left id
+                cs.setRightId(PayloadDecoder.readShort(payload, 19)); // right id
+                cs.setSpanId(PayloadDecoder.readShort(payload, 21)); // relation id
             }
         }
         else if (payloadTypeIdentifier == PayloadTypeIdentifier.ELEMENT_TO_ELEMENT.value) {
@@ -245,14 +257,14 @@ public class RelationSpans extends RelationBaseSpans {
             // 17-20 end left-element position
             // 21-24 start right element position
             // 25-28 end right element position
-            cs.setEnd(bb.getInt(17));
+            cs.setEnd(PayloadDecoder.readInt(payload, 17));
             cs.setLeftEnd(cs.end);
-            cs.setRightStart(bb.getInt(21));
-            cs.setRightEnd(bb.getInt(25));
+            cs.setRightStart(PayloadDecoder.readInt(payload, 21));
+            cs.setRightEnd(PayloadDecoder.readInt(payload, 25));
             if (length > 28) {
-                cs.setLeftId(bb.getShort(29)); // left id
-                cs.setRightId(bb.getShort(31)); // right id
-                cs.setSpanId(bb.getShort(33)); // relation id
+                cs.setLeftId(PayloadDecoder.readShort(payload, 29)); // left id
+                cs.setRightId(PayloadDecoder.readShort(payload, 31)); // right id
+                cs.setSpanId(PayloadDecoder.readShort(payload, 33)); // relation id
             }
         }
 
@@ -261,9 +273,13 @@ public class RelationSpans extends RelationBaseSpans {
     }
 
 
-    private void setPayload (CandidateSpan cs) throws IOException {
+    private void setPayload (CandidateSpan cs, boolean decoded)
+            throws IOException {
         ArrayList<byte[]> payload = new ArrayList<byte[]>();
-        if (relationTermSpan.isPayloadAvailable()) {
+
+        // The relation payload decoded from the postings
+        // is not part of the match payload
+        if (!decoded && relationTermSpan.isPayloadAvailable()) {
             payload.addAll(relationTermSpan.getPayload());
         }
         if (direction.equals(RelationDirection.RIGHT)) {
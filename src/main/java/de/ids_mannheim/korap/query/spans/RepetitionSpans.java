@@ -2,9 +2,8 @@ package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -34,8 +33,10 @@ public class RepetitionSpans extends SimpleSpans {
 
     private int min, max;
     private long matchCost;
-    private List<CandidateSpan> matchList;
-    private List<CandidateSpan> candidates;
+    private CandidateSpanQueue matchList;
+    private CandidateSpanQueue candidates;
+    private CandidateSpanQueue adjacentSpans;
+    private long[] adjacentCosts;
 
 
     /**
@@ -56,8 +57,10 @@ public class RepetitionSpans extends SimpleSpans {
         super(query, context, acceptDocs, termContexts);
         this.min = query.getMin();
         this.max = query.getMax();
-        matchList = new ArrayList<CandidateSpan>();
-        candidates = new ArrayList<CandidateSpan>();
+        matchList = new CandidateSpanQueue(true);
+        candidates = new CandidateSpanQueue();
+        adjacentSpans = new CandidateSpanQueue();
+        adjacentCosts = new long[16];
         hasMoreSpans = firstSpans.next();
     }
 
@@ -87,15 +90,13 @@ public class RepetitionSpans extends SimpleSpans {
 
                 // Take the first element of the matchlist
                 setMatchProperties(matchList.get(0));
-                matchList.remove(0);
+                matchList.dropFirst();
                
                 return true;
             }
             matchCost = 0;
 
-            List<CandidateSpan> adjacentSpans = collectAdjacentSpans();
-
-            setMatchList(adjacentSpans);
+            setMatchList(collectAdjacentSpans());
         }
         return false;
     }
@@ -110,16 +111,12 @@ public class RepetitionSpans extends SimpleSpans {
      */
     private List<CandidateSpan> collectAdjacentSpans () throws IOException {
 
-        CandidateSpan startSpan;
-        if (!candidates.isEmpty()) {
-            startSpan = candidates.get(0);
-            candidates.remove(0);
-        }
-        else {
+        CandidateSpan startSpan = candidates.poll();
+        if (startSpan == null) {
             startSpan = new CandidateSpan(firstSpans);
         }
 
-        List<CandidateSpan> adjacentSpans = new ArrayList<CandidateSpan>();
+        adjacentSpans.clear();
         adjacentSpans.add(startSpan);
 
         CandidateSpan prevSpan = startSpan;
@@ -173,48 +170,45 @@ public class RepetitionSpans extends SimpleSpans {
     /**
      * Generates all possible repetition match spans from the given
      * list of adjacent spans and add them to the match list.
+     * The matches are generated in position order, so sorting
+     * the match list is linear.
      * 
      * @param adjacentSpans
      */
     private void setMatchList (List<CandidateSpan> adjacentSpans) {
         CandidateSpan startSpan, endSpan, matchSpan;
-        
-        for (int i = min; i < max + 1; i++) {
-            int j = 0;
+
+        computeMatchCosts(adjacentSpans);
+
+        for (int j = 0; j < adjacentSpans.size(); j++) {
+            startSpan = adjacentSpans.get(j);
+
             int endIndex;
-            while ((endIndex = j + i - 1) < adjacentSpans.size()) {
-                startSpan = adjacentSpans.get(j);
+            for (int i = min; i < max + 1
+                    && (endIndex = j + i - 1) < adjacentSpans.size(); i++) {
 
                 if (i == 1) {
-                    try {
-                        matchSpan = startSpan.clone();
-                        matchSpan.setPayloads(computeMatchPayload(adjacentSpans,
-                                0, endIndex - 1));
-
-                        if (DEBUG) {
-                            log.debug("1. Add span to matchlist: {}-{} at {}",
-                                      matchSpan.getStart(),
-                                      matchSpan.getEnd(),
-                                      matchSpan.getDoc());
-                        };
-
-                        matchList.add(matchSpan);
-                    }
-                    catch (CloneNotSupportedException e) {
-                        e.printStackTrace();
-                    }
+                    matchSpan = matchList.add(startSpan.getStart(),
+                            startSpan.getEnd(), startSpan.getDoc(),
+                            startSpan.getCost(), computeMatchPayload(
+                                    adjacentSpans, 0, endIndex - 1));
+
+                    if (DEBUG) {
+                        log.debug("1. Add span to matchlist: {}-{} at {}",
+                                  matchSpan.getStart(),
+                                  matchSpan.getEnd(),
+                                  matchSpan.getDoc());
+                    };
                 }
                 else {
                     endSpan = adjacentSpans.get(endIndex);
-                    matchSpan = new CandidateSpan(
+                    matchSpan = matchList.add(
                         startSpan.getStart(),
                         endSpan.getEnd(),
                         startSpan.getDoc(),
-                        computeMatchCost(adjacentSpans, 0, endIndex),
+                        adjacentCosts[endIndex],
                         computeMatchPayload(adjacentSpans, 0, endIndex)
                         );
-                    //System.out.println("c:"+matchSpan.getCost() +" p:"+ matchSpan.getPayloads().size());
-                    //System.out.println(startSpan.getStart() +","+endSpan.getEnd());
 
                     if (DEBUG) {
                         log.debug("2. Add span to matchlist: {}-{} at {}={}",
@@ -223,14 +217,11 @@ public class RepetitionSpans extends SimpleSpans {
                                   matchSpan.getDoc(),
                                   endSpan.getDoc());
                     };
-                    
-                    matchList.add(matchSpan);
                 }
-                j++;
             }
         }
 
-        Collections.sort(matchList);
+        matchList.sort(null);
     }
 
 
@@ -264,25 +255,22 @@ public class RepetitionSpans extends SimpleSpans {
 
 
     /**
-     * Computes the matchcost by adding all the cost of the adjacent
-     * spans
-     * between the start and end index in the given list.
+     * Computes the matchcosts by adding all the costs of the adjacent
+     * spans from the first span up to every index in the given list.
      * 
      * @param adjacentSpans
      *            a list of adjacent spans
-     * @param start
-     *            the start index
-     * @param end
-     *            the end index
-     * @return
      */
-    private long computeMatchCost (List<CandidateSpan> adjacentSpans, int start,
-            int end) {
+    private void computeMatchCosts (List<CandidateSpan> adjacentSpans) {
+        if (adjacentCosts.length < adjacentSpans.size()) {
+            adjacentCosts = Arrays.copyOf(adjacentCosts,
+                    Math.max(adjacentSpans.size(), adjacentCosts.length << 1));
+        }
         long matchCost = 0;
-        for (int i = start; i <= end; i++) {
+        for (int i = 0; i < adjacentSpans.size(); i++) {
             matchCost += adjacentSpans.get(i).getCost();
+            adjacentCosts[i] = matchCost;
         }
-        return matchCost;
     }
 
 
@@ -321,18 +309,14 @@ public class RepetitionSpans extends SimpleSpans {
         matchDocNumber = -1;
         matchStartPosition = -1;
         matchEndPosition = -1;
-        if (!candidates.isEmpty()) {
-            Iterator<CandidateSpan> i = candidates.iterator();
-            while (i.hasNext()) {
-                CandidateSpan cs = i.next();
-                if (cs.getDoc() < target) {
-                    i.remove();
-                }
-                else if (cs.getDoc() == target) {
-                    matchList.clear();
-                    return advance();
-                }
-            }
+
+        // Candidates are ordered by document
+        while (!candidates.isEmpty() && candidates.get(0).getDoc() < target) {
+            candidates.poll();
+        }
+        if (!candidates.isEmpty() && candidates.get(0).getDoc() == target) {
+            matchList.clear();
+            return advance();
         }
         if (hasMoreSpans && firstSpans.doc() < target) {
             if (!firstSpans.skipTo(target)) {
@@ -8,6 +8,7 @@ import java.util.Map;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.Bits;
@@ -40,6 +41,10 @@ public abstract class SimpleSpans extends Spans {
 
     protected byte payloadTypeIdentifier;
 
+    // Document level approximation of the query
+    private DocApproximation approximation;
+    private DocIdSetIterator candidates;
+
 
     public SimpleSpans () {
         collectPayloads = true;
@@ -81,6 +86,9 @@ public abstract class SimpleSpans extends Spans {
      * @return true iff such a document exists.
      */
     protected boolean ensureSameDoc (Spans x, Spans y) throws IOException {
+        if (approximation != null)
+            return ensureSameCandidateDoc(x, y);
+
         while (hasMoreSpans && x.doc() != y.doc()) {
             if (x.doc() < y.doc()) {
                 if (!x.skipTo(y.doc())) {
@@ -99,6 +107,57 @@ public abstract class SimpleSpans extends Spans {
     }
 
 
+    /**
+     * Like {@link #ensureSameDoc(Spans, Spans)}, but skips x and y to
+     * the same candidate document of the {@link DocApproximation},
+     * so no positions are read in documents, that can't match.
+     * 
+     * @return true iff such a document exists.
+     */
+    private boolean ensureSameCandidateDoc (Spans x, Spans y)
+            throws IOException {
+        if (candidates == null)
+            candidates = approximation.iterator();
+
+        while (hasMoreSpans) {
+            int target = Math.max(x.doc(), y.doc());
+            if (candidates.docID() < target)
+                candidates.advance(target);
+            target = candidates.docID();
+
+            if (target == DocIdSetIterator.NO_MORE_DOCS) {
+                hasMoreSpans = false;
+                return false;
+            }
+
+            if (x.doc() == target && y.doc() == target)
+                return true;
+
+            if ((x.doc() < target && !x.skipTo(target))
+                    || (y.doc() < target && !y.skipTo(target))) {
+                hasMoreSpans = false;
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Sets the document level approximation of the query.
+     * The approximation is passed to the sub spans.
+     * 
+     * @param approximation
+     *            a {@link DocApproximation}
+     */
+    public void setApproximation (DocApproximation approximation) {
+        this.approximation = approximation;
+        this.candidates = null;
+        DocApproximation.approximate(firstSpans, approximation);
+        DocApproximation.approximate(secondSpans, approximation);
+    }
+
+
     /**
      * Find the same doc shared by element, firstspan and secondspan.
      * 
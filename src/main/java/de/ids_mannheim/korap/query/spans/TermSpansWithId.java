@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
@@ -10,6 +9,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.spans.TermSpans;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 
 import de.ids_mannheim.korap.query.SpanTermWithIdQuery;
 
@@ -86,10 +86,12 @@ public class TermSpansWithId extends SimpleSpans {
      * @throws IOException
      */
     private void readPayload () throws IOException {
-        List<byte[]> payload = (List<byte[]>) firstSpans.getPayload();
-        ByteBuffer bb = ByteBuffer.allocate(payload.get(0).length);
-        bb.put(payload.get(0));
-        setSpanId(bb.getShort(0)); //term id
+        BytesRef payload = PayloadDecoder.getPayload(termSpans);
+        if (payload == null) {
+            List<byte[]> payloads = (List<byte[]>) firstSpans.getPayload();
+            payload = new BytesRef(payloads.get(0));
+        };
+        setSpanId(PayloadDecoder.readShort(payload, 0)); //term id
     }
 
 
@@ -1,8 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.index.LeafReaderContext;
@@ -77,12 +75,8 @@ public class TokenDistanceSpans extends OrderedDistanceSpans {
      * 
      */
     private void copyPossibleCandidates () {
-        List<CandidateSpan> temp = new ArrayList<>();
-        for (CandidateSpan cs : candidateList) {
-            if (cs.getEnd() + maxDistance > secondSpans.start())
-                temp.add(cs);
-        }
-        candidateList = temp;
+        final int start = secondSpans.start();
+        candidateList.removeIf(cs -> cs.getEnd() + maxDistance <= start);
     }
 
 
@@ -1,9 +1,7 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -53,9 +51,9 @@ public abstract class UnorderedDistanceSpans extends DistanceSpans {
         minDistance = query.getMinDistance();
         maxDistance = query.getMaxDistance();
 
-        firstSpanList = new ArrayList<CandidateSpan>();
-        secondSpanList = new ArrayList<CandidateSpan>();
-        matchList = new ArrayList<CandidateSpan>();
+        firstSpanList = new CandidateSpanQueue();
+        secondSpanList = new CandidateSpanQueue();
+        matchList = new CandidateSpanQueue();
 
         hasMoreFirstSpans = firstSpans.next();
         hasMoreSecondSpans = secondSpans.next();
@@ -123,20 +121,21 @@ public abstract class UnorderedDistanceSpans extends DistanceSpans {
             if (currentFirstSpan.getStart() < currentSecondSpan.getStart()
                     || isLastCandidateSmaller(currentFirstSpan,
                             currentSecondSpan)) {
-                matchList = findMatches(currentFirstSpan, secondSpanList, true);
+                findMatches(currentFirstSpan, secondSpanList, true,
+                        matchList);
                 updateList(firstSpanList);
             }
             else {
-                matchList =
-                        findMatches(currentSecondSpan, firstSpanList, false);
+                findMatches(currentSecondSpan, firstSpanList, false,
+                        matchList);
                 updateList(secondSpanList);
 
                 if (currentFirstSpan.getStart() == currentSecondSpan.getStart()
                         && currentFirstSpan.getEnd() == currentSecondSpan
                                 .getEnd()) {
-                    matchList.addAll(findMatches(currentFirstSpan,
-                            secondSpanList, false));
-                    Collections.sort(matchList);
+                    findMatches(currentFirstSpan, secondSpanList, false,
+                            matchList);
+                    matchList.sort(null);
                     updateList(firstSpanList);
                 }
             }
@@ -213,7 +212,7 @@ public abstract class UnorderedDistanceSpans extends DistanceSpans {
     /**
      * Finds all matches between the target span and its candidates in
      * the
-     * candidate list.
+     * candidate list and adds them to the given match list.
      * 
      * @param target
      *            a target span
@@ -222,10 +221,12 @@ public abstract class UnorderedDistanceSpans extends DistanceSpans {
      * @param isTargetFirstSpan
      *            true is the target span is of the first span, false
      *            otherwise
-     * @return the matches in a list
+     * @param matches
+     *            the list the matches are added to
      */
-    protected abstract List<CandidateSpan> findMatches (CandidateSpan target,
-            List<CandidateSpan> candidateList, boolean isTargetFirstSpan);
+    protected abstract void findMatches (CandidateSpan target,
+            List<CandidateSpan> candidateList, boolean isTargetFirstSpan,
+            List<CandidateSpan> matches);
 
     /**
      * Computes match properties and creates a candidate span match to
@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -59,7 +58,7 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
                 termContexts);
         hasMoreElements = elements.next();
         elementPosition = 0;
-        elementList = new ArrayList<CandidateSpan>();
+        elementList = new CandidateSpanQueue();
     }
 
 
@@ -246,10 +245,9 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
 
 
     @Override
-    protected List<CandidateSpan> findMatches (CandidateSpan target,
-            List<CandidateSpan> candidateList, boolean isTargetFirstSpan) {
-
-        List<CandidateSpan> matches = new ArrayList<>();
+    protected void findMatches (CandidateSpan target,
+            List<CandidateSpan> candidateList, boolean isTargetFirstSpan,
+            List<CandidateSpan> matches) {
 
         int actualDistance;
         int targetPos = target.getPosition();
@@ -267,7 +265,6 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
                 matches.add(createMatchCandidate(target, cs, false,
                         isTargetFirstSpan));
         }
-        return matches;
     }
 
     @Override
@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -122,10 +121,10 @@ public class UnorderedTokenDistanceSpans extends UnorderedDistanceSpans {
 
 
     @Override
-    protected List<CandidateSpan> findMatches (CandidateSpan target,
-            List<CandidateSpan> candidateList, boolean isTargetFirstSpan) {
+    protected void findMatches (CandidateSpan target,
+            List<CandidateSpan> candidateList, boolean isTargetFirstSpan,
+            List<CandidateSpan> matches) {
 
-        List<CandidateSpan> matches = new ArrayList<>();
         int actualDistance;
         CandidateSpan match;
         for (CandidateSpan cs : candidateList) {
@@ -152,7 +151,6 @@ public class UnorderedTokenDistanceSpans extends UnorderedDistanceSpans {
                 matches.add(match);
             }
         }
-        return matches;
     }
 
 
@@ -95,6 +95,10 @@ public class WithinSpans extends Spans {
     // Two buffers for storing candidates
     private LinkedList<WithinSpan> spanStore1, spanStore2;
 
+    // Document level approximation of the query
+    private DocApproximation approximation;
+    private DocIdSetIterator candidates;
+
 
     /**
      * Construct a new WithinSpans object.
@@ -458,6 +462,25 @@ public class WithinSpans extends Spans {
         };
 
 
+        // Skip the current document, in case it can't match
+        if (this.approximation != null && this.wrapDoc == this.embeddedDoc) {
+            final int target = this._candidate(this.embeddedDoc);
+            if (target != this.embeddedDoc) {
+                if (target == DocIdSetIterator.NO_MORE_DOCS
+                        || !this.embeddedSpans.skipTo(target)) {
+                    this.more = false;
+                    this.inSameDoc = false;
+                    this.matchDoc = DocIdSetIterator.NO_MORE_DOCS;
+                    return false;
+                };
+
+                this.embeddedDoc = this.embeddedSpans.doc();
+                this.embeddedStart = this.embeddedSpans.start();
+                this.embeddedEnd = -1;
+                this.embeddedPayload = null;
+            };
+        };
+
         // Clear all spanStores
         if (this.wrapDoc != this.embeddedDoc) {
             /*
@@ -486,7 +509,9 @@ public class WithinSpans extends Spans {
             if (this.wrapDoc < this.embeddedDoc) {
 
                 // Set document information
-                if (!wrapSpans.skipTo(this.embeddedDoc)) {
+                final int target = this._candidate(this.embeddedDoc);
+                if (target == DocIdSetIterator.NO_MORE_DOCS
+                        || !wrapSpans.skipTo(target)) {
                     this.more = false;
                     this.inSameDoc = false;
                     this.matchDoc = DocIdSetIterator.NO_MORE_DOCS;
@@ -530,7 +555,9 @@ public class WithinSpans extends Spans {
             else if (this.wrapDoc > this.embeddedDoc) {
 
                 // Set document information
-                if (!this.embeddedSpans.skipTo(this.wrapDoc)) {
+                final int target = this._candidate(this.wrapDoc);
+                if (target == DocIdSetIterator.NO_MORE_DOCS
+                        || !this.embeddedSpans.skipTo(target)) {
                     this.more = false;
                     this.inSameDoc = false;
                     this.matchDoc = DocIdSetIterator.NO_MORE_DOCS;
@@ -570,6 +597,36 @@ public class WithinSpans extends Spans {
     };
 
 
+    /**
+     * Set the document level approximation of the query.
+     * The approximation is passed to the sub spans.
+     * 
+     * @param approximation
+     *            A {@link DocApproximation}.
+     */
+    public void setApproximation (DocApproximation approximation) {
+        this.approximation = approximation;
+        this.candidates = null;
+        DocApproximation.approximate(this.wrapSpans, approximation);
+        DocApproximation.approximate(this.embeddedSpans, approximation);
+    };
+
+
+    // Get the first candidate document >= target
+    private int _candidate (int target) throws IOException {
+        if (this.approximation == null)
+            return target;
+
+        if (this.candidates == null)
+            this.candidates = this.approximation.iterator();
+
+        if (this.candidates.docID() < target)
+            this.candidates.advance(target);
+
+        return this.candidates.docID();
+    };
+
+
     // Initialize spans
     private boolean init () throws IOException {
 
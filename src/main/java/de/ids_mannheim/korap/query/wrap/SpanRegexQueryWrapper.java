@@ -1,11 +1,13 @@
 package de.ids_mannheim.korap.query.wrap;
 
-import org.apache.lucene.index.Term;
 import org.apache.lucene.search.RegexpQuery;
 import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.util.automaton.RegExp;
 
+import de.ids_mannheim.korap.cache.MultiTermCache;
+import de.ids_mannheim.korap.query.SpanCachedMultiTermQueryWrapper;
+
 /*
   TODO: Don't allow queries like ".*?"!!!
 */
@@ -40,8 +42,9 @@ public class SpanRegexQueryWrapper extends SpanQueryWrapper {
         };
 
         try {
-            RegexpQuery requery = new RegexpQuery(new Term(field, re), flags);
-            query = new SpanMultiTermQueryWrapper<RegexpQuery>(requery);
+            // The automaton is compiled once and cached
+            query = new SpanCachedMultiTermQueryWrapper(
+                    MultiTermCache.regex(field, re, flags));
         } catch (Exception e) {
             this.error = e.getLocalizedMessage();
         }
@@ -1,10 +1,10 @@
 package de.ids_mannheim.korap.query.wrap;
 
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.WildcardQuery;
-import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
 import org.apache.lucene.search.spans.SpanQuery;
 
+import de.ids_mannheim.korap.cache.MultiTermCache;
+import de.ids_mannheim.korap.query.SpanCachedMultiTermQueryWrapper;
+
 public class SpanWildcardQueryWrapper extends SpanQueryWrapper {
     private SpanQuery query;
 
@@ -22,8 +22,9 @@ public class SpanWildcardQueryWrapper extends SpanQueryWrapper {
             };
             wc = wc.toLowerCase();
         };
-        WildcardQuery wcquery = new WildcardQuery(new Term(field, wc));
-        query = new SpanMultiTermQueryWrapper<WildcardQuery>(wcquery);
+        // The automaton is compiled once and cached
+        query = new SpanCachedMultiTermQueryWrapper(
+                MultiTermCache.wildcard(field, wc));
     };
 
 
@@ -11,7 +11,6 @@ import java.util.*;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
-import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FixedBitSet;
@@ -29,6 +28,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 
 import de.ids_mannheim.korap.index.AbstractDocument;
+import de.ids_mannheim.korap.index.MarkerEnum;
 import de.ids_mannheim.korap.index.PositionsToOffset;
 import de.ids_mannheim.korap.query.SpanElementQuery;
 import de.ids_mannheim.korap.response.match.HighlightCombinator;
@@ -37,6 +37,7 @@ import de.ids_mannheim.korap.response.match.MatchIdentifier;
 import de.ids_mannheim.korap.response.match.PosIdentifier;
 import de.ids_mannheim.korap.response.match.Relation;
 import de.ids_mannheim.korap.util.KrillProperties;
+import de.ids_mannheim.korap.util.KrillJson;
 
 /*
  * The snippet building algorithm is quite complicated for now
@@ -100,7 +101,7 @@ public class Match extends AbstractDocument {
     public static final boolean DEBUG = false;
 
     // Mapper for JSON serialization
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
     // Snippet information
     @JsonIgnore
@@ -861,13 +862,12 @@ public class Match extends AbstractDocument {
 
 	
 	// Retrieve markers in a certain area
+	// using the marker enum shared by all matches of the leaf
 	public List<int[]> retrieveMarkers (String marker) {
 		if (this.positionsToOffset != null) {
-			return this.retrieveMarkers(
-				this.positionsToOffset.getLeafReader(),
-				(Bits) null,
-				"tokens",
-				marker
+			return this._retrieveMarkers(
+				this.positionsToOffset.getMarkers("tokens", marker),
+				(Bits) null
 				);
 		};
 
@@ -875,11 +875,21 @@ public class Match extends AbstractDocument {
 	};
 
 	// Retrieve markers in a certain area
-    // THIS IS NOT VERY CLEVER - MAKE IT MORE CLEVER!
     public List<int[]> retrieveMarkers (LeafReaderContext atomic,
 										   Bits bitset,
 										   String field,
 										   String marker) {
+		return this._retrieveMarkers(
+			new MarkerEnum(atomic.reader(), field, marker),
+			bitset
+			);
+	};
+
+
+	// Retrieve markers in a certain area
+	// by advancing the enum to the document of the match
+    private List<int[]> _retrieveMarkers (MarkerEnum markers,
+										   Bits bitset) {
 
 		// List of relevant pagebreaks - only used for pagebreak markers!
 		List<int[]> pagebreaks = new ArrayList<>(24);
@@ -904,54 +914,34 @@ public class Match extends AbstractDocument {
 			// Store last relevant marker in byte array
 			byte[] b = null;
 
-			SpanTermQuery stq = new SpanTermQuery(new Term(field, marker));
+			// Only markers in the document of the match are relevant
+			final boolean inDoc = (bitset == null
+								   || bitset.get(this.localDocID))
+				&& markers.moveTo(this.localDocID);
 
-			if (DEBUG)
-				log.trace("Check markers with {}", stq.toString());
-
-			Spans markerSpans = stq.getSpans(
-				atomic, bitset, new HashMap<Term, TermContext>()
-				);
+			if (DEBUG && inDoc)
+				log.debug("The marker occurs in the document");
 
-			// Iterate over all markers
-			while (markerSpans.next() == true) {
+			// Iterate over all markers in the document
+			for (int m = 0; inDoc && markers.exists(m); m++) {
+				final int markerStart = markers.position(m);
 
 				if (DEBUG) {
-					log.debug("There is a marker at {}/{} and we are at {}",
-							  markerSpans.doc(),
-							  markerSpans.start(),
+					log.debug("There is a marker at {} and we are at {}",
+							  markerStart,
                               this.localDocID);
 				};
-				
-				// Current marker is not in the correct document
-                if (markerSpans.doc() != this.localDocID) {
-                    if (markerSpans.doc() < this.localDocID) {
-                        markerSpans.skipTo(this.localDocID);
-                        
-                        // No pagebreaks in this document
-                        if (markerSpans.doc() != this.localDocID)
-                            break;
-                    }
-                    else {
-                        break;
-                    };
-                    continue;
-                };
-
-				if (DEBUG)
-					log.debug("The marker occurs in the document");
 
 				// There is a marker found - check,
 				// if it is in the correct area
-				if (markerSpans.start() < minStartPos) {
+				if (markerStart < minStartPos) {
                     
-					// Only the first payload is relevant
-					b = markerSpans.getPayload().iterator().next();
-					start = markerSpans.start();
+					b = markers.payload(m);
+					start = markerStart;
 
                     if (DEBUG)
 						log.debug("Marker start position is before match at {}:{}",
-								  markerSpans.start(),
+								  markerStart,
                                   b);
 					
 				}
@@ -999,11 +989,10 @@ public class Match extends AbstractDocument {
 					};
 
 					// b wasn't used yet
-					if (markerSpans.start() <= maxEndPos) {
+					if (markerStart <= maxEndPos) {
 
 						// Set new marker
-						// Only the first payload is relevant
-						b = markerSpans.getPayload().iterator().next();
+						b = markers.payload(m);
 						bb.rewind();
 						bb.put(b);
 						bb.rewind();
@@ -1694,7 +1683,7 @@ public class Match extends AbstractDocument {
             this.startMore = false;
         }
         
-        Integer[] offsets;
+        int[] offsets;
         ArrayNode tokens;
         int i;
 
@@ -10,6 +10,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.*;
 
+import de.ids_mannheim.korap.util.KrillJson;
+
 
 /**
  * A message for Notifications.
@@ -29,7 +31,7 @@ import com.fasterxml.jackson.databind.node.*;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Message implements Cloneable {
     // Mapper for JSON serialization
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
     private String msg;
     private int code = 0;
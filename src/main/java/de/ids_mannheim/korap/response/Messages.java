@@ -1,6 +1,7 @@
 package de.ids_mannheim.korap.response;
 
 import de.ids_mannheim.korap.util.QueryException;
+import de.ids_mannheim.korap.util.KrillJson;
 import static de.ids_mannheim.korap.util.KrillString.quote;
 import de.ids_mannheim.korap.response.Message;
 
@@ -31,7 +32,7 @@ import java.util.*;
 public class Messages implements Cloneable, Iterable<Message> {
 
     // Create object mapper for JSON generation
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
     // List of messages
     private ArrayList<Message> messages;
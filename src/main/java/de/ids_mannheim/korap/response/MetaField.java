@@ -9,13 +9,15 @@ import java.util.*;
 
 import org.apache.lucene.index.*;
 
+import de.ids_mannheim.korap.util.KrillJson;
+
 /**
  * Class representing a meta field.
  */
 public class MetaField {
 
 	// Mapper for JSON serialization
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
 	public String type;
 	public String key;
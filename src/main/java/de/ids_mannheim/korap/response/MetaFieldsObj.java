@@ -12,6 +12,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 
 import de.ids_mannheim.korap.index.AbstractDocument;
 import de.ids_mannheim.korap.util.KrillDate;
+import de.ids_mannheim.korap.util.KrillJson;
 
 import java.io.IOException;
 
@@ -38,7 +39,7 @@ public class MetaFieldsObj implements Iterable<MetaField> {
     private static final Pattern dateValuePattern = Pattern.compile("^([0-9]{8})$");
 
 	// Mapper for JSON serialization
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
 	public List<String> fieldsOrder;
 
@@ -14,6 +14,7 @@ import de.ids_mannheim.korap.response.Message;
 import de.ids_mannheim.korap.response.Messages;
 import de.ids_mannheim.korap.util.QueryException;
 import de.ids_mannheim.korap.util.StatusCodes;
+import de.ids_mannheim.korap.util.KrillJson;
 
 /**
  * A unified notification class for KorAP related errors,
@@ -46,7 +47,7 @@ import de.ids_mannheim.korap.util.StatusCodes;
 public class Notifications {
 
     // Create object mapper for JSON generation
-    protected ObjectMapper mapper = new ObjectMapper();
+    protected ObjectMapper mapper = KrillJson.mapper();
 
     private Messages warnings, errors, messages;
 
@@ -2,12 +2,18 @@ package de.ids_mannheim.korap.response;
 
 import static de.ids_mannheim.korap.util.KrillString.quote;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.util.HashMap;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -16,6 +22,8 @@ import de.ids_mannheim.korap.KrillCollection;
 import de.ids_mannheim.korap.KrillMeta;
 import de.ids_mannheim.korap.KrillQuery;
 import de.ids_mannheim.korap.KrillStats;
+import de.ids_mannheim.korap.util.KrillJson;
+import de.ids_mannheim.korap.util.StatusCodes;
 
 /**
  * Base class for objects meant to be responded by the server.
@@ -39,7 +47,7 @@ import de.ids_mannheim.korap.KrillStats;
 @JsonInclude(Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Response extends Notifications {
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
     private KrillMeta meta;
     private KrillCollection collection;
@@ -553,6 +561,10 @@ public class Response extends Notifications {
                 json.set("query", queryNode);
         };
 
+        // KoralQuery stats object
+        if (this.stats != null)
+            json.set("stats", this.stats.toJsonNode());
+
         // KoralQuery collection object
         if (this.collection != null) {
             // && this.collection.getFilters().toArray().length > 0) {
@@ -565,6 +577,98 @@ public class Response extends Notifications {
     };
 
 
+    /**
+     * Serialize response to a {@link JsonGenerator}.
+     * Subclasses may override this to stream large
+     * responses without building the whole {@link JsonNode}.
+     * 
+     * @param gen
+     *            The {@link JsonGenerator} to write to.
+     * @throws IOException
+     */
+    public void toJson (JsonGenerator gen) throws IOException {
+        mapper.writeTree(gen, this.toJsonNode());
+    };
+
+
+    /**
+     * Serialize response as UTF-8 encoded JSON
+     * to an {@link OutputStream}, for example the body of
+     * a server response.
+     * 
+     * In case the serialization fails, parts of the response
+     * may already be written, so the open JSON structures are
+     * closed and the error is added to the response object.
+     * 
+     * @param os
+     *            The {@link OutputStream} to write to.
+     *            The stream is flushed but not closed.
+     * @throws IOException
+     */
+    public void toJsonStream (OutputStream os) throws IOException {
+        try (JsonGenerator gen = KrillJson.generator(os)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            try {
+                this.toJson(gen);
+            }
+            catch (Exception e) {
+                _writeError(gen, e);
+            };
+        };
+    };
+
+
+    // Close all open JSON structures of a failed serialization
+    // and append the error to the response object
+    private static void _writeError (JsonGenerator gen, Exception e)
+            throws IOException {
+        JsonStreamContext context = gen.getOutputContext();
+
+        // Nothing was written yet
+        if (context.inRoot()) {
+            gen.writeStartObject();
+        }
+        else {
+
+            // Close nested structures up to the response object
+            while (!context.getParent().inRoot()) {
+                if (context.inArray()) {
+                    gen.writeEndArray();
+                }
+                else {
+                    _completeField(gen);
+                    gen.writeEndObject();
+                };
+                context = gen.getOutputContext();
+            };
+            _completeField(gen);
+        };
+
+        gen.writeArrayFieldStart("errors");
+        gen.writeStartArray();
+        gen.writeNumber(StatusCodes.UNABLE_TO_GENERATE_JSON);
+        gen.writeString("Unable to generate JSON");
+        if (e.getLocalizedMessage() != null)
+            gen.writeString(e.getLocalizedMessage());
+        gen.writeEndArray();
+        gen.writeEndArray();
+        gen.writeEndObject();
+    };
+
+
+    // Write a null value in case a field name
+    // was written without a value
+    private static void _completeField (JsonGenerator gen)
+            throws IOException {
+        try {
+            gen.writeNull();
+        }
+        catch (JsonGenerationException e) {
+            // No value expected
+        };
+    };
+
+
     /**
      * Serialize response as a JSON string.
      * <p>
@@ -590,7 +694,11 @@ public class Response extends Notifications {
     public String toJsonString () {
         String msg = "";
         try {
-            return mapper.writeValueAsString(this.toJsonNode());
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator gen = KrillJson.generator(writer)) {
+                this.toJson(gen);
+            };
+            return writer.toString();
         }
         catch (Exception e) {
             // Bad in case the message contains quotes!
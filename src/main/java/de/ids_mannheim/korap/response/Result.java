@@ -2,6 +2,7 @@ package de.ids_mannheim.korap.response;
 
 import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -16,12 +17,16 @@ import de.ids_mannheim.korap.response.SearchContext;
 import de.ids_mannheim.korap.response.Response;
 import de.ids_mannheim.korap.response.Match;
 import de.ids_mannheim.korap.Krill;
+import de.ids_mannheim.korap.util.KrillJson;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /*
   TODO: Reuse the Krill code for data serialization!
@@ -37,7 +42,7 @@ import java.util.List;
 @JsonInclude(Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
 public final class Result extends Krill {
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
     @JsonIgnore
     public static final short ITEMS_PER_PAGE = 25;
@@ -62,9 +67,7 @@ public final class Result extends Krill {
     /**
      * Construct a new Result object.
      */
-    public Result () {
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-    };
+    public Result () {};
 
 
     /**
@@ -82,10 +85,6 @@ public final class Result extends Krill {
     public Result (String query, int startIndex, short itemsPerPage,
                    SearchContext context) {
 
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        // mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
-        // mapper.disable(SerializationFeature.WRITE_NULL_MAP_VALUES);
-
         this.matches = new ArrayList<>(itemsPerPage);
         this.serialQuery = query;
         this.startIndex = startIndex;
@@ -269,7 +268,7 @@ public final class Result extends Krill {
      * @return {@link JsonNode} representation of the search results.
      */
     public JsonNode toJsonNode () {
-        ObjectNode json = (ObjectNode) mapper.valueToTree(super.toJsonNode());
+        ObjectNode json = (ObjectNode) super.toJsonNode();
 
         this._addMeta(json);
 
@@ -289,6 +288,45 @@ public final class Result extends Krill {
     };
 
 
+    /**
+     * Serialize the result set to a {@link JsonGenerator}.
+     * The header is serialized first, followed by the matches,
+     * that are serialized one by one, so the serialization
+     * of all matches is never held in memory at once.
+     * 
+     * @param gen
+     *            The {@link JsonGenerator} to write to.
+     * @throws IOException
+     */
+    @Override
+    public void toJson (JsonGenerator gen) throws IOException {
+        ObjectNode json = (ObjectNode) super.toJsonNode();
+
+        this._addMeta(json);
+
+        gen.writeStartObject();
+
+        // Write header fields
+        Iterator<Map.Entry<String, JsonNode>> fields = json.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            gen.writeFieldName(field.getKey());
+            mapper.writeTree(gen, field.getValue());
+        };
+
+        // Write matches
+        if (this.matches != null) {
+            gen.writeArrayFieldStart("matches");
+            for (Match km : this.getMatches()) {
+                mapper.writeTree(gen, km.toJsonNode());
+            };
+            gen.writeEndArray();
+        };
+
+        gen.writeEndObject();
+    };
+
+
     /**
      * Stringifies the matches to give a brief overview on
      * the result. Mainly used for testing.
@@ -339,7 +377,8 @@ public final class Result extends Krill {
             array.add(km.toTokenList());
 
         try {
-            return mapper.writeValueAsString(json);
+            return mapper.writer(SerializationFeature.INDENT_OUTPUT)
+                    .writeValueAsString(json);
         }
         catch (Exception e) {
             log.warn(e.getLocalizedMessage());
@@ -16,6 +16,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
 import de.ids_mannheim.korap.index.AbstractDocument;
+import de.ids_mannheim.korap.util.KrillJson;
 
 /**
  * Representation of Texts in a Result.
@@ -35,7 +36,7 @@ public class Text extends AbstractDocument {
     public static final boolean DEBUG = false;
 
     // Mapper for JSON serialization
-    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapper = KrillJson.mapper();
 
 
     public Text () {};
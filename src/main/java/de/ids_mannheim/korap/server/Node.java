@@ -184,6 +184,12 @@ public class Node {
             System.out.println("\nHello. My name is " + getName()
                     + " and I am a Krill node");
             System.out.println("listening on " + getListener() + ".");
+
+            // Open the reader to start warming up named
+            // virtual corpora in the background
+            if (!KrillProperties.warmupVC.isEmpty() && getIndex() != null)
+                getIndex().reader();
+
             Thread.currentThread().join();
         }
         catch (Exception e) {
@@ -265,7 +271,7 @@ public class Node {
      * 
      * @return The associated {@link KrillIndex}.
      */
-    public static KrillIndex getIndex () {
+    public static synchronized KrillIndex getIndex () {
 
         // Index already instantiated
         if (index != null)
@@ -13,6 +13,7 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.UriInfo;
 import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.ext.ReaderInterceptor;
 import jakarta.ws.rs.ext.ReaderInterceptorContext;
 import jakarta.ws.rs.ext.WriterInterceptor;
@@ -23,14 +24,19 @@ import de.ids_mannheim.korap.server.Node;
 import de.ids_mannheim.korap.Krill;
 import de.ids_mannheim.korap.KrillIndex;
 import de.ids_mannheim.korap.KrillCollection;
+import de.ids_mannheim.korap.KrillStats;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.Match;
 import de.ids_mannheim.korap.response.Response;
 import de.ids_mannheim.korap.response.MatchCollector;
 import de.ids_mannheim.korap.response.collector.MatchCollectorDB;
+import de.ids_mannheim.korap.util.KrillJson;
+import de.ids_mannheim.korap.util.KrillProperties;
 import de.ids_mannheim.korap.util.QueryException;
+import de.ids_mannheim.korap.util.StatusCodes;
 import de.ids_mannheim.korap.index.FieldDocument;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -43,7 +49,8 @@ import org.slf4j.LoggerFactory;
 import java.sql.SQLException;
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
@@ -198,7 +205,6 @@ public class Resource {
     @Path("/corpus")
     @Produces(MediaType.APPLICATION_JSON)
     public String getCorpus (@Context UriInfo uri) {
-        ObjectMapper mapper = new ObjectMapper();
 
         // TODO: Accept fields!!!!
 
@@ -207,26 +213,48 @@ public class Resource {
             return kresp.toJsonString();
 
         // TODO: Statistics should be node fields - not annotations!
-        // TODO: This is just temporary
         KrillIndex ki = Node.getIndex();
 
-        ObjectNode obj = mapper.createObjectNode();
-        obj.put("tokens", ki.numberOf("tokens"));
-        obj.put("base/texts", ki.numberOf("base/texts"));
-        obj.put("base/sentences", ki.numberOf("base/sentences"));
-        obj.put("base/paragraphs", ki.numberOf("base/paragraphs"));
+        // All counters are computed in a single pass
+        KrillStats stats = new KrillStats().add("tokens", "base/texts",
+                "base/sentences", "base/paragraphs", "sentences",
+                "paragraphs");
+        stats.apply(ki);
+
+        ObjectNode obj = (ObjectNode) stats.toJsonNode();
 
         // <legacy>
-        obj.put("sentences", ki.numberOf("sentences"));
-        obj.put("paragraphs", ki.numberOf("paragraphs"));
+        for (String counter : stats.getCounters()) {
+            obj.put(counter, stats.getValue(counter));
+        };
         // </legacy>
 
+        kresp.moveNotificationsFrom(stats);
         kresp.addJsonNode("stats", obj);
         return kresp.toJsonString();
     };
 
 
-    // PUT: Return corpus info for virtual corpus
+    /**
+     * Return corpus statistics for a virtual corpus.
+     * 
+     * @param json
+     *            JSON string with a collection object
+     *            and a list of counters.
+     */
+    @POST
+    @Path("/corpus")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public String corpus (String json) {
+
+        final Response kresp = _initResponse();
+        if (kresp.hasErrors())
+            return kresp.toJsonString();
+
+        kresp.setStats(new KrillStats(json).apply(Node.getIndex()));
+        return kresp.toJsonString();
+    };
 
 
     /**
@@ -238,11 +266,11 @@ public class Resource {
     @POST
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    public String find (String json, @Context UriInfo uri) {
+    public StreamingOutput find (String json, @Context UriInfo uri) {
 
         final Response kresp = _initResponse();
         if (kresp.hasErrors())
-            return kresp.toJsonString();
+            return _stream(kresp);
 
         // Search index
         final Krill ks = new Krill(json);
@@ -253,7 +281,7 @@ public class Resource {
         if (qp.get("uid") == null) {
             kresp.addError(610, "Missing request parameters",
                     "No unique IDs were given");
-            return kresp.toJsonString();
+            return _stream(kresp);
         };
 
         // Build Collection based on a list of uids
@@ -269,7 +297,7 @@ public class Resource {
         // Only return the first match per text
         ks.getMeta().setItemsPerResource(1);
 
-        return ks.apply(Node.getIndex()).toJsonString();
+        return _stream(ks.apply(Node.getIndex()));
     };
 
 
@@ -332,16 +360,16 @@ public class Resource {
     @Path("/search")
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    public String search (String json) {
+    public StreamingOutput search (String json) {
 
         Response kresp = _initResponse();
         if (kresp.hasErrors())
-            return kresp.toJsonString();
+            return _stream(kresp);
 
         // Search index
         // Reuse Response
         Result kr = new Krill(json).apply(Node.getIndex());
-        return kr.toJsonString();
+        return _stream(kr);
     };
 
 
@@ -405,6 +433,81 @@ public class Resource {
     };
 
 
+    /**
+     * Retrieve multiple matches at once.
+     * Matches of the same document share the
+     * document lookup and the term vector pass.
+     * 
+     * @param json
+     *            JSON string with a list of <tt>matchIDs</tt> and
+     *            the optional attributes <tt>info</tt>, <tt>spans</tt>,
+     *            <tt>highlights</tt>, <tt>extended</tt>,
+     *            <tt>foundry</tt> and <tt>layer</tt>.
+     */
+    @POST
+    @Path("/match")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public String matches (String json) {
+
+        Response kresp = _initResponse();
+        if (kresp.hasErrors())
+            return kresp.toJsonString();
+
+        JsonNode req;
+        try {
+            req = KrillJson.mapper().readTree(json);
+        }
+        catch (IOException e) {
+            kresp.addError(StatusCodes.UNABLE_TO_PARSE_JSON,
+                    "Unable to parse JSON");
+            return kresp.toJsonString();
+        };
+
+        List<String> ids = _stringList(req.get("matchIDs"));
+        if (ids == null || ids.isEmpty()) {
+            kresp.addError(StatusCodes.INVALID_MATCH_ID,
+                    "Invalid match identifier");
+            return kresp.toJsonString();
+        };
+
+        // Limit the batch size
+        if (ids.size() > KrillProperties.maxMatchIDs) {
+            kresp.addError(StatusCodes.TOO_MANY_MATCH_IDS,
+                    "Too many match identifiers",
+                    String.valueOf(ids.size()),
+                    String.valueOf(KrillProperties.maxMatchIDs));
+            return kresp.toJsonString();
+        };
+
+        boolean includeSpans = req.path("spans").asBoolean(false);
+        boolean info = includeSpans || req.path("info").asBoolean(false);
+        boolean includeHighlights = req.path("highlights").asBoolean(true);
+        boolean extendToSentence = req.path("extended").asBoolean(false);
+
+        try {
+            // Get match infos
+            List<Match> matches = Node.getIndex().getMatchInfos(ids,
+                    "tokens", info, _stringList(req.get("foundry")),
+                    _stringList(req.get("layer")), includeSpans, true,
+                    false, includeHighlights, extendToSentence);
+
+            ObjectNode res = (ObjectNode) kresp.toJsonNode();
+            ArrayNode array = res.putArray("matches");
+            for (Match match : matches)
+                array.add(match.toJsonNode());
+            return res.toString();
+        }
+
+        // Nothing found
+        catch (QueryException qe) {
+            kresp.addError(qe.getErrorCode(), qe.getMessage());
+        };
+
+        return kresp.toJsonString();
+    };
+
+
     /*
       POST /collect/:result_id
       POST /peek
@@ -488,4 +591,26 @@ public class Resource {
 
         return false;
     };
+
+
+    // Get a single string or a list of strings
+    private static List<String> _stringList (JsonNode node) {
+        if (node == null || node.isNull())
+            return null;
+        List<String> list = new ArrayList<>();
+        if (node.isArray()) {
+            for (JsonNode item : node)
+                list.add(item.asText());
+        }
+        else {
+            list.add(node.asText());
+        };
+        return list;
+    };
+
+
+    // Stream the serialized response to the client
+    private static StreamingOutput _stream (final Response kresp) {
+        return os -> kresp.toJsonStream(os);
+    };
 };
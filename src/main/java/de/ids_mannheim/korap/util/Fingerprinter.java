@@ -12,9 +12,9 @@ public class Fingerprinter {
     private final static Logger log = LoggerFactory
             .getLogger(Fingerprinter.class);
 
-    private static MessageDigest md;
-
+    // Digests are not thread-safe, so every call gets its own
     public static String create (String key) {
+        final MessageDigest md;
         try {
             md = MessageDigest.getInstance("MD5");
         }
@@ -24,10 +24,6 @@ public class Fingerprinter {
         };
 
         md.update(key.getBytes());
-        String code = new String(Base64.getUrlEncoder().encode(md.digest()));
-        
-        md.reset();
-        return code;
-
+        return new String(Base64.getUrlEncoder().encode(md.digest()));
     }
 }
@@ -0,0 +1,68 @@
+package de.ids_mannheim.korap.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Shared JSON mapper for serialization and parsing.
+ *
+ * <p>
+ * Creating an {@link ObjectMapper} is expensive, as it sets up
+ * serializer caches and factories. Once configured, a mapper is
+ * thread-safe, so all objects share a single instance.
+ * The mapper must not be reconfigured - use an
+ * {@link com.fasterxml.jackson.databind.ObjectWriter}
+ * for specific serialization features instead.
+ * </p>
+ */
+public final class KrillJson {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+
+    private KrillJson () {};
+
+
+    /**
+     * Get the shared {@link ObjectMapper}.
+     *
+     * @return The shared {@link ObjectMapper}.
+     */
+    public static ObjectMapper mapper () {
+        return mapper;
+    };
+
+
+    /**
+     * Create a {@link JsonGenerator} writing UTF-8
+     * to an {@link OutputStream}.
+     *
+     * @param os
+     *            The target {@link OutputStream}.
+     * @return The {@link JsonGenerator}.
+     * @throws IOException
+     */
+    public static JsonGenerator generator (OutputStream os)
+            throws IOException {
+        return mapper.getFactory().createGenerator(os, JsonEncoding.UTF8);
+    };
+
+
+    /**
+     * Create a {@link JsonGenerator} writing to a {@link Writer}.
+     *
+     * @param writer
+     *            The target {@link Writer}.
+     * @return The {@link JsonGenerator}.
+     * @throws IOException
+     */
+    public static JsonGenerator generator (Writer writer)
+            throws IOException {
+        return mapper.getFactory().createGenerator(writer);
+    };
+};
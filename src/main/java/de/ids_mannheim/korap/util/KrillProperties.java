@@ -6,6 +6,12 @@ import java.io.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.ids_mannheim.korap.cache.CollectionFilterCache;
+import de.ids_mannheim.korap.cache.MatchInfoCache;
+import de.ids_mannheim.korap.cache.MultiTermCache;
+import de.ids_mannheim.korap.cache.StatisticsCache;
+import de.ids_mannheim.korap.cache.VirtualCorpusCache;
+
 /**
  * 
  * Todo: Properties may be loaded twice - although Java may cache automatically
@@ -23,6 +29,23 @@ public class KrillProperties {
     public static int maxTokenContextSize = 60;
     public static int maxCharContextSize = 500;
     public static int defaultSearchContextLength = 6;
+
+    // Maximum number of matches retrieved in a batch
+    public static int maxMatchIDs = 100;
+
+    // Number of threads used to search index leaves in parallel
+    public static int searchThreads = 1;
+
+    // Refresh the index reader after commits in the background
+    public static boolean refreshInBackground = false;
+
+    // Named virtual corpora and KoralQuery files
+    // to warm up new index segments with
+    public static String warmupVC = "";
+    public static String warmupQueries = "";
+
+    // Number of threads used to compile named virtual corpora
+    public static int warmupThreads = 1;
     
     public static boolean matchExpansionIncludeContextSize = false;
     
@@ -86,6 +109,28 @@ public class KrillProperties {
         // EM: not implemented yet
 //        String maxCharContextSize = prop.getProperty("krill.context.max.char");
         String defaultSearchContextLength = prop.getProperty("krill.search.context.default");
+        String maxMatchIDs = prop.getProperty("krill.match.ids.max");
+        String searchThreads = prop.getProperty("krill.search.threads");
+        String warmupThreads = prop.getProperty("krill.index.warmup.threads");
+        String vcCacheCapacity = prop
+                .getProperty("krill.namedVC.cache.capacity");
+        String vcCacheSize = prop.getProperty("krill.namedVC.cache.size");
+        String multiTermCacheCapacity = prop
+                .getProperty("krill.query.multiterm.cache.capacity");
+        String multiTermCacheTerms = prop
+                .getProperty("krill.query.multiterm.cache.terms");
+        String statisticsCacheCapacity = prop
+                .getProperty("krill.collection.statistics.cache.capacity");
+        String filterCacheCapacity = prop
+                .getProperty("krill.collection.filter.cache.capacity");
+        String filterCacheSize = prop
+                .getProperty("krill.collection.filter.cache.size");
+        String matchInfoCacheCapacity = prop
+                .getProperty("krill.match.info.cache.capacity");
+        String termVectorCacheCapacity = prop
+                .getProperty("krill.match.termvector.cache.capacity");
+        String termVectorCacheSize = prop
+                .getProperty("krill.match.termvector.cache.size");
 
         try {
             if (maxTokenMatchSize != null) {
@@ -104,6 +149,56 @@ public class KrillProperties {
                 KrillProperties.defaultSearchContextLength = Integer
                         .parseInt(defaultSearchContextLength);
             }
+            if (maxMatchIDs != null) {
+                KrillProperties.maxMatchIDs = Integer.parseInt(maxMatchIDs);
+            }
+            if (searchThreads != null) {
+                KrillProperties.searchThreads = Integer
+                        .parseInt(searchThreads);
+            }
+            if (warmupThreads != null) {
+                KrillProperties.warmupThreads = Integer
+                        .parseInt(warmupThreads);
+            }
+            if (vcCacheCapacity != null) {
+                VirtualCorpusCache.CAPACITY = Integer
+                        .parseInt(vcCacheCapacity);
+            }
+            if (vcCacheSize != null) {
+                VirtualCorpusCache.MAX_SIZE = Long.parseLong(vcCacheSize);
+            }
+            if (multiTermCacheCapacity != null) {
+                MultiTermCache.CAPACITY = Integer
+                        .parseInt(multiTermCacheCapacity);
+            }
+            if (multiTermCacheTerms != null) {
+                MultiTermCache.MAX_TERMS = Long
+                        .parseLong(multiTermCacheTerms);
+            }
+            if (statisticsCacheCapacity != null) {
+                StatisticsCache.CAPACITY = Integer
+                        .parseInt(statisticsCacheCapacity);
+            }
+            if (filterCacheCapacity != null) {
+                CollectionFilterCache.CAPACITY = Integer
+                        .parseInt(filterCacheCapacity);
+            }
+            if (filterCacheSize != null) {
+                CollectionFilterCache.MAX_SIZE = Long
+                        .parseLong(filterCacheSize);
+            }
+            if (matchInfoCacheCapacity != null) {
+                MatchInfoCache.CAPACITY = Integer
+                        .parseInt(matchInfoCacheCapacity);
+            }
+            if (termVectorCacheCapacity != null) {
+                MatchInfoCache.TERM_VECTOR_CAPACITY = Integer
+                        .parseInt(termVectorCacheCapacity);
+            }
+            if (termVectorCacheSize != null) {
+                MatchInfoCache.TERM_VECTOR_MAX_SIZE = Long
+                        .parseLong(termVectorCacheSize);
+            }
         }
         catch (NumberFormatException e) {
             log.error("A Krill property expects numerical values: "
@@ -118,6 +213,11 @@ public class KrillProperties {
         String matchExpansion = prop.getProperty(
                 "krill.match." + "expansion.includeContextSize", "false");
         matchExpansionIncludeContextSize = Boolean.parseBoolean(matchExpansion);
+
+        refreshInBackground = Boolean.parseBoolean(
+                prop.getProperty("krill.index.refresh.background", "false"));
+        warmupVC = prop.getProperty("krill.index.warmup.vc", "");
+        warmupQueries = prop.getProperty("krill.index.warmup.query", "");
     }
     
 
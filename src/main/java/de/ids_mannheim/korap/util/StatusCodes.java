@@ -18,6 +18,7 @@ public class StatusCodes {
     public static final int DOC_ADDED = 681;
     public static final int RESPONSE_TIME_EXCEEDED = 682;
     public static final int STAGED_DATA_COMMITTED = 683;
+    public static final int SEARCH_CANCELLED = 684;
 
     // 700 - 799 - KoralQuery Deserialization errors
     public static final int NO_QUERY_GIVEN = 700;
@@ -43,6 +44,7 @@ public class StatusCodes {
     public static final int MISSING_QUERY_REFERENCE = 721;
     
     public static final int INVALID_MATCH_ID = 730;
+    public static final int TOO_MANY_MATCH_IDS = 731;
     public static final int MISSING_KEY = 740;
     public static final int UNKNOWN_MATCH_RELATION = 741;
     public static final int MISSING_TERM_RELATION = 743;
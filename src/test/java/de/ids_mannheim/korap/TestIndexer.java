@@ -1,159 +1,215 @@
-package de.ids_mannheim.korap;
-
-import static org.junit.Assert.assertEquals;
-
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.IOException;
-import java.io.PrintStream;
-
-import org.junit.After;
-import org.junit.AfterClass;
-import org.junit.Before;
-import org.junit.Test;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import de.ids_mannheim.korap.index.Indexer;
-
-/**
- * @author margaretha
- *
- */
-public class TestIndexer {
-    private Logger logger = LoggerFactory.getLogger(TestIndexer.class);
-    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    private String info = "usage: Krill indexer";
-    private static File outputDirectory = new File("test-index");
-    private static File outputDirectory2 = new File("test-index2");
-    private static File outputDirectory3 = new File("test-output");
-
-    @Test
-    public void testArguments () throws IOException {
-        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
-                                    "-i", "src/test/resources/bzk"});
-        assertEquals("Added or updated 1 file.\n", outputStream.toString());
-    }
-
-    @Test
-    public void testOutputArgument () throws IOException {
-        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
-                                    "-i", "src/test/resources/bzk", "-o", "test-output"});
-        assertEquals("Added or updated 1 file.\n", outputStream.toString());
-    }
-
-    @Test
-    public void testMultipleInputFiles () throws IOException {
-        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
-                                    "-i", "src/test/resources/wiki"});
-        assertEquals("Added or updated 19 files.\n", outputStream.toString());
-    }
-
-
-    @Test
-    public void testAdding () throws IOException {
-        Indexer.main(new String[] {
-                "-c", "src/test/resources/krill.properties",
-                "-i", "src/test/resources/bzk",
-                "-a"});
-        logger.info(outputStream.toString());
-        assertEquals(outputStream.toString(), "Added 1 file.\n");
-    }
-
-    
-    @Test
-    public void testMultipleInputDirectories () throws IOException {
-        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
-                                    "-i",
-                                    "src/test/resources/bzk;src/test/resources/goe;src/test/resources/sgbr",
-                                    "-o", "test-index"});
-        assertEquals("Added or updated 5 files.\n", outputStream.toString());
-    }
-
-    @Test
-    public void testEmptyArgument () throws IOException {
-        Indexer.main(new String[] {});
-        logger.info(outputStream.toString());
-        assertEquals(true, outputStream.toString().startsWith(info));
-    }
-
-
-    @Test
-    public void testMissingConfig () throws IOException {
-        Indexer.main(new String[] { "-i", "src/test/resources/bzk",
-                                    "-o test-index"});
-        logger.info(outputStream.toString());
-        assertEquals(true, outputStream.toString().startsWith(info));
-    }
-    
-    @Test
-    public void testMissingInput () throws IOException {
-        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
-                                    "-o", "test-index"});
-        logger.info(outputStream.toString());
-        assertEquals(true, outputStream.toString().startsWith(info));
-    }
-
-    @Test
-    public void testUnicodeProblem () throws IOException {
-        Indexer.main(new String[] {
-                "-c", "src/test/resources/krill.properties",
-                "-i", "src/test/resources/bug",
-                "-o", "test-index2"
-            });
-        logger.info(outputStream.toString());
-        assertEquals(outputStream.toString(), "Added 1 file.\n");
-    }
-
-    @Before
-    public void setOutputStream () {
-        System.setOut(new PrintStream(outputStream));
-    }
-
-    @After
-    public void cleanOutputStream () {
-        System.setOut(null);
-    }
-
-    @AfterClass
-    public static void cleanup() {
-        if (outputDirectory.exists()) {
-            deleteFile(outputDirectory);
-        }
-        if (outputDirectory2.exists()) {
-            deleteFile(outputDirectory2);
-        }
-        if (outputDirectory3.exists()) {
-            deleteFile(outputDirectory2);
-        }
-    }
-
-    
-    @Before
-    public void cleanOutputDirectory () {
-
-        if (outputDirectory.exists()) {
-            logger.debug("Output directory exists");
-            deleteFile(outputDirectory);
-        }
-        if (outputDirectory2.exists()) {
-            logger.debug("Output directory 2 exists");
-            deleteFile(outputDirectory2);
-        }
-        if (outputDirectory3.exists()) {
-            logger.debug("Output directory 3 exists");
-            deleteFile(outputDirectory3);
-        }
-    }
-
-    private static void deleteFile (File path) {
-        if (path.isDirectory()) {
-            File file;
-            for (String filename : path.list()) {
-                file = new File(path + "/" + filename);
-                deleteFile(file);
-            }
-        }
-        path.delete();
-    }
-}
+package de.ids_mannheim.korap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.lucene.search.spans.SpanQuery;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.index.Indexer;
+import de.ids_mannheim.korap.query.QueryBuilder;
+import de.ids_mannheim.korap.util.QueryException;
+
+/**
+ * @author margaretha
+ *
+ */
+public class TestIndexer {
+    private Logger logger = LoggerFactory.getLogger(TestIndexer.class);
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private String info = "usage: Krill indexer";
+    private static File outputDirectory = new File("test-index");
+    private static File outputDirectory2 = new File("test-index2");
+    private static File outputDirectory3 = new File("test-output");
+
+    @Test
+    public void testArguments () throws IOException {
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", "src/test/resources/bzk"});
+        assertEquals("Added or updated 1 file.\n", outputStream.toString());
+    }
+
+    @Test
+    public void testOutputArgument () throws IOException {
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", "src/test/resources/bzk", "-o", "test-output"});
+        assertEquals("Added or updated 1 file.\n", outputStream.toString());
+    }
+
+    @Test
+    public void testMultipleInputFiles () throws IOException {
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", "src/test/resources/wiki"});
+        assertEquals("Added or updated 19 files.\n", outputStream.toString());
+    }
+
+
+    @Test
+    public void testAdding () throws IOException {
+        Indexer.main(new String[] {
+                "-c", "src/test/resources/krill.properties",
+                "-i", "src/test/resources/bzk",
+                "-a"});
+        logger.info(outputStream.toString());
+        assertEquals(outputStream.toString(), "Added 1 file.\n");
+    }
+
+    
+    @Test
+    public void testMultipleInputDirectories () throws IOException {
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i",
+                                    "src/test/resources/bzk;src/test/resources/goe;src/test/resources/sgbr",
+                                    "-o", "test-index"});
+        assertEquals("Added or updated 5 files.\n", outputStream.toString());
+    }
+
+    @Test
+    public void testParallelIndexing () throws IOException, QueryException {
+        String input = "src/test/resources/wiki;src/test/resources/bzk;"
+                + "src/test/resources/sgbr";
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", input, "-o", "test-index", "-a"});
+        assertEquals("Added 21 files.\n", outputStream.toString());
+
+        outputStream.reset();
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", input, "-o", "test-index2",
+                                    "-a", "-t", "4"});
+        assertEquals("Added 21 files.\n", outputStream.toString());
+
+        // Both indices have the same contents
+        KrillIndex sequential = new KrillIndex(Paths.get("test-index"));
+        KrillIndex parallel = new KrillIndex(Paths.get("test-index2"));
+        try {
+            assertEquals(21, parallel.numberOf("documents"));
+            for (String type : new String[] { "documents", "tokens",
+                    "base/sentences", "base/paragraphs" }) {
+                assertEquals(sequential.numberOf(type),
+                        parallel.numberOf(type));
+            };
+
+            SpanQuery sq = new QueryBuilder("tokens").seg("s:der").toQuery();
+            assertEquals(sequential.search(sq).getTotalResults(),
+                    parallel.search(sq).getTotalResults());
+        }
+        finally {
+            sequential.close();
+            parallel.close();
+        };
+    }
+
+
+    @Test
+    public void testRecursiveIndexing () throws IOException {
+        File dir = new File(outputDirectory3, "wiki/nested");
+        dir.mkdirs();
+        Files.copy(Paths.get("src/test/resources/bzk/D59-00089.json.gz"),
+                new File(dir, "D59-00089.json.gz").toPath());
+
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", outputDirectory3.getPath(),
+                                    "-o", "test-index", "-a"});
+        assertEquals("Added 1 file.\n", outputStream.toString());
+    }
+
+
+    @Test
+    public void testEmptyArgument () throws IOException {
+        Indexer.main(new String[] {});
+        logger.info(outputStream.toString());
+        assertEquals(true, outputStream.toString().startsWith(info));
+    }
+
+
+    @Test
+    public void testMissingConfig () throws IOException {
+        Indexer.main(new String[] { "-i", "src/test/resources/bzk",
+                                    "-o test-index"});
+        logger.info(outputStream.toString());
+        assertEquals(true, outputStream.toString().startsWith(info));
+    }
+    
+    @Test
+    public void testMissingInput () throws IOException {
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-o", "test-index"});
+        logger.info(outputStream.toString());
+        assertEquals(true, outputStream.toString().startsWith(info));
+    }
+
+    @Test
+    public void testUnicodeProblem () throws IOException {
+        Indexer.main(new String[] {
+                "-c", "src/test/resources/krill.properties",
+                "-i", "src/test/resources/bug",
+                "-o", "test-index2"
+            });
+        logger.info(outputStream.toString());
+        assertEquals(outputStream.toString(), "Added 1 file.\n");
+    }
+
+    @Before
+    public void setOutputStream () {
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @After
+    public void cleanOutputStream () {
+        System.setOut(null);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        if (outputDirectory.exists()) {
+            deleteFile(outputDirectory);
+        }
+        if (outputDirectory2.exists()) {
+            deleteFile(outputDirectory2);
+        }
+        if (outputDirectory3.exists()) {
+            deleteFile(outputDirectory2);
+        }
+    }
+
+    
+    @Before
+    public void cleanOutputDirectory () {
+
+        if (outputDirectory.exists()) {
+            logger.debug("Output directory exists");
+            deleteFile(outputDirectory);
+        }
+        if (outputDirectory2.exists()) {
+            logger.debug("Output directory 2 exists");
+            deleteFile(outputDirectory2);
+        }
+        if (outputDirectory3.exists()) {
+            logger.debug("Output directory 3 exists");
+            deleteFile(outputDirectory3);
+        }
+    }
+
+    private static void deleteFile (File path) {
+        if (path.isDirectory()) {
+            File file;
+            for (String filename : path.list()) {
+                file = new File(path + "/" + filename);
+                deleteFile(file);
+            }
+        }
+        path.delete();
+    }
+}
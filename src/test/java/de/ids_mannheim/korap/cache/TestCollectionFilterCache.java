@@ -0,0 +1,241 @@
+package de.ids_mannheim.korap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.KrillCollection;
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.collection.CachedCollectionFilter;
+import de.ids_mannheim.korap.collection.CollectionBuilder;
+import de.ids_mannheim.korap.index.FieldDocument;
+import de.ids_mannheim.korap.util.QueryException;
+
+@RunWith(JUnit4.class)
+public class TestCollectionFilterCache {
+
+    @After
+    public void tearDown () {
+        CollectionFilterCache.CAPACITY = 1000;
+        CollectionFilterCache.MAX_SIZE = 64L * 1024 * 1024;
+        CollectionFilterCache.clear();
+    };
+
+
+    private static FieldDocument createDoc (String id, String availability,
+            String textClass, String pubDate) {
+        FieldDocument fd = new FieldDocument();
+        fd.addString("ID", id);
+        fd.addString("availability", availability);
+        fd.addKeywords("textClass", textClass);
+        fd.addDate("pubDate", pubDate);
+        fd.addTV("tokens", "abc", "[(0-1)s:a|_0$<i>0<i>1]"
+                + "[(1-2)s:b|_1$<i>1<i>2]" + "[(2-3)s:c|_2$<i>2<i>3]");
+        return fd;
+    };
+
+
+    private static KrillIndex createIndex () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc("d1", "CC-BY-SA", "kultur reisen", "2005-01-01"));
+        ki.addDoc(createDoc("d2", "QAO-NC", "kultur sport", "2010-01-01"));
+        ki.addDoc(createDoc("d3", "ACA-NC", "politik", "2015-01-01"));
+        ki.addDoc(createDoc("d4", "CC-BY-SA", "sport", "2020-01-01"));
+        ki.commit();
+        return ki;
+    };
+
+
+    // Serialize the accepted documents of the collection
+    private static String docs (KrillIndex ki, CollectionBuilder.Interface cbi)
+            throws IOException, QueryException {
+        KrillCollection kc = new KrillCollection(ki);
+        kc.fromBuilder(cbi);
+        List<Integer> docs = new ArrayList<>();
+        for (LeafReaderContext atomic : ki.reader().leaves()) {
+            FixedBitSet bits = kc.bits(atomic);
+            for (int i = 0; i < bits.length(); i++) {
+                if (bits.get(i))
+                    docs.add(atomic.docBase + i);
+            };
+        };
+        return docs.toString();
+    };
+
+
+    private static CollectionBuilder.Interface availability (
+            CollectionBuilder cb) {
+        return cb.orGroup().with(cb.re("availability", "CC-BY.*"))
+                .with(cb.re("availability", "ACA.*"));
+    };
+
+
+    @Test
+    public void testCanonicalKeys () {
+        CollectionBuilder cb = new CollectionBuilder();
+
+        // The order of operands is irrelevant
+        assertEquals(
+                cb.andGroup().with(cb.term("a", "1")).with(cb.term("b", "2"))
+                        .toKey(),
+                cb.andGroup().with(cb.term("b", "2")).with(cb.term("a", "1"))
+                        .toKey());
+
+        // Operators, negations and types are respected
+        assertNotEquals(
+                cb.andGroup().with(cb.term("a", "1")).with(cb.term("b", "2"))
+                        .toKey(),
+                cb.orGroup().with(cb.term("a", "1")).with(cb.term("b", "2"))
+                        .toKey());
+        assertNotEquals(
+                cb.andGroup().with(cb.term("a", "1")).with(cb.term("b", "2"))
+                        .toKey(),
+                cb.andGroup().with(cb.term("a", "1"))
+                        .with(cb.term("b", "2").not()).toKey());
+        assertNotEquals(cb.term("a", "1").toKey(), cb.re("a", "1").toKey());
+
+        // Parts can't be confused
+        assertNotEquals(cb.term("a", "b:c").toKey(),
+                cb.term("a:b", "c").toKey());
+
+        // A single operand represents the group
+        assertEquals(cb.re("a", "1.*").toKey(),
+                cb.orGroup().with(cb.re("a", "1.*")).toKey());
+
+        // Named VCs are not cached as collection filters
+        assertNull(cb.referTo("named-vc").toKey());
+        assertNull(cb.andGroup().with(cb.term("a", "1"))
+                .with(cb.referTo("named-vc")).toKey());
+        assertNull(cb.andGroup().toKey());
+    };
+
+
+    @Test
+    public void testReuseSubFilters () throws IOException, QueryException {
+        KrillIndex ki = createIndex();
+        CollectionBuilder cb = new CollectionBuilder();
+
+        // Uncached results
+        CollectionFilterCache.CAPACITY = 0;
+        String[] uncached = new String[] {
+                docs(ki, cb.andGroup().with(availability(cb))
+                        .with(cb.term("textClass", "kultur"))),
+                docs(ki, cb.andGroup().with(availability(cb))
+                        .with(cb.since("pubDate", "2010"))),
+                docs(ki, cb.andGroup().with(availability(cb).not())
+                        .with(cb.term("textClass", "sport"))) };
+        assertEquals(0, CollectionFilterCache.size());
+
+        CollectionFilterCache.CAPACITY = 1000;
+
+        // Availability, both regexes and the combination
+        assertEquals(uncached[0], docs(ki, cb.andGroup()
+                .with(availability(cb)).with(cb.term("textClass", "kultur"))));
+        assertEquals(4, CollectionFilterCache.size());
+        assertEquals("[0]", uncached[0]);
+
+        // The availability clause is reused
+        assertEquals(uncached[1], docs(ki, cb.andGroup()
+                .with(cb.since("pubDate", "2010")).with(availability(cb))));
+        assertEquals(6, CollectionFilterCache.size());
+        assertEquals("[2, 3]", uncached[1]);
+
+        assertEquals(uncached[2], docs(ki, cb.andGroup()
+                .with(cb.term("textClass", "sport")).with(availability(cb).not())));
+        assertEquals(7, CollectionFilterCache.size());
+        assertEquals("[1]", uncached[2]);
+
+        // Repeated requests are served from the cache
+        assertEquals(uncached[0], docs(ki, cb.andGroup()
+                .with(cb.term("textClass", "kultur")).with(availability(cb))));
+        assertEquals(7, CollectionFilterCache.size());
+    };
+
+
+    @Test
+    public void testDeletions () throws IOException, QueryException {
+        KrillIndex ki = createIndex();
+        CollectionBuilder cb = new CollectionBuilder();
+
+        assertEquals("[0, 2, 3]", docs(ki, cb.andGroup()
+                .with(availability(cb)).with(cb.till("pubDate", "2020"))));
+
+        // Deleted documents are not accepted by cached filters
+        ki.delDocs("ID", "d4");
+        ki.commit();
+        assertEquals("[0, 2]", docs(ki, cb.andGroup()
+                .with(availability(cb)).with(cb.till("pubDate", "2020"))));
+    };
+
+
+    @Test
+    public void testBounds () throws IOException, QueryException {
+        KrillIndex ki = createIndex();
+        CollectionBuilder cb = new CollectionBuilder();
+
+        // The number of entries per leaf is bounded
+        CollectionFilterCache.CAPACITY = 2;
+        docs(ki, cb.andGroup().with(availability(cb))
+                .with(cb.since("pubDate", "2010")));
+        assertEquals(2, CollectionFilterCache.size());
+
+        // The size of all entries is bounded
+        CollectionFilterCache.clear();
+        CollectionFilterCache.CAPACITY = 1000;
+        docs(ki, cb.re("availability", "CC-BY.*"));
+        long size = CollectionFilterCache.sizeInBytes();
+        assertTrue(size > 0);
+
+        CollectionFilterCache.MAX_SIZE = size;
+        docs(ki, cb.re("availability", "ACA.*"));
+        assertEquals(1, CollectionFilterCache.size());
+        assertTrue(CollectionFilterCache.sizeInBytes() <= size);
+
+        // Entries exceeding the size are not cached
+        CollectionFilterCache.clear();
+        CollectionFilterCache.MAX_SIZE = 0;
+        assertEquals("[0, 3]", docs(ki, cb.re("availability", "CC-BY.*")));
+        assertEquals(0, CollectionFilterCache.size());
+    };
+
+
+    @Test
+    public void testCachedDocIdSets () throws IOException, QueryException {
+        KrillIndex ki = createIndex();
+        CollectionBuilder cb = new CollectionBuilder();
+        LeafReaderContext atomic = ki.reader().leaves().get(0);
+
+        CachedCollectionFilter filter = (CachedCollectionFilter) cb
+                .re("availability", "CC-BY.*").toFilter();
+        assertNull(filter.getCachedDocs(atomic));
+
+        // The DocIdSet and the cardinality are computed once
+        CollectionFilterCache.Entry docs = filter.getDocs(atomic);
+        assertEquals(2, docs.cardinality());
+        assertFalse(docs.isEmpty());
+        assertSame(docs, filter.getCachedDocs(atomic));
+        assertSame(docs.getDocIdSet(), filter.getDocs(atomic).getDocIdSet());
+
+        // Empty documents have no DocIdSet
+        filter = (CachedCollectionFilter) cb.re("availability", "XYZ.*")
+                .toFilter();
+        docs = filter.getDocs(atomic);
+        assertTrue(docs.isEmpty());
+        assertNull(docs.getDocIdSet());
+        assertNull(filter.getDocIdSet(atomic, null));
+    };
+};
@@ -0,0 +1,171 @@
+package de.ids_mannheim.korap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.index.FieldDocument;
+import de.ids_mannheim.korap.response.Match;
+import de.ids_mannheim.korap.util.QueryException;
+
+@RunWith(JUnit4.class)
+public class TestMatchInfoCache {
+
+    @After
+    public void tearDown () {
+        MatchInfoCache.TERM_VECTOR_CAPACITY = 1000;
+        MatchInfoCache.TERM_VECTOR_MAX_SIZE = 64L * 1024 * 1024;
+        MatchInfoCache.clear();
+    };
+
+
+    private static FieldDocument createDoc (String id) {
+        FieldDocument fd = new FieldDocument();
+        fd.addString("corpusID", "c1");
+        fd.addString("ID", id);
+        fd.addTV("tokens", "abcab",
+                "[(0-1)s:a|f/m:eins|x/o:erstens|_0$<i>0<i>1|-:t$<i>5]"
+                        + "[(1-2)s:b|f/m:zwei|x/o:zweitens|_1$<i>1<i>2"
+                        + "|<>:base/s:s$<b>64<i>1<i>4<i>4]"
+                        + "[(2-3)s:c|f/m:drei|x/o:drittens|_2$<i>2<i>3]"
+                        + "[(3-4)s:a|f/m:vier|x/o:viertens|_3$<i>3<i>4]"
+                        + "[(4-5)s:b|f/m:fuenf|x/o:fuenftens|_4$<i>4<i>5]");
+        return fd;
+    };
+
+
+    private static Match getMatch (KrillIndex ki, String id,
+            List<String> foundry, List<String> layer, boolean spans)
+            throws QueryException {
+        return ki.getMatchInfo(id, "tokens", true, foundry, layer, spans,
+                true, false);
+    };
+
+
+    @Test
+    public void testCachedAutomata () throws IOException, QueryException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc("d1"));
+        ki.commit();
+        MatchInfoCache.clear();
+
+        Match km = getMatch(ki, "match-c1!d1-p0-2", Arrays.asList("f", "x"),
+                Arrays.asList("m", "o"), false);
+        assertEquals(1, MatchInfoCache.size());
+        String snippet = km.getSnippetHTML();
+        assertTrue(snippet.contains("f/m:eins"));
+        assertTrue(snippet.contains("x/o:zweitens"));
+
+        // The order of foundries and layers is irrelevant
+        km = getMatch(ki, "match-c1!d1-p0-2", Arrays.asList("x", "f"),
+                Arrays.asList("o", "m"), false);
+        assertEquals(1, MatchInfoCache.size());
+        assertEquals(snippet, km.getSnippetHTML());
+
+        // Layers are ignored without foundries
+        getMatch(ki, "match-c1!d1-p0-2", null, null, false);
+        getMatch(ki, "match-c1!d1-p0-2", null, Arrays.asList("m"), false);
+        assertEquals(2, MatchInfoCache.size());
+
+        getMatch(ki, "match-c1!d1-p0-2", null, null, true);
+        getMatch(ki, "match-c1!d1-p0-2", Arrays.asList("f"), null, false);
+        assertEquals(4, MatchInfoCache.size());
+
+        // Invalid layers are not cached
+        try {
+            getMatch(ki, "match-c1!d1-p0-2", Arrays.asList("f"),
+                    Arrays.asList("*"), false);
+            fail("Invalid layer accepted");
+        }
+        catch (QueryException qe) {
+            assertEquals("Invalid layer requested: *", qe.getMessage());
+        };
+        assertEquals(4, MatchInfoCache.size());
+    };
+
+
+    @Test
+    public void testCachedTermVectors () throws IOException, QueryException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc("d1"));
+        ki.addDoc(createDoc("d2"));
+        ki.commit();
+        MatchInfoCache.clear();
+
+        List<String> foundry = Arrays.asList("f");
+
+        // Paging through matches of a text decodes the term vector once
+        String snippet = getMatch(ki, "match-c1!d1-p0-2", foundry, null, true)
+                .getSnippetHTML();
+        assertEquals(1, MatchInfoCache.termVectors());
+        String secondPage = getMatch(ki, "match-c1!d1-p2-5", foundry, null,
+                true).getSnippetHTML();
+        assertEquals(1, MatchInfoCache.termVectors());
+        assertTrue(secondPage.contains("f/m:fuenf"));
+
+        // Cached term vectors result in the same snippets
+        MatchInfoCache.TERM_VECTOR_CAPACITY = 0;
+        assertEquals(snippet,
+                getMatch(ki, "match-c1!d1-p0-2", foundry, null, true)
+                        .getSnippetHTML());
+        assertEquals(secondPage,
+                getMatch(ki, "match-c1!d1-p2-5", foundry, null, true)
+                        .getSnippetHTML());
+        MatchInfoCache.TERM_VECTOR_CAPACITY = 1000;
+
+        // Term vectors are cached per document and automaton
+        getMatch(ki, "match-c1!d2-p0-2", foundry, null, true);
+        assertEquals(2, MatchInfoCache.termVectors());
+        getMatch(ki, "match-c1!d1-p0-2", foundry, null, false);
+        assertEquals(3, MatchInfoCache.termVectors());
+        assertTrue(MatchInfoCache.termVectorsInBytes() > 0);
+    };
+
+
+    @Test
+    public void testTermVectorBounds () throws IOException, QueryException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc("d1"));
+        ki.commit();
+        ki.addDoc(createDoc("d2"));
+        ki.commit();
+        assertEquals(2, ki.reader().leaves().size());
+        MatchInfoCache.clear();
+
+        List<String> foundry = Arrays.asList("f");
+
+        // The number of term vectors of all leaves is bounded
+        MatchInfoCache.TERM_VECTOR_CAPACITY = 1;
+        getMatch(ki, "match-c1!d1-p0-2", foundry, null, false);
+        getMatch(ki, "match-c1!d2-p0-2", foundry, null, false);
+        assertEquals(1, MatchInfoCache.termVectors());
+
+        // The size of all term vectors is bounded
+        MatchInfoCache.clear();
+        MatchInfoCache.TERM_VECTOR_CAPACITY = 1000;
+        getMatch(ki, "match-c1!d1-p0-2", foundry, null, false);
+        long size = MatchInfoCache.termVectorsInBytes();
+        assertTrue(size > 0);
+
+        MatchInfoCache.TERM_VECTOR_MAX_SIZE = size;
+        getMatch(ki, "match-c1!d2-p0-2", foundry, null, false);
+        assertEquals(1, MatchInfoCache.termVectors());
+        assertEquals(size, MatchInfoCache.termVectorsInBytes());
+
+        // Term vectors exceeding the size are not cached
+        MatchInfoCache.clear();
+        MatchInfoCache.TERM_VECTOR_MAX_SIZE = 0;
+        getMatch(ki, "match-c1!d1-p0-2", foundry, null, false);
+        assertEquals(0, MatchInfoCache.termVectors());
+    };
+};
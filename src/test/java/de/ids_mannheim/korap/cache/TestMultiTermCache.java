@@ -0,0 +1,162 @@
+package de.ids_mannheim.korap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.util.automaton.RegExp;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.index.FieldDocument;
+import de.ids_mannheim.korap.query.QueryBuilder;
+import de.ids_mannheim.korap.query.SpanCachedMultiTermQueryWrapper;
+import de.ids_mannheim.korap.response.Result;
+import de.ids_mannheim.korap.util.QueryException;
+
+@RunWith(JUnit4.class)
+public class TestMultiTermCache {
+
+    @After
+    public void tearDown () {
+        MultiTermCache.MAX_TERMS = 1000000;
+        MultiTermCache.clear();
+    };
+
+
+    private static FieldDocument createDoc (String id, String surface,
+            String tokens) {
+        FieldDocument fd = new FieldDocument();
+        fd.addString("ID", id);
+        fd.addTV("base", surface, tokens);
+        return fd;
+    };
+
+
+    @Test
+    public void testCachedEntries () throws QueryException {
+        MultiTermCache.clear();
+        MultiTermCache.Entry entry = MultiTermCache.regex("base", "s:H.*",
+                RegExp.ALL);
+        assertSame(entry,
+                MultiTermCache.regex("base", "s:H.*", RegExp.ALL));
+        assertNotSame(entry,
+                MultiTermCache.regex("base", "s:H.*", RegExp.NONE));
+        assertNotSame(entry,
+                MultiTermCache.regex("tokens", "s:H.*", RegExp.ALL));
+        assertNotSame(entry.getQuery(),
+                MultiTermCache.wildcard("base", "s:H.*").getQuery());
+        assertEquals(4, MultiTermCache.size());
+
+        // Queries share the entry, but are independent
+        SpanQuery sq1 = new QueryBuilder("base").re("s:H.*").toQuery();
+        SpanQuery sq2 = new QueryBuilder("base").re("s:H.*").toQuery();
+        assertNotSame(sq1, sq2);
+        assertEquals(sq1, sq2);
+        assertEquals("SpanMultiTermQueryWrapper(base:/s:H.*/)",
+                sq1.toString());
+        assertEquals(4, MultiTermCache.size());
+    };
+
+
+    @Test
+    public void testCachedRewrite () throws IOException, QueryException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc("doc-1", "Haus Hund",
+                "[(0-4)s:Haus|_0#0-4][(5-9)s:Hund|_1#5-9]"));
+        ki.commit();
+        ki.addDoc(createDoc("doc-2", "Hof Haus Katze",
+                "[(0-3)s:Hof|_0#0-3][(4-8)s:Haus|_1#4-8]"
+                        + "[(9-14)s:Katze|_2#9-14]"));
+        ki.commit();
+
+        MultiTermCache.Entry entry = MultiTermCache.regex("base", "s:H.*",
+                RegExp.ALL);
+        IndexReader reader = ki.reader();
+        assertEquals(2, reader.leaves().size());
+
+        // The rewrite equals the uncached rewrite
+        SpanCachedMultiTermQueryWrapper cached = new SpanCachedMultiTermQueryWrapper(
+                entry);
+        SpanMultiTermQueryWrapper<RegexpQuery> uncached = new SpanMultiTermQueryWrapper<RegexpQuery>(
+                new RegexpQuery(new Term("base", "s:H.*"), RegExp.ALL));
+        assertEquals(uncached.rewrite(reader).toString(),
+                cached.rewrite(reader).toString());
+        assertEquals(
+                "spanOr([base:s:Haus, base:s:Hof, base:s:Hund])",
+                cached.rewrite(reader).toString());
+        assertEquals(2, entry.getWalks());
+
+        // Repeated rewrites don't walk the term dictionaries
+        cached.rewrite(reader);
+        new SpanCachedMultiTermQueryWrapper(entry).rewrite(reader);
+        assertEquals(2, entry.getWalks());
+
+        // Only new segments are walked
+        ki.addDoc(createDoc("doc-3", "Hut", "[(0-3)s:Hut|_0#0-3]"));
+        ki.commit();
+        reader = ki.reader();
+        assertEquals(3, reader.leaves().size());
+        assertEquals(
+                "spanOr([base:s:Haus, base:s:Hof, base:s:Hund, base:s:Hut])",
+                cached.rewrite(reader).toString());
+        assertEquals(reader.leaves().size(), entry.getWalks());
+
+        // Searches use the cache
+        Result kr = ki.search(new QueryBuilder("base").re("s:H.*").toQuery(),
+                (short) 10);
+        assertEquals(5, kr.getTotalResults());
+        kr = ki.search(
+                new QueryBuilder("base").wc("s:H?f").toQuery(), (short) 10);
+        assertEquals(1, kr.getTotalResults());
+        assertEquals(reader.leaves().size(), entry.getWalks());
+    };
+
+
+    @Test
+    public void testTermBound () throws IOException, QueryException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc("doc-1", "Haus Hund Hof Katze",
+                "[(0-4)s:Haus|_0#0-4][(5-9)s:Hund|_1#5-9]"
+                        + "[(10-13)s:Hof|_2#10-13][(14-19)s:Katze|_3#14-19]"));
+        ki.commit();
+        IndexReader reader = ki.reader();
+
+        MultiTermCache.MAX_TERMS = 4;
+        MultiTermCache.Entry h = MultiTermCache.regex("base", "s:H.*",
+                RegExp.ALL);
+        assertEquals(3, h.getTerms(reader).length);
+        assertEquals(3, MultiTermCache.terms());
+
+        // The least recently used entry is evicted
+        MultiTermCache.Entry k = MultiTermCache.regex("base", "s:K.*",
+                RegExp.ALL);
+        assertEquals(1, k.getTerms(reader).length);
+        assertEquals(2, MultiTermCache.size());
+        MultiTermCache.Entry a = MultiTermCache.regex("base", "s:.*a.*",
+                RegExp.ALL);
+        assertEquals(2, a.getTerms(reader).length);
+        assertEquals(2, MultiTermCache.size());
+        assertEquals(3, MultiTermCache.terms());
+        assertNotSame(h, MultiTermCache.regex("base", "s:H.*", RegExp.ALL));
+
+        // Entries exceeding the bound are not cached,
+        // but can be used
+        MultiTermCache.clear();
+        MultiTermCache.MAX_TERMS = 2;
+        h = MultiTermCache.regex("base", "s:H.*", RegExp.ALL);
+        assertEquals(3, h.getTerms(reader).length);
+        assertEquals(0, MultiTermCache.size());
+        assertEquals(0, MultiTermCache.terms());
+    };
+};
@@ -1,14 +1,20 @@
 package de.ids_mannheim.korap.cache;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
@@ -82,6 +88,72 @@ public class TestVirtualCorpusCache {
     }
 
 
+    @Test
+    public void testRejectedGrowingVC () throws IOException {
+        String vcId = "rejected-vc";
+        int capacity = VirtualCorpusCache.CAPACITY;
+        long maxSize = VirtualCorpusCache.MAX_SIZE;
+        long leafSize = new DocBits(new long[10], 640).sizeInBytes();
+
+        try {
+            VirtualCorpusCache.map.clear();
+            VirtualCorpusCache.CAPACITY = 100;
+            VirtualCorpusCache.MAX_SIZE = 3 * leafSize;
+
+            // A popular VC occupies the memory
+            Map<String, DocBits> popular = new HashMap<String, DocBits>();
+            popular.put("leaf1", new DocBits(new long[10], 640));
+            popular.put("leaf2", new DocBits(new long[10], 640));
+            VirtualCorpusCache.map.put("popular", popular);
+            for (int i = 0; i < 5; i++) {
+                VirtualCorpusCache.map.get("popular");
+            }
+
+            for (String leaf : new String[] { "leaf-a", "leaf-b", "leaf-c" }) {
+                VirtualCorpusCache.storeOnDisk(vcId, leaf,
+                        new DocBits(new long[10], 640));
+            }
+
+            // Unreadable leaves are not touched
+            try (FileOutputStream out = new FileOutputStream(
+                    VirtualCorpusCache.CACHE_LOCATION + "/" + vcId
+                            + "/stale-leaf")) {
+                out.write("stale".getBytes());
+            }
+
+            int[] calculated = new int[1];
+            Supplier<DocBits> calculate = () -> {
+                calculated[0]++;
+                return new DocBits(new long[10], 640);
+            };
+
+            // The VC is admitted with a single leaf
+            VirtualCorpusCache.getDocBits(vcId, "leaf-a", calculate);
+            assertTrue(VirtualCorpusCache.map.containsKey(vcId));
+
+            // The growing VC is rejected,
+            // but its leaves are still read one by one from disk
+            long rejections = VirtualCorpusCache.map.getRejections();
+            VirtualCorpusCache.getDocBits(vcId, "leaf-b", calculate);
+            assertFalse(VirtualCorpusCache.map.containsKey(vcId));
+            assertTrue(VirtualCorpusCache.map.getRejections() > rejections);
+
+            assertNotNull(
+                    VirtualCorpusCache.getDocBits(vcId, "leaf-c", calculate));
+            assertNotNull(
+                    VirtualCorpusCache.getDocBits(vcId, "leaf-a", calculate));
+            assertEquals(0, calculated[0]);
+            assertTrue(VirtualCorpusCache.map.containsKey("popular"));
+        }
+        finally {
+            VirtualCorpusCache.CAPACITY = capacity;
+            VirtualCorpusCache.MAX_SIZE = maxSize;
+            VirtualCorpusCache.map.clear();
+            VirtualCorpusCache.delete(vcId);
+        }
+    }
+
+
     @Test
     public void testReferToUncachedVC () throws IOException, QueryException {
         String vcId = "named-vc1";
@@ -140,6 +212,85 @@ public class TestVirtualCorpusCache {
     }
 
 
+    @Test
+    public void testBinaryFormat () throws IOException {
+        String vcId = "named-vc4";
+        VirtualCorpusCache.store(vcId, ki);
+        Map<String, DocBits> stored = VirtualCorpusCache.retrieve(vcId);
+        assertEquals(2, stored.size());
+
+        File dir = new File(VirtualCorpusCache.CACHE_LOCATION + "/" + vcId);
+        for (File f : dir.listFiles()) {
+            assertTrue(DocBitsFile.isBinary(f));
+        }
+
+        // Read from disk
+        VirtualCorpusCache.map.remove(vcId);
+        Map<String, DocBits> read = VirtualCorpusCache.retrieve(vcId);
+        assertEquals(stored.keySet(), read.keySet());
+        for (String fingerprint : stored.keySet()) {
+            DocBits expected = stored.get(fingerprint);
+            DocBits actual = read.get(fingerprint);
+            assertEquals(expected.getNumBits(), actual.getNumBits());
+            assertArrayEquals(expected.getBits(), actual.getBits());
+        }
+
+        // Fingerprints are checked
+        File f = dir.listFiles()[0];
+        try {
+            DocBitsFile.read(f, "unknown");
+            fail("Fingerprint mismatch not detected");
+        }
+        catch (IOException e) {}
+
+        VirtualCorpusCache.delete(vcId);
+        assertFalse(VirtualCorpusCache.contains(vcId));
+    }
+
+
+    @Test
+    public void testSparseBinaryFormat () throws IOException {
+        File f = File.createTempFile("docbits", null);
+        try {
+            DocBits docBits = new DocBits(100000, new int[] { 1, 5, 99999 });
+            DocBitsFile.write(f, "leaf", docBits);
+            assertTrue(DocBitsFile.isBinary(f));
+
+            DocBits read = DocBitsFile.read(f, "leaf");
+            assertTrue(read.isSparse());
+            assertEquals(100000, read.getNumBits());
+            assertArrayEquals(docBits.getDocs(), read.getDocs());
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+
+    @Test
+    public void testSerializedFormat () throws IOException {
+        String vcId = "named-vc4";
+        File dir = new File(VirtualCorpusCache.CACHE_LOCATION + "/" + vcId);
+        dir.mkdirs();
+
+        // Write a cache file of former versions
+        DocBits docBits = new DocBits(new long[] { 5L, 1L << 63 }, 128);
+        try (ObjectOutputStream os = new ObjectOutputStream(
+                new FileOutputStream(new File(dir, "leaf")))) {
+            os.writeObject(docBits);
+        }
+
+        assertFalse(DocBitsFile.isBinary(new File(dir, "leaf")));
+        Map<String, DocBits> read = VirtualCorpusCache.retrieve(vcId);
+        assertEquals(1, read.size());
+        assertEquals(128, read.get("leaf").getNumBits());
+        assertArrayEquals(docBits.getBits(), read.get("leaf").getBits());
+
+        VirtualCorpusCache.delete(vcId);
+        assertFalse(VirtualCorpusCache.contains(vcId));
+    }
+
+
     @Test
     public void testCleanUpVC () throws QueryException, IOException {
         VirtualCorpusCache.CAPACITY = 3;
@@ -478,4 +629,33 @@ public class TestVirtualCorpusCache {
         VirtualCorpusCache.reset();
     }
 
+
+
+    @Test
+    public void testStatisticsSurviveNewLeaves ()
+            throws IOException, QueryException {
+        StatisticsCache.clear();
+
+        KrillCollection kc = new KrillCollection(ki);
+        kc.fromBuilder(kc.build().referTo(named_vc1));
+        long docs = kc.numberOf("documents");
+        long tokens = kc.numberOf("tokens");
+        int size = StatisticsCache.size();
+        assertTrue(size > 0);
+
+        // A new leaf of another VC keeps the statistics
+        VirtualCorpusCache.getDocBits(named_vc2, "new-leaf",
+                () -> new DocBits(1, new int[] { 0 }));
+        VirtualCorpusCache.setIndexInfo(ki);
+        assertEquals(size, StatisticsCache.size());
+        assertEquals(docs, kc.numberOf("documents"));
+        assertEquals(tokens, kc.numberOf("tokens"));
+        assertEquals(size, StatisticsCache.size());
+
+        // Deleting the VC invalidates its statistics
+        VirtualCorpusCache.delete(named_vc1);
+        assertEquals(0, StatisticsCache.size());
+
+        VirtualCorpusCache.reset();
+    }
 }
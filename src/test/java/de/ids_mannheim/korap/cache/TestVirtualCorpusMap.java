@@ -0,0 +1,180 @@
+package de.ids_mannheim.korap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.collection.DocBits;
+
+@RunWith(JUnit4.class)
+public class TestVirtualCorpusMap {
+
+    private int capacity;
+    private long maxSize;
+
+
+    @Before
+    public void setUp () {
+        capacity = VirtualCorpusCache.CAPACITY;
+        maxSize = VirtualCorpusCache.MAX_SIZE;
+    };
+
+
+    @After
+    public void tearDown () {
+        VirtualCorpusCache.CAPACITY = capacity;
+        VirtualCorpusCache.MAX_SIZE = maxSize;
+    };
+
+
+    // Create a VC with a single leaf of the given number of words
+    private static Map<String, DocBits> vc (int words) {
+        Map<String, DocBits> leaves = new HashMap<>();
+        leaves.put("leaf", new DocBits(new long[words], words * 64));
+        return Collections.synchronizedMap(leaves);
+    };
+
+
+    @Test
+    public void testSizeBound () {
+        VirtualCorpusCache.CAPACITY = 100;
+        VirtualCorpusCache.MAX_SIZE = 3 * vc(10).get("leaf").sizeInBytes();
+
+        VirtualCorpusMap map = new VirtualCorpusMap();
+        map.put("vc1", vc(10));
+        map.put("vc2", vc(10));
+        map.put("vc3", vc(10));
+        assertEquals(3, map.size());
+        assertEquals(VirtualCorpusCache.MAX_SIZE, map.getSizeInBytes());
+
+        // Least recently used VC is evicted
+        map.get("vc1");
+        map.get("vc3");
+        map.get("vc4");
+        map.put("vc4", vc(10));
+        assertEquals(3, map.size());
+        assertFalse(map.containsKey("vc2"));
+        assertTrue(map.containsKey("vc1"));
+        assertEquals(1, map.getEvictions());
+
+        // Too large for the cache
+        map.put("vc5", vc(100));
+        assertFalse(map.containsKey("vc5"));
+        assertEquals(1, map.getRejections());
+
+        map.remove("vc1");
+        assertEquals(2 * vc(10).get("leaf").sizeInBytes(),
+                map.getSizeInBytes());
+
+        map.clear();
+        assertEquals(0, map.getSizeInBytes());
+    };
+
+
+    @Test
+    public void testAdmission () {
+        VirtualCorpusCache.CAPACITY = 100;
+        VirtualCorpusCache.MAX_SIZE = 4 * vc(10).get("leaf").sizeInBytes();
+
+        VirtualCorpusMap map = new VirtualCorpusMap();
+        for (int i = 1; i <= 4; i++) {
+            map.put("vc" + i, vc(10));
+        };
+
+        // Popular VCs
+        for (int i = 0; i < 5; i++) {
+            map.get("vc1");
+            map.get("vc2");
+            map.get("vc3");
+            map.get("vc4");
+        };
+
+        // A huge VC requested once doesn't evict popular VCs
+        assertNull(map.get("huge"));
+        map.put("huge", vc(30));
+        assertFalse(map.containsKey("huge"));
+        assertEquals(4, map.size());
+        assertEquals(0, map.getEvictions());
+        assertEquals(1, map.getRejections());
+
+        // Once it is popular, it is admitted
+        for (int i = 0; i < 10; i++) {
+            map.get("huge");
+        };
+        map.put("huge", vc(30));
+        assertTrue(map.containsKey("huge"));
+        assertEquals(3, map.getEvictions());
+        assertEquals(2, map.size());
+    };
+
+
+    @Test
+    public void testAdmissionOnGrowth () {
+        VirtualCorpusCache.CAPACITY = 100;
+        VirtualCorpusCache.MAX_SIZE = 4 * vc(10).get("leaf").sizeInBytes();
+
+        VirtualCorpusMap map = new VirtualCorpusMap();
+        for (int i = 1; i <= 3; i++) {
+            map.put("vc" + i, vc(10));
+            for (int j = 0; j < 5; j++) {
+                map.get("vc" + i);
+            };
+        };
+
+        // A new VC is inserted without leaves first
+        Map<String, DocBits> leaves = Collections
+                .synchronizedMap(new HashMap<String, DocBits>());
+        map.put("new", leaves);
+        assertTrue(map.containsKey("new"));
+
+        // Growing leaves don't evict popular VCs
+        for (int i = 0; i < 3; i++) {
+            leaves.put("leaf" + i, new DocBits(new long[10], 640));
+            map.put("new", leaves);
+        };
+        assertFalse(map.containsKey("new"));
+        assertEquals(3, map.size());
+        assertEquals(0, map.getEvictions());
+        assertEquals(2, map.getRejections());
+        assertEquals(3 * vc(10).get("leaf").sizeInBytes(),
+                map.getSizeInBytes());
+    };
+
+
+    @Test
+    public void testCounters () {
+        VirtualCorpusMap map = new VirtualCorpusMap();
+        map.put("vc1", vc(1));
+        assertNull(map.get("vc2"));
+        assertEquals(1, map.get("vc1").size());
+        map.get("vc1");
+        assertEquals(2, map.getHits());
+        assertEquals(1, map.getMisses());
+    };
+
+
+    @Test
+    public void testUpdateSize () {
+        VirtualCorpusMap map = new VirtualCorpusMap();
+        Map<String, DocBits> leaves = vc(1);
+        map.put("vc1", leaves);
+        long size = map.getSizeInBytes();
+
+        // Leaves are added after insertion
+        leaves.put("leaf2", new DocBits(new long[1], 64));
+        map.put("vc1", leaves);
+        assertEquals(2 * size, map.getSizeInBytes());
+        assertEquals(1, map.size());
+    };
+};
@@ -1,12 +1,18 @@
 package de.ids_mannheim.korap.collection;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.List;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FixedBitSet;
 import org.junit.Test;
 
@@ -35,4 +41,65 @@ public class TestDocBits {
             assertEquals(bitset.length(), bitDocIdSet.bits().length());
         }
     }
+
+
+    @Test
+    public void testSparseDocBits () throws IOException {
+        FixedBitSet bitset = new FixedBitSet(10000);
+        bitset.set(3);
+        bitset.set(700);
+        bitset.set(9999);
+
+        // Few documents are stored sparsely
+        DocBits docBits = DocBits.fromBitSet(bitset);
+        assertTrue(docBits.isSparse());
+        assertArrayEquals(new int[] { 3, 700, 9999 }, docBits.getDocs());
+        assertEquals(3, docBits.cardinality());
+        assertEquals(52, docBits.sizeInBytes());
+        assertArrayEquals(bitset.getBits(), docBits.getBits());
+
+        DocBits iterated = DocBits.fromIterator(
+                new BitSetIterator(bitset, 3), 10000);
+        assertTrue(iterated.isSparse());
+        assertArrayEquals(docBits.getDocs(), iterated.getDocs());
+
+        // Search representations
+        DocIdSetIterator it = docBits.createDocIdSet().iterator();
+        assertEquals(3, it.nextDoc());
+        assertEquals(9999, it.advance(701));
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, it.nextDoc());
+
+        Bits bits = docBits.createBitDocIdSet().bits();
+        assertTrue(bits.get(700));
+        assertFalse(bits.get(701));
+        assertEquals(10000, bits.length());
+
+        // Empty
+        docBits = DocBits.fromIterator(null, 10000);
+        assertTrue(docBits.isSparse());
+        assertEquals(0, docBits.cardinality());
+    }
+
+
+    @Test
+    public void testDenseDocBits () throws IOException {
+        FixedBitSet bitset = new FixedBitSet(1000);
+        for (int i = 0; i < 1000; i += 10) {
+            bitset.set(i);
+        }
+
+        DocBits docBits = DocBits.fromBitSet(bitset);
+        assertFalse(docBits.isSparse());
+        assertEquals(100, docBits.cardinality());
+
+        // The iterator switches to dense bits
+        DocBits iterated = DocBits.fromIterator(
+                new BitSetIterator(bitset, 100), 1000);
+        assertFalse(iterated.isSparse());
+        assertArrayEquals(bitset.getBits(), iterated.getBits());
+
+        DocIdSetIterator it = iterated.createDocIdSet().iterator();
+        assertEquals(0, it.nextDoc());
+        assertEquals(10, it.nextDoc());
+    }
 }
@@ -16,6 +16,7 @@ import org.junit.runners.JUnit4;
 import de.ids_mannheim.korap.Krill;
 import de.ids_mannheim.korap.KrillCollection;
 import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.cache.CollectionFilterCache;
 import de.ids_mannheim.korap.index.FieldDocument;
 import de.ids_mannheim.korap.query.QueryBuilder;
 import de.ids_mannheim.korap.response.Result;
@@ -1184,6 +1185,63 @@ public class TestKrillCollectionIndex {
         assertEquals("Documents", 5000, kc.numberOf("documents"));
     };
 
+
+    @Test
+    public void testIndexWithCostOrderedGroups () throws IOException {
+        ki = new KrillIndex();
+        for (int i = 0; i < 3000; i++) {
+            FieldDocument fd = new FieldDocument();
+            fd.addString("UID", Integer.toString(i));
+            fd.addString("availability", i % 3 == 0 ? "QAO-NC" : "CC-BY-SA");
+            fd.addDate("pubDate", i % 2 == 0 ? 20051210 : 20101210);
+            ki.addDoc(fd);
+            if (i == 2000)
+                ki.commit();
+        };
+        ki.commit();
+        CollectionFilterCache.clear();
+
+        CollectionBuilder cb = new CollectionBuilder();
+        KrillCollection kcn = new KrillCollection(ki);
+
+        // A rare term intersected with a broad regex
+        kcn.fromBuilder(cb.andGroup().with(cb.re("availability", "CC.*"))
+                .with(cb.orGroup().with(cb.term("UID", "4"))
+                        .with(cb.term("UID", "6"))
+                        .with(cb.term("UID", "2500"))));
+        assertEquals(2, kcn.docCount());
+
+        // Empty intersections don't evaluate further operands,
+        // so only the group is cached per leaf
+        int cached = CollectionFilterCache.size();
+        kcn.fromBuilder(cb.andGroup().with(cb.re("availability", "QAO.*"))
+                .with(cb.term("UID", "unknown")));
+        assertEquals(0, kcn.docCount());
+        assertEquals(cached + ki.reader().leaves().size(),
+                CollectionFilterCache.size());
+
+        // Negations are removed from the candidates
+        kcn.fromBuilder(cb.andGroup().with(cb.since("pubDate", "2008"))
+                .with(cb.re("availability", "QAO.*").not()));
+        assertEquals(1000, kcn.docCount());
+
+        kcn.fromBuilder(cb.andGroup().with(cb.term("UID", "1"))
+                .with(cb.term("UID", "1").not()));
+        assertEquals(0, kcn.docCount());
+
+        kcn.fromBuilder(cb.andGroup().with(cb.re("availability", "QAO.*").not())
+                .with(cb.till("pubDate", "2008").not()));
+        assertEquals(1000, kcn.docCount());
+
+        kcn.fromBuilder(cb.orGroup().with(cb.term("UID", "0"))
+                .with(cb.re("availability", "QAO.*").not()));
+        assertEquals(2001, kcn.docCount());
+
+        kcn.fromBuilder(cb.orGroup().with(cb.term("UID", "0"))
+                .with(cb.term("UID", "unknown").not()));
+        assertEquals(3000, kcn.docCount());
+    };
+
     
     
 
@@ -0,0 +1,133 @@
+package de.ids_mannheim.korap.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.SparseFixedBitSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.KrillCollection;
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.cache.StatisticsCache;
+import de.ids_mannheim.korap.index.FieldDocument;
+import de.ids_mannheim.korap.index.MetaDocValues;
+import de.ids_mannheim.korap.index.MultiTermTokenStream;
+
+@RunWith(JUnit4.class)
+public class TestKrillCollectionStatistics {
+
+    private static FieldDocument createDoc (int uid, String textClass,
+            int tokens, int sentences) {
+        FieldDocument fd = new FieldDocument();
+        fd.setUID(uid);
+        fd.addString("textClass", textClass);
+        fd.addTV("tokens", "[(0-1)s:a|_0$<i>0<i>1|-:tokens$<i>" + tokens
+                + "|-:base/sentences$<i>" + sentences + "]"
+                + "[(1-2)s:b|_1$<i>1<i>2]");
+        return fd;
+    };
+
+
+    private KrillIndex createIndex () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc(1, "news", 100, 10));
+        ki.addDoc(createDoc(2, "sport", 200, 20));
+        ki.addDoc(createDoc(3, "news", 300, 30));
+        ki.commit();
+        return ki;
+    };
+
+
+    @Test
+    public void testCounterColumns () throws IOException {
+        KrillIndex ki = createIndex();
+        LeafReader reader = ki.reader().leaves().get(0).reader();
+        MetaDocValues values = new MetaDocValues(reader);
+        assertTrue(values.hasCounters());
+
+        assertEquals("dv:counter:tokens:base/sentences",
+                MetaDocValues.counter("tokens", "base/sentences"));
+
+        // Dense bit sets
+        FixedBitSet fixed = new FixedBitSet(3);
+        fixed.set(0, 3);
+        assertEquals(600, values.sumCounter("tokens", "tokens", fixed));
+        assertEquals(60,
+                values.sumCounter("tokens", "base/sentences", fixed));
+        assertEquals(0, values.sumCounter("tokens", "paragraphs", fixed));
+
+        // Sparse bit sets
+        SparseFixedBitSet sparse = new SparseFixedBitSet(3);
+        sparse.set(0);
+        sparse.set(2);
+        assertEquals(400, values.sumCounter("tokens", "tokens", sparse));
+    };
+
+
+    @Test
+    public void testNumberOf () throws IOException {
+        KrillIndex ki = createIndex();
+        StatisticsCache.clear();
+
+        KrillCollection kc = new KrillCollection(ki);
+        assertEquals(3, kc.numberOf("documents"));
+        assertEquals(600, kc.numberOf("tokens"));
+        assertEquals(60, kc.numberOf("base/sentences"));
+
+        CollectionBuilder cb = kc.build();
+        kc.fromBuilder(cb.term("textClass", "news"));
+        assertEquals(2, kc.numberOf("documents"));
+        assertEquals(400, kc.numberOf("tokens"));
+        assertEquals(40, kc.numberOf("base/sentences"));
+
+        // Statistics are memoized per leaf
+        assertTrue(StatisticsCache.size() > 0);
+        int size = StatisticsCache.size();
+        assertEquals(400, kc.numberOf("tokens"));
+        assertEquals(2, kc.docCount());
+        assertEquals(size, StatisticsCache.size());
+
+        // Deletions invalidate memoized statistics
+        ki.delDoc(3);
+        ki.commit();
+        assertEquals(1, kc.numberOf("documents"));
+        assertEquals(100, kc.numberOf("tokens"));
+        assertEquals(10, kc.numberOf("base/sentences"));
+
+        kc.fromBuilder(cb.term("textClass", "sport"));
+        assertEquals(1, kc.docCount());
+        assertEquals(200, kc.numberOf("tokens"));
+    };
+
+
+    @Test
+    public void testNumberOfWithoutColumns () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createDoc(1, "news", 100, 10));
+
+        // Document indexed without counter columns
+        Document doc = new Document();
+        doc.add(new TextField("tokens", new MultiTermTokenStream(
+                "[(0-1)s:a|_0$<i>0<i>1|-:tokens$<i>50]")));
+        ki.writer().addDocument(doc);
+        ki.commit();
+
+        LeafReader reader = ki.reader().leaves().get(0).reader();
+        assertFalse(new MetaDocValues(reader).hasCounters());
+
+        // Counters are read from the payloads
+        KrillCollection kc = new KrillCollection(ki);
+        assertEquals(2, kc.numberOf("documents"));
+        assertEquals(150, kc.numberOf("tokens"));
+        assertEquals(10, kc.numberOf("base/sentences"));
+    };
+};
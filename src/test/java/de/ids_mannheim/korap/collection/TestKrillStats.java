@@ -0,0 +1,128 @@
+package de.ids_mannheim.korap.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.KrillStats;
+import de.ids_mannheim.korap.response.Response;
+
+@RunWith(JUnit4.class)
+public class TestKrillStats {
+
+    private KrillIndex createIndex () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        for (String i : new String[] { "00001", "00002", "00003", "00004",
+                "00005", "00006", "02439" }) {
+            ki.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+
+            // Create multiple leaves
+            if (i.equals("00003"))
+                ki.commit();
+        };
+        ki.commit();
+        return ki;
+    };
+
+
+    @Test
+    public void testStats () throws IOException {
+        KrillIndex ki = createIndex();
+        assertTrue(ki.reader().leaves().size() > 1);
+
+        KrillStats stats = new KrillStats().apply(ki);
+        assertFalse(stats.hasErrors());
+        assertEquals(7, stats.getValue("texts"));
+        assertEquals(ki.numberOf("tokens"), stats.getValue("tokens"));
+        assertEquals(ki.numberOf("base/sentences"),
+                stats.getValue("base/sentences"));
+        assertEquals(-1, stats.getValue("sentences"));
+
+        String json = "{\"collection\":{"
+                + "\"@type\":\"koral:docGroup\","
+                + "\"operation\":\"operation:and\","
+                + "\"operands\":[{"
+                + "\"@type\":\"koral:doc\","
+                + "\"key\":\"textClass\","
+                + "\"value\":\"reisen\","
+                + "\"match\":\"match:eq\""
+                + "},{"
+                + "\"@type\":\"koral:doc\","
+                + "\"key\":\"textClass\","
+                + "\"value\":\"freizeit-unterhaltung\","
+                + "\"match\":\"match:eq\""
+                + "}]},"
+                + "\"counters\":[\"texts\",\"tokens\",\"sentences\","
+                + "\"paragraphs\"]}";
+
+        // Sequential statistics
+        stats = new KrillStats(json).apply(ki);
+        assertEquals(5, stats.getValue("texts"));
+        assertEquals(1678, stats.getValue("tokens"));
+        assertEquals(194, stats.getValue("sentences"));
+        assertEquals(139, stats.getValue("paragraphs"));
+
+        // Parallel statistics
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ki.setSearchExecutor(executor);
+            stats = new KrillStats(json).apply(ki);
+            assertEquals(5, stats.getValue("texts"));
+            assertEquals(1678, stats.getValue("tokens"));
+            assertEquals(194, stats.getValue("sentences"));
+            assertEquals(139, stats.getValue("paragraphs"));
+        }
+        finally {
+            executor.shutdown();
+        };
+    };
+
+
+    @Test
+    public void testStatsSerialization () throws IOException {
+        KrillIndex ki = createIndex();
+        KrillStats stats = new KrillStats(
+                "{\"counters\":[\"base/s:s\",\"base/texts\",\"tokens\"]}");
+        stats.apply(ki);
+
+        Response kresp = new Response();
+        kresp.setStats(stats);
+        JsonNode res = kresp.toJsonNode();
+
+        assertEquals("koral:stats", res.at("/stats/@type").asText());
+        assertEquals("stats:collection",
+                res.at("/stats/collection/0/@type").asText());
+        assertEquals("base", res.at("/stats/collection/0/foundry").asText());
+        assertEquals("s", res.at("/stats/collection/0/layer").asText());
+        assertEquals("s", res.at("/stats/collection/0/key").asText());
+        assertEquals(0, res.at("/stats/collection/0/value").asInt());
+        assertEquals("base", res.at("/stats/collection/1/foundry").asText());
+        assertTrue(res.at("/stats/collection/1/layer").isMissingNode());
+        assertEquals("texts", res.at("/stats/collection/1/key").asText());
+        assertEquals(7, res.at("/stats/collection/1/value").asInt());
+        assertTrue(res.at("/stats/collection/2/foundry").isMissingNode());
+        assertEquals("tokens", res.at("/stats/collection/2/key").asText());
+        assertEquals(ki.numberOf("tokens"),
+                res.at("/stats/collection/2/value").asLong());
+
+        // Errors are moved to the response
+        stats = new KrillStats("{lalala}").apply(ki);
+        assertEquals(621, stats.getError(0).getCode());
+        res = new Response().setStats(stats).toJsonNode();
+        assertEquals(621, res.at("/errors/0/0").asInt());
+        assertEquals("koral:stats", res.at("/stats/@type").asText());
+        assertTrue(res.at("/stats/collection").isMissingNode());
+    };
+};
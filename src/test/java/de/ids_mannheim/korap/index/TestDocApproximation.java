@@ -0,0 +1,159 @@
+package de.ids_mannheim.korap.index;
+
+import static de.ids_mannheim.korap.TestSimple.simpleFieldDoc;
+import static de.ids_mannheim.korap.TestSimple.simpleFuzzyFieldDoc;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.query.DistanceConstraint;
+import de.ids_mannheim.korap.query.SpanDistanceQuery;
+import de.ids_mannheim.korap.query.SpanNextQuery;
+import de.ids_mannheim.korap.query.SpanWithinQuery;
+import de.ids_mannheim.korap.query.spans.DocApproximation;
+
+@RunWith(JUnit4.class)
+public class TestDocApproximation {
+
+    private static SpanTermQuery term (String s) {
+        return new SpanTermQuery(new Term("base", "s:" + s));
+    };
+
+
+    private static Term[] terms (String ... s) {
+        Term[] terms = new Term[s.length];
+        for (int i = 0; i < s.length; i++) {
+            terms[i] = new Term("base", "s:" + s[i]);
+        };
+        return terms;
+    };
+
+
+    // Queries with different required terms
+    private static List<SpanQuery> queries () {
+        List<SpanQuery> queries = new ArrayList<>();
+
+        // abc
+        queries.add(new SpanNextQuery(new SpanNextQuery(term("a"), term("b")),
+                term("c")));
+
+        // b in a distance span of a and c
+        queries.add(new SpanWithinQuery(
+                new SpanDistanceQuery(term("a"), term("c"),
+                        new DistanceConstraint(1, 3, true, false), true),
+                term("b")));
+
+        // a not followed by b, followed by c
+        queries.add(new SpanNextQuery(
+                new SpanDistanceQuery(term("a"), term("b"),
+                        new DistanceConstraint(1, 1, true, true), true),
+                term("c")));
+
+        // (ab|ac)d
+        queries.add(new SpanNextQuery(
+                new SpanOrQuery(new SpanNextQuery(term("a"), term("b")),
+                        new SpanNextQuery(term("a"), term("c"))),
+                term("d")));
+        return queries;
+    };
+
+
+    @Test
+    public void testRequiredTerms () {
+        List<SpanQuery> queries = queries();
+        assertEquals(new HashSet<>(Arrays.asList(terms("a", "b", "c"))),
+                DocApproximation.requiredTerms(queries.get(0)));
+        assertEquals(new HashSet<>(Arrays.asList(terms("a", "c", "b"))),
+                DocApproximation.requiredTerms(queries.get(1)));
+
+        // Excluded terms are not required
+        assertEquals(new HashSet<>(Arrays.asList(terms("a", "c"))),
+                DocApproximation.requiredTerms(queries.get(2)));
+
+        // Only terms of all alternatives are required
+        assertEquals(new HashSet<>(Arrays.asList(terms("a", "d"))),
+                DocApproximation.requiredTerms(queries.get(3)));
+    };
+
+
+    @Test
+    public void testCandidates () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(simpleFieldDoc("abab"));
+        ki.addDoc(simpleFieldDoc("cbba"));
+        ki.addDoc(simpleFieldDoc("bbbb"));
+        ki.addDoc(simpleFieldDoc("abc"));
+        ki.commit();
+
+        SearchExecutionContext sec = new SearchExecutionContext(ki.reader(),
+                queries().get(0));
+
+        // Rare terms first
+        assertEquals(new Term("base", "s:c"), sec.getRequiredTerms()[0]);
+
+        LeafReaderContext leaf = ki.reader().leaves().get(0);
+        DocIdSetIterator candidates = new DocApproximation(leaf, null,
+                sec.getRequiredTerms(), sec.getTermContexts()).iterator();
+        assertEquals(1, candidates.nextDoc());
+        assertEquals(3, candidates.nextDoc());
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, candidates.nextDoc());
+
+        // Missing terms
+        candidates = new DocApproximation(leaf, null, terms("a", "x"),
+                sec.getTermContexts()).iterator();
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, candidates.nextDoc());
+    };
+
+
+    @Test
+    public void testApproximatedSpans () throws IOException {
+        List<String> chars = Arrays.asList("a", "b", "c", "d", "e", "f");
+        KrillIndex ki = new KrillIndex();
+        for (int i = 1; i <= 60; i++) {
+            ki.addDoc(simpleFuzzyFieldDoc(chars, 2, 12));
+            if (i % 20 == 0)
+                ki.commit();
+        };
+
+        // The approximation doesn't change the spans
+        for (SpanQuery query : queries()) {
+            assertEquals(query.toString(), getSpans(ki, query, false),
+                    getSpans(ki, query, true));
+        };
+    };
+
+
+    private static List<String> getSpans (KrillIndex ki, SpanQuery query,
+            boolean approximated) throws IOException {
+        SearchExecutionContext sec = new SearchExecutionContext(ki.reader(),
+                query);
+        List<String> spanArray = new ArrayList<>();
+        for (LeafReaderContext atomic : ki.reader().leaves()) {
+            Bits bitset = atomic.reader().getLiveDocs();
+            Spans spans = approximated ? sec.getSpans(atomic, bitset)
+                    : query.getSpans(atomic, bitset, sec.getTermContexts());
+            while (spans.next()) {
+                spanArray.add("Doc: " + (atomic.docBase + spans.doc())
+                        + " with " + spans.start() + "-" + spans.end());
+            };
+        };
+        return spanArray;
+    };
+};
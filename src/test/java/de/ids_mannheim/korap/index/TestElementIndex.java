@@ -1,12 +1,19 @@
 package de.ids_mannheim.korap.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.HashMap;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.BytesRef;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,6 +21,8 @@ import org.junit.runners.JUnit4;
 
 import de.ids_mannheim.korap.KrillIndex;
 import de.ids_mannheim.korap.query.SpanElementQuery;
+import de.ids_mannheim.korap.query.spans.ElementSpans;
+import de.ids_mannheim.korap.query.spans.PayloadDecoder;
 import de.ids_mannheim.korap.response.Result;
 
 
@@ -374,4 +383,54 @@ public class TestElementIndex {
         assertEquals(5, ki.numberOf("documents"));
         assertEquals("totalResults", kr.getTotalResults(), 7);
     };
+
+
+    @Test
+    public void indexExamplePayloadDecoding () throws IOException {
+        KrillIndex ki = new KrillIndex();
+
+        FieldDocument fd = new FieldDocument();
+        fd.addTV("base", "x  y  z  ",
+                "[(0-3)s:x|<>:a$<b>64<i>0<i>9<i>3<b>0<s>7<b>100]"
+                        + "[(3-6)s:y|<>:a$<b>64<i>3<i>6<i>2<b>1]"
+                        + "[(6-9)s:z]");
+        ki.addDoc(fd);
+        ki.commit();
+
+        LeafReaderContext atomic = ki.reader().leaves().get(0);
+        Spans spans = new SpanElementQuery("base", "a").getSpans(atomic,
+                null, new HashMap<Term, TermContext>());
+
+        assertTrue(spans.next());
+        assertEquals(0, spans.start());
+        assertEquals(3, spans.end());
+        assertEquals(7, ((ElementSpans) spans).getSpanId());
+        assertTrue(spans.isPayloadAvailable());
+
+        // The payload is only copied on request
+        byte[] payload = spans.getPayload().iterator().next();
+        assertEquals(17, payload.length);
+        BytesRef ref = new BytesRef(payload);
+        assertEquals(64, PayloadDecoder.getPTI(ref));
+        assertEquals(0, PayloadDecoder.getSpanStartOffset(ref));
+        assertEquals(9, PayloadDecoder.getSpanEndOffset(ref));
+        assertEquals(3, PayloadDecoder.getSpanEnd(ref));
+        assertEquals(0, PayloadDecoder.getSpanDepth(ref));
+        assertTrue(PayloadDecoder.hasSpanTUI(ref));
+        assertEquals(100, PayloadDecoder.getSpanCertainty(ref));
+
+        assertTrue(spans.next());
+        assertEquals(1, spans.start());
+        assertEquals(2, spans.end());
+        assertEquals(-1, ((ElementSpans) spans).getSpanId());
+
+        // Decode payloads at an offset
+        byte[] shifted = new byte[payload.length + 3];
+        System.arraycopy(payload, 0, shifted, 3, payload.length);
+        ref = new BytesRef(shifted, 3, payload.length);
+        assertEquals(3, PayloadDecoder.getSpanEnd(ref));
+        assertEquals(7, PayloadDecoder.getSpanTUI(ref));
+
+        assertFalse(spans.next());
+    };
 };
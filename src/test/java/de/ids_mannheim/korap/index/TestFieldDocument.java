@@ -154,6 +154,54 @@ public class TestFieldDocument {
     };
 
 
+    @Test
+    public void indexStreamData () throws Exception {
+        String json = "{"
+            + "  \"data\" : {"
+            + "    \"unknown\" : { \"stream\" : [[\"s:x\"]] },"
+            + "    \"stream\" : ["
+            + "       [ \"s:\\u00e4\", \"i:a\", \"\", \"_0$<i>0<i>1\"],"
+            + "       [ \"s:b#1\", \"i:b\", \"_1$<i>1<i>2\" ],"
+            + "       [ \"s:c\", \"i:c#x\", 4, null, \"_2$<i>2<i>3\" ],"
+            + "       [ \"s:b\", \"_3$<i>3<i>4\" ]"
+            + "    ],"
+            + "    \"text\" : \"\u00e4bcb\","
+            + "    \"name\" : \"tokens\","
+            + "    \"foundries\" : \"base\","
+            + "    \"layerInfos\" : \"base/s=spans\""
+            + "  },"
+            + "  \"textSigle\" : \"aa/bb/cc\""
+            + "}";
+
+        KrillIndex ki = new KrillIndex();
+        FieldDocument fd = ki.addDoc(json);
+        ki.commit();
+
+        assertEquals("\u00e4bcb", fd.getPrimaryData());
+        assertEquals("base/s=spans", fd.doc.get("layerInfos"));
+
+        // Malformed tokens are reported and skipped
+        assertTrue(fd.hasErrors());
+        assertEquals(953, fd.getError(0).getCode());
+        assertEquals(1, fd.getErrors().size());
+
+        QueryBuilder kq = new QueryBuilder("tokens");
+        Result kr = ki.search((SpanQuery) kq.seq(kq.seg("s:c"))
+                .append(kq.seg("s:b")).toQuery());
+        assertEquals(1, kr.getTotalResults());
+        assertEquals(1, ki.search((SpanQuery) kq.seg("s:\u00e4").toQuery())
+                .getTotalResults());
+
+        // Scalar terms are accepted
+        assertEquals(1, ki.search((SpanQuery) kq.seg("4").toQuery())
+                .getTotalResults());
+
+        // Unknown properties are skipped
+        assertEquals(0, ki.search((SpanQuery) kq.seg("s:x").toQuery())
+                .getTotalResults());
+    };
+
+
     @Test
     public void indexExample3 () throws IOException {
 
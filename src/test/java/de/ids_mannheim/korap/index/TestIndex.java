@@ -18,6 +18,8 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
@@ -112,6 +114,62 @@ public class TestIndex { // extends LuceneTestCase {
     };
 
 
+    @Test
+    public void multiTermPayloads () throws CorpusDataException {
+        MultiTerm test = new MultiTerm("<>:s:a#0-2$<b>64<s>-2<l>5");
+        assertEquals(test.getPayload().toString(),
+                "[40 ff fe 0 0 0 0 0 0 0 5]");
+
+        // Length prefixed UTF-8 bytes
+        test = new MultiTerm("a$<x>ä<i>3");
+        assertEquals(test.getPayload().toString(),
+                "[0 0 0 2 c3 a4 0 0 0 3]");
+
+        // Unknown types are ignored
+        test = new MultiTerm("a$<q>4<i>3");
+        assertEquals(test.getPayload().toString(), "[0 0 0 3]");
+
+        // Malformed typed payloads are ignored
+        assertNull(new MultiTerm("a$<b>300").getPayload());
+        assertNull(new MultiTerm("a$<i><i>5").getPayload());
+        assertEquals(new MultiTerm("a$<i>").getPayload().length, 0);
+
+        // Untyped payloads
+        test = new MultiTerm("a\\$b$c<i>");
+        assertEquals(test.getTerm(), "a$b");
+        assertEquals(test.getPayload().utf8ToString(), "c<i>");
+        assertEquals(new MultiTerm("a$").getPayload().length, 0);
+
+        // Payloads exceeding the initial buffer
+        StringBuilder sb = new StringBuilder("a$");
+        for (int i = 0; i < 40; i++) {
+            sb.append("<l>").append(i);
+        };
+        test = new MultiTerm(sb.toString());
+        assertEquals(test.getPayload().length, 320);
+        assertEquals(test.getPayload().bytes[319], 39);
+
+        // Malformed offsets
+        try {
+            new MultiTerm("a#5");
+            fail("Incomplete offset accepted");
+        }
+        catch (CorpusDataException cde) {
+            assertEquals(cde.getErrorCode(), 953);
+        };
+
+        try {
+            new MultiTerm("a#5-x$<i>4");
+            fail("Non-numeric offset accepted");
+        }
+        catch (CorpusDataException cde) {
+            assertEquals(cde.getErrorCode(), 952);
+            assertEquals(cde.getMessage(),
+                    "Given offset information is not numeric in a#5-x");
+        };
+    };
+
+
     @Test
     public void multiTermToken () throws CorpusDataException {
         MultiTermToken test = new MultiTermToken("hunde", "pos:n", "m:gen:pl");
@@ -126,6 +184,43 @@ public class TestIndex { // extends LuceneTestCase {
     };
 
 
+    @Test
+    public void multiTermTokenStream () throws IOException {
+        MultiTermTokenStream mtts = new MultiTermTokenStream(
+                "[s:a#0-1][<>:s:x#2-9$<b>1<i>9|s:b#2-3$<i>4"
+                        + "|<>:s:x#2-5$<b>1<i>5]");
+        mtts.addMeta("tokens", (int) 2);
+
+        CharTermAttribute term = mtts.getAttribute(CharTermAttribute.class);
+        PositionIncrementAttribute pos = mtts
+                .getAttribute(PositionIncrementAttribute.class);
+        PayloadAttribute payload = mtts.getAttribute(PayloadAttribute.class);
+
+        // Terms are sorted once per position
+        StringBuilder sb = new StringBuilder();
+        mtts.reset();
+        while (mtts.incrementToken()) {
+            sb.append(term.toString()).append('/')
+                    .append(pos.getPositionIncrement()).append('/')
+                    .append(payload.getPayload()).append(' ');
+        };
+        assertEquals("s:a/1/[0 0 0 0 0 0 0 1] "
+                + "-:tokens/0/[0 0 0 2] "
+                + "s:b/1/[0 0 0 2 0 0 0 3 0 0 0 4] "
+                + "<>:s:x/0/[0 0 0 2 0 0 0 5 1 0 0 0 5] "
+                + "<>:s:x/0/[0 0 0 2 0 0 0 9 1 0 0 0 9] ", sb.toString());
+
+        assertEquals(2, mtts.getSize());
+        assertEquals(2, (int) mtts.getMetaCounters().get("tokens"));
+        assertEquals("s:b", mtts.get(1).get(0).getTerm());
+        assertEquals(9, mtts.get(1).get(2).getEnd());
+
+        // Tokens are copies
+        mtts.get(0).add(new MultiTerm());
+        assertEquals(2, mtts.get(0).getSize());
+    };
+
+
     private List initIndexer () throws IOException {
         List<Map<String, String>> list = new ArrayList<>();
 
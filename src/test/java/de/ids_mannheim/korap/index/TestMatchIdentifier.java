@@ -7,6 +7,8 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 import org.junit.Ignore;
@@ -1071,6 +1073,61 @@ public class TestMatchIdentifier {
         assertEquals(2, res.at("/UID").asInt());
     };
 
+    @Test
+    public void indexMatchInfos () throws IOException, QueryException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createSimpleFieldDoc4());
+        ki.commit();
+        ki.addDoc(createSigleDoc1());
+        ki.commit();
+        assertEquals(2, ki.reader().leaves().size());
+
+        List<String> ids = Arrays.asList("match-c1/d1/t1-p3-6",
+                "match-c1!d4-p3-9", "match-c1/d1/t1-p0-2",
+                "match-PRO-DUD!PRO-DUD_KSTA-2013-01.7483-2013-01",
+                "match-c1/d1/t9-p0-1", "match-c1!d4-p1-4(0)2-2");
+        List<String> foundries = Arrays.asList("f", "x");
+
+        List<Match> matches = ki.getMatchInfos(ids, "tokens", true,
+                foundries, null, false, true, false, true, false);
+        assertEquals(ids.size(), matches.size());
+
+        // Batched matches equal single matches
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(
+                    ki.getMatchInfo(ids.get(i), "tokens", true, foundries,
+                            null, false, true, false, true, false)
+                            .toJsonString(),
+                    matches.get(i).toJsonString());
+        };
+
+        JsonNode res = mapper.readTree(matches.get(1).toJsonString());
+        assertEquals("d4", res.at("/docID").asText());
+        assertTrue(res.at("/snippet").asText().contains("f/m:vier"));
+
+        res = mapper.readTree(matches.get(2).toJsonString());
+        assertEquals("c1/d1/t1", res.at("/textSigle").asText());
+        assertEquals("match-c1/d1/t1-p0-2", res.at("/matchID").asText());
+
+        res = mapper.readTree(matches.get(3).toJsonString());
+        assertEquals(730, res.at("/errors/0/0").asInt());
+
+        // Unknown texts have no document information
+        res = mapper.readTree(matches.get(4).toJsonString());
+        assertTrue(res.at("/UID").isMissingNode());
+
+        // Invalid foundries fail for all matches
+        matches = ki.getMatchInfos(ids, "tokens", true, Arrays.asList("*"),
+                null, false, true, false, true, false);
+        res = mapper.readTree(matches.get(0).toJsonString());
+        assertEquals(970, res.at("/errors/0/0").asInt());
+        res = mapper.readTree(matches.get(1).toJsonString());
+        assertEquals(970, res.at("/errors/0/0").asInt());
+        res = mapper.readTree(matches.get(3).toJsonString());
+        assertEquals(730, res.at("/errors/0/0").asInt());
+    };
+
+
 	@Test
 	public void indexMultipleSpanStarts () throws IOException, QueryException {
         KrillIndex ki = new KrillIndex();
@@ -0,0 +1,143 @@
+package de.ids_mannheim.korap.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.Krill;
+import de.ids_mannheim.korap.KrillCollection;
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.query.QueryBuilder;
+import de.ids_mannheim.korap.response.Match;
+import de.ids_mannheim.korap.response.MetaField;
+import de.ids_mannheim.korap.response.Result;
+import de.ids_mannheim.korap.util.QueryException;
+
+@RunWith(JUnit4.class)
+public class TestMetaDocValues {
+
+    private KrillIndex createIndex () throws IOException {
+        KrillIndex ki = new KrillIndex();
+
+        FieldDocument fd = new FieldDocument();
+        fd.setUID(7);
+        fd.addString("textSigle", "A/B/C");
+        fd.addDate("pubDate", 20050302);
+        fd.addInt("pages", 12);
+        fd.addKeywords("textClass", "musik kultur");
+        fd.addStored("title", "Der Titel");
+        fd.addTV("base", "abc", "[(0-1)s:a|_0$<i>0<i>1]"
+                + "[(1-2)s:b|_1$<i>1<i>2]" + "[(2-3)s:c|_2$<i>2<i>3]");
+        ki.addDoc(fd);
+
+        // Same key with a different type
+        fd = new FieldDocument();
+        fd.setUID(8);
+        fd.addString("textSigle", "A/B/D");
+        fd.addString("pubDate", "unknown");
+        fd.addTV("base", "ab", "[(0-1)s:a|_0$<i>0<i>1]"
+                + "[(1-2)s:b|_1$<i>1<i>2]");
+        ki.addDoc(fd);
+        ki.commit();
+        return ki;
+    };
+
+
+    @Test
+    public void testColumns () throws IOException {
+        KrillIndex ki = createIndex();
+        assertEquals(1, ki.reader().leaves().size());
+        LeafReader reader = ki.reader().leaves().get(0).reader();
+        MetaDocValues values = new MetaDocValues(reader);
+
+        assertEquals("dv:string:textSigle",
+                MetaDocValues.field("type:string", "textSigle"));
+
+        assertEquals(7, values.getUID(0));
+        assertEquals(8, values.getUID(1));
+
+        MetaField mf = values.getField("textSigle", 0);
+        assertEquals("type:string", mf.type);
+        assertEquals("A/B/C", mf.values.get(0));
+
+        mf = values.getField("pubDate", 0);
+        assertEquals("type:date", mf.type);
+        assertEquals("2005-03-02", mf.values.get(0));
+
+        mf = values.getField("pubDate", 1);
+        assertEquals("type:string", mf.type);
+        assertEquals("unknown", mf.values.get(0));
+
+        mf = values.getField("pages", 0);
+        assertEquals("type:integer", mf.type);
+        assertEquals("12", mf.values.get(0));
+        assertNull(values.getField("pages", 1));
+
+        // Keywords and stored fields are not lifted
+        assertNull(values.getField("textClass", 0));
+        assertNull(values.getField("title", 0));
+        assertArrayEquals(new String[] { "kultur", "musik" },
+                values.getKeywords("textClass", 0));
+        assertArrayEquals(new String[] {},
+                values.getKeywords("textClass", 1));
+        assertNull(values.getKeywords("title", 0));
+
+        // Values are represented like stored values
+        for (String field : Arrays.asList("UID", "textSigle", "pubDate",
+                "pages")) {
+            assertEquals(field, reader.document(0).get(field),
+                    values.getValue(field, 0));
+        };
+        assertNull(values.getValue("title", 0));
+
+        List<String> fields = Arrays.asList("UID", "pubDate", "title",
+                "pages");
+        Map<String, MetaField> lifted = values.lift(1, fields);
+        assertEquals("[UID, pubDate]", lifted.keySet().toString());
+    };
+
+
+    @Test
+    public void testLiftFields () throws IOException, QueryException {
+        KrillIndex ki = createIndex();
+
+        SpanQuery sq = new QueryBuilder("base").seg("s:a").toQuery();
+        Krill ks = new Krill(sq);
+        ks.getMeta().getFields().clear();
+        ks.getMeta().addField("UID").addField("textSigle")
+                .addField("pubDate").addField("pages")
+                .addField("textClass").addField("title");
+
+        Result kr = ki.search(ks);
+        assertEquals(2, kr.getTotalResults());
+
+        Match km = kr.getMatch(0);
+        assertEquals(7, km.getUID());
+        assertEquals("A/B/C", km.getFieldValue("textSigle"));
+        assertEquals("2005-03-02", km.getFieldValue("pubDate"));
+        assertEquals("12", km.getFieldValue("pages"));
+        assertEquals("musik kultur", km.getFieldValue("textClass"));
+        assertEquals("Der Titel", km.getFieldValue("title"));
+
+        km = kr.getMatch(1);
+        assertEquals(8, km.getUID());
+        assertEquals("unknown", km.getFieldValue("pubDate"));
+        assertNull(km.getFieldValue("pages"));
+
+        // Field vectors are read from DocValues
+        List<String> values = ki.getFieldVector("pubDate",
+                new KrillCollection(ki));
+        assertEquals("[20050302, unknown]", values.toString());
+    };
+};
@@ -1,9 +1,12 @@
 package de.ids_mannheim.korap.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
@@ -171,4 +174,45 @@ public class TestPagebreakIndex {
 
 		assertEquals("snippetBrackets","[[{%528}abcab{%529}ca]]b{%530}ac",kr.getMatch(0).getSnippetBrackets());
 	};
+
+
+    @Test
+    public void testMarkerEnum () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createFieldDoc1());
+        ki.addDoc(createFieldDoc0());
+        ki.addDoc(createFieldDoc1());
+        ki.commit();
+
+        LeafReader reader = ki.reader().leaves().get(0).reader();
+        MarkerEnum me = new MarkerEnum(reader, "tokens", "~:base/s:pb");
+
+        assertTrue(me.moveTo(0));
+        assertTrue(me.exists(1));
+        assertEquals(5, me.position(1));
+        assertTrue(me.exists(0));
+        assertEquals(0, me.position(0));
+        assertTrue(me.exists(2));
+        assertEquals(8, me.position(2));
+        assertFalse(me.exists(3));
+
+        // Document without markers
+        assertFalse(me.moveTo(1));
+        assertFalse(me.exists(0));
+
+        assertTrue(me.moveTo(2));
+        assertTrue(me.exists(2));
+        assertEquals(8, me.position(2));
+
+        // Reopen for preceding documents
+        assertTrue(me.moveTo(0));
+        assertTrue(me.exists(0));
+        assertEquals(0, me.position(0));
+        assertFalse(me.moveTo(3));
+
+        // Unknown marker
+        me = new MarkerEnum(reader, "tokens", "~:base/s:unknown");
+        assertFalse(me.moveTo(0));
+        assertFalse(me.exists(0));
+    };
 };
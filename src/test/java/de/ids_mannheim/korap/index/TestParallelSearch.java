@@ -0,0 +1,158 @@
+package de.ids_mannheim.korap.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.Krill;
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.KrillMeta;
+import de.ids_mannheim.korap.query.QueryBuilder;
+import de.ids_mannheim.korap.response.Result;
+import de.ids_mannheim.korap.util.QueryException;
+
+@RunWith(JUnit4.class)
+public class TestParallelSearch {
+
+    private static KrillIndex ki;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void createIndex () throws IOException {
+        ki = new KrillIndex();
+
+        // Every document is committed in its own segment
+        for (String i : new String[] { "00001", "00002", "00003", "00004",
+                "00005", "00006", "02439" }) {
+            ki.addDoc(TestParallelSearch.class
+                    .getResourceAsStream("/wiki/" + i + ".json.gz"), true);
+            ki.commit();
+        };
+
+        executor = Executors.newFixedThreadPool(3);
+    };
+
+
+    @AfterClass
+    public static void closeIndex () throws IOException {
+        executor.shutdown();
+        ki.close();
+    };
+
+
+    @Test
+    public void searchParallelMultipleLeaves () throws QueryException {
+        assertTrue(ki.reader().leaves().size() > 1);
+
+        QueryBuilder qb = new QueryBuilder("tokens");
+        compare(new Krill(qb.seg("s:der")), 0, 25, 0, false);
+        compare(new Krill(qb.seg("s:der")), 30, 10, 0, false);
+        compare(new Krill(qb.seg("s:der")), 0, 50, 0, true);
+        compare(new Krill(qb.seg("s:der")), 40, 25, 0, true);
+        compare(new Krill(qb.seg("s:der")), 0, 20, 2, false);
+        compare(new Krill(qb.seg("s:der")), 7, 5, 1, false);
+        compare(new Krill(qb.seg("s:der")), 7, 5, 3, true);
+        compare(new Krill(qb.seg("s:Haus")), 0, 25, 0, false);
+        compare(new Krill(qb.seq(qb.seg("s:der")).append(qb.re("s:.*e"))),
+                3, 25, 2, false);
+        compare(new Krill(qb.seg("s:nichtvorhanden")), 0, 25, 0, false);
+        compare(new Krill(qb.seg("s:der")), 100000, 25, 0, false);
+    };
+
+
+    @Test
+    public void searchParallelTimeout () throws QueryException {
+        Krill ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setTimeOut(-1);
+        ki.setSearchExecutor(executor);
+        Result kr = ks.apply(ki);
+        ki.setSearchExecutor(null);
+        assertEquals(1, kr.getWarnings().size());
+        assertEquals(682, kr.getWarning(0).getCode());
+    };
+
+
+    @Test
+    public void searchConcurrentRequests () throws Exception {
+        final QueryBuilder qb = new QueryBuilder("tokens");
+        final String[] terms = new String[] { "s:der", "s:die", "s:Haus",
+                "s:und", "s:in" };
+
+        // Expected results, searched one after the other
+        final String[] expected = new String[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            expected[i] = serialize(ki.search(new Krill(qb.seg(terms[i]))));
+        };
+
+        // The same index is searched by concurrent requests
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int n = 0; n < 200; n++) {
+            final int i = n % terms.length;
+            results.add(requests.submit(new Callable<String>() {
+                @Override
+                public String call () throws QueryException {
+                    return serialize(ki.search(new Krill(qb.seg(terms[i]))));
+                };
+            }));
+        };
+
+        for (int n = 0; n < 200; n++) {
+            assertEquals(expected[n % terms.length], results.get(n).get());
+        };
+        requests.shutdown();
+    };
+
+
+    // Serialize totals and match identifiers
+    private static String serialize (Result kr) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(kr.getTotalResults()).append(':')
+                .append(kr.getTotalResources());
+        for (int i = 0; i < kr.getMatches().size(); i++) {
+            sb.append(';').append(kr.getMatch(i).getID());
+        };
+        return sb.toString();
+    };
+
+
+    // Compare sequential and parallel search results
+    private void compare (Krill ks, int startIndex, int count,
+            int itemsPerResource, boolean cutoff) {
+        KrillMeta meta = ks.getMeta();
+        meta.setStartIndex(startIndex);
+        meta.setCount(count);
+        meta.setItemsPerResource(itemsPerResource);
+        meta.setCutOff(cutoff);
+
+        ki.setSearchExecutor(null);
+        Result seq = ki.search(ks);
+
+        ki.setSearchExecutor(executor);
+        Result par = ki.search(ks);
+        ki.setSearchExecutor(null);
+
+        assertEquals(seq.getTotalResults(), par.getTotalResults());
+        assertEquals(seq.getTotalResources(), par.getTotalResources());
+        assertEquals(seq.getMatches().size(), par.getMatches().size());
+
+        for (int i = 0; i < seq.getMatches().size(); i++) {
+            assertEquals(seq.getMatch(i).getID(), par.getMatch(i).getID());
+            assertEquals(seq.getMatch(i).getSnippetBrackets(),
+                    par.getMatch(i).getSnippetBrackets());
+        };
+    };
+};
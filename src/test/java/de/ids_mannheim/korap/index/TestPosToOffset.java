@@ -1,6 +1,10 @@
 package de.ids_mannheim.korap.index;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
@@ -56,4 +60,83 @@ public class TestPosToOffset {
             assertEquals("End 1,20", pto.end(1, 20), -1);
         };
     };
+
+
+    @Test
+    public void indexExampleBatched () throws IOException {
+        KrillIndex ki = new KrillIndex();
+
+        // Two documents with multi-digit positions
+        for (int d = 0; d < 2; d++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                int start = i * 2 + d;
+                sb.append("[(").append(start).append('-').append(start + 1)
+                        .append(")s:a|_").append(i).append("$<i>")
+                        .append(start).append("<i>").append(start + 1);
+                if (i == 0)
+                    sb.append("|-:t$<i>12");
+                sb.append(']');
+            };
+            FieldDocument fd = new FieldDocument();
+            fd.addTV("base", " a a a a a a a a a a a a", sb.toString());
+            ki.addDoc(fd);
+        };
+        ki.commit();
+
+        LeafReaderContext atomic = ki.reader().leaves().get(0);
+        PositionsToOffset pto = new PositionsToOffset(atomic, "base");
+
+        pto.add(1, 11);
+        pto.add(0, 10);
+        pto.add(0, 2);
+        pto.add(1, 2);
+        pto.add(1, 2);
+        pto.add(0, -1);
+
+        assertEquals(20, pto.start(0, 10));
+        assertEquals(21, pto.end(0, 10));
+        assertEquals(23, pto.start(1, 11));
+        assertEquals(24, pto.end(1, 11));
+        assertArrayEquals(new int[] { 4, 5 }, pto.span(0, 2));
+        assertArrayEquals(new int[] { 5, 6 }, pto.span(1, 2));
+        assertTrue(pto.exists(1, 2));
+
+        // Not requested
+        assertFalse(pto.exists(0, 3));
+        assertNull(pto.span(0, 3));
+
+        // Lazily reprocessed
+        pto.add(0, 3);
+        assertEquals(6, pto.start(0, 3));
+        assertEquals(20, pto.start(0, 10));
+
+        // Unknown positions
+        pto.add(0, 100);
+        assertEquals(0, pto.start(0, 100));
+        assertEquals(-1, pto.end(0, 100));
+        assertEquals(0, pto.start(0, -1));
+
+        // Explicit offsets
+        pto.addOffset(1, 50, 7, 9);
+        assertArrayEquals(new int[] { 7, 9 }, pto.span(1, 50));
+
+        pto.clear();
+        assertFalse(pto.exists(0, 10));
+        pto.add(0, 10);
+        assertEquals(21, pto.end(0, 10));
+
+        // Grow beyond initial capacities
+        for (int i = 0; i < 100; i++)
+            pto.addOffset(2, i, i, i + 1);
+        for (int i = 0; i < 12; i++) {
+            pto.add(0, i);
+            pto.add(1, i);
+        };
+        for (int i = 0; i < 12; i++) {
+            assertEquals(i * 2, pto.start(0, i));
+            assertEquals(i * 2 + 2, pto.end(1, i));
+        };
+        assertEquals(99, pto.start(2, 99));
+    };
 };
@@ -0,0 +1,330 @@
+package de.ids_mannheim.korap.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.Krill;
+import de.ids_mannheim.korap.KrillCollection;
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.cache.VirtualCorpusCache;
+import de.ids_mannheim.korap.query.QueryBuilder;
+import de.ids_mannheim.korap.response.Result;
+import de.ids_mannheim.korap.util.KrillProperties;
+import de.ids_mannheim.korap.util.QueryException;
+
+@RunWith(JUnit4.class)
+public class TestReaderRefresh {
+
+    @Test
+    public void refreshKeepsAcquiredReader () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"),
+                true);
+        ki.commit();
+
+        IndexReader old = ki.acquireReader();
+        assertEquals(1, old.numDocs());
+        assertSame(old, ki.reader());
+
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"),
+                true);
+        ki.commit();
+
+        // New requests see the new documents
+        assertNotSame(old, ki.reader());
+        assertEquals(2, ki.reader().numDocs());
+        assertEquals(2, ki.numberOf("base", "documents"));
+
+        // The acquired reader is still open
+        assertEquals(1, old.getRefCount());
+        assertEquals(1, old.numDocs());
+        assertEquals(1, old.leaves().size());
+
+        ki.releaseReader(old);
+        assertEquals(0, old.getRefCount());
+
+        // Nothing changed
+        IndexReader current = ki.reader();
+        ki.commit();
+        assertSame(current, ki.reader());
+
+        ki.close();
+    };
+
+
+    @Test
+    public void requestsReleaseReaders () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        for (int uid = 1; uid <= 2; uid++) {
+            ki.addDoc(uid, getClass().getResourceAsStream(
+                    "/wiki/0000" + uid + ".json.gz"), true);
+        };
+        ki.commit();
+
+        IndexReader current = ki.reader();
+        int refCount = current.getRefCount();
+
+        KrillCollection kc = new KrillCollection(ki);
+        kc.fromBuilder(kc.build().term("textClass", "freizeit-unterhaltung"));
+        assertEquals(2, ki.numberOf("base", "documents"));
+        assertTrue(kc.numberOf("documents") >= 0);
+        assertTrue(kc.docCount() >= 0);
+        assertEquals(1, ki.getAllLeafFingerprints().size());
+        assertNotEquals("null", ki.getFingerprint());
+        ki.getDoc("1");
+        ki.getFields("WPD/AAA/00001");
+
+        // All requests released the reader
+        assertSame(current, ki.reader());
+        assertEquals(refCount, current.getRefCount());
+
+        ki.close();
+    };
+
+
+    @Test
+    public void upsertWhileCommitting () throws Exception {
+        KrillIndex ki = new KrillIndex();
+        ki.setAutoCommit(3);
+
+        // Commits of one thread refresh the reader
+        // used by upserts of the other threads
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 2; round++) {
+                final String name = "round" + round;
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    final int thread = t;
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < 25; i++) {
+                            FieldDocument fd = new FieldDocument();
+                            fd.addString("textSigle", "a/" + thread + "/" + i);
+                            fd.addString("name", name);
+                            ki.upsertDoc(fd);
+                        };
+                        return null;
+                    }));
+                };
+                for (Future<?> future : futures)
+                    future.get();
+                ki.commit();
+            };
+        }
+        finally {
+            pool.shutdown();
+        };
+
+        // All documents were updated
+        assertEquals(100, ki.reader().numDocs());
+        assertEquals("round1", ki
+                .getFields("a/2/7", Collections.singletonList("name"))
+                .toJsonNode().at("/document/fields/0/value").asText());
+
+        ki.close();
+    };
+
+
+    @Test
+    public void refreshWarmsNewLeaves () throws IOException, QueryException {
+        final List<Integer> warmed = Collections
+                .synchronizedList(new ArrayList<Integer>());
+
+        KrillIndex ki = new KrillIndex();
+        ki.addWarmer(new ReaderWarmer() {
+            @Override
+            public void warm (IndexReader reader,
+                    List<LeafReaderContext> leaves) {
+                warmed.add(leaves.size());
+            };
+        });
+        ki.addWarmer(new QueryWarmer(Collections.singletonList(
+                new QueryBuilder("tokens").seg("s:der").toQuery())));
+
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"),
+                true);
+        ki.commit();
+
+        // The reader is opened lazily and all leaves are warmed up
+        assertEquals(0, warmed.size());
+        assertEquals(1, ki.reader().leaves().size());
+        assertEquals(1, warmed.size());
+        assertEquals(1, (int) warmed.get(0));
+
+        // Only the new segment is warmed up
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"),
+                true);
+        ki.commit();
+        assertEquals(2, ki.reader().leaves().size());
+        assertEquals(2, warmed.size());
+        assertEquals(1, (int) warmed.get(1));
+
+        // Nothing changed
+        ki.commit();
+        assertEquals(2, warmed.size());
+
+        Result kr = ki.search(new Krill(new QueryBuilder("tokens").seg("s:der")));
+        assertTrue(kr.getTotalResults() > 0);
+        assertEquals(2, kr.getTotalResources());
+
+        ki.close();
+    };
+
+
+    @Test
+    public void refreshCompilesNamedVCs () throws Exception {
+        List<String> vcIds = VirtualCorpusWarmer
+                .namedVCs(KrillProperties.namedVCPath);
+        assertEquals("[inval!d-vc-id, klznkz66, named-vc1, named-vc2, "
+                + "named-vc3, named-vc4]", vcIds.toString());
+
+        for (String vcId : vcIds) {
+            VirtualCorpusCache.delete(vcId);
+        };
+        VirtualCorpusWarmer warmer = new VirtualCorpusWarmer(null, 3);
+
+        KrillIndex ki = new KrillIndex();
+        ki.addWarmer(warmer);
+        for (int uid = 1; uid <= 3; uid++) {
+            ki.addDoc(uid, getClass().getResourceAsStream(
+                    "/wiki/0000" + uid + ".json.gz"), true);
+        };
+        ki.commit();
+
+        try {
+            // All named virtual corpora are compiled in the background
+            assertEquals(1, ki.reader().leaves().size());
+            warmer.await();
+            assertEquals(5, warmer.getCorpora());
+            assertEquals(1, warmer.getFailures());
+            assertEquals(1, VirtualCorpusCache.retrieve("named-vc1").size());
+            assertEquals(2, VirtualCorpusCache.retrieve("named-vc1").values()
+                    .iterator().next().cardinality());
+
+            // Only the new segment is compiled after a commit
+            ki.addDoc(4, getClass().getResourceAsStream(
+                    "/wiki/00004.json.gz"), true);
+            ki.commit();
+            assertEquals(2, ki.reader().leaves().size());
+            warmer.await();
+            assertEquals(5, warmer.getCorpora());
+            assertEquals(2, VirtualCorpusCache.retrieve("named-vc1").size());
+            assertEquals(2, VirtualCorpusCache.retrieve("named-vc4").size());
+
+            // The warm-up doesn't leave clean up work for requests
+            assertTrue(VirtualCorpusCache.vcToCleanUp.isEmpty());
+
+            // Requests use the compiled corpora
+            Krill ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+            KrillCollection kc = new KrillCollection();
+            kc.fromBuilder(kc.build().referTo("named-vc1"));
+            ks.setCollection(kc);
+            assertEquals(2, ki.search(ks).getTotalResources());
+        }
+        finally {
+            ki.close();
+            VirtualCorpusCache.reset();
+        };
+    };
+
+
+    @Test
+    public void refreshMergesWaitingJobs () throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final List<Integer> compiled = Collections
+                .synchronizedList(new ArrayList<Integer>());
+
+        // Block the first job, so further jobs have to wait
+        VirtualCorpusWarmer warmer = new VirtualCorpusWarmer(
+                Collections.<String> emptyList()) {
+            @Override
+            public void compile (List<LeafReaderContext> leaves) {
+                compiled.add(leaves.size());
+                running.countDown();
+                try {
+                    proceed.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                };
+            };
+        };
+
+        KrillIndex ki = new KrillIndex();
+        ki.addWarmer(warmer);
+        List<IndexReader> readers = new ArrayList<>();
+        for (int uid = 1; uid <= 4; uid++) {
+            ki.addDoc(uid, getClass().getResourceAsStream(
+                    "/wiki/0000" + uid + ".json.gz"), true);
+            ki.commit();
+            IndexReader reader = ki.acquireReader();
+            readers.add(reader);
+            if (uid == 1)
+                running.await();
+        };
+
+        // Superseded readers are not kept open by the warmer
+        assertEquals(2, readers.get(0).getRefCount());
+        assertEquals(1, readers.get(1).getRefCount());
+        assertEquals(1, readers.get(2).getRefCount());
+        assertEquals(3, readers.get(3).getRefCount());
+
+        // The waiting jobs are merged
+        proceed.countDown();
+        warmer.await();
+        assertEquals("[1, 3]", compiled.toString());
+        assertEquals(1, readers.get(0).getRefCount());
+        assertEquals(2, readers.get(3).getRefCount());
+
+        for (IndexReader reader : readers)
+            ki.releaseReader(reader);
+        ki.close();
+    };
+
+
+    @Test
+    public void refreshInBackground () throws Exception {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"),
+                true);
+        ki.commit();
+        assertEquals(1, ki.reader().numDocs());
+
+        boolean background = KrillProperties.refreshInBackground;
+        KrillProperties.refreshInBackground = true;
+        try {
+            ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"),
+                    true);
+            ki.commit();
+
+            // Wait for the refresh
+            for (int i = 0; i < 100 && ki.reader().numDocs() < 2; i++) {
+                Thread.sleep(50);
+            };
+            assertEquals(2, ki.reader().numDocs());
+        }
+        finally {
+            KrillProperties.refreshInBackground = background;
+        };
+        ki.close();
+    };
+};
@@ -1,12 +1,22 @@
 package de.ids_mannheim.korap.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
 import org.junit.Test;
 
 import de.ids_mannheim.korap.Krill;
@@ -52,4 +62,215 @@ public class TestTimeout {
     }
 
 
+    @Test
+    public void testCancelledSearch () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"), true);
+        ki.commit();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"), true);
+        ki.commit();
+
+        SpanQuery q = new SpanTermQuery(new Term("tokens", "s:der"));
+        Krill ks = new Krill(q);
+        ks.cancel();
+        assertTrue(ks.isCancelled());
+        Result kr = ks.apply(ki);
+        assertFalse(kr.hasTimeExceeded());
+        assertEquals(1, kr.getWarnings().size());
+        assertEquals(StatusCodes.SEARCH_CANCELLED,
+                kr.getWarning(0).getCode());
+        assertEquals(0, kr.getMatches().size());
+    }
+
+
+    @Test
+    public void testZeroTimeout () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"), true);
+        ki.commit();
+
+        // A timeout of 0 is not unlimited
+        SpanQuery q = new SpanTermQuery(new Term("tokens", "s:der"));
+        Krill ks = new Krill(q);
+        ks.getMeta().setTimeOut(0);
+        Result kr = ks.apply(ki);
+        assertTrue(kr.hasTimeExceeded());
+        assertEquals(1, kr.getWarnings().size());
+        assertEquals(StatusCodes.RESPONSE_TIME_EXCEEDED,
+                kr.getWarning(0).getCode());
+    }
+
+
+    @Test
+    public void testCancelRunningSearch () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"), true);
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"), true);
+        ki.commit();
+
+        SpanQuery q = new SpanTermQuery(new Term("tokens", "s:der"));
+        Krill ks = new Krill(q);
+        Result kr = ks.apply(ki);
+        long total = kr.getTotalResults();
+        assertTrue(total > 5);
+        assertFalse(kr.hasWarnings());
+
+        // Cancel the search after the third match
+        ks = new Krill();
+        ks.setSpanQuery(new StoppingSpanQuery(q, ks, 3, 0));
+        kr = ks.apply(ki);
+        assertTrue(ks.isCancelled());
+        assertFalse(kr.hasTimeExceeded());
+        assertEquals(1, kr.getWarnings().size());
+        assertEquals(StatusCodes.SEARCH_CANCELLED,
+                kr.getWarning(0).getCode());
+        assertTrue(kr.getTotalResults() < total);
+    };
+
+
+    @Test
+    public void testTimeoutRunningSearch () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"), true);
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"), true);
+        ki.commit();
+
+        SpanQuery q = new SpanTermQuery(new Term("tokens", "s:der"));
+        long total = new Krill(q).apply(ki).getTotalResults();
+
+        // Each match takes longer than the timeout
+        Krill ks = new Krill();
+        ks.setSpanQuery(new StoppingSpanQuery(q, null, 0, 20));
+        ks.getMeta().setTimeOut(10);
+        Result kr = ks.apply(ki);
+        assertFalse(ks.isCancelled());
+        assertTrue(kr.hasTimeExceeded());
+        assertEquals(1, kr.getWarnings().size());
+        assertEquals(StatusCodes.RESPONSE_TIME_EXCEEDED,
+                kr.getWarning(0).getCode());
+        assertTrue(kr.getTotalResults() < total);
+    };
+
+
+    @Test
+    public void testSearchDeadline () {
+        SearchDeadline deadline = new SearchDeadline(-1);
+        assertTrue(deadline.isExceeded());
+        assertTrue(deadline.isStopped());
+        assertFalse(deadline.isCancelled());
+
+        deadline = new SearchDeadline(60_000);
+        assertFalse(deadline.isExceeded());
+        assertFalse(deadline.isStopped());
+        assertTrue(deadline.getTime() < 60_000);
+        deadline.cancel();
+        assertTrue(deadline.isCancelled());
+        assertTrue(deadline.isStopped());
+
+        deadline = new SearchDeadline(Long.MAX_VALUE);
+        assertFalse(deadline.isExceeded());
+    }
+
+
+    // Span query slowing down or cancelling a running search
+    private static class StoppingSpanQuery extends SpanQuery {
+        private final SpanQuery query;
+        private final Krill ks;
+        private final int cancelAfter;
+        private final long sleep;
+        private final AtomicInteger count = new AtomicInteger();
+
+
+        public StoppingSpanQuery (SpanQuery query, Krill ks, int cancelAfter,
+                                  long sleep) {
+            this.query = query;
+            this.ks = ks;
+            this.cancelAfter = cancelAfter;
+            this.sleep = sleep;
+        };
+
+
+        @Override
+        public Spans getSpans (LeafReaderContext context, Bits acceptDocs,
+                Map<Term, TermContext> termContexts) throws IOException {
+            final Spans spans = this.query.getSpans(context, acceptDocs,
+                    termContexts);
+            return new Spans() {
+                @Override
+                public boolean next () throws IOException {
+                    if (ks != null && count.incrementAndGet() == cancelAfter)
+                        ks.cancel();
+                    if (sleep > 0) {
+                        try {
+                            Thread.sleep(sleep);
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        };
+                    };
+                    return spans.next();
+                };
+
+
+                @Override
+                public boolean skipTo (int target) throws IOException {
+                    return spans.skipTo(target);
+                };
+
+
+                @Override
+                public int doc () {
+                    return spans.doc();
+                };
+
+
+                @Override
+                public int start () {
+                    return spans.start();
+                };
+
+
+                @Override
+                public int end () {
+                    return spans.end();
+                };
+
+
+                @Override
+                public Collection<byte[]> getPayload () throws IOException {
+                    return spans.getPayload();
+                };
+
+
+                @Override
+                public boolean isPayloadAvailable () throws IOException {
+                    return spans.isPayloadAvailable();
+                };
+
+
+                @Override
+                public long cost () {
+                    return spans.cost();
+                };
+            };
+        };
+
+
+        @Override
+        public void extractTerms (Set<Term> terms) {
+            this.query.extractTerms(terms);
+        };
+
+
+        @Override
+        public String getField () {
+            return this.query.getField();
+        };
+
+
+        @Override
+        public String toString (String field) {
+            return "stopping(" + this.query.toString(field) + ")";
+        };
+    };
 }
@@ -0,0 +1,132 @@
+package de.ids_mannheim.korap.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.query.spans.CandidateSpan;
+import de.ids_mannheim.korap.query.spans.CandidateSpanQueue;
+
+@RunWith(JUnit4.class)
+public class TestCandidateSpanQueue {
+
+    private static String positions (List<CandidateSpan> list) {
+        StringBuilder sb = new StringBuilder();
+        for (CandidateSpan cs : list) {
+            sb.append(cs.getStart()).append('-').append(cs.getEnd())
+                    .append(' ');
+        };
+        return sb.toString().trim();
+    };
+
+
+    @Test
+    public void testQueue () {
+        CandidateSpanQueue queue = new CandidateSpanQueue();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        // Wrap around the ring several times
+        for (int i = 0; i < 100; i++) {
+            queue.add(i, i + 1, 0, 1, null);
+            if (i % 3 == 0)
+                assertEquals(i / 3, queue.poll().getStart());
+        };
+        assertEquals(66, queue.size());
+        assertEquals(34, queue.get(0).getStart());
+        assertEquals(99, queue.get(65).getStart());
+
+        // Linear removal
+        queue.removeIf(cs -> cs.getStart() % 2 == 0);
+        assertEquals(33, queue.size());
+        assertEquals(35, queue.get(0).getStart());
+        assertEquals(99, queue.get(32).getStart());
+
+        // Iterator removal
+        Iterator<CandidateSpan> i = queue.iterator();
+        while (i.hasNext()) {
+            if (i.next().getStart() < 41)
+                i.remove();
+        };
+        assertEquals("41-42 43-44 45-46", positions(queue.subList(0, 3)));
+
+        queue.add(0, new CandidateSpan(1, 2, 0, 1, null));
+        queue.add(2, new CandidateSpan(42, 43, 0, 1, null));
+        assertEquals("1-2 41-42 42-43 43-44", positions(queue.subList(0, 4)));
+        assertEquals(1, queue.remove(0).getStart());
+        assertEquals(42, queue.remove(1).getStart());
+        assertEquals(99, queue.remove(queue.size() - 1).getStart());
+        assertEquals(29, queue.size());
+
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    };
+
+
+    @Test
+    public void testSort () {
+        CandidateSpanQueue queue = new CandidateSpanQueue();
+        List<CandidateSpan> list = new ArrayList<>();
+
+        // Unsorted candidates across the ring boundary
+        for (int i = 0; i < 12; i++) {
+            queue.add(0, 0, 0, 0, null);
+            queue.poll();
+        };
+        for (int i = 0; i < 10; i++) {
+            CandidateSpan cs = new CandidateSpan((i * 7) % 10, 10 - i, 0, 0,
+                    null);
+            queue.add(cs);
+            list.add(cs);
+        };
+        queue.sort(null);
+        Collections.sort(list);
+        assertEquals(list, queue);
+        assertEquals(positions(list), positions(queue));
+    };
+
+
+    @Test
+    public void testRecycling () {
+        CandidateSpanQueue queue = new CandidateSpanQueue(true);
+        List<byte[]> payloads = new ArrayList<>();
+        payloads.add(new byte[] { 1, 2 });
+
+        CandidateSpan first = queue.add(1, 2, 3, 4, payloads);
+        first.setPosition(5);
+        assertEquals(1, first.getPayloads().size());
+        assertNotSame(payloads.get(0), first.getPayloads().iterator().next());
+        queue.dropFirst();
+
+        // The removed candidate is reused and reset
+        CandidateSpan second = queue.add(6, 7, 8, 9, null);
+        assertSame(first, second);
+        assertEquals(6, second.getStart());
+        assertEquals(7, second.getEnd());
+        assertEquals(8, second.getDoc());
+        assertEquals(9, second.getCost());
+        assertEquals(0, second.getPosition());
+        assertTrue(second.getPayloads().isEmpty());
+
+        // Polled candidates are not reused
+        assertSame(second, queue.poll());
+        assertNotSame(second, queue.add(1, 2, 3, 4, null));
+
+        // Non recycling queues never reuse candidates
+        queue = new CandidateSpanQueue();
+        first = queue.add(1, 2, 3, 4, null);
+        queue.dropFirst();
+        assertNotSame(first, queue.add(1, 2, 3, 4, null));
+    };
+};
@@ -8,6 +8,7 @@ import org.apache.lucene.search.spans.SpanQuery;
 
 import de.ids_mannheim.korap.KrillIndex;
 import de.ids_mannheim.korap.KrillQuery;
+import de.ids_mannheim.korap.response.Response;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.Krill;
 import de.ids_mannheim.korap.response.Match;
@@ -260,4 +261,88 @@ public class TestResult {
         assertEquals(1, res.at("/matches/2/tokens/1/0").asInt());
         assertEquals(2, res.at("/matches/2/tokens/1/1").asInt());
     };
+
+
+    @Test
+    public void checkJSONResultStream () throws Exception {
+        KrillIndex ki = new KrillIndex();
+        FieldDocument fd = new FieldDocument();
+        fd.addString("ID", "doc-1");
+        fd.addString("UID", "1");
+        fd.addTV("base", "abäb",
+                "[(0-1)s:a|i:a|_0#0-1|-:t$<i>4]" + "[(1-2)s:b|i:b|_1#1-2]"
+                        + "[(2-3)s:ä|i:c|_2#2-3]" + "[(3-4)s:b|i:a|_3#3-4]");
+        ki.addDoc(fd);
+        ki.commit();
+
+        // Serialization moves notifications, so every
+        // serialization is done on a new result
+        SpanQuery q = new QueryBuilder("base").seg("s:b").toQuery();
+        Result kr = ki.search(q);
+        assertEquals((long) 2, kr.getTotalResults());
+
+        // The streamed serialization equals the tree serialization
+        ObjectMapper mapper = new ObjectMapper();
+        String json = _noBenchmark(kr.toJsonString());
+        assertEquals(json, _noBenchmark(
+                mapper.writeValueAsString(ki.search(q).toJsonNode())));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ki.search(q).toJsonStream(os);
+        assertEquals(json, _noBenchmark(os.toString("UTF-8")));
+
+        JsonNode res = mapper.readTree(json);
+        assertEquals(2, res.at("/matches").size());
+        assertEquals("match-doc-1-p1-2", res.at("/matches/0/matchID").asText());
+        assertEquals(25, res.at("/meta/itemsPerPage").asInt());
+
+        // Results without matches
+        kr = new Result();
+        assertEquals(mapper.writeValueAsString(kr.toJsonNode()),
+                kr.toJsonString());
+    };
+
+
+    @Test
+    public void checkJSONResultStreamFailure () throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        // The serialization fails in the middle of the matches
+        Result kr = new Result("", 0, (short) 25, null);
+        kr.add(new Match(50, "match-doc-1-p0-1", false));
+        kr.add(new Match(50, "match-doc-1-p1-2", false) {
+            @Override
+            public JsonNode toJsonNode () {
+                throw new IllegalStateException("Broken match");
+            };
+        });
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        kr.toJsonStream(os);
+        JsonNode res = mapper.readTree(os.toString("UTF-8"));
+        assertEquals(1, res.at("/matches").size());
+        assertEquals("match-doc-1-p0-1", res.at("/matches/0/matchID").asText());
+        assertEquals(620, res.at("/errors/0/0").asInt());
+        assertEquals("Unable to generate JSON",
+                res.at("/errors/0/1").asText());
+        assertEquals("Broken match", res.at("/errors/0/2").asText());
+
+        // The serialization fails before anything is written
+        Response resp = new Response() {
+            @Override
+            public JsonNode toJsonNode () {
+                throw new IllegalStateException("Broken response");
+            };
+        };
+        os = new ByteArrayOutputStream();
+        resp.toJsonStream(os);
+        res = mapper.readTree(os.toString("UTF-8"));
+        assertEquals(620, res.at("/errors/0/0").asInt());
+        assertEquals("Broken response", res.at("/errors/0/2").asText());
+    };
+
+
+    private static String _noBenchmark (String json) {
+        return json.replaceAll("\"benchmark\":\"[^\"]*\",?", "");
+    };
 };
@@ -23,6 +23,7 @@ import java.io.FileInputStream;
 import de.ids_mannheim.korap.server.Node;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.Response;
+import de.ids_mannheim.korap.util.KrillProperties;
 import static de.ids_mannheim.korap.util.KrillString.*;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -204,6 +205,70 @@ public class TestResource {
         assertEquals(2661, res.at("/stats/tokens").asInt());
 
         assertEquals(7, res.at("/stats/base~1texts").asInt());
+
+        assertEquals("koral:stats", res.at("/stats/@type").asText());
+        assertEquals("tokens", res.at("/stats/collection/0/key").asText());
+        assertEquals(2661, res.at("/stats/collection/0/value").asInt());
+        assertEquals("base", res.at("/stats/collection/1/foundry").asText());
+        assertEquals("texts", res.at("/stats/collection/1/key").asText());
+        assertEquals(7, res.at("/stats/collection/1/value").asInt());
+
+        // Get statistics of a virtual corpus
+        resp = target.path("/corpus").request("application/json")
+                .post(Entity.json("{\"collection\":{"
+                        + "\"@type\":\"koral:doc\","
+                        + "\"key\":\"UID\","
+                        + "\"value\":\"5\","
+                        + "\"match\":\"match:eq\"},"
+                        + "\"counters\":[\"texts\"]}"), String.class);
+        res = mapper.readTree(resp);
+
+        assertEquals("koral:stats", res.at("/stats/@type").asText());
+        assertEquals("texts", res.at("/stats/collection/0/key").asText());
+        assertEquals(1, res.at("/stats/collection/0/value").asInt());
+
+        // Get multiple matches
+        resp = target.path("/match").request("application/json")
+                .post(Entity.json("{\"matchIDs\":["
+                        + "\"match-WPD!WPD_AAA.00005-p3-5\","
+                        + "\"match-WPD!WPD_AAA.00001-p0-1\","
+                        + "\"match-WPD!WPD_AAA.00005-p6-7\"],"
+                        + "\"info\":true,\"foundry\":\"mate\"}"),
+                        String.class);
+        res = mapper.readTree(resp);
+
+        assertEquals("milena", res.at("/meta/node").asText());
+        assertEquals(3, res.at("/matches").size());
+        assertEquals("match-WPD_AAA.00005-p3-5",
+                res.at("/matches/0/matchID").asText());
+        assertEquals("match-WPD_AAA.00001-p0-1",
+                res.at("/matches/1/matchID").asText());
+        assertEquals("match-WPD_AAA.00005-p6-7",
+                res.at("/matches/2/matchID").asText());
+
+        // Invalid requests
+        resp = target.path("/match").request("application/json")
+                .post(Entity.json("{\"matchIDs\":[]}"), String.class);
+        res = mapper.readTree(resp);
+        assertEquals(730, res.at("/errors/0/0").asInt());
+
+        // Too many match identifiers
+        KrillProperties.maxMatchIDs = 2;
+        try {
+            resp = target.path("/match").request("application/json")
+                    .post(Entity.json("{\"matchIDs\":["
+                            + "\"match-WPD!WPD_AAA.00005-p3-5\","
+                            + "\"match-WPD!WPD_AAA.00001-p0-1\","
+                            + "\"match-WPD!WPD_AAA.00005-p6-7\"]}"),
+                            String.class);
+        }
+        finally {
+            KrillProperties.maxMatchIDs = 100;
+        };
+        res = mapper.readTree(resp);
+        assertEquals(731, res.at("/errors/0/0").asInt());
+        assertEquals("3", res.at("/errors/0/2").asText());
+        assertEquals(0, res.at("/matches").size());
     };
 
 